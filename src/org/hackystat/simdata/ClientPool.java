@@ -0,0 +1,220 @@
+package org.hackystat.simdata;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.sensorshell.SensorShell;
+import org.hackystat.sensorshell.SensorShellProperties;
+import org.hackystat.utilities.logger.HackystatLogger;
+
+/**
+ * A process-wide pool of authenticated SensorBaseClients and open SensorShells, keyed by host
+ * and user email. All SimData instances in a process share it, so running several scenarios
+ * against the same host probes the host, authenticates each user, and starts each user's shell 
+ * only once. Each user has at most one pooled client and one pooled shell, so the pool grows
+ * with the number of distinct users, not with the number of scenarios. The pooled shells stay
+ * open, buffering and sending their users' data, until release() or shutdown() is called, the
+ * latter either explicitly or by the JVM shutdown hook installed on first use. No network 
+ * connections are held by the pool itself; their reuse is left to the HTTP client.
+ * 
+ * @author Philip Johnson
+ */
+public final class ClientPool {
+  
+  /** The timeout, in milliseconds, of pooled clients. Bulk deletion can be slow. */
+  private static final int CLIENT_TIMEOUT = 100000;
+  
+  /** The hosts that have responded to a probe. */
+  private static final ConcurrentMap<String, Boolean> hosts = 
+    new ConcurrentHashMap<String, Boolean>();
+  
+  /** Maps host and email to authenticated clients. */
+  private static final ConcurrentMap<String, SensorBaseClient> clients = 
+    new ConcurrentHashMap<String, SensorBaseClient>();
+  
+  /** Maps host and email to open shells. */
+  private static final ConcurrentMap<String, SensorShell> shells = 
+    new ConcurrentHashMap<String, SensorShell>();
+  
+  /** The logger. */
+  private static final Logger logger = 
+    HackystatLogger.getLogger("org.hackystat.simdata", "simdata");
+  
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread("SimData-ClientPool-shutdown") {
+      @Override
+      public void run() {
+        shutdown();
+      }
+    });
+  }
+  
+  /** Disable public construction. */
+  private ClientPool() {
+    // Does nothing.
+  }
+  
+  /**
+   * Returns the pool key for the given host and user.
+   * @param host The host.
+   * @param email The user email.
+   * @return The key.
+   */
+  private static String key(String host, String email) {
+    return host + " " + email;
+  }
+  
+  /**
+   * Returns true if the host is a SensorBase. Only the first successful probe of each host
+   * goes over the network.
+   * @param host The host.
+   * @return True if the host responds.
+   */
+  public static boolean isHost(String host) {
+    if (hosts.containsKey(host)) {
+      return true;
+    }
+    if (SensorBaseClient.isHost(host)) {
+      hosts.put(host, Boolean.TRUE);
+      return true;
+    }
+    return false;
+  }
+  
+  /**
+   * Returns true if an authenticated client for this user is already pooled, in which case the
+   * user is known to be registered.
+   * @param host The host.
+   * @param email The user email.
+   * @return True if the client is pooled.
+   */
+  public static boolean hasClient(String host, String email) {
+    return clients.containsKey(key(host, email));
+  }
+
+  /**
+   * Returns the number of pooled clients, which is at most the number of distinct users.
+   * @return The number of clients.
+   */
+  public static int getNumClients() {
+    return clients.size();
+  }
+
+  /**
+   * Returns the pooled, authenticated client for this user, creating it if necessary.
+   * The user must already be registered at the host.
+   * @param host The host.
+   * @param email The user email, which is also the password in SimData.
+   * @return The client.
+   * @throws SensorBaseClientException If authentication fails.
+   */
+  public static SensorBaseClient getClient(String host, String email) 
+  throws SensorBaseClientException {
+    String key = key(host, email);
+    SensorBaseClient client = clients.get(key);
+    if (client == null) {
+      SensorBaseClient newClient = new SensorBaseClient(host, email, email);
+      newClient.authenticate();
+      newClient.setTimeout(CLIENT_TIMEOUT);
+      client = clients.putIfAbsent(key, newClient);
+      if (client == null) {
+        client = newClient;
+      }
+    }
+    return client;
+  }
+  
+  /**
+   * Returns the pooled shell for this user, creating it if necessary. 
+   * @param host The host.
+   * @param email The user email, which is also the password in SimData.
+   * @return The shell.
+   * @throws Exception If the shell cannot be created.
+   */
+  public static SensorShell getShell(String host, String email) throws Exception {
+    String key = key(host, email);
+    SensorShell shell = shells.get(key);
+    if (shell == null) {
+      SensorShell newShell = makeShell(host, email);
+      shell = shells.putIfAbsent(key, newShell);
+      if (shell == null) {
+        shell = newShell;
+      }
+      else {
+        // Another thread won the race; discard ours.
+        newShell.quit();
+      }
+    }
+    return shell;
+  }
+  
+  /**
+   * Creates a returns a SensorShell instance for this user. 
+   * @param host The host.
+   * @param email The user whose shell is to be created. 
+   * @return The initialized sensorshell.
+   * @throws Exception If problems occur.
+   */
+  private static SensorShell makeShell(String host, String email) throws Exception {
+    // The testing configuration of SensorShell is good for SimData.
+    SensorShellProperties testProps = SensorShellProperties.getTestInstance(host, email, email);
+    SensorShellProperties shellProps = new SensorShellProperties(testProps, getShellSettings());
+    return new SensorShell(shellProps, false, "SimData");
+  }
+  
+  /**
+   * Returns the SensorShell settings that SimData overrides in the testing configuration of
+   * every pooled shell.
+   * @return The settings.
+   */
+  public static java.util.Properties getShellSettings() {
+    java.util.Properties props = new java.util.Properties();
+    props.setProperty(SensorShellProperties.SENSORSHELL_MULTISHELL_ENABLED_KEY, "true");
+    props.setProperty(SensorShellProperties.SENSORSHELL_MULTISHELL_NUMSHELLS_KEY, "2");
+    return props;
+  }
+  
+  /**
+   * Removes this user's client and shell from the pool, quitting the shell.
+   * @param host The host.
+   * @param email The user email.
+   */
+  public static void release(String host, String email) {
+    String key = key(host, email);
+    clients.remove(key);
+    SensorShell shell = shells.remove(key);
+    if (shell != null) {
+      quit(shell);
+    }
+  }
+  
+  /**
+   * Quits all pooled shells, sending their remaining data, and empties the pool.
+   */
+  public static void shutdown() {
+    for (String key : shells.keySet()) {
+      SensorShell shell = shells.remove(key);
+      if (shell != null) {
+        quit(shell);
+      }
+    }
+    clients.clear();
+    hosts.clear();
+  }
+  
+  /**
+   * Quits the shell, logging rather than throwing any failure.
+   * @param shell The shell.
+   */
+  private static void quit(SensorShell shell) {
+    try {
+      shell.quit();
+    }
+    catch (Exception e) {
+      logger.warning("Failed to quit pooled SensorShell: " + e.getMessage());
+    }
+  }
+}
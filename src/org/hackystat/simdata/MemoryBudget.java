@@ -0,0 +1,134 @@
+package org.hackystat.simdata;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * The limits of memory budget mode, for scenarios with thousands of users over years of data.
+ * By default every user's client and shell is opened when the user is made and stays open, so
+ * memory grows with the number of users. In budget mode a SimData instance instead opens each
+ * user's shell when the user's first data arrives, closes the least recently used shell once
+ * too many are open and any shell left idle too long, and sends the buffered data of all its
+ * shells whenever too many instances are waiting in them. Scenarios such as MultiTenant also
+ * generate their users in chunks no larger than the open shell limit, so each shell is opened
+ * only once.
+ * <p>
+ * Budget mode is enabled by setting org.hackystat.simdata.memory.maxShells. The limits apply
+ * to each SimData instance, so a run with several instances at once needs that many times as
+ * much.
+ *
+ * @author Philip Johnson
+ */
+public class MemoryBudget {
+
+  /** The system property holding the maximum number of open shells, enabling budget mode. */
+  public static final String MAX_SHELLS_KEY = "org.hackystat.simdata.memory.maxShells";
+  /** The system property holding the seconds after which an unused shell is closed. */
+  public static final String IDLE_SECONDS_KEY = "org.hackystat.simdata.memory.idleSeconds";
+  /** The system property holding the maximum number of instances waiting in shells. */
+  public static final String MAX_IN_FLIGHT_KEY = "org.hackystat.simdata.memory.maxInFlight";
+
+  /** The maximum number of open shells. */
+  private final int maxOpenShells;
+  /** The milliseconds after which an unused shell is closed. */
+  private final long idleMillis;
+  /** The maximum number of instances waiting in shells before they are all sent. */
+  private final int maxInFlight;
+
+  /**
+   * Creates a budget.
+   * @param maxOpenShells The maximum number of open shells, at least 1.
+   * @param idleMillis The milliseconds after which an unused shell is closed.
+   * @param maxInFlight The maximum number of instances waiting in shells, at least 1.
+   * @throws IllegalArgumentException If a limit is less than 1.
+   */
+  public MemoryBudget(int maxOpenShells, long idleMillis, int maxInFlight) {
+    if ((maxOpenShells < 1) || (idleMillis < 1) || (maxInFlight < 1)) {
+      throw new IllegalArgumentException("Memory budget limits must be at least 1.");
+    }
+    this.maxOpenShells = maxOpenShells;
+    this.idleMillis = idleMillis;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Returns the budget given by the system properties: at most maxShells open shells, closed
+   * after idleSeconds (60 by default) unused, with at most maxInFlight (10000 by default)
+   * instances waiting in them.
+   * @return The budget, or null if budget mode is not enabled.
+   */
+  public static MemoryBudget fromSystemProperties() {
+    String maxShells = System.getProperty(MAX_SHELLS_KEY);
+    if (maxShells == null) {
+      return null;
+    }
+    return new MemoryBudget(Integer.parseInt(maxShells),
+        1000L * Integer.parseInt(System.getProperty(IDLE_SECONDS_KEY, "60")),
+        Integer.parseInt(System.getProperty(MAX_IN_FLIGHT_KEY, "10000")));
+  }
+
+  /**
+   * Returns the maximum number of open shells.
+   * @return The maximum.
+   */
+  public int getMaxOpenShells() {
+    return this.maxOpenShells;
+  }
+
+  /**
+   * Returns the milliseconds after which an unused shell is closed.
+   * @return The idle time.
+   */
+  public long getIdleMillis() {
+    return this.idleMillis;
+  }
+
+  /**
+   * Returns the maximum number of instances waiting in shells.
+   * @return The maximum.
+   */
+  public int getMaxInFlight() {
+    return this.maxInFlight;
+  }
+
+  /**
+   * Returns the peak heap use since the JVM started or resetPeakHeap was last called: the
+   * sum of the peak use of every heap memory pool. The pools peak at different moments, so
+   * this is an upper bound on the true peak.
+   * @return The peak, in bytes.
+   */
+  public static long getPeakHeapBytes() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = pool.getPeakUsage();
+      if ((pool.getType() == MemoryType.HEAP) && (usage != null)) {
+        peak += usage.getUsed();
+      }
+    }
+    return peak;
+  }
+
+  /**
+   * Resets the peak use of every heap memory pool to its current use.
+   */
+  public static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * Returns the limits of this budget.
+   * @return A description of the limits.
+   */
+  @Override
+  public String toString() {
+    return "memory budget of " + this.maxOpenShells + " open shells, closed after "
+      + (this.idleMillis / 1000) + " s idle, with at most " + this.maxInFlight
+      + " instances in flight";
+  }
+}
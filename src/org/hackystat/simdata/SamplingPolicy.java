@@ -0,0 +1,222 @@
+package org.hackystat.simdata;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Selects a consistent sample of the sensor data a scenario generates, so that a scenario run
+ * at full scale can produce a small dataset for a quick smoke test. An instance is kept only if
+ * its owner is one of the selected users, its resource contains one of the selected resource
+ * substrings (such as a project's directory, which its UriPattern matches), its timestamp
+ * falls within the selected days, and the hash of its key, the owner, sensor data type,
+ * resource and timestamp, falls within the selected fraction. Every selector is optional.
+ * <p>
+ * SimData consults the policy before building each instance and skips building a rejected
+ * one, but still draws its random numbers and advances its timestamps, so the state of the
+ * scenario advances exactly as in a full run. The instances that are kept are therefore
+ * identical to the same instances of a full run, and a given policy selects the same sample
+ * on every run.
+ * <p>
+ * Sampling is enabled by setting any of the org.hackystat.simdata.sample properties.
+ *
+ * @author Philip Johnson
+ */
+public class SamplingPolicy {
+
+  /** The system property holding the comma separated users kept, without their domain. */
+  public static final String USERS_KEY = "org.hackystat.simdata.sample.users";
+  /** The system property holding comma separated substrings of the resources kept. */
+  public static final String RESOURCES_KEY = "org.hackystat.simdata.sample.resources";
+  /** The system property holding the days kept, as yyyy-MM-dd or yyyy-MM-dd..yyyy-MM-dd. */
+  public static final String DAYS_KEY = "org.hackystat.simdata.sample.days";
+  /** The system property holding the fraction of instances kept, between 0 and 1. */
+  public static final String FRACTION_KEY = "org.hackystat.simdata.sample.fraction";
+
+  /** The users kept, or null to keep every user. */
+  private final Set<String> users;
+  /** The substrings of the resources kept, or null to keep every resource. */
+  private final List<String> resources;
+  /** The days kept, as given, or null to keep every day. */
+  private final String days;
+  /** The first millisecond kept. */
+  private final long fromMillis;
+  /** The millisecond after the last one kept. */
+  private final long toMillis;
+  /** The fraction of instances kept. */
+  private final double fraction;
+  /** The hashes below which an instance is kept, out of 2^53. */
+  private final long threshold;
+
+  /**
+   * Creates a policy.
+   * @param users The users kept, without their domain, or null to keep every user.
+   * @param resources Substrings of the resources kept, or null to keep every resource.
+   * @param days The days kept, in the local time zone, as a single yyyy-MM-dd day or an
+   * inclusive range yyyy-MM-dd..yyyy-MM-dd, or null to keep every day.
+   * @param fraction The fraction of the remaining instances kept, between 0 and 1.
+   * @throws IllegalArgumentException If the days cannot be parsed or the fraction is not
+   * between 0 and 1.
+   */
+  public SamplingPolicy(Set<String> users, List<String> resources, String days,
+      double fraction) {
+    if ((fraction < 0) || (fraction > 1)) {
+      throw new IllegalArgumentException("Sample fraction must be between 0 and 1.");
+    }
+    this.users = (users == null) ? null : Collections.unmodifiableSet(new TreeSet<String>(users));
+    this.resources = (resources == null) ? null
+        : Collections.unmodifiableList(new ArrayList<String>(resources));
+    this.days = days;
+    if (days == null) {
+      this.fromMillis = Long.MIN_VALUE;
+      this.toMillis = Long.MAX_VALUE;
+    }
+    else {
+      int separator = days.indexOf("..");
+      this.fromMillis = parseDay((separator < 0) ? days : days.substring(0, separator), 0);
+      this.toMillis = parseDay((separator < 0) ? days : days.substring(separator + 2), 1);
+    }
+    this.fraction = fraction;
+    this.threshold = (long) (fraction * (1L << 53));
+  }
+
+  /**
+   * Returns the policy given by the system properties.
+   * @return The policy, or null if no sample property is set.
+   * @throws IllegalArgumentException If a property is not valid.
+   */
+  public static SamplingPolicy fromSystemProperties() {
+    String users = System.getProperty(USERS_KEY);
+    String resources = System.getProperty(RESOURCES_KEY);
+    String days = System.getProperty(DAYS_KEY);
+    String fraction = System.getProperty(FRACTION_KEY);
+    if ((users == null) && (resources == null) && (days == null) && (fraction == null)) {
+      return null;
+    }
+    return new SamplingPolicy((users == null) ? null : new TreeSet<String>(split(users)),
+        (resources == null) ? null : split(resources), days,
+        (fraction == null) ? 1.0 : Double.parseDouble(fraction));
+  }
+
+  /**
+   * Returns a policy that keeps the same users, resources and days as this one, but a
+   * different fraction of them.
+   * @param fraction The fraction, between 0 and 1.
+   * @return The new policy.
+   */
+  public SamplingPolicy withFraction(double fraction) {
+    return new SamplingPolicy(this.users, this.resources, this.days, fraction);
+  }
+
+  /**
+   * Returns true if the instance belongs to the sample.
+   * @param user The owner, without the domain.
+   * @param owner The owner, with the domain.
+   * @param sdt The sensor data type.
+   * @param resource The resource.
+   * @param millis The timestamp, in milliseconds.
+   * @return True if the instance is kept.
+   */
+  public boolean keep(String user, String owner, String sdt, String resource, long millis) {
+    if ((millis < this.fromMillis) || (millis >= this.toMillis)) {
+      return false;
+    }
+    if ((this.users != null) && !this.users.contains(user)) {
+      return false;
+    }
+    if (this.resources != null) {
+      boolean found = false;
+      for (int i = 0; !found && (i < this.resources.size()); i++) {
+        found = resource.contains(this.resources.get(i));
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    if (this.threshold >= (1L << 53)) {
+      return true;
+    }
+    return (hash(owner, sdt, resource, millis) >>> 11) < this.threshold;
+  }
+
+  /**
+   * Returns the fraction of instances kept.
+   * @return The fraction.
+   */
+  public double getFraction() {
+    return this.fraction;
+  }
+
+  /**
+   * Returns a description of the policy, which is the same for policies that keep the same
+   * sample.
+   * @return The description.
+   */
+  @Override
+  public String toString() {
+    return "sample users " + this.users + ", resources " + this.resources + ", days "
+      + this.days + ", fraction " + this.fraction;
+  }
+
+  /**
+   * Returns a hash of the key of an instance that is the same on every run and every JVM, and
+   * whose bits are all well mixed.
+   * @param owner The owner.
+   * @param sdt The sensor data type.
+   * @param resource The resource.
+   * @param millis The timestamp.
+   * @return The hash.
+   */
+  static long hash(String owner, String sdt, String resource, long millis) {
+    long hash = owner.hashCode();
+    hash = hash * 0x100000001B3L + sdt.hashCode();
+    hash = hash * 0x100000001B3L + resource.hashCode();
+    hash = hash * 0x100000001B3L + millis;
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB9FE1A85EC53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Returns the start of a day in the local time zone, or of a day after it.
+   * @param day The day, as yyyy-MM-dd.
+   * @param daysAfter The number of days after it.
+   * @return The first millisecond of the day.
+   * @throws IllegalArgumentException If the day cannot be parsed.
+   */
+  private static long parseDay(String day, int daysAfter) {
+    try {
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+      format.setLenient(false);
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTime(format.parse(day.trim()));
+      calendar.add(Calendar.DATE, daysAfter);
+      return calendar.getTimeInMillis();
+    }
+    catch (ParseException e) {
+      throw new IllegalArgumentException("Not a day: " + day, e);
+    }
+  }
+
+  /**
+   * Splits a comma separated list, trimming each element.
+   * @param list The list.
+   * @return The elements.
+   */
+  private static List<String> split(String list) {
+    List<String> elements = new ArrayList<String>();
+    for (String element : Arrays.asList(list.split(","))) {
+      elements.add(element.trim());
+    }
+    return elements;
+  }
+}
@@ -0,0 +1,39 @@
+package org.hackystat.simdata;
+
+/**
+ * A scenario whose data is generated in steps, such as one simulated day per step, separately 
+ * from creating its users and projects and from sending. Each step adds its data to the sink 
+ * of the scenario's SimData instance. Steps depend on the state left by earlier steps, such as
+ * the scenario's random number generator, so they must be generated in order, each exactly
+ * once. Independent scenario instances, such as copies in different domains, can be generated
+ * in parallel.
+ * 
+ * @author Philip Johnson
+ */
+public interface Scenario {
+  
+  /**
+   * Returns the SimData instance that creates the scenario's users and receives its data.
+   * @return The SimData instance.
+   */
+  SimData getSimData();
+  
+  /**
+   * Creates the scenario's users and projects. Does nothing if the SimData instance is offline.
+   * @throws Exception If problems occur.
+   */
+  void provision() throws Exception;
+  
+  /**
+   * Returns the number of steps.
+   * @return The number of steps.
+   */
+  int getNumSteps();
+  
+  /**
+   * Generates the data of the given step into the SimData instance's sink.
+   * @param step The step, from 0 to getNumSteps() - 1, one greater than the previous step.
+   * @throws Exception If problems occur.
+   */
+  void generateStep(int step) throws Exception;
+}
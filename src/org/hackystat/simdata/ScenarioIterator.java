@@ -0,0 +1,102 @@
+package org.hackystat.simdata;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Iterates over the data of a scenario in the order it is generated, generating one step at 
+ * a time as the data is consumed, so that only a single step's data is ever held in memory.
+ * The iterator takes over the sink of the scenario's SimData instance. Nothing is sent; 
+ * consumers decide what to do with each instance, such as filtering it or adding it to their 
+ * own sink.
+ * 
+ * @author Philip Johnson
+ */
+public class ScenarioIterator implements Iterator<SensorData> {
+  
+  /** The scenario. */
+  private final Scenario scenario;
+  /** The data of the current step not yet returned. */
+  private final Queue<SensorData> buffer = new LinkedList<SensorData>();
+  /** The next step to generate, or -1 if the scenario has not been provisioned. */
+  private int nextStep;
+  
+  /**
+   * Creates an iterator over the scenario's data. Nothing is generated until hasNext or next
+   * is first called.
+   * @param scenario The scenario, whose steps must not have been generated yet.
+   * @param provision True to provision the scenario before its first step.
+   */
+  public ScenarioIterator(Scenario scenario, boolean provision) {
+    this.scenario = scenario;
+    this.nextStep = provision ? -1 : 0;
+    scenario.getSimData().setSink(new SensorDataSink() {
+      /** @param data Buffered until returned by next. */
+      public void add(SensorData data) {
+        buffer.add(data);
+      }
+      /** Does nothing. */
+      public void flush() {
+        // Data stays buffered until consumed.
+      }
+      /** Does nothing. */
+      public void close() {
+        // Data stays buffered until consumed.
+      }
+    });
+  }
+  
+  /**
+   * Returns true if there is more data, generating steps until there is or none remain.
+   * @return True if next will return data.
+   * @throws IllegalStateException If the scenario fails.
+   */
+  public boolean hasNext() {
+    try {
+      if (this.nextStep < 0) {
+        this.scenario.provision();
+        this.nextStep = 0;
+      }
+      while (this.buffer.isEmpty() && (this.nextStep < this.scenario.getNumSteps())) {
+        this.scenario.generateStep(this.nextStep++);
+      }
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Scenario failed at step " + this.nextStep, e);
+    }
+    return !this.buffer.isEmpty();
+  }
+  
+  /**
+   * Returns the next instance.
+   * @return The instance.
+   * @throws NoSuchElementException If there is no more data.
+   * @throws IllegalStateException If the scenario fails.
+   */
+  public SensorData next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return this.buffer.remove();
+  }
+  
+  /**
+   * Not supported.
+   * @throws UnsupportedOperationException Always.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+  
+  /**
+   * Returns the number of steps generated so far.
+   * @return The number of steps.
+   */
+  public int getStepsGenerated() {
+    return Math.max(0, this.nextStep);
+  }
+}
@@ -0,0 +1,33 @@
+package org.hackystat.simdata;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * A SensorDataSink receives the sensor data generated by SimData. The default sink hands each
+ * instance to the SensorShell of its owner; other sinks wrap it to change when, how, or whether
+ * the data is sent.
+ * 
+ * @author Philip Johnson
+ */
+public interface SensorDataSink {
+  
+  /**
+   * Accepts a single sensor data instance. 
+   * @param data The sensor data, whose owner must be a user known to this sink.
+   * @throws Exception If problems occur.
+   */
+  void add(SensorData data) throws Exception;
+  
+  /**
+   * Ensures that all data accepted so far has been sent. 
+   * @throws Exception If problems occur during sending.
+   */
+  void flush() throws Exception;
+  
+  /**
+   * Flushes any remaining data and releases the resources held by this sink. 
+   * @throws Exception If problems occur during sending.
+   */
+  void close() throws Exception;
+
+}
@@ -0,0 +1,127 @@
+package org.hackystat.simdata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.sdt.SdtTemplate;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * A helper class for the unit tests that need sensor data but no scenario: it builds Build
+ * instances from one template, and provides a sink that keeps what it is given.
+ * @author Philip Johnson
+ */
+public final class SensorDataTestHelper {
+
+  /** The owner of the test data. */
+  public static final String JOE = "joe@hackystat.org";
+  /** The timestamp of the first test instance, in milliseconds. */
+  public static final long START = 1183370400000L;
+  /** The resource of the test data. */
+  public static final String RESOURCE = "/users/joe/simdata/Joe.java";
+
+  /** The template of the test data. */
+  private static final SdtTemplate build = new SdtTemplate("Build", "Ant", "Result");
+
+  /** Disable public construction. */
+  private SensorDataTestHelper() {
+    // Does nothing.
+  }
+
+  /**
+   * A sink that keeps everything it is given, in order, and whether it was closed.
+   */
+  public static class ListSink implements SensorDataSink {
+    /** The data added. */
+    private final List<SensorData> list =
+      Collections.synchronizedList(new ArrayList<SensorData>());
+    /** True once closed. */
+    private volatile boolean closed = false;
+
+    /** @param data The data to keep. */
+    public void add(SensorData data) {
+      this.list.add(data);
+    }
+
+    /** Does nothing. */
+    public void flush() {
+      // Nothing buffered.
+    }
+
+    /** Records the close. */
+    public void close() {
+      this.closed = true;
+    }
+
+    /**
+     * Returns the data added.
+     * @return The data, in the order added.
+     */
+    public List<SensorData> getList() {
+      return this.list;
+    }
+
+    /**
+     * Returns true if the sink has been closed.
+     * @return True if closed.
+     */
+    public boolean isClosed() {
+      return this.closed;
+    }
+  }
+
+  /**
+   * Returns a successful Build instance, whose runtime is its timestamp.
+   * @param owner The owner.
+   * @param resource The resource.
+   * @param millis The offset of its timestamp from START, in milliseconds.
+   * @return The instance.
+   */
+  public static SensorData makeBuild(String owner, String resource, long millis) {
+    XMLGregorianCalendar tstamp = Tstamp.makeTimestamp(START + millis);
+    return build.makeSensorData(owner, resource, tstamp, tstamp, "Success");
+  }
+
+  /**
+   * Returns Build instances of one owner and resource, a millisecond apart from START.
+   * @param owner The owner.
+   * @param size The number of instances.
+   * @return The instances.
+   */
+  public static List<SensorData> makeBuilds(String owner, int size) {
+    List<SensorData> builds = new ArrayList<SensorData>(size);
+    for (int i = 0; i < size; i++) {
+      builds.add(makeBuild(owner, RESOURCE, i));
+    }
+    return builds;
+  }
+
+  /**
+   * Returns the offset of an instance's timestamp from START.
+   * @param data The instance.
+   * @return The offset, in milliseconds.
+   */
+  public static long getOffset(SensorData data) {
+    return data.getTimestamp().toGregorianCalendar().getTimeInMillis() - START;
+  }
+
+  /**
+   * Returns the checksum the StubSensorBase computes for the data.
+   * @param data The data.
+   * @return The checksum.
+   * @throws JAXBException If the data cannot be marshalled.
+   */
+  public static long checksum(List<SensorData> data) throws JAXBException {
+    long sum = 0;
+    for (SensorData instance : data) {
+      sum += StubSensorBase.checksum(SensorDataXml.toXml(instance));
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,113 @@
+package org.hackystat.simdata;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Converts SensorData instances to and from single-line XML fragments, the format used by
+ * SimData's files of sensor data.
+ * 
+ * @author Philip Johnson
+ */
+public final class SensorDataXml {
+  
+  /** The JAXB package of the sensor data resources. */
+  public static final String JAXB_PACKAGE = "org.hackystat.sensorbase.resource.sensordata.jaxb";
+  
+  /** The shared JAXB context, which is thread safe. */
+  private static JAXBContext context = null;
+  
+  /** 
+   * Each thread's fragment marshaller. Creating a Marshaller is far cheaper than creating the
+   * context, but still costs more than marshalling a single instance.
+   */
+  private static final ThreadLocal<Marshaller> marshallers = new ThreadLocal<Marshaller>();
+  
+  /** Disable public construction. */
+  private SensorDataXml() {
+    // Does nothing.
+  }
+  
+  /**
+   * Returns the shared JAXB context for sensor data, creating it on first use.
+   * @return The context.
+   * @throws JAXBException If the context cannot be created.
+   */
+  public static synchronized JAXBContext getContext() throws JAXBException {
+    if (context == null) {
+      context = JAXBContext.newInstance(JAXB_PACKAGE);
+    }
+    return context;
+  }
+  
+  /**
+   * Returns a marshaller that writes unformatted fragments without an XML declaration.
+   * Marshallers are not thread safe.
+   * @return The marshaller.
+   * @throws JAXBException If it cannot be created.
+   */
+  public static Marshaller makeMarshaller() throws JAXBException {
+    Marshaller marshaller = getContext().createMarshaller();
+    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+    return marshaller;
+  }
+  
+  /**
+   * Returns the calling thread's cached fragment marshaller, creating it on first use. 
+   * The marshaller must not be passed to other threads.
+   * @return The marshaller.
+   * @throws JAXBException If it cannot be created.
+   */
+  public static Marshaller getThreadMarshaller() throws JAXBException {
+    Marshaller marshaller = marshallers.get();
+    if (marshaller == null) {
+      marshaller = makeMarshaller();
+      marshallers.set(marshaller);
+    }
+    return marshaller;
+  }
+  
+  /**
+   * Returns the single-line XML fragment for the given sensor data.
+   * @param data The sensor data.
+   * @return The XML fragment.
+   * @throws JAXBException If it cannot be marshalled.
+   */
+  public static String toXml(SensorData data) throws JAXBException {
+    StringWriter writer = new StringWriter(512);
+    getThreadMarshaller().marshal(data, writer);
+    return writer.toString();
+  }
+  
+  /**
+   * Returns the sensor data represented by the given XML fragment.
+   * @param xml The XML fragment.
+   * @return The sensor data.
+   * @throws JAXBException If it cannot be unmarshalled.
+   */
+  public static SensorData fromXml(String xml) throws JAXBException {
+    return fromXml(getContext().createUnmarshaller(), xml);
+  }
+  
+  /**
+   * Returns the sensor data represented by the given XML fragment, using the given 
+   * unmarshaller, so that one unmarshaller can read many fragments. Unmarshallers are not
+   * thread safe.
+   * @param unmarshaller The unmarshaller, from getContext().createUnmarshaller().
+   * @param xml The XML fragment.
+   * @return The sensor data.
+   * @throws JAXBException If it cannot be unmarshalled.
+   */
+  public static SensorData fromXml(Unmarshaller unmarshaller, String xml) 
+    throws JAXBException {
+    return (SensorData) unmarshaller.unmarshal(new StringReader(xml));
+  }
+}
@@ -0,0 +1,188 @@
+package org.hackystat.simdata;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorshell.SensorShell;
+import org.hackystat.simdata.profile.ProfileEvent;
+
+/**
+ * The default sink, which hands each sensor data instance to the (pooled) SensorShell of its
+ * owner.
+ * <p>
+ * With a MemoryBudget, shells are not handed to the sink when users are made. Instead each
+ * user's shell is taken from the ClientPool when their first data arrives, and released from
+ * the pool again, which sends its remaining data, when it is the least recently used shell
+ * beyond the budget or has been idle too long. Once the budget's number of instances is
+ * waiting in the shells, all of them are sent.
+ *
+ * @author Philip Johnson
+ */
+public class ShellSink implements SensorDataSink {
+
+  /** Maps owner emails to their associated SensorShells, least recently used first. */
+  private final Map<String, SensorShell> shells;
+
+  /** The host of the shells, in budget mode. */
+  private final String host;
+  /** The memory budget, or null. */
+  private final MemoryBudget budget;
+  /** The owners whose shells may be opened, in budget mode. */
+  private final Set<String> users = new HashSet<String>();
+  /** Maps owner emails to the time their shell was last used, in budget mode. */
+  private final Map<String, Long> lastUsed = new HashMap<String, Long>();
+  /** The instances added since the shells last sent everything, in budget mode. */
+  private int inFlight = 0;
+
+  /**
+   * Creates a sink whose shells are handed to it with putShell and stay open.
+   */
+  public ShellSink() {
+    this(null, null);
+  }
+
+  /**
+   * Creates a sink that opens and closes its users' pooled shells within the budget.
+   * @param host The host of the shells.
+   * @param budget The memory budget, or null to keep every shell given to putShell open.
+   */
+  public ShellSink(String host, MemoryBudget budget) {
+    this.host = host;
+    this.budget = budget;
+    this.shells = (budget == null) ? new HashMap<String, SensorShell>()
+        : new LinkedHashMap<String, SensorShell>(16, 0.75f, true);
+  }
+
+  /**
+   * Makes the given shell responsible for sending the data owned by email.
+   * @param email The owner.
+   * @param shell The shell.
+   */
+  public synchronized void putShell(String email, SensorShell shell) {
+    this.shells.put(email, shell);
+  }
+
+  /**
+   * Allows the user's shell to be opened when their data arrives, in budget mode.
+   * @param email The owner.
+   */
+  public synchronized void addUser(String email) {
+    this.users.add(email);
+  }
+
+  /**
+   * Adds the data to its owner's shell.
+   * @param data The sensor data.
+   * @throws Exception If no shell is known for the owner, or if the shell fails.
+   */
+  public void add(SensorData data) throws Exception {
+    if (this.budget != null) {
+      addWithinBudget(data);
+      return;
+    }
+    SensorShell shell;
+    synchronized (this) {
+      shell = this.shells.get(data.getOwner());
+    }
+    if (shell == null) {
+      throw new Exception("No SensorShell for user: " + data.getOwner());
+    }
+    shell.add(data);
+  }
+
+  /**
+   * Adds the data to its owner's shell, opening it if necessary, then closes the shells
+   * beyond the budget, and sends everything if too many instances are waiting.
+   * @param data The sensor data.
+   * @throws Exception If the owner is unknown, or if a shell fails.
+   */
+  private synchronized void addWithinBudget(SensorData data) throws Exception {
+    String owner = data.getOwner();
+    SensorShell shell = this.shells.get(owner);
+    if (shell == null) {
+      if (!this.users.contains(owner)) {
+        throw new Exception("No SensorShell for user: " + owner);
+      }
+      shell = ClientPool.getShell(this.host, owner);
+      this.shells.put(owner, shell);
+    }
+    long now = System.currentTimeMillis();
+    this.lastUsed.put(owner, now);
+    shell.add(data);
+    closeUnused(now);
+    if (++this.inFlight >= this.budget.getMaxInFlight()) {
+      flush();
+    }
+  }
+
+  /**
+   * Closes the least recently used shells while there are too many, or they have been idle
+   * too long. The most recently used shell is never closed.
+   * @param now The current time.
+   */
+  private void closeUnused(long now) {
+    Iterator<Map.Entry<String, SensorShell>> i = this.shells.entrySet().iterator();
+    while (i.hasNext() && (this.shells.size() > 1)) {
+      String owner = i.next().getKey();
+      boolean idle = now - this.lastUsed.get(owner) > this.budget.getIdleMillis();
+      if (!idle && (this.shells.size() <= this.budget.getMaxOpenShells())) {
+        return;
+      }
+      i.remove();
+      this.lastUsed.remove(owner);
+      ClientPool.release(this.host, owner);
+    }
+  }
+
+  /**
+   * Sends any data buffered in the shells. The sends are not recorded in the RunMetrics: most
+   * of a shell's data is autosent on SensorShell's own threads, where they cannot be timed, so
+   * the explicit sends alone would misrepresent the send latency.
+   * @throws Exception If there was a prior error involving autosend.
+   */
+  public synchronized void flush() throws Exception {
+    for (Map.Entry<String, SensorShell> entry : this.shells.entrySet()) {
+      ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+      int sent = entry.getValue().send();
+      ProfileEvent.commit(event, "shell", entry.getKey(), sent, 0);
+    }
+    this.inFlight = 0;
+  }
+
+  /**
+   * Sends any remaining buffered data. The shells belong to the ClientPool, which quits them
+   * on shutdown, so they are left open for reuse; in budget mode they are released instead.
+   * @throws Exception If there was a prior error involving autosend.
+   */
+  public synchronized void close() throws Exception {
+    flush();
+    if (this.budget != null) {
+      for (String owner : this.shells.keySet()) {
+        ClientPool.release(this.host, owner);
+      }
+      this.shells.clear();
+      this.lastUsed.clear();
+    }
+  }
+
+  /**
+   * Returns the number of open shells.
+   * @return The number of shells.
+   */
+  public synchronized int getNumOpenShells() {
+    return this.shells.size();
+  }
+
+  /**
+   * Returns the number of instances added since the shells last sent everything.
+   * @return The number of instances.
+   */
+  public synchronized int getNumInFlight() {
+    return this.inFlight;
+  }
+}
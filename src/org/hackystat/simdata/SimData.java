@@ -1,7 +1,13 @@
 package org.hackystat.simdata;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.xml.datatype.XMLGregorianCalendar;
@@ -9,17 +15,25 @@ import javax.xml.datatype.XMLGregorianCalendar;
 import org.hackystat.sensorbase.client.SensorBaseClient;
 import org.hackystat.sensorbase.client.SensorBaseClientException;
 import org.hackystat.sensorbase.client.SensorBaseClient.InvitationReply;
+import org.hackystat.sensorbase.resource.projects.jaxb.Invitations;
 import org.hackystat.sensorbase.resource.projects.jaxb.Project;
 import org.hackystat.sensorbase.resource.projects.jaxb.ProjectRef;
 import org.hackystat.sensorbase.resource.projects.jaxb.UriPatterns;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.Properties;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
-import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
-import org.hackystat.sensorshell.SensorShell;
-import org.hackystat.sensorshell.SensorShellException;
-import org.hackystat.sensorshell.SensorShellProperties;
-import org.hackystat.simdata.simpleportfolio.SimplePortfolio;
-import org.hackystat.simdata.simpletelemetry.SimpleTelemetry;
+import org.hackystat.simdata.arrival.ArrivalModel;
+import org.hackystat.simdata.arrival.ArrivalModels;
+import org.hackystat.simdata.cache.DatasetCache;
+import org.hackystat.simdata.cli.SimDataCommand;
+import org.hackystat.simdata.profile.ProfileEvent;
+import org.hackystat.simdata.sdt.SdtRegistry;
+import org.hackystat.simdata.sdt.SdtTemplate;
+import org.hackystat.simdata.sender.AsyncBatchSink;
+import org.hackystat.simdata.sender.ClientTransport;
+import org.hackystat.simdata.sender.CompactTransport;
+import org.hackystat.simdata.sender.ParallelMarshallingSink;
+import org.hackystat.simdata.sender.RetryingSink;
+import org.hackystat.simdata.sink.FileSink;
+import org.hackystat.simdata.sink.NullSink;
+import org.hackystat.simdata.stream.StreamingSink;
 import org.hackystat.utilities.logger.HackystatLogger;
 import org.hackystat.utilities.tstamp.Tstamp;
 
@@ -36,17 +50,87 @@ public class SimData {
   /** The logger for this simdata run. */
   private Logger logger;
   
-  /** The test domain for all users in this simulation. */
+  /** The default test domain for users in this simulation. */
   private static final String testdomain = "@hackystat.org";
   
-  /** Maps user names to their associated SensorBaseClients. */
-  private Map<String, SensorBaseClient> clients = new HashMap<String, SensorBaseClient>();
+  /** The domain for all users created by this instance. */
+  private final String domain;
+  
+  /** The memory budget, or null if shells stay open. */
+  private final MemoryBudget memoryBudget = MemoryBudget.fromSystemProperties();
 
-  /** Maps user names to their associated SensorShells. */
-  private Map<String, SensorShell> shells = new HashMap<String, SensorShell>();
+  /** Holds the SensorShells of the users created by this instance. */
+  private final ShellSink shellSink;
+  
+  /** The sink that receives all generated data; the shell sink unless it has been wrapped. */
+  private SensorDataSink sink;
 
-  /** A millisecond offset to guarantee sensor data uniqueness. */
-  private int milliseconds = 0;
+  /** 
+   * Adds the millisecond offsets that make each user's timestamps unique, without pushing an
+   * instance out of the five minute interval its arrival model placed it in.
+   */
+  private final UniqueTimestamps timestamps = new UniqueTimestamps();
+  
+  /** The system property naming the arrival model: "lockstep", "diurnal", or "bursty". */
+  public static final String ARRIVAL_MODEL_KEY = "org.hackystat.simdata.arrivalModel";
+  
+  /** The system property holding the maximum per-user time zone offset, in hours. */
+  public static final String ZONE_OFFSET_KEY = "org.hackystat.simdata.maxZoneOffsetHours";
+  
+  /** Decides where, within a day, the generated sensor data lands. */
+  private ArrivalModel arrivalModel;
+  
+  /** 
+   * The system property holding the streaming speed-up factor. If set, generated data is emitted
+   * as its simulated time arrives on the wall clock rather than as fast as possible. 
+   */
+  public static final String STREAMING_SPEEDUP_KEY = "org.hackystat.simdata.streaming.speedup";
+  
+  /** 
+   * The system property selecting how data is sent: "shell" (the default) sends through each
+   * user's SensorShell; "retry" sends batches directly, with retries and a dead letter file; 
+   * "compact" does the same with gzip compressed batches where the host supports them; 
+   * "parallel" sends compact batches marshalled on a pool of threads, without retries;
+   * "async" puts compact batches over non-blocking connections, keeping up to 
+   * org.hackystat.simdata.async.window of them in flight, without retries.
+   * Two senders keep the instance offline, so no host is needed: "null" discards the data and
+   * reports the generation speed (see NullSink), and "file" appends it to the file named by 
+   * org.hackystat.simdata.sender.file, which every instance of a run opens.
+   */
+  public static final String SENDER_KEY = "org.hackystat.simdata.sender";
+  
+  /** The system property naming the file written by the "file" sender. */
+  public static final String SENDER_FILE_KEY = "org.hackystat.simdata.sender.file";
+  
+  /** True if this instance never contacts a host. */
+  private final boolean offline;
+  
+  /** The cache of generated datasets, or null if caching is disabled. */
+  private DatasetCache datasetCache;
+  
+  /** The sample of the generated data that is kept, or null to keep all of it. */
+  private SamplingPolicy sampling = SamplingPolicy.fromSystemProperties();
+  
+  /** The templates of the sensor data this instance generates. */
+  private final SdtRegistry sdts = SdtRegistry.getDefault();
+  /** The DevEvent template, looked up once. */
+  private final SdtTemplate devEvent = sdts.get(SdtRegistry.DEV_EVENT);
+  /** The CodeIssue template, looked up once. */
+  private final SdtTemplate codeIssue = sdts.get(SdtRegistry.CODE_ISSUE);
+  /** The FileMetric template, looked up once. */
+  private final SdtTemplate fileMetric = sdts.get(SdtRegistry.FILE_METRIC);
+  /** The complexity template, looked up once. */
+  private final SdtTemplate complexity = sdts.get(SdtRegistry.COMPLEXITY);
+  /** The Commit template, looked up once. */
+  private final SdtTemplate commit = sdts.get(SdtRegistry.COMMIT);
+  /** The Build template, looked up once. */
+  private final SdtTemplate build = sdts.get(SdtRegistry.BUILD);
+  /** The UnitTest template, looked up once. */
+  private final SdtTemplate unitTest = sdts.get(SdtRegistry.UNIT_TEST);
+  /** The Coverage template, looked up once. */
+  private final SdtTemplate coverage = sdts.get(SdtRegistry.COVERAGE);
+  /** The Coupling template, looked up once. */
+  private final SdtTemplate coupling = sdts.get(SdtRegistry.COUPLING);
   
   /**
    * Creates a SimData instance for the given host.
@@ -54,12 +138,160 @@ public class SimData {
    * @throws Exception If the host cannot be contacted.
    */
   public SimData(String host) throws Exception {
+    this(host, testdomain);
+  }
+  
+  /**
+   * Creates a SimData instance for the given host whose users belong to the given domain.
+   * Instances with different domains share no users, so they can generate data in parallel.
+   * <p>
+   * If the host is null, or the sender is "null" or "file", the instance is offline: users
+   * and projects are not created at any host, and generated data only goes to the sink. An
+   * offline instance discards its data unless the file sender or setSink says otherwise.
+   * @param host The SensorBase host, or null for an offline instance. 
+   * @param domain The domain suffix for users, such as "@tenant1.hackystat.org".
+   * @throws Exception If the host cannot be contacted.
+   */
+  public SimData(String host, String domain) throws Exception {
     this.host = host;
-    if (!SensorBaseClient.isHost(this.host)) {
+    this.domain = domain;
+    String sender = System.getProperty(SENDER_KEY, "shell");
+    this.offline = (host == null) || "null".equals(sender) || "file".equals(sender);
+    if (!this.offline && !ClientPool.isHost(this.host)) {
       throw new Exception("Could not contact host: " + host);
     }
     this.logger = HackystatLogger.getLogger("org.hackystat.simdata", "simdata");
-    
+    this.shellSink = new ShellSink(host, this.memoryBudget);
+    this.sink = this.shellSink;
+    this.arrivalModel = ArrivalModels.makeArrivalModel(
+        System.getProperty(ARRIVAL_MODEL_KEY, ArrivalModels.LOCKSTEP), 0, 
+        Integer.parseInt(System.getProperty(ZONE_OFFSET_KEY, "0")));
+    if ("file".equals(sender)) {
+      this.sink = 
+        new FileSink(new File(System.getProperty(SENDER_FILE_KEY, "simdata.xml")), true);
+    }
+    else if (this.offline) {
+      this.sink = new NullSink(Boolean.getBoolean(NullSink.MARSHAL_KEY), this.logger);
+    }
+    else if ("retry".equals(sender)) {
+      this.sink = RetryingSink.fromSystemProperties(new ClientTransport(host), this.logger);
+    }
+    else if ("compact".equals(sender)) {
+      this.sink = RetryingSink.fromSystemProperties(new CompactTransport(host, this.logger), 
+          this.logger);
+    }
+    else if ("parallel".equals(sender)) {
+      this.sink = ParallelMarshallingSink.fromSystemProperties(host, this.logger);
+    }
+    else if ("async".equals(sender)) {
+      this.sink = AsyncBatchSink.fromSystemProperties(host, this.logger);
+    }
+    String speedup = System.getProperty(STREAMING_SPEEDUP_KEY);
+    if (speedup != null) {
+      setStreaming(Double.parseDouble(speedup));
+    }
+    this.datasetCache = DatasetCache.fromSystemProperties(this.logger);
+  }
+  
+  /**
+   * Called by a deterministic scenario once its users and projects exist, just before it
+   * generates its sensor data. If dataset caching is enabled (see DatasetCache) and this 
+   * dataset has been generated before, its cached data is replayed into the sink and false is
+   * returned, so the scenario skips generation. Otherwise true is returned and the generated
+   * data is recorded into the cache when quitShells is called.
+   * @param scenario The scenario class.
+   * @param seed The seed of the scenario's random number generator.
+   * @param scale The scale of the scenario, such as "2x40" for 2 users and 40 days.
+   * @return True if the scenario should generate its data.
+   * @throws Exception If the cached data cannot be replayed.
+   */
+  public boolean beginDataset(Class<?> scenario, long seed, String scale) throws Exception {
+    if (this.datasetCache == null) {
+      return true;
+    }
+    String key = DatasetCache.makeKey(scenario, seed, scale, this.domain + " " 
+        + this.arrivalModel.getClass().getName() + " " + System.getProperty(ZONE_OFFSET_KEY)
+        + " " + System.getProperty(SdtRegistry.PLUGINS_KEY) + " " + this.sampling);
+    File file = this.datasetCache.lookup(key);
+    if (file == null) {
+      this.sink = this.datasetCache.record(key, this.sink);
+      return true;
+    }
+    this.datasetCache.replay(file, this.sink);
+    return false;
+  }
+  
+  /**
+   * Switches this instance to streaming mode: rather than sending data as fast as possible,
+   * each instance is held until its simulated timestamp arrives on the wall clock, and the 
+   * shells are kept open until quitShells is called. 
+   * @param speedup How many simulated milliseconds pass per wall-clock millisecond. 
+   */
+  public void setStreaming(double speedup) {
+    this.logger.info("Streaming mode with speedup " + speedup);
+    this.sink = new StreamingSink(this.sink, speedup, this.logger);
+  }
+  
+  /**
+   * Replaces the sink that receives all of the data generated by this instance. 
+   * Users are still registered at the host, but their SensorShells are only used if the new
+   * sink forwards to getShellSink().
+   * @param sink The new sink.
+   */
+  public void setSink(SensorDataSink sink) {
+    this.sink = sink;
+  }
+  
+  /**
+   * Returns the sink that holds the SensorShells of this instance's users.
+   * @return The shell sink.
+   */
+  public ShellSink getShellSink() {
+    return this.shellSink;
+  }
+  
+  /**
+   * Returns the sink that receives all of the data generated by this instance.
+   * @return The sink.
+   */
+  public SensorDataSink getSink() {
+    return this.sink;
+  }
+  
+  /**
+   * Sets the model that decides where, within a day, the generated sensor data lands. 
+   * Defaults to the model named by the org.hackystat.simdata.arrivalModel system property, or
+   * the lock step model if that is not set. 
+   * @param arrivalModel The new arrival model. 
+   */
+  public void setArrivalModel(ArrivalModel arrivalModel) {
+    this.arrivalModel = arrivalModel;
+  }
+  
+  /**
+   * Returns the arrival model used by this instance.
+   * @return The arrival model.
+   */
+  public ArrivalModel getArrivalModel() {
+    return this.arrivalModel;
+  }
+  
+  /**
+   * Sets the sample of the generated data that is kept. Defaults to the policy given by the
+   * org.hackystat.simdata.sample system properties, if any. Set it before the scenario begins
+   * its dataset, since the sample is part of the dataset's cache key.
+   * @param sampling The policy, or null to keep all of the data.
+   */
+  public void setSamplingPolicy(SamplingPolicy sampling) {
+    this.sampling = sampling;
+  }
+  
+  /**
+   * Returns the sample of the generated data that is kept.
+   * @return The policy, or null if all of the data is kept.
+   */
+  public SamplingPolicy getSamplingPolicy() {
+    return this.sampling;
   }
   
   /**
@@ -79,40 +311,97 @@ public class SimData {
   }
   
   /**
-   * Registers the user with the test domain suffix at the host.
-   * Deletes any pre-existing data they might have. 
+   * Returns true if this instance never contacts a host.
+   * @return True if offline.
+   */
+  public boolean isOffline() {
+    return this.offline;
+  }
+  
+  /**
+   * Returns the SensorBase host of this instance.
+   * @return The host.
+   */
+  public String getHost() {
+    return this.host;
+  }
+  
+  /**
+   * Returns the domain used for the users of this instance.
+   * @return The domain.
+   */
+  public String getDomain() {
+    return this.domain;
+  }
+  
+  /**
+   * Registers the user with this instance's domain suffix at the host.
+   * Deletes any pre-existing data they might have. Does nothing if this instance is offline.
    * @param userName The user name, with the domain.
    * @throws Exception If problems occur. 
    */
   public void makeUser(String userName) throws Exception {
-    String email = userName + testdomain;
-    SensorBaseClient.registerUser(this.host, email);
-    SensorBaseClient client = new SensorBaseClient(host, email, email);
-    client.authenticate();
-    client.setTimeout(100000);
+    if (this.offline) {
+      return;
+    }
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.PROVISION);
+    String email = userName + this.domain;
+    if (!ClientPool.hasClient(this.host, email)) {
+      SensorBaseClient.registerUser(this.host, email);
+    }
+    SensorBaseClient client = ClientPool.getClient(this.host, email);
     client.deleteSensorData(email); 
-    clients.put(userName, client);
-    shells.put(userName, makeShell(email));
+    if (this.memoryBudget == null) {
+      this.shellSink.putShell(email, ClientPool.getShell(this.host, email));
+    }
+    else {
+      this.shellSink.addUser(email);
+    }
+    ProfileEvent.commit(event, "user", email, 1);
   }
 
+  /**
+   * Returns the pooled client of a user made by this instance.
+   * @param userName The user name, without the domain.
+   * @return The client.
+   * @throws SensorBaseClientException If the client must be authenticated again, and fails.
+   */
+  private SensorBaseClient getClient(String userName) throws SensorBaseClientException {
+    return ClientPool.getClient(this.host, userName + this.domain);
+  }
+  
+  /**
+   * Returns the memory budget of this instance.
+   * @return The budget, or null if every user's shell stays open.
+   */
+  public MemoryBudget getMemoryBudget() {
+    return this.memoryBudget;
+  }
+  
   /**
    * Clear data associated with the given user.
    * @param host the host that holds the data.
    * @param user the given user.
    */
   public void clearData(String host, String user) {
-    String email = user + testdomain;
-    SensorBaseClient client = new SensorBaseClient(host, email, email);
+    if (this.offline) {
+      return;
+    }
+    String email = user + this.domain;
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.CLEAR_DATA);
     try {
-      client.authenticate();
+      SensorBaseClient client = ClientPool.getClient(host, email);
       client.deleteSensorData(email);
+      int projects = 0;
       for (ProjectRef ref : client.getProjectIndex(email).getProjectRef()) {
         Project project = client.getProject(ref);
         //System.err.println("Removing project " + project.getName() + project.getOwner());
         if (email.equals(project.getOwner()) && !"Default".equals(project.getName())) {
           client.deleteProject(email, project.getName());
+          projects++;
         }
       }
+      ProfileEvent.commit(event, email, projects);
       //client.deleteUser(email);
     }
     catch (SensorBaseClientException e) {
@@ -126,31 +415,14 @@ public class SimData {
   }
   
   /**
-   * Creates a returns a SensorShell instance for this user. 
-   * @param email The user whose shell is to be created. 
-   * @return The initialized sensorshell.
-   * @throws Exception If problems occur.
-   */
-  private SensorShell makeShell(String email) throws Exception {
-    // The testing configuration of SensorShell is good for SimData.
-    SensorShellProperties testProps = SensorShellProperties.getTestInstance(host, email, email);
-    //SensorShellProperties shellProps = new SensorShellProperties(host, email, email);
-    java.util.Properties props = new java.util.Properties();
-    props.setProperty(SensorShellProperties.SENSORSHELL_MULTISHELL_ENABLED_KEY, "true");
-    props.setProperty(SensorShellProperties.SENSORSHELL_MULTISHELL_NUMSHELLS_KEY, "2");
-    SensorShellProperties shellProps = new SensorShellProperties(testProps, props);
-    return new SensorShell(shellProps, false, "SimData");
-  }
-  
-  /**
-   * Invokes quit() on all created shells, thus ensuring that any remaining buffered
-   * data is sent to the host. 
-   * @throws SensorShellException If there was a prior error involving autosend. 
+   * Sends any remaining buffered data in the shells of this instance's users to the host. 
+   * The shells themselves are pooled and stay open for reuse by later scenarios until
+   * ClientPool.shutdown() is called. In streaming mode, this first waits until all generated 
+   * data has been emitted.
+   * @throws Exception If there was a prior error involving autosend. 
    */
-  public void quitShells() throws SensorShellException {
-    for (SensorShell shell : shells.values()) {
-      shell.quit();
-    }
+  public void quitShells() throws Exception {
+    this.sink.close();
   }
   
   /**
@@ -165,7 +437,11 @@ public class SimData {
   public void makeProject(String projectName, String user, XMLGregorianCalendar start, 
       XMLGregorianCalendar end, String uriPattern) 
   throws Exception {
-    String email = user + testdomain;
+    if (this.offline) {
+      return;
+    }
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.PROVISION);
+    String email = user + this.domain;
     Project project = new Project();
     project.setName(projectName);
     project.setOwner(email);
@@ -175,7 +451,8 @@ public class SimData {
     UriPatterns uriPatterns = new UriPatterns();
     uriPatterns.getUriPattern().add(uriPattern);
     project.setUriPatterns(uriPatterns);
-    this.clients.get(user).putProject(project);
+    getClient(user).putProject(project);
+    ProfileEvent.commit(event, "project", projectName, 1);
   }
   
   /**
@@ -188,85 +465,164 @@ public class SimData {
    */
   public void addMember(String projectName, String owner, String newMember) 
   throws SensorBaseClientException {
-    String ownerEmail = owner + testdomain;
-    String newMemberEmail = newMember + testdomain;
-    Project project = clients.get(owner).getProject(ownerEmail, projectName);
+    if (this.offline) {
+      return;
+    }
+    String ownerEmail = owner + this.domain;
+    String newMemberEmail = newMember + this.domain;
+    Project project = getClient(owner).getProject(ownerEmail, projectName);
+    if (project.getInvitations() == null) {
+      project.setInvitations(new Invitations());
+    }
     project.getInvitations().getInvitation().add(newMemberEmail);
-    clients.get(owner).putProject(project);
-    clients.get(newMember).reply(ownerEmail, projectName, InvitationReply.ACCEPT);
+    getClient(owner).putProject(project);
+    getClient(newMember).reply(ownerEmail, projectName, InvitationReply.ACCEPT);
+  }
+  
+  /**
+   * Adds all of newMembers to projectName owned by owner. 
+   * Unlike addMember, the project is retrieved and updated only once, with the complete 
+   * invitation list, and the invitations are then accepted in parallel. 
+   * @param projectName The name of the project.
+   * @param owner The owner of the project (without domain name).
+   * @param newMembers The members to be added (without domain name). 
+   * @param numThreads The maximum number of invitations accepted concurrently.
+   * @throws Exception If problems occur during adding. 
+   */
+  public void addMembers(final String projectName, String owner, List<String> newMembers, 
+      int numThreads) throws Exception {
+    if (newMembers.isEmpty() || this.offline) {
+      return;
+    }
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.PROVISION);
+    final String ownerEmail = owner + this.domain;
+    Project project = getClient(owner).getProject(ownerEmail, projectName);
+    if (project.getInvitations() == null) {
+      project.setInvitations(new Invitations());
+    }
+    List<String> invitations = project.getInvitations().getInvitation();
+    for (String newMember : newMembers) {
+      invitations.add(newMember + this.domain);
+    }
+    getClient(owner).putProject(project);
+    
+    ExecutorService executor = 
+      Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, newMembers.size())));
+    try {
+      List<Future<Void>> replies = new ArrayList<Future<Void>>();
+      for (String newMember : newMembers) {
+        final SensorBaseClient client = getClient(newMember);
+        replies.add(executor.submit(new Callable<Void>() {
+          /**
+           * Accepts the member's invitation.
+           * @return Null.
+           * @throws Exception If the reply fails.
+           */
+          public Void call() throws Exception {
+            client.reply(ownerEmail, projectName, InvitationReply.ACCEPT);
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> reply : replies) {
+        try {
+          reply.get();
+        }
+        catch (ExecutionException e) {
+          throw new Exception("Failed to accept invitation to " + projectName, e.getCause());
+        }
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+    ProfileEvent.commit(event, "members", projectName, newMembers.size());
+    this.logger.info("Added " + newMembers.size() + " members to " + projectName);
   }
   
  
   /**
-   * Creates and returns a SensorData instance, initialized appropriately.
-   * Tstamp is incremented by the internal millisecond counter in order to guarantee
-   * uniqueness, and its unincremented form is used for the runtime.  
+   * Returns the templates of the sensor data generated by this instance. Scenarios can look up
+   * the templates of plug-in types here and generate them with addSensorData.
+   * @return The registry.
+   */
+  public SdtRegistry getSdtRegistry() {
+    return this.sdts;
+  }
+  
+  /**
+   * Adds a single instance built from the template. The timestamp is incremented by the 
+   * smallest number of milliseconds that makes it unique among the user's instances. If a
+   * sampling policy rejects the instance, its timestamp is still used up but the instance is
+   * not built.
+   * @param template The template, such as getSdtRegistry().get(ProcessSdts.ISSUE).
    * @param user The owner (without the domain.)
-   * @param sdt The sensor data type.
-   * @param tool The tool name.
-   * @param resource The resource.
    * @param tstamp The timestamp.
-   * @return The newly created SensorData instance.
+   * @param resource The resource.
+   * @param runtime The runtime.
+   * @param values The property values, one per key of the template.
+   * @throws Exception If problems occur.
    */
-  private SensorData makeSensorData(String user, String sdt, String tool, String resource, 
-      XMLGregorianCalendar tstamp) {
-    return makeSensorData(user, sdt, tool, resource, tstamp, tstamp);
+  public void addSensorData(SdtTemplate template, String user, XMLGregorianCalendar tstamp, 
+      String resource, XMLGregorianCalendar runtime, String... values) throws Exception {
+    long base = tstamp.toGregorianCalendar().getTimeInMillis();
+    long millis = this.timestamps.next(user, base);
+    if (this.sampling == null) {
+      XMLGregorianCalendar newTstamp = Tstamp.incrementMilliseconds(tstamp, millis - base);
+      this.sink.add(template.makeSensorData(user + this.domain, resource, newTstamp, runtime, 
+          values));
+      return;
+    }
+    String owner = user + this.domain;
+    if (this.sampling.keep(user, owner, template.getSensorDataType(), resource, millis)) {
+      this.sink.add(template.makeSensorData(owner, resource, Tstamp.makeTimestamp(millis),
+          runtime, values));
+    }
   }
   
   /**
-   * Creates and returns a SensorData instance, initialized appropriately.
-   * All timestamps are incremented by the internal millisecond counter in order to guarantee
-   * uniqueness. 
-   * @param user The owner (without the domain.)
+   * Returns the timestamp at which one instance generated by an add* call arrives, according to
+   * the arrival model. 
+   * @param user The user.
    * @param sdt The sensor data type.
-   * @param tool The tool name.
-   * @param resource The resource.
-   * @param tstamp The timestamp.
-   * @param runtime The runtime. 
-   * @return The newly created SensorData instance.
+   * @param tstamp The timestamp passed to the add* call.
+   * @param index The index of this instance within the call.
+   * @param count The number of instances generated by the call.
+   * @return The timestamp of this instance.
    */
-  private SensorData makeSensorData(String user, String sdt, String tool, String resource, 
-      XMLGregorianCalendar tstamp, XMLGregorianCalendar runtime) {
-    XMLGregorianCalendar newTstamp = Tstamp.incrementMilliseconds(tstamp, this.milliseconds++);
-    String userEmail = user + testdomain;
-    SensorData data = new SensorData();
-    data.setOwner(userEmail);
-    data.setResource(resource);
-    data.setRuntime(runtime);
-    data.setSensorDataType(sdt);
-    data.setTimestamp(newTstamp);
-    data.setTool(tool);
-    data.setProperties(new Properties());
-    return data;
+  private XMLGregorianCalendar arrival(String user, String sdt, XMLGregorianCalendar tstamp, 
+      int index, int count) {
+    return offset(tstamp, this.arrivalModel.getEventOffset(user, sdt, index, count));
   }
   
   /**
-   * Adds the passed key-value pair to the SensorData instance. 
-   * @param data The sensor data instance. 
-   * @param key The key.
-   * @param value The value.
+   * Returns a timestamp the given number of milliseconds after tstamp. 
+   * @param tstamp The timestamp.
+   * @param milliseconds The offset.
+   * @return The new timestamp, or tstamp itself if the offset is zero. 
    */
-  private void addProperty(SensorData data, String key, String value) {
-    Property property = new Property();
-    property.setKey(key);
-    property.setValue(value);
-    data.getProperties().getProperty().add(property);
+  private static XMLGregorianCalendar offset(XMLGregorianCalendar tstamp, long milliseconds) {
+    if (milliseconds == 0) {
+      return tstamp;
+    }
+    return Tstamp.makeTimestamp(tstamp.toGregorianCalendar().getTimeInMillis() + milliseconds);
   }
   
   /**
    * Sends a set of DevEvents to the SensorBase host.
    * @param user The user who will own these DevEvents.
    * @param tstamp The starting timestamp.
-   * @param numDevEvents The total number of DevEvents to generate.  Each are five minutes apart.
+   * @param numDevEvents The total number of DevEvents to generate. The arrival model places each
+   * in its own five minute interval (by default, they are simply five minutes apart).
    * @param file The file to be used as the resource.
    * @throws Exception If problems occur.
    */
   public void addDevEvents(String user, XMLGregorianCalendar tstamp, int numDevEvents, String file) 
   throws Exception {
+    long[] offsets = this.arrivalModel.getDevEventOffsets(user, numDevEvents);
     for (int i = 0; i < numDevEvents; i++) {
-      XMLGregorianCalendar timestamp = Tstamp.incrementMinutes(tstamp, i * 5);
-      SensorData data = makeSensorData(user, "DevEvent", "Eclipse", file, timestamp);
-      shells.get(user).add(data);
+      XMLGregorianCalendar timestamp = offset(tstamp, offsets[i]);
+      addSensorData(this.devEvent, user, timestamp, file, timestamp);
     }
   }
   
@@ -280,9 +636,8 @@ public class SimData {
    */
   public void addCodeIssues(String user, XMLGregorianCalendar tstamp, String file, int numIssues) 
   throws Exception {
-    SensorData data = makeSensorData(user, "CodeIssue", "FindBugs", file, tstamp);
-    addProperty(data, "Type_NPE", String.valueOf(numIssues));
-    shells.get(user).add(data);
+    addSensorData(this.codeIssue, user, arrival(user, "CodeIssue", tstamp, 0, 1), file, tstamp,
+        SdtTemplate.format(numIssues));
   }
   
   /**
@@ -298,9 +653,8 @@ public class SimData {
   public void addFileMetric(String user, XMLGregorianCalendar tstamp, String file, int totalLines, 
       XMLGregorianCalendar runtime)
   throws Exception {
-    SensorData data = makeSensorData(user, "FileMetric", "SCLC", file, tstamp, runtime);
-    addProperty(data, "TotalLines", String.valueOf(totalLines));
-    shells.get(user).add(data);
+    addSensorData(this.fileMetric, user, arrival(user, "FileMetric", tstamp, 0, 1), file, 
+        runtime, SdtTemplate.format(totalLines));
   }
   
   /**
@@ -318,10 +672,8 @@ public class SimData {
   public void addComplexity(String user, XMLGregorianCalendar tstamp, String file, 
       int totalLines, XMLGregorianCalendar runtime, int complexity)
   throws Exception {
-    SensorData data = makeSensorData(user, "FileMetric", "JavaNCSS", file, tstamp, runtime);
-    addProperty(data, "TotalLines", String.valueOf(totalLines));
-    addProperty(data, "CyclomaticComplexityList", String.valueOf(complexity));
-    shells.get(user).add(data);
+    addSensorData(this.complexity, user, arrival(user, "FileMetric", tstamp, 0, 1), file, 
+        runtime, SdtTemplate.format(totalLines), SdtTemplate.format(complexity));
   }
   
   /**
@@ -337,10 +689,8 @@ public class SimData {
   throws Exception {
     int linesAdded = (int)(churn * 0.50);
     int linesDeleted = churn - linesAdded;
-    SensorData data = makeSensorData(user, "Commit", "Subversion", file, tstamp);
-    addProperty(data, "linesAdded", String.valueOf(linesAdded));
-    addProperty(data, "linesDeleted", String.valueOf(linesDeleted));
-    shells.get(user).add(data);
+    addSensorData(this.commit, user, arrival(user, "Commit", tstamp, 0, 1), file, tstamp, 
+        SdtTemplate.format(linesAdded), SdtTemplate.format(linesDeleted));
   }
   
   /**
@@ -361,11 +711,10 @@ public class SimData {
     }
     // Churn / Commits is the churn per commit value. Divide that equally among the added/deleted.
     int linesAddedOrDeleted = (int)((churn / (double)numCommits) / 2.0);
+    String lines = SdtTemplate.format(linesAddedOrDeleted);
     for (int i = 0; i < numCommits; i++) {
-      SensorData data = makeSensorData(user, "Commit", "Subversion", file, tstamp);
-      addProperty(data, "linesAdded", String.valueOf(linesAddedOrDeleted));
-      addProperty(data, "linesDeleted", String.valueOf(linesAddedOrDeleted));
-      shells.get(user).add(data);
+      addSensorData(this.commit, user, arrival(user, "Commit", tstamp, i, numCommits), file, 
+          tstamp, lines, lines);
     }
   }
   
@@ -381,9 +730,8 @@ public class SimData {
   public void addBuilds(String user, XMLGregorianCalendar tstamp, String file, String result, 
       int numBuilds) throws Exception {
     for (int i = 0; i < numBuilds; i++) {
-      SensorData data = makeSensorData(user, "Build", "Ant", file, tstamp);
-      addProperty(data, "Result", result);
-      shells.get(user).add(data);
+      addSensorData(this.build, user, arrival(user, "Build", tstamp, i, numBuilds), file, 
+          tstamp, result);
     }
   }
   
@@ -399,9 +747,8 @@ public class SimData {
   public void addUnitTests(String user, XMLGregorianCalendar tstamp, String file, String result, 
       int numTests) throws Exception {
     for (int i = 0; i < numTests; i++) {
-      SensorData data = makeSensorData(user, "UnitTest", "JUnit", file, tstamp);
-      addProperty(data, "Result", result);
-      shells.get(user).add(data);
+      addSensorData(this.unitTest, user, arrival(user, "UnitTest", tstamp, i, numTests), file, 
+          tstamp, result);
     }
   }
   
@@ -425,12 +772,103 @@ public class SimData {
     }
     int covered = (int)(loc * (percent / 100.0));
     int uncovered = loc - covered;
-    SensorData data = makeSensorData(user, "Coverage", "Emma", file, tstamp, runtime);
-    addProperty(data, "line_Covered", String.valueOf(covered));
-    addProperty(data, "line_Uncovered", String.valueOf(uncovered));
-    shells.get(user).add(data);
+    addSensorData(this.coverage, user, arrival(user, "Coverage", tstamp, 0, 1), file, runtime,
+        SdtTemplate.format(covered), SdtTemplate.format(uncovered));
   }
 
+  /**
+   * Adds a FileMetric snapshot of many files, as a single run of SCLC over a source tree
+   * would produce. All instances share the runtime, so analyses bundle them together, and are
+   * added to the sink contiguously. Much cheaper per file than addFileMetric.
+   * @param user The user who owns the snapshot.
+   * @param runtime The runtime shared by every instance, from which the arrival model places
+   * their timestamps.
+   * @param files The resources.
+   * @param totalLines The total lines of each file.
+   * @throws Exception If problems occur.
+   */
+  public void addFileMetricSnapshot(String user, XMLGregorianCalendar runtime, String[] files,
+      int[] totalLines) throws Exception {
+    addSnapshot(user, this.fileMetric, runtime, files, new int[][] { totalLines });
+  }
+  
+  /**
+   * Adds a complexity snapshot of many files, as a single run of JavaNCSS would produce.
+   * @param user The user who owns the snapshot.
+   * @param runtime The runtime shared by every instance, from which the arrival model places
+   * their timestamps.
+   * @param files The resources.
+   * @param totalLines The total lines of each file.
+   * @param complexity The cyclomatic complexity of each file.
+   * @throws Exception If problems occur.
+   */
+  public void addComplexitySnapshot(String user, XMLGregorianCalendar runtime, String[] files,
+      int[] totalLines, int[] complexity) throws Exception {
+    addSnapshot(user, this.complexity, runtime, files, new int[][] { totalLines, complexity });
+  }
+  
+  /**
+   * Adds a Coverage snapshot of many files, as a single run of Emma would produce.
+   * @param user The user who owns the snapshot.
+   * @param runtime The runtime shared by every instance, from which the arrival model places
+   * their timestamps.
+   * @param files The resources.
+   * @param percents The coverage percentage of each file, between 0 and 100.
+   * @param loc The lines of code of each file.
+   * @throws Exception If problems occur.
+   */
+  public void addCoverageSnapshot(String user, XMLGregorianCalendar runtime, String[] files,
+      int[] percents, int[] loc) throws Exception {
+    int[] covered = new int[files.length];
+    int[] uncovered = new int[files.length];
+    for (int i = 0; i < files.length; i++) {
+      if ((percents[i] < 0) || (percents[i] > 100)) {
+        throw new Exception("Percent must be between 0 and 100");
+      }
+      covered[i] = (int)(loc[i] * (percents[i] / 100.0));
+      uncovered[i] = loc[i] - covered[i];
+    }
+    addSnapshot(user, this.coverage, runtime, files, new int[][] { covered, uncovered });
+  }
+  
+  /**
+   * Adds one instance per file, all sharing the runtime and the arrival of the snapshot. 
+   * Timestamps are computed from the snapshot's arrival in milliseconds rather than by
+   * incrementing a calendar for each instance. The arrival is the runtime itself only under
+   * the lockstep model; the others place it up to a day after the runtime.
+   * @param user The user who owns the snapshot.
+   * @param template The template of the instances.
+   * @param runtime The runtime.
+   * @param files The resources.
+   * @param values The values of each property key of the template, indexed by key and then
+   * by file.
+   * @throws Exception If problems occur.
+   */
+  private void addSnapshot(String user, SdtTemplate template, XMLGregorianCalendar runtime,
+      String[] files, int[][] values) throws Exception {
+    for (int[] column : values) {
+      if (column.length != files.length) {
+        throw new Exception("Snapshot needs one value per file for every property.");
+      }
+    }
+    String owner = user + this.domain;
+    long start = arrival(user, template.getSensorDataType(), runtime, 0, 1)
+      .toGregorianCalendar().getTimeInMillis();
+    String[] row = new String[values.length];
+    for (int i = 0; i < files.length; i++) {
+      long millis = this.timestamps.next(user, start);
+      if ((this.sampling != null) && !this.sampling.keep(user, owner, 
+          template.getSensorDataType(), files[i], millis)) {
+        continue;
+      }
+      for (int k = 0; k < values.length; k++) {
+        row[k] = SdtTemplate.format(values[k][i]);
+      }
+      this.sink.add(template.makeSensorData(owner, files[i], Tstamp.makeTimestamp(millis), 
+          runtime, row));
+    }
+  }
+  
   /**
    * Adds a single Coupling sensor data instance.
    * Pass the target coupling as an int, which will be divided between efferent and afferent.
@@ -444,28 +882,20 @@ public class SimData {
   throws Exception {
     int efferent = (int)(coupling * 0.5);
     int afferent = coupling - efferent;
-    SensorData data = makeSensorData(user, "Coupling", "DependencyFinder", file, tstamp);
-    addProperty(data, "Efferent", String.valueOf(efferent));
-    addProperty(data, "Afferent", String.valueOf(afferent));
-    shells.get(user).add(data);
+    addSensorData(this.coupling, user, arrival(user, "Coupling", tstamp, 0, 1), file, tstamp, 
+        SdtTemplate.format(efferent), SdtTemplate.format(afferent));
   }
   
   /**
-   * Takes one argument, the SensorBase host, such as "http://localhost:9876/sensorbase".
-   * @param args One argument, the SensorBase host.
-   * @throws Exception if problems occur.
+   * Runs the SimData command line; see SimDataCommand. With just a host, such as 
+   * "http://localhost:9876/sensorbase", runs the SimpleTelemetry and SimplePortfolio scenarios
+   * against it.
+   * @param args The options and the SensorBase host.
+   * @throws Exception If problems occur.
    */
   public static void main(String[] args) throws Exception {
-    if (args.length == 0) {
-      System.out.println("SimData takes one argument, the SensorBase host URL.");
-      return;
-    }
-    // Get the host.
-    String host = args[0];
-    // Create the simple telemetry scenario.
-    new SimpleTelemetry(host);
-    // Create the simple portfolio scenario.
-    new SimplePortfolio(host);
+    SimDataCommand.main(args);
   }
 
+
 }
@@ -0,0 +1,18 @@
+package org.hackystat.simdata;
+
+/**
+ * Creates the SimData instances of scenarios that need one per domain, such as MultiTenant,
+ * so that their creator decides the host and sinks of each instance.
+ * 
+ * @author Philip Johnson
+ */
+public interface SimDataFactory {
+  
+  /**
+   * Returns a new SimData instance whose users belong to the given domain.
+   * @param domain The domain suffix for users, such as "@tenant1.hackystat.org".
+   * @return The instance.
+   * @throws Exception If it cannot be created.
+   */
+  SimData makeSimData(String domain) throws Exception;
+}
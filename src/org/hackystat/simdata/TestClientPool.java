@@ -0,0 +1,116 @@
+package org.hackystat.simdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the ClientPool keeps one client per user, however often and from however many
+ * threads it is asked, and that release and shutdown empty it.
+ * @author Philip Johnson
+ */
+public class TestClientPool {
+
+  /** The number of distinct users. */
+  private static final int numUsers = 5;
+  /** The stand-in SensorBase. */
+  private StubSensorBase stub;
+  /** The users, registered at the stand-in. */
+  private final String[] users = new String[numUsers];
+
+  /**
+   * Starts the stand-in on a free port, registers the users, and empties the pool.
+   * @throws Exception If the stand-in cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    ClientPool.shutdown();
+    this.stub = new StubSensorBase(0, 4);
+    for (int i = 0; i < numUsers; i++) {
+      this.users[i] = "user" + i + SimData.getTestDomain();
+      SensorBaseClient.registerUser(this.stub.getHostName(), this.users[i]);
+    }
+  }
+
+  /**
+   * Empties the pool and stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    ClientPool.shutdown();
+    this.stub.stop();
+  }
+
+  /**
+   * Checks that each user gets the same client every time, distinct from other users', and
+   * that the pool holds no more clients than users, even when they are requested concurrently.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testReuse() throws Exception {
+    final String host = this.stub.getHostName();
+    assertTrue("Checking host", ClientPool.isHost(host));
+    List<Callable<SensorBaseClient>> requests = new ArrayList<Callable<SensorBaseClient>>();
+    for (int i = 0; i < 20 * numUsers; i++) {
+      final String user = this.users[i % numUsers];
+      requests.add(new Callable<SensorBaseClient>() {
+        /**
+         * Requests the user's client.
+         * @return The client.
+         * @throws Exception If it cannot be authenticated.
+         */
+        public SensorBaseClient call() throws Exception {
+          return ClientPool.getClient(host, user);
+        }
+      });
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<SensorBaseClient>> clients;
+    try {
+      clients = executor.invokeAll(requests);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    for (int i = 0; i < clients.size(); i++) {
+      assertSame("Checking reuse", ClientPool.getClient(host, this.users[i % numUsers]),
+          clients.get(i).get());
+    }
+    assertNotSame("Checking per user", clients.get(0).get(), clients.get(1).get());
+    assertEquals("Checking bound", numUsers, ClientPool.getNumClients());
+  }
+
+  /**
+   * Checks that a released user's client is dropped, and replaced when next requested, and
+   * that shutdown empties the pool.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testReleaseAndShutdown() throws Exception {
+    String host = this.stub.getHostName();
+    SensorBaseClient first = ClientPool.getClient(host, this.users[0]);
+    ClientPool.getClient(host, this.users[1]);
+    ClientPool.release(host, this.users[0]);
+    assertFalse("Checking released", ClientPool.hasClient(host, this.users[0]));
+    assertTrue("Checking kept", ClientPool.hasClient(host, this.users[1]));
+    assertEquals("Checking size after release", 1, ClientPool.getNumClients());
+    assertNotSame("Checking replaced", first, ClientPool.getClient(host, this.users[0]));
+    ClientPool.shutdown();
+    assertEquals("Checking size after shutdown", 0, ClientPool.getNumClients());
+  }
+}
@@ -0,0 +1,54 @@
+package org.hackystat.simdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the configuration of memory budget mode and the peak heap measurement.
+ * @author Philip Johnson
+ */
+public class TestMemoryBudget {
+  
+  /**
+   * Checks that budget mode is off by default, and that its limits come from the properties.
+   */
+  @Test
+  public void testSystemProperties() {
+    System.clearProperty(MemoryBudget.MAX_SHELLS_KEY);
+    assertNull("Checking default", MemoryBudget.fromSystemProperties());
+    System.setProperty(MemoryBudget.MAX_SHELLS_KEY, "200");
+    System.setProperty(MemoryBudget.MAX_IN_FLIGHT_KEY, "5000");
+    try {
+      MemoryBudget budget = MemoryBudget.fromSystemProperties();
+      assertEquals("Checking shells", 200, budget.getMaxOpenShells());
+      assertEquals("Checking idle", 60000, budget.getIdleMillis());
+      assertEquals("Checking in flight", 5000, budget.getMaxInFlight());
+    }
+    finally {
+      System.clearProperty(MemoryBudget.MAX_SHELLS_KEY);
+      System.clearProperty(MemoryBudget.MAX_IN_FLIGHT_KEY);
+    }
+  }
+  
+  /**
+   * Checks that the peak heap covers an allocation made after it was reset.
+   */
+  @Test
+  public void testPeakHeap() {
+    MemoryBudget.resetPeakHeap();
+    byte[] block = new byte[8 * 1024 * 1024];
+    block[block.length - 1] = 1;
+    assertTrue("Checking peak", MemoryBudget.getPeakHeapBytes() >= block.length);
+  }
+  
+  /**
+   * Checks that a limit below 1 is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLimit() {
+    new MemoryBudget(0, 1000, 1000);
+  }
+}
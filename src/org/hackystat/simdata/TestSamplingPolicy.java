@@ -0,0 +1,102 @@
+package org.hackystat.simdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.simpletelemetry.SimpleTelemetry;
+import org.junit.Test;
+
+/**
+ * Tests the selection of a consistent sample of generated data.
+ * @author Philip Johnson
+ */
+public class TestSamplingPolicy {
+
+  /**
+   * Checks that a fraction keeps about that share of instances, the same ones every time.
+   */
+  @Test
+  public void testFraction() {
+    SamplingPolicy policy = new SamplingPolicy(null, null, null, 0.1);
+    SamplingPolicy again = new SamplingPolicy(null, null, null, 0.1);
+    int kept = 0;
+    for (int i = 0; i < 10000; i++) {
+      boolean keep = policy.keep("joe", "joe@x", "DevEvent", "file" + (i % 7), 1000L * i);
+      assertEquals("Checking stable", keep,
+          again.keep("joe", "joe@x", "DevEvent", "file" + (i % 7), 1000L * i));
+      kept += keep ? 1 : 0;
+    }
+    assertTrue("Checking fraction: " + kept, (kept > 850) && (kept < 1150));
+  }
+
+  /**
+   * Checks that the users, resources and days are selected.
+   */
+  @Test
+  public void testSelectors() {
+    SamplingPolicy policy = new SamplingPolicy(new HashSet<String>(Arrays.asList("joe")),
+        Arrays.asList("/project1/"), "2008-07-02..2008-07-03", 1.0);
+    long start = new GregorianCalendar(2008, Calendar.JULY, 2).getTimeInMillis();
+    String file = "C:/project1/Foo.java";
+    assertTrue("Checking kept", policy.keep("joe", "joe@x", "Commit", file, start));
+    assertTrue("Checking last day", policy.keep("joe", "joe@x", "Commit", file,
+        start + 47L * 3600 * 1000));
+    assertFalse("Checking user", policy.keep("bob", "bob@x", "Commit", file, start));
+    assertFalse("Checking resource", policy.keep("joe", "joe@x", "Commit", "C:/p2/A.java",
+        start));
+    assertFalse("Checking day before", policy.keep("joe", "joe@x", "Commit", file, start - 1));
+    assertFalse("Checking day after", policy.keep("joe", "joe@x", "Commit", file,
+        start + 49L * 3600 * 1000));
+  }
+
+  /**
+   * Checks that a sampled scenario produces a subset of the full scenario's data, with the
+   * same timestamps, so the scenario's state advanced as in the full run.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testScenario() throws Exception {
+    List<String> full = generate(null);
+    List<String> sample = generate(new SamplingPolicy(
+        new HashSet<String>(Arrays.asList("bob.simpletelemetry")), null, null, 0.5));
+    assertFalse("Checking sample not empty", sample.isEmpty());
+    assertTrue("Checking sample smaller", sample.size() < full.size() / 2);
+    Set<String> fullSet = new HashSet<String>(full);
+    for (String key : sample) {
+      assertTrue("Checking in full run: " + key, fullSet.contains(key));
+      assertTrue("Checking user: " + key, key.startsWith("bob.simpletelemetry"));
+    }
+    assertEquals("Checking stable", sample, generate(new SamplingPolicy(
+        new HashSet<String>(Arrays.asList("bob.simpletelemetry")), null, null, 0.5)));
+  }
+
+  /**
+   * Generates SimpleTelemetry offline with the policy.
+   * @param policy The policy, or null.
+   * @return The owner, type, resource and timestamp of each instance, in order.
+   * @throws Exception If problems occur.
+   */
+  private List<String> generate(SamplingPolicy policy) throws Exception {
+    SimData simData = new SimData(null, SimData.getTestDomain());
+    simData.setSamplingPolicy(policy);
+    ScenarioIterator iterator =
+      new ScenarioIterator(SimpleTelemetry.makeScenario(simData, 0), true);
+    List<String> keys = new ArrayList<String>();
+    while (iterator.hasNext()) {
+      SensorData data = iterator.next();
+      keys.add(data.getOwner() + " " + data.getSensorDataType() + " " + data.getResource()
+          + " " + data.getTimestamp());
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,83 @@
+package org.hackystat.simdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.simdata.simpleportfolio.SimplePortfolio;
+import org.junit.Test;
+
+/**
+ * Tests the step by step generation of a scenario through a ScenarioIterator.
+ * @author Philip Johnson
+ */
+public class TestScenarioIterator {
+  
+  /**
+   * Checks that the iterator returns the same data, in the same order, as generating every 
+   * step at once, and generates steps only as the data is consumed.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSimplePortfolio() throws Exception {
+    SimData eager = new SimData(null, SimData.getTestDomain());
+    ListSink sink = new ListSink();
+    eager.setSink(sink);
+    SimplePortfolio scenario = SimplePortfolio.makeScenario(eager, 0);
+    for (int step = 0; step < scenario.getNumSteps(); step++) {
+      scenario.generateStep(step);
+    }
+    List<SensorData> expected = sink.getList();
+    assertFalse("Checking eager data", expected.isEmpty());
+    
+    SimData lazy = new SimData(null, SimData.getTestDomain());
+    ScenarioIterator iterator = 
+      new ScenarioIterator(SimplePortfolio.makeScenario(lazy, 0), true);
+    assertEquals("Checking nothing generated yet", 0, iterator.getStepsGenerated());
+    SensorData first = iterator.next();
+    assertEquals("Checking one step generated", 1, iterator.getStepsGenerated());
+    assertEquals("Checking owner", "joe.simpleportfolio" + SimData.getTestDomain(), 
+        first.getOwner());
+    assertSameData(0, expected.get(0), first);
+    int count = 1;
+    while (iterator.hasNext()) {
+      SensorData data = iterator.next();
+      assertTrue("Checking extra instance " + count, count < expected.size());
+      assertSameData(count, expected.get(count), data);
+      count++;
+    }
+    assertFalse("Checking exhausted", iterator.hasNext());
+    assertEquals("Checking all steps", scenario.getNumSteps(), iterator.getStepsGenerated());
+    assertEquals("Checking count", expected.size(), count);
+  }
+  
+  /**
+   * Checks that two instances have the same owner, type, resource, timestamp and properties.
+   * @param index The position of the instances in their sequences.
+   * @param expected The eagerly generated instance.
+   * @param actual The iterated instance.
+   */
+  private static void assertSameData(int index, SensorData expected, SensorData actual) {
+    String at = " of instance " + index;
+    assertEquals("Checking owner" + at, expected.getOwner(), actual.getOwner());
+    assertEquals("Checking type" + at, expected.getSensorDataType(), 
+        actual.getSensorDataType());
+    assertEquals("Checking resource" + at, expected.getResource(), actual.getResource());
+    assertEquals("Checking timestamp" + at, expected.getTimestamp(), actual.getTimestamp());
+    List<Property> expectedProperties = expected.getProperties().getProperty();
+    List<Property> actualProperties = actual.getProperties().getProperty();
+    assertEquals("Checking properties" + at, expectedProperties.size(), 
+        actualProperties.size());
+    for (int i = 0; i < expectedProperties.size(); i++) {
+      assertEquals("Checking key" + at, expectedProperties.get(i).getKey(), 
+          actualProperties.get(i).getKey());
+      assertEquals("Checking value" + at, expectedProperties.get(i).getValue(), 
+          actualProperties.get(i).getValue());
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package org.hackystat.simdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a ShellSink in budget mode keeps its shells and waiting instances within its
+ * MemoryBudget.
+ * @author Philip Johnson
+ */
+public class TestShellSink {
+
+  /** The stand-in SensorBase. */
+  private StubSensorBase stub;
+
+  /**
+   * Starts the stand-in on a free port.
+   * @throws Exception If it cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.stub = new StubSensorBase(0, 4);
+  }
+
+  /**
+   * Stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    this.stub.stop();
+  }
+
+  /**
+   * Returns a Build instance.
+   * @param owner The owner.
+   * @param i Its offset from the first timestamp, in milliseconds.
+   * @return The instance.
+   */
+  private SensorData makeBuild(String owner, int i) {
+    return SensorDataTestHelper.makeBuild(owner, SensorDataTestHelper.RESOURCE, i);
+  }
+
+  /**
+   * Checks that data from more owners than the budget's shells never opens more shells than
+   * that, and that the shells send everything once the budget's number of instances is
+   * waiting in them.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testBudget() throws Exception {
+    int maxShells = 3;
+    int maxInFlight = 10;
+    ShellSink sink = 
+      new ShellSink(this.stub.getHostName(), new MemoryBudget(maxShells, 60000, maxInFlight));
+    String[] owners = new String[8];
+    for (int i = 0; i < owners.length; i++) {
+      owners[i] = "user" + i + SimData.getTestDomain();
+      sink.addUser(owners[i]);
+    }
+    try {
+      for (int i = 0; i < 3 * maxInFlight; i++) {
+        sink.add(makeBuild(owners[i % owners.length], i));
+        assertTrue("Checking shells after " + (i + 1), sink.getNumOpenShells() <= maxShells);
+        assertEquals("Checking in flight after " + (i + 1), (i + 1) % maxInFlight,
+            sink.getNumInFlight());
+      }
+      assertEquals("Checking shells in use", maxShells, sink.getNumOpenShells());
+    }
+    finally {
+      sink.close();
+    }
+    assertEquals("Checking closed", 0, sink.getNumOpenShells());
+  }
+}
@@ -0,0 +1,98 @@
+package org.hackystat.simdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hackystat.sensorbase.client.SensorBaseClientException;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the provisioning of SimData projects against the stand-in SensorBase.
+ * @author Philip Johnson
+ */
+public class TestSimData {
+
+  /** The owner of the test project. */
+  private static final String owner = "joe";
+  /** The name of the test project. */
+  private static final String project = "SimDataMembers";
+  /** The stand-in SensorBase. */
+  private StubSensorBase stub;
+  /** The instance under test, online at the stand-in. */
+  private SimData simData;
+  /** The members added to the project. */
+  private final List<String> members = new ArrayList<String>();
+
+  /**
+   * Starts the stand-in on a free port, and makes the owner, the members and the project.
+   * @throws Exception If the stand-in cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    ClientPool.shutdown();
+    this.stub = new StubSensorBase(0, 4);
+    this.simData = new SimData(this.stub.getHostName(), SimData.getTestDomain());
+    this.simData.makeUser(owner);
+    for (int i = 0; i < 10; i++) {
+      this.members.add("member" + i);
+      this.simData.makeUser("member" + i);
+    }
+    this.simData.makeProject(project, owner, Tstamp.makeTimestamp(SensorDataTestHelper.START),
+        Tstamp.makeTimestamp(SensorDataTestHelper.START), "*/" + project + "/*");
+  }
+
+  /**
+   * Empties the pool and stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    ClientPool.shutdown();
+    this.stub.stop();
+  }
+
+  /**
+   * Checks that addMembers invites every member with a single update of the project, and that
+   * every member accepts.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testAddMembers() throws Exception {
+    long puts = this.stub.getProjectPutCount();
+    this.simData.addMembers(project, owner, this.members, 4);
+    assertEquals("Checking puts", puts + 1, this.stub.getProjectPutCount());
+    String domain = SimData.getTestDomain();
+    String representation = this.stub.getProject(owner + domain, project);
+    assertNotNull("Checking project", representation);
+    for (String member : this.members) {
+      assertTrue("Checking invitation of " + member, representation.contains(member + domain));
+    }
+    assertEquals("Checking replies", this.members.size(), this.stub.getReplyCount());
+  }
+
+  /**
+   * Checks that a failed acceptance fails addMembers, with the client's exception as cause.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testFailedAccept() throws Exception {
+    this.stub.setRepliesFailing(true);
+    try {
+      this.simData.addMembers(project, owner, this.members, 4);
+      fail("Adding members succeeded although their replies failed.");
+    }
+    catch (Exception e) {
+      assertTrue("Checking message", e.getMessage().contains("accept invitation to " + project));
+      assertTrue("Checking cause", e.getCause() instanceof SensorBaseClientException);
+    }
+    assertEquals("Checking replies", 0, this.stub.getReplyCount());
+  }
+}
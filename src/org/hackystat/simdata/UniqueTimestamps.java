@@ -0,0 +1,69 @@
+package org.hackystat.simdata;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.hackystat.simdata.arrival.ArrivalModel;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Makes the timestamps of each owner's sensor data unique, since the SensorBase keys sensor
+ * data by owner and timestamp and silently replaces an instance with a later one of the same
+ * key. Each instance gets the first millisecond at or after its base time that the owner has
+ * not used yet, which must be less than ArrivalModel.UNIQUENESS_MILLIS after the base time so
+ * that it stays within the five minute interval its arrival model placed it in. Data for which
+ * there is no such millisecond is refused with an exception rather than risking a duplicate.
+ * <p>
+ * Scenarios revisit days (SimplePortfolio generates every day once per project), so each
+ * owner's timestamps are remembered for the life of the instance, as runs of consecutive
+ * milliseconds. Instances generated at one base time, like a snapshot or a day of builds under
+ * the lock step model, share a single run.
+ *
+ * @author Philip Johnson
+ */
+final class UniqueTimestamps {
+
+  /** Maps each owner to its used timestamps, as the start and end (exclusive) of each run. */
+  private final Map<String, TreeMap<Long, Long>> owners =
+    new HashMap<String, TreeMap<Long, Long>>();
+
+  /**
+   * Returns the first timestamp at or after the base time that the owner has not been given
+   * before, and records it as used.
+   * @param owner The owner.
+   * @param base The base time, in milliseconds.
+   * @return The timestamp, less than ArrivalModel.UNIQUENESS_MILLIS after the base time.
+   * @throws Exception If every millisecond within that room has been used.
+   */
+  long next(String owner, long base) throws Exception {
+    TreeMap<Long, Long> runs = this.owners.get(owner);
+    if (runs == null) {
+      runs = new TreeMap<Long, Long>();
+      this.owners.put(owner, runs);
+    }
+    long millis = base;
+    Long start = null;
+    SortedMap<Long, Long> before = runs.headMap(base + 1);
+    if (!before.isEmpty()) {
+      start = before.lastKey();
+      long end = before.get(start);
+      if (end < base) {
+        start = null;
+      }
+      else {
+        // Runs never touch, so the end of the run reaching the base is free.
+        millis = end;
+      }
+    }
+    if (millis - base >= ArrivalModel.UNIQUENESS_MILLIS) {
+      throw new Exception("No unique timestamp of " + owner + " left within "
+          + ArrivalModel.UNIQUENESS_MILLIS + " ms of " + Tstamp.makeTimestamp(base));
+    }
+    Long after = runs.remove(millis + 1);
+    long end = (after == null) ? millis + 1 : after;
+    runs.put((start == null) ? millis : start, end);
+    return millis;
+  }
+}
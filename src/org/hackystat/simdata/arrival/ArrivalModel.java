@@ -0,0 +1,46 @@
+package org.hackystat.simdata.arrival;
+
+/**
+ * An ArrivalModel decides where, within a simulated day, the sensor data generated by SimData
+ * lands. SimData asks the model for millisecond offsets relative to the timestamp passed to its
+ * add* methods, so scenarios keep deciding how much data is generated per day while the model
+ * decides when it arrives.
+ * <p>
+ * Implementations must keep each DevEvent of a single call in its own five minute interval, since
+ * that is how DevTime is computed, and should keep all offsets within a single day so that daily
+ * aggregates are preserved. Offsets must also leave the last UNIQUENESS_MILLIS of their interval
+ * free, since SimData adds up to that much to each timestamp to keep it unique.
+ * 
+ * @author Philip Johnson
+ */
+public interface ArrivalModel {
+  
+  /** The number of milliseconds in five minutes (one DevTime interval). */
+  long FIVE_MINUTES = 5L * 60 * 1000;
+  
+  /** The number of milliseconds in a day. */
+  long ONE_DAY = 24L * 60 * 60 * 1000;
+  
+  /** The largest millisecond offset SimData adds to a timestamp to keep it unique, plus one. */
+  long UNIQUENESS_MILLIS = FIVE_MINUTES / 5;
+  
+  /**
+   * Returns the offsets, in milliseconds, of a set of DevEvents generated for one user on one day.
+   * The offsets are in increasing order and each one lies in a distinct five minute interval.
+   * @param user The user (without the domain). 
+   * @param numDevEvents The number of DevEvents. 
+   * @return An array of numDevEvents offsets. 
+   */
+  long[] getDevEventOffsets(String user, int numDevEvents);
+  
+  /**
+   * Returns the offset, in milliseconds, of one non-DevEvent sensor data instance.
+   * @param user The user (without the domain).
+   * @param sdt The sensor data type, such as "Build" or "Commit".
+   * @param index The index of this instance among those generated by a single add* call.
+   * @param count The number of instances generated by that call.
+   * @return The offset. 
+   */
+  long getEventOffset(String user, String sdt, int index, int count);
+
+}
@@ -0,0 +1,42 @@
+package org.hackystat.simdata.arrival;
+
+/**
+ * Creates ArrivalModels by name, so that the model can be selected with a system property.
+ * 
+ * @author Philip Johnson
+ */
+public final class ArrivalModels {
+  
+  /** The name of the original model, in which all data is in lock step. */
+  public static final String LOCKSTEP = "lockstep";
+  /** The name of the working-hours model. */
+  public static final String DIURNAL = "diurnal";
+  /** The name of the bursty session model. */
+  public static final String BURSTY = "bursty";
+  
+  /** Disable public construction. */
+  private ArrivalModels() {
+    // Does nothing.
+  }
+  
+  /**
+   * Returns a new ArrivalModel for the given name.
+   * @param name One of "lockstep", "diurnal", or "bursty". 
+   * @param seed The seed for the random number generator.
+   * @param maxZoneOffsetHours The maximum time zone offset, in hours, assigned to a user.
+   * @return The ArrivalModel.
+   * @throws IllegalArgumentException If the name is unknown. 
+   */
+  public static ArrivalModel makeArrivalModel(String name, long seed, int maxZoneOffsetHours) {
+    if (LOCKSTEP.equalsIgnoreCase(name)) {
+      return new LockStepArrivalModel();
+    }
+    if (DIURNAL.equalsIgnoreCase(name)) {
+      return new DiurnalArrivalModel(seed, maxZoneOffsetHours);
+    }
+    if (BURSTY.equalsIgnoreCase(name)) {
+      return new BurstyArrivalModel(seed, maxZoneOffsetHours);
+    }
+    throw new IllegalArgumentException("Unknown arrival model: " + name);
+  }
+}
@@ -0,0 +1,105 @@
+package org.hackystat.simdata.arrival;
+
+/**
+ * Places data in bursty work sessions. DevEvents are grouped into sessions whose lengths are 
+ * geometrically distributed, and whose start times are drawn from the working-hours curve. 
+ * Other data generated by a single add* call arrives as a Poisson process starting at a session
+ * start, so that builds, tests and commits cluster together the way they do in practice.
+ * 
+ * @author Philip Johnson
+ */
+public class BurstyArrivalModel extends WorkingHoursArrivalModel {
+  
+  /** The mean session length, in five minute intervals. */
+  private final double meanSessionSlots;
+  
+  /** The mean time between events within a burst, in milliseconds. */
+  private final double meanGap;
+  
+  /** The start of the current burst of non-DevEvent data, in local intervals. */
+  private int burstSlot = 0;
+  
+  /** The offset within the current burst, in milliseconds. */
+  private long burstOffset = 0;
+
+  /**
+   * Creates a bursty model with one hour sessions and bursts spaced about a minute apart.
+   * @param seed The seed for the random number generator.
+   * @param maxZoneOffsetHours The maximum time zone offset, in hours, assigned to a user.
+   */
+  public BurstyArrivalModel(long seed, int maxZoneOffsetHours) {
+    this(seed, maxZoneOffsetHours, 12, 60 * 1000);
+  }
+  
+  /**
+   * Creates a bursty model.
+   * @param seed The seed for the random number generator.
+   * @param maxZoneOffsetHours The maximum time zone offset, in hours, assigned to a user.
+   * @param meanSessionSlots The mean session length, in five minute intervals.
+   * @param meanGap The mean time between data within a burst, in milliseconds.
+   */
+  public BurstyArrivalModel(long seed, int maxZoneOffsetHours, double meanSessionSlots, 
+      double meanGap) {
+    super(seed, maxZoneOffsetHours);
+    this.meanSessionSlots = meanSessionSlots;
+    this.meanGap = meanGap;
+  }
+
+  /**
+   * Fills sessions of consecutive free intervals until numDevEvents intervals are chosen.
+   * @param user The user. 
+   * @param numDevEvents The number of DevEvents. 
+   * @return The sorted offsets.
+   */
+  public long[] getDevEventOffsets(String user, int numDevEvents) {
+    checkDevEvents(numDevEvents);
+    boolean[] chosen = new boolean[SLOTS];
+    int remaining = numDevEvents;
+    while (remaining > 0) {
+      int length = Math.min(remaining, 1 + geometric(this.meanSessionSlots));
+      int slot = drawSlot();
+      // Walk forward from the session start, skipping intervals taken by earlier sessions.
+      while (length > 0) {
+        if (!chosen[slot]) {
+          chosen[slot] = true;
+          length--;
+          remaining--;
+        }
+        slot = (slot + 1) % SLOTS;
+      }
+    }
+    return toOffsets(user, chosen, numDevEvents);
+  }
+
+  /**
+   * The first instance of a call starts a new burst at a session start; later instances follow
+   * it at exponentially distributed gaps.
+   * @param user The user.
+   * @param sdt The sensor data type (ignored).
+   * @param index The index of this instance within the call.
+   * @param count The count (ignored).
+   * @return The offset.
+   */
+  public long getEventOffset(String user, String sdt, int index, int count) {
+    if (index == 0) {
+      this.burstSlot = drawSlot();
+      this.burstOffset = 0;
+    }
+    else {
+      this.burstOffset += (long) (-Math.log(1.0 - this.random.nextDouble()) * this.meanGap);
+    }
+    long offset = toSlot(user, this.burstSlot) * FIVE_MINUTES + this.burstOffset;
+    // Keep the burst within the day.
+    return offset % ONE_DAY;
+  }
+  
+  /**
+   * Returns a geometrically distributed value with the given mean.
+   * @param mean The mean.
+   * @return The value, zero or more.
+   */
+  private int geometric(double mean) {
+    double p = 1.0 / (1.0 + mean);
+    return (int) (Math.log(1.0 - this.random.nextDouble()) / Math.log(1.0 - p));
+  }
+}
@@ -0,0 +1,59 @@
+package org.hackystat.simdata.arrival;
+
+/**
+ * Places data according to the working-hours curve. DevEvents for a day are spread over distinct
+ * five minute intervals, chosen with probability proportional to the curve, and all other data
+ * is drawn independently from the same curve.
+ * 
+ * @author Philip Johnson
+ */
+public class DiurnalArrivalModel extends WorkingHoursArrivalModel {
+  
+  /**
+   * Creates a diurnal model.
+   * @param seed The seed for the random number generator.
+   * @param maxZoneOffsetHours The maximum time zone offset, in hours, assigned to a user.
+   */
+  public DiurnalArrivalModel(long seed, int maxZoneOffsetHours) {
+    super(seed, maxZoneOffsetHours);
+  }
+
+  /**
+   * Chooses numDevEvents distinct intervals, weighted by the working-hours curve.
+   * Uses weighted sampling without replacement (each interval gets the key u^(1/w), and the 
+   * intervals with the largest keys win).
+   * @param user The user. 
+   * @param numDevEvents The number of DevEvents. 
+   * @return The sorted offsets.
+   */
+  public long[] getDevEventOffsets(String user, int numDevEvents) {
+    checkDevEvents(numDevEvents);
+    double[] keys = new double[SLOTS];
+    for (int slot = 0; slot < SLOTS; slot++) {
+      keys[slot] = Math.log(this.random.nextDouble()) / getWeight(slot);
+    }
+    boolean[] chosen = new boolean[SLOTS];
+    for (int i = 0; i < numDevEvents; i++) {
+      int best = -1;
+      for (int slot = 0; slot < SLOTS; slot++) {
+        if (!chosen[slot] && ((best < 0) || (keys[slot] > keys[best]))) {
+          best = slot;
+        }
+      }
+      chosen[best] = true;
+    }
+    return toOffsets(user, chosen, numDevEvents);
+  }
+
+  /**
+   * Draws an independent offset from the working-hours curve.
+   * @param user The user.
+   * @param sdt The sensor data type (ignored).
+   * @param index The index (ignored).
+   * @param count The count (ignored).
+   * @return The offset.
+   */
+  public long getEventOffset(String user, String sdt, int index, int count) {
+    return toOffset(user, drawSlot());
+  }
+}
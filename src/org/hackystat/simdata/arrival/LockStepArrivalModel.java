@@ -0,0 +1,37 @@
+package org.hackystat.simdata.arrival;
+
+/**
+ * The original SimData arrival model: DevEvents are five minutes apart starting at the passed
+ * timestamp, and all other data arrives exactly at the passed timestamp. Every simulated 
+ * developer therefore writes into the same time slots.
+ * 
+ * @author Philip Johnson
+ */
+public class LockStepArrivalModel implements ArrivalModel {
+
+  /**
+   * Returns offsets that are exactly five minutes apart, starting at zero.
+   * @param user The user (ignored). 
+   * @param numDevEvents The number of DevEvents. 
+   * @return The offsets. 
+   */
+  public long[] getDevEventOffsets(String user, int numDevEvents) {
+    long[] offsets = new long[numDevEvents];
+    for (int i = 0; i < numDevEvents; i++) {
+      offsets[i] = i * FIVE_MINUTES;
+    }
+    return offsets;
+  }
+
+  /**
+   * Always returns zero.
+   * @param user The user (ignored).
+   * @param sdt The sensor data type (ignored).
+   * @param index The index (ignored).
+   * @param count The count (ignored).
+   * @return Zero.
+   */
+  public long getEventOffset(String user, String sdt, int index, int count) {
+    return 0;
+  }
+}
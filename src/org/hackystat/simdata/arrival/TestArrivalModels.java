@@ -0,0 +1,208 @@
+package org.hackystat.simdata.arrival;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.sink.NullSink;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests that every arrival model, and SimData's use of it, preserves the properties that daily
+ * aggregates depend on.
+ * @author Philip Johnson
+ */
+public class TestArrivalModels {
+  
+  /** The names of all models. */
+  private final String[] names = 
+  { ArrivalModels.LOCKSTEP, ArrivalModels.DIURNAL, ArrivalModels.BURSTY };
+  
+  /**
+   * Checks that DevEvents land in distinct five minute intervals within a single day.
+   */
+  @Test
+  public void testDevEventOffsets() {
+    for (String name : names) {
+      ArrivalModel model = ArrivalModels.makeArrivalModel(name, 0, 6);
+      for (int numDevEvents = 0; numDevEvents < 200; numDevEvents += 7) {
+        long[] offsets = model.getDevEventOffsets("joe", numDevEvents);
+        assertEquals("Checking count for " + name, numDevEvents, offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+          assertTrue("Checking within day for " + name, 
+              (offsets[i] >= 0) && (offsets[i] < ArrivalModel.ONE_DAY));
+          assertTrue("Checking room for uniqueness for " + name, 
+              offsets[i] % ArrivalModel.FIVE_MINUTES 
+              < ArrivalModel.FIVE_MINUTES - ArrivalModel.UNIQUENESS_MILLIS);
+          if (i > 0) {
+            assertTrue("Checking distinct interval for " + name, 
+                offsets[i] / ArrivalModel.FIVE_MINUTES 
+                > offsets[i - 1] / ArrivalModel.FIVE_MINUTES);
+          }
+        }
+      }
+    }
+  }
+  
+  /**
+   * Keeps the timestamps of joe's data, failing on the first that repeats, and checks that
+   * each stays within the day of the generation.
+   */
+  private static final class TimestampSink implements SensorDataSink {
+    /** The timestamps seen. */
+    private final Set<Long> seen = new HashSet<Long>();
+    /** The start of the day being generated. */
+    private long day;
+
+    /** @param data Its timestamp is checked and kept, if joe owns it. */
+    public void add(SensorData data) {
+      if (!data.getOwner().startsWith("joe@")) {
+        return;
+      }
+      long millis = data.getTimestamp().toGregorianCalendar().getTimeInMillis();
+      assertTrue("Checking unique: " + data.getTimestamp(), this.seen.add(millis));
+      assertTrue("Checking within day", (millis >= this.day) 
+          && (millis < this.day + ArrivalModel.ONE_DAY));
+    }
+    /** Does nothing. */
+    public void flush() {
+      // Nothing buffered.
+    }
+    /** Does nothing. */
+    public void close() {
+      // Nothing to close.
+    }
+  }
+
+  /**
+   * Checks that no timestamp of one owner repeats, under every model, when more than
+   * ArrivalModel.UNIQUENESS_MILLIS instances are generated between two of its instances at
+   * the same base time, and more than that many instances are generated for it in all.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testUniqueTimestamps() throws Exception {
+    String[] joeFiles = makeFiles("joe", 29000);
+    String[] bobFiles = makeFiles("bob", 40000);
+    int[] joeValues = new int[joeFiles.length];
+    int[] bobValues = new int[bobFiles.length];
+    for (String name : names) {
+      TimestampSink sink = new TimestampSink();
+      SimData simData = new SimData(null, SimData.getTestDomain());
+      simData.setArrivalModel(ArrivalModels.makeArrivalModel(name, 0, 0));
+      simData.setSink(sink);
+      for (int day = 0; day < 2; day++) {
+        sink.day = 1183334400000L + day * ArrivalModel.ONE_DAY;
+        XMLGregorianCalendar tstamp = Tstamp.makeTimestamp(sink.day);
+        simData.addDevEvents("joe", tstamp, 200, "Joe.java");
+        simData.addFileMetricSnapshot("joe", tstamp, joeFiles, joeValues);
+        simData.addFileMetricSnapshot("bob", tstamp, bobFiles, bobValues);
+        simData.addCoverageSnapshot("joe", tstamp, joeFiles, joeValues, joeValues);
+        simData.addBuilds("joe", tstamp, "/users/joe/", "Success", 500);
+        simData.addCommits("joe", tstamp, "Joe.java", 5000, 500);
+      }
+      assertEquals("Checking count for " + name, 2 * (200 + 2 * joeFiles.length + 1000), 
+          sink.seen.size());
+    }
+  }
+
+  /**
+   * Returns the names of a user's files.
+   * @param user The user.
+   * @param count The number of files.
+   * @return The names.
+   */
+  private static String[] makeFiles(String user, int count) {
+    String[] files = new String[count];
+    for (int i = 0; i < count; i++) {
+      files[i] = "/users/" + user + "/File" + i + ".java";
+    }
+    return files;
+  }
+
+  /**
+   * Checks that SimData refuses an instance it cannot give a unique timestamp, because its
+   * owner has more instances at one base time than there is room for.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testNoRoomLeft() throws Exception {
+    SimData simData = new SimData(null, SimData.getTestDomain());
+    simData.setArrivalModel(ArrivalModels.makeArrivalModel(ArrivalModels.LOCKSTEP, 0, 0));
+    simData.setSink(new NullSink(false, null));
+    int room = (int) ArrivalModel.UNIQUENESS_MILLIS;
+    XMLGregorianCalendar day = Tstamp.makeTimestamp(1183334400000L);
+    simData.addBuilds("joe", day, "/users/joe/", "Success", room);
+    try {
+      simData.addBuilds("joe", day, "/users/joe/", "Success", 1);
+      fail("Added more instances than there is room for.");
+    }
+    catch (Exception e) {
+      assertTrue("Checking message: " + e, e.getMessage().contains("No unique timestamp"));
+    }
+    simData.addBuilds("bob", day, "/users/bob/", "Success", 1);
+  }
+  
+  /**
+   * Checks that every instance of a snapshot shares its runtime, under every model, and that
+   * their timestamps are distinct and within the day after it.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSnapshotRuntime() throws Exception {
+    long day = 1183334400000L;
+    XMLGregorianCalendar runtime = Tstamp.makeTimestamp(day);
+    String[] files = new String[50];
+    int[] values = new int[files.length];
+    for (int i = 0; i < files.length; i++) {
+      files[i] = "/users/joe/File" + i + ".java";
+      values[i] = 10 + i;
+    }
+    for (String name : names) {
+      ListSink sink = new ListSink();
+      SimData simData = new SimData(null, SimData.getTestDomain());
+      simData.setArrivalModel(ArrivalModels.makeArrivalModel(name, 0, 6));
+      simData.setSink(sink);
+      simData.addFileMetricSnapshot("joe", runtime, files, values);
+      simData.addCoverageSnapshot("joe", runtime, files, values, values);
+      simData.addComplexitySnapshot("joe", runtime, files, values, values);
+      assertEquals("Checking count for " + name, 3 * files.length, sink.getList().size());
+      Set<Long> tstamps = new HashSet<Long>();
+      for (SensorData data : sink.getList()) {
+        assertEquals("Checking runtime for " + name, runtime.toString(), 
+            data.getRuntime().toString());
+        long offset = data.getTimestamp().toGregorianCalendar().getTimeInMillis() - day;
+        assertTrue("Checking within day for " + name, 
+            (offset >= 0) && (offset < ArrivalModel.ONE_DAY));
+        tstamps.add(offset);
+      }
+      assertEquals("Checking distinct for " + name, 3 * files.length, tstamps.size());
+    }
+  }
+  
+  /**
+   * Checks that other data lands within a single day.
+   */
+  @Test
+  public void testEventOffsets() {
+    for (String name : names) {
+      ArrivalModel model = ArrivalModels.makeArrivalModel(name, 0, 6);
+      for (int i = 0; i < 500; i++) {
+        long offset = model.getEventOffset("bob", "Build", i % 40, 40);
+        assertTrue("Checking within day for " + name, 
+            (offset >= 0) && (offset < ArrivalModel.ONE_DAY));
+      }
+    }
+  }
+}
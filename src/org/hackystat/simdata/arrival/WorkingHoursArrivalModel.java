@@ -0,0 +1,153 @@
+package org.hackystat.simdata.arrival;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An abstract arrival model based on a working-hours curve over the 288 five minute intervals of
+ * a day. Each user is assigned a time zone offset (derived from their name, so it is stable across
+ * runs), which rotates their curve around the day. Rotated intervals wrap around midnight rather
+ * than spilling into the next day, so that per-day aggregates are unchanged.
+ * 
+ * @author Philip Johnson
+ */
+public abstract class WorkingHoursArrivalModel implements ArrivalModel {
+  
+  /** The number of five minute intervals in a day. */
+  protected static final int SLOTS = 288;
+  
+  /** 
+   * The portion of an interval that jitter may use, leaving room for the millisecond offset
+   * SimData adds to guarantee uniqueness. 
+   */
+  private static final int JITTER = (int) (FIVE_MINUTES - UNIQUENESS_MILLIS);
+  
+  /** The random number generator for this model. */
+  protected final Random random;
+  
+  /** The relative weight of each five minute interval, before the time zone rotation. */
+  private final double[] weights = new double[SLOTS];
+  
+  /** The cumulative weights, used to draw a single interval. */
+  private final double[] cumulative = new double[SLOTS];
+  
+  /** The maximum time zone offset, in hours, in either direction. */
+  private final int maxZoneOffsetHours;
+
+  /**
+   * Creates a model with the standard working-hours curve: a morning peak around 10:30,
+   * a lunch dip, an afternoon peak around 15:00, and a small amount of evening work.
+   * @param seed The seed for the random number generator.
+   * @param maxZoneOffsetHours The maximum time zone offset, in hours, assigned to a user.
+   * Zero places all users in the same time zone.
+   */
+  protected WorkingHoursArrivalModel(long seed, int maxZoneOffsetHours) {
+    this.random = new Random(seed);
+    this.maxZoneOffsetHours = maxZoneOffsetHours;
+    double total = 0;
+    for (int slot = 0; slot < SLOTS; slot++) {
+      double hour = slot / 12.0;
+      double weight = 0.01 
+        + bump(hour, 10.5, 1.5) 
+        + 0.9 * bump(hour, 15.0, 1.75) 
+        + 0.15 * bump(hour, 21.0, 1.5);
+      this.weights[slot] = weight;
+      total += weight;
+      this.cumulative[slot] = total;
+    }
+  }
+  
+  /**
+   * Returns the value of an unnormalized gaussian bump at hour.
+   * @param hour The hour of the day.
+   * @param center The center of the bump.
+   * @param width The standard deviation of the bump, in hours.
+   * @return The bump value, between 0 and 1.
+   */
+  private static double bump(double hour, double center, double width) {
+    double z = (hour - center) / width;
+    return Math.exp(-0.5 * z * z);
+  }
+  
+  /**
+   * Returns the time zone offset for this user, in five minute intervals.
+   * @param user The user.
+   * @return The offset, which may be negative.
+   */
+  protected int getZoneOffsetSlots(String user) {
+    if (this.maxZoneOffsetHours == 0) {
+      return 0;
+    }
+    int hours = (user.hashCode() & 0x7fffffff) % (2 * this.maxZoneOffsetHours + 1);
+    return (hours - this.maxZoneOffsetHours) * 12;
+  }
+  
+  /**
+   * Returns the weight of the given local interval.
+   * @param slot The interval, between 0 and 287, in the user's local time.
+   * @return Its weight.
+   */
+  protected double getWeight(int slot) {
+    return this.weights[slot];
+  }
+  
+  /**
+   * Draws a single local interval according to the working-hours curve.
+   * @return The interval, between 0 and 287, in the user's local time.
+   */
+  protected int drawSlot() {
+    double target = this.random.nextDouble() * this.cumulative[SLOTS - 1];
+    int index = Arrays.binarySearch(this.cumulative, target);
+    return (index >= 0) ? index : Math.min(-index - 1, SLOTS - 1);
+  }
+  
+  /**
+   * Converts a local interval to a millisecond offset from the start of the day, applying the
+   * user's time zone and some jitter within the interval.
+   * @param user The user.
+   * @param localSlot The interval in the user's local time.
+   * @return The offset in milliseconds.
+   */
+  protected long toOffset(String user, int localSlot) {
+    return toSlot(user, localSlot) * FIVE_MINUTES + this.random.nextInt(JITTER);
+  }
+  
+  /**
+   * Converts a local interval to a day interval by applying the user's time zone. 
+   * @param user The user.
+   * @param localSlot The interval in the user's local time.
+   * @return The interval, between 0 and 287, wrapped around midnight.
+   */
+  protected int toSlot(String user, int localSlot) {
+    return ((localSlot - getZoneOffsetSlots(user)) % SLOTS + SLOTS) % SLOTS;
+  }
+  
+  /**
+   * Converts a set of chosen local intervals into sorted offsets. 
+   * @param user The user.
+   * @param chosen A flag per local interval indicating whether it has been chosen. 
+   * @param numChosen The number of chosen intervals.
+   * @return The sorted offsets.
+   */
+  protected long[] toOffsets(String user, boolean[] chosen, int numChosen) {
+    long[] offsets = new long[numChosen];
+    int next = 0;
+    for (int slot = 0; slot < SLOTS; slot++) {
+      if (chosen[slot]) {
+        offsets[next++] = toOffset(user, slot);
+      }
+    }
+    Arrays.sort(offsets);
+    return offsets;
+  }
+  
+  /**
+   * Checks that the number of DevEvents fits in a single day. 
+   * @param numDevEvents The number of DevEvents requested.
+   */
+  protected static void checkDevEvents(int numDevEvents) {
+    if (numDevEvents > SLOTS) {
+      throw new IllegalArgumentException("At most " + SLOTS + " DevEvents fit in a day.");
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package org.hackystat.simdata.benchmark;
+
+import java.util.logging.Logger;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.client.SensorBaseClient;
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.SimData;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Measures the bulk deletion paths that SimData relies on, deleteSensorData and deleteProject,
+ * as the amount of data to delete grows. For each size, a fresh user is seeded with that many
+ * instances and a number of projects, then all of the user's sensor data is deleted in one
+ * request, and then each project. The deletion of an empty user's data, which makeUser does
+ * for every new user, is timed first. Each result is logged with its throughput and with its
+ * growth relative to the previous size, so that linear and worse than linear scaling stand
+ * out. Seeding uses the sender selected by the usual system properties; "compact" seeds
+ * large sizes fastest.
+ *
+ * @author Philip Johnson
+ */
+public class DeletionBenchmark {
+
+  /** The number of DevEvents per seeded day; the lockstep model places them 5 minutes apart. */
+  private static final int devEventsPerDay = 250;
+  /** The number of FileMetrics per seeded day. */
+  private static final int fileMetricsPerDay = 50;
+
+  /** The SimData instance that seeds the data. */
+  private final SimData simData;
+  /** The logger. */
+  private final Logger logger;
+  /** The number of projects created for each user. */
+  private final int numProjects;
+  /** The size of the previous run, or 0. */
+  private int previousSize = 0;
+  /** The sensor data deletion time of the previous run, in nanoseconds. */
+  private long previousNanos = 0;
+
+  /**
+   * Creates the benchmark.
+   * @param host The SensorBase host.
+   * @param numProjects The number of projects created and deleted for each size.
+   * @throws Exception If the host is not available, or the sender does not send to it.
+   */
+  public DeletionBenchmark(String host, int numProjects) throws Exception {
+    this.simData = new SimData(host);
+    if (this.simData.isOffline()) {
+      throw new Exception("DeletionBenchmark needs a sender that sends to the host.");
+    }
+    this.logger = this.simData.getLogger();
+    this.numProjects = numProjects;
+  }
+
+  /**
+   * Adds the given number of DevEvent and FileMetric instances for the user, a day at a time.
+   * @param user The user.
+   * @param size The number of instances.
+   * @throws Exception If the data cannot be sent.
+   */
+  private void seed(String user, int size) throws Exception {
+    XMLGregorianCalendar day = Tstamp.makeTimestamp("2008-01-07");
+    int remaining = size;
+    while (remaining > 0) {
+      int devEvents = Math.min(devEventsPerDay, remaining);
+      this.simData.addDevEvents(user, day, devEvents, "/users/" + user + "/src/Main.java");
+      remaining -= devEvents;
+      for (int i = 0; (i < fileMetricsPerDay) && (remaining > 0); i++, remaining--) {
+        String file = "/users/" + user + "/src/File" + i + ".java";
+        this.simData.addFileMetric(user, day, file, 100 + i, day);
+      }
+      day = Tstamp.incrementDays(day, 1);
+    }
+    // Flush rather than close, so the sink can seed the next size too.
+    this.simData.getSink().flush();
+  }
+
+  /**
+   * Seeds a fresh user with the given number of instances and the projects, then times the
+   * deletion of the user's sensor data and of each project.
+   * @param size The number of instances.
+   * @throws Exception If problems occur.
+   */
+  private void run(int size) throws Exception {
+    String user = "deletion" + size;
+    String email = user + SimData.getTestDomain();
+    this.simData.makeUser(user);
+    long seedStart = System.nanoTime();
+    seed(user, size);
+    long seedNanos = System.nanoTime() - seedStart;
+    XMLGregorianCalendar start = Tstamp.makeTimestamp("2008-01-07");
+    for (int i = 0; i < this.numProjects; i++) {
+      this.simData.makeProject(user + "-project" + i, user, start,
+          Tstamp.incrementDays(start, 365), "*/" + user + "/*");
+    }
+    SensorBaseClient client = ClientPool.getClient(this.simData.getHost(), email);
+
+    long deleteStart = System.nanoTime();
+    client.deleteSensorData(email);
+    long deleteNanos = System.nanoTime() - deleteStart;
+    long projectStart = System.nanoTime();
+    for (int i = 0; i < this.numProjects; i++) {
+      client.deleteProject(email, user + "-project" + i);
+    }
+    long projectNanos = System.nanoTime() - projectStart;
+
+    String growth = "";
+    if ((this.previousSize > 0) && (this.previousNanos > 0)) {
+      growth = String.format(", %.1fx the time for %.1fx the data",
+          deleteNanos / (double) this.previousNanos, size / (double) this.previousSize);
+    }
+    this.logger.info(String.format("DeletionBenchmark: %8d instances seeded in %7.1f s; "
+        + "deleteSensorData %9.1f ms, %9.0f instances per second%s; deleteProject %7.1f ms "
+        + "each", size, seedNanos / 1e9, deleteNanos / 1e6, size / (deleteNanos / 1e9), growth,
+        (this.numProjects > 0) ? projectNanos / 1e6 / this.numProjects : 0.0));
+    this.previousSize = size;
+    this.previousNanos = deleteNanos;
+  }
+
+  /**
+   * Times the deletion of an empty user's data, as makeUser does for every new user.
+   * @param repetitions The number of deletions.
+   * @throws Exception If problems occur.
+   */
+  private void runEmpty(int repetitions) throws Exception {
+    String user = "deletion0";
+    String email = user + SimData.getTestDomain();
+    this.simData.makeUser(user);
+    SensorBaseClient client = ClientPool.getClient(this.simData.getHost(), email);
+    long start = System.nanoTime();
+    for (int i = 0; i < repetitions; i++) {
+      client.deleteSensorData(email);
+    }
+    this.logger.info(String.format("DeletionBenchmark: empty deleteSensorData %7.1f ms each",
+        (System.nanoTime() - start) / 1e6 / repetitions));
+  }
+
+  /**
+   * Runs the benchmark at each size in turn.
+   * @param sizes The numbers of instances, in increasing order.
+   * @throws Exception If problems occur.
+   */
+  public void run(int[] sizes) throws Exception {
+    runEmpty(20);
+    for (int size : sizes) {
+      run(size);
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   * @param args The SensorBase host, and optionally a comma separated list of sizes and the
+   * number of projects per size.
+   * @throws Exception If problems occur.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println("DeletionBenchmark <host> [size,size,...] [projects]");
+      return;
+    }
+    String[] sizeStrings = ((args.length > 1) ? args[1] : "1000,10000,100000").split(",");
+    int[] sizes = new int[sizeStrings.length];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = Integer.parseInt(sizeStrings[i].trim());
+    }
+    int projects = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+    DeletionBenchmark benchmark = new DeletionBenchmark(args[0], projects);
+    benchmark.run(sizes);
+    benchmark.simData.quitShells();
+    ClientPool.shutdown();
+  }
+}
@@ -0,0 +1,253 @@
+package org.hackystat.simdata.benchmark;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.bind.Marshaller;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SensorDataXml;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.sender.CompactTransport;
+import org.hackystat.simdata.sender.ParallelMarshallingSink;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Compares the cost of marshalling and sending the same workload along SimData's send paths:
+ * SensorShell.add, which is the default; compact batches marshalled and sent by the generating
+ * thread itself; and compact batches marshalled on a pool of threads while earlier batches are
+ * on the network.
+ * It also compares marshalling alone with a new Marshaller per instance and with each
+ * thread's cached Marshaller. Each result is logged in instances per second.
+ * 
+ * @author Philip Johnson
+ */
+public class MarshallingBenchmark {
+  
+  /** The name of the benchmark user. */
+  private static final String user = "benchmark";
+  
+  /** The SimData instance that generates the workload. */
+  private final SimData simData;
+  /** The logger. */
+  private final Logger logger;
+  /** The number of days in the workload. */
+  private final int days;
+  /** The number of files changed per day in the workload. */
+  private final int filesPerDay;
+  
+  /**
+   * Sends compact batches of each owner's data on the calling thread, with no worker threads
+   * or retries, as the single threaded baseline of the parallel path.
+   */
+  private static class DirectCompactSink implements SensorDataSink {
+    /** The transport. */
+    private final CompactTransport transport;
+    /** The number of instances per batch. */
+    private final int batchSize;
+    /** The unsent data of each owner. */
+    private final Map<String, List<SensorData>> batches = new HashMap<String, List<SensorData>>();
+
+    /**
+     * Creates the sink.
+     * @param transport The transport.
+     * @param batchSize The number of instances per batch.
+     */
+    DirectCompactSink(CompactTransport transport, int batchSize) {
+      this.transport = transport;
+      this.batchSize = batchSize;
+    }
+
+    /**
+     * Adds the data to its owner's batch, sending the batch once it is full.
+     * @param data The data.
+     * @throws Exception If the batch cannot be sent.
+     */
+    public void add(SensorData data) throws Exception {
+      List<SensorData> batch = this.batches.get(data.getOwner());
+      if (batch == null) {
+        batch = new ArrayList<SensorData>(this.batchSize);
+        this.batches.put(data.getOwner(), batch);
+      }
+      batch.add(data);
+      if (batch.size() >= this.batchSize) {
+        this.transport.send(data.getOwner(), batch);
+        batch.clear();
+      }
+    }
+
+    /**
+     * Sends every partial batch.
+     * @throws Exception If a batch cannot be sent.
+     */
+    public void flush() throws Exception {
+      for (Map.Entry<String, List<SensorData>> entry : this.batches.entrySet()) {
+        if (!entry.getValue().isEmpty()) {
+          this.transport.send(entry.getKey(), entry.getValue());
+          entry.getValue().clear();
+        }
+      }
+    }
+
+    /**
+     * Sends every partial batch.
+     * @throws Exception If a batch cannot be sent.
+     */
+    public void close() throws Exception {
+      flush();
+    }
+  }
+
+  /**
+   * Creates the benchmark.
+   * @param host The SensorBase host.
+   * @param days The number of days in the workload.
+   * @param filesPerDay The number of files changed per day, each contributing 18 instances.
+   * @throws Exception If the host is not available.
+   */
+  public MarshallingBenchmark(String host, int days, int filesPerDay) throws Exception {
+    this.simData = new SimData(host);
+    this.logger = this.simData.getLogger();
+    this.days = days;
+    this.filesPerDay = filesPerDay;
+  }
+  
+  /**
+   * Generates the workload into the SimData instance's current sink.
+   * @throws Exception If the sink fails.
+   */
+  private void generate() throws Exception {
+    XMLGregorianCalendar day = Tstamp.makeTimestamp("2008-01-07");
+    for (int i = 0; i < this.days; i++) {
+      for (int j = 0; j < this.filesPerDay; j++) {
+        String file = "/users/benchmark/simdata/src/File" + j + ".java";
+        this.simData.addDevEvents(user, day, 12, file);
+        this.simData.addFileMetric(user, day, file, 100 + j, day);
+        this.simData.addUnitTests(user, day, file, "pass", 5);
+      }
+      day = Tstamp.incrementDays(day, 1);
+    }
+  }
+  
+  /**
+   * Generates and sends the workload through the given sink, after deleting the user's data.
+   * @param name The name of the path, used in the log.
+   * @param sink The sink, or null for the SensorShell path.
+   * @throws Exception If the data cannot be sent.
+   */
+  private void timeSend(String name, SensorDataSink sink) throws Exception {
+    this.simData.makeUser(user);
+    this.simData.setSink((sink == null) ? this.simData.getShellSink() : sink);
+    long start = System.nanoTime();
+    generate();
+    this.simData.quitShells();
+    report(name, this.days * this.filesPerDay * 18, System.nanoTime() - start);
+  }
+  
+  /**
+   * Marshals the instances to a discarding stream, one at a time.
+   * @param name The name of the variant, used in the log.
+   * @param instances The instances.
+   * @param cached True to use the thread's cached marshaller, false for a new one each time.
+   * @throws Exception If an instance cannot be marshalled.
+   */
+  private void timeMarshal(String name, List<SensorData> instances, boolean cached) 
+    throws Exception {
+    OutputStream discard = new OutputStream() {
+      /** @param b Ignored. */
+      @Override
+      public void write(int b) {
+        // Discard.
+      }
+      /**
+       * @param b Ignored.
+       * @param off Ignored.
+       * @param len Ignored.
+       */
+      @Override
+      public void write(byte[] b, int off, int len) {
+        // Discard.
+      }
+    };
+    long start = System.nanoTime();
+    for (SensorData data : instances) {
+      Marshaller marshaller = cached ? SensorDataXml.getThreadMarshaller() 
+          : SensorDataXml.makeMarshaller();
+      marshaller.marshal(data, discard);
+    }
+    report(name, instances.size(), System.nanoTime() - start);
+  }
+  
+  /**
+   * Logs the throughput of a run.
+   * @param name The name of the run.
+   * @param count The number of instances.
+   * @param nanos The elapsed time.
+   */
+  private void report(String name, int count, long nanos) {
+    this.logger.info(String.format("MarshallingBenchmark: %-24s %8d instances %9.0f per second",
+        name, count, count / (nanos / 1e9)));
+  }
+  
+  /**
+   * Runs every comparison.
+   * @param numThreads The number of marshalling threads for the parallel path.
+   * @throws Exception If problems occur.
+   */
+  public void run(int numThreads) throws Exception {
+    final List<SensorData> instances = new ArrayList<SensorData>();
+    this.simData.setSink(new SensorDataSink() {
+      /** @param data The data to keep. */
+      public void add(SensorData data) {
+        instances.add(data);
+      }
+      /** Does nothing. */
+      public void flush() {
+        // Nothing buffered.
+      }
+      /** Does nothing. */
+      public void close() {
+        // Nothing buffered.
+      }
+    });
+    generate();
+    // Run each variant twice; the second results reflect a warmed up JIT.
+    for (int i = 0; i < 2; i++) {
+      timeMarshal("marshal, new marshaller", instances, false);
+      timeMarshal("marshal, cached", instances, true);
+    }
+    String host = this.simData.getHost();
+    timeSend("shell", null);
+    timeSend("compact, calling thread", 
+        new DirectCompactSink(new CompactTransport(host, logger), 250));
+    timeSend("compact, " + numThreads + " threads", 
+        new ParallelMarshallingSink(new CompactTransport(host, logger), 250, numThreads, logger));
+    this.simData.clearData(host, user);
+  }
+  
+  /**
+   * Runs the benchmark. 
+   * @param args The SensorBase host, and optionally the number of days, the number of files
+   * per day, and the number of marshalling threads.
+   * @throws Exception If problems occur.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println("MarshallingBenchmark <host> [days] [filesPerDay] [threads]");
+      return;
+    }
+    int days = (args.length > 1) ? Integer.parseInt(args[1]) : 30;
+    int filesPerDay = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+    int threads = (args.length > 3) ? Integer.parseInt(args[3]) 
+        : Runtime.getRuntime().availableProcessors();
+    new MarshallingBenchmark(args[0], days, filesPerDay).run(threads);
+    ClientPool.shutdown();
+  }
+}
@@ -0,0 +1,106 @@
+package org.hackystat.simdata.benchmark;
+
+import java.util.logging.Logger;
+
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.Scenario;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.sender.AsyncBatchSink;
+import org.hackystat.simdata.simpleportfolio.SimplePortfolio;
+import org.hackystat.simdata.simpletelemetry.SimpleTelemetry;
+import org.hackystat.simdata.sink.MetricsSink;
+import org.hackystat.simdata.sink.RunMetrics;
+
+/**
+ * Compares the SensorShell path with the non-blocking AsyncBatchSink at several window sizes,
+ * sending the same scenarios, SimpleTelemetry and SimplePortfolio, to the host. Each scenario
+ * is provisioned first, so that only generating and sending its data is timed, up to the
+ * moment the sink has delivered all of it. Each result is logged in instances per second. The
+ * gap between the paths grows with the round trip time to the host, so the benchmark is most
+ * telling against a distant host, or a StubSensorBase with injected latency.
+ *
+ * @author Philip Johnson
+ */
+public class SenderBenchmark {
+
+  /** The SensorBase host. */
+  private final String host;
+  /** The logger. */
+  private Logger logger;
+
+  /**
+   * Creates the benchmark.
+   * @param host The SensorBase host.
+   */
+  public SenderBenchmark(String host) {
+    this.host = host;
+  }
+
+  /**
+   * Provisions one scenario, then times the generation and sending of its data.
+   * @param scenarioName The scenario, "telemetry" or "portfolio".
+   * @param window The window of the AsyncBatchSink, or 0 for the SensorShell path.
+   * @throws Exception If problems occur.
+   */
+  private void time(String scenarioName, int window) throws Exception {
+    SimData simData = new SimData(this.host);
+    this.logger = simData.getLogger();
+    Scenario scenario = "telemetry".equals(scenarioName)
+        ? SimpleTelemetry.makeScenario(simData, 0) : SimplePortfolio.makeScenario(simData, 0);
+    scenario.provision();
+    if (window > 0) {
+      simData.setSink(new AsyncBatchSink(this.host, 250, window, this.logger));
+    }
+    RunMetrics metrics = new RunMetrics();
+    RunMetrics.setCurrent(metrics);
+    simData.setSink(new MetricsSink(simData.getSink(), metrics));
+    long start = System.nanoTime();
+    try {
+      for (int step = 0; step < scenario.getNumSteps(); step++) {
+        scenario.generateStep(step);
+      }
+      simData.quitShells();
+    }
+    finally {
+      RunMetrics.setCurrent(null);
+    }
+    long nanos = System.nanoTime() - start;
+    this.logger.info(String.format("SenderBenchmark: %-10s %-16s %7d instances %9.0f per second",
+        scenarioName, (window > 0) ? "async, window " + window : "shell", metrics.getTotal(),
+        metrics.getTotal() / (nanos / 1e9)));
+  }
+
+  /**
+   * Runs each scenario along the SensorShell path and then along the async path at each
+   * window.
+   * @param windows The windows of the async path.
+   * @throws Exception If problems occur.
+   */
+  public void run(int[] windows) throws Exception {
+    for (String scenario : new String[] { "telemetry", "portfolio" }) {
+      time(scenario, 0);
+      for (int window : windows) {
+        time(scenario, window);
+      }
+    }
+  }
+
+  /**
+   * Runs the benchmark.
+   * @param args The SensorBase host, and optionally a comma separated list of windows.
+   * @throws Exception If problems occur.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println("SenderBenchmark <host> [window,window,...]");
+      return;
+    }
+    String[] windowStrings = ((args.length > 1) ? args[1] : "1,8,32").split(",");
+    int[] windows = new int[windowStrings.length];
+    for (int i = 0; i < windows.length; i++) {
+      windows[i] = Integer.parseInt(windowStrings[i].trim());
+    }
+    new SenderBenchmark(args[0]).run(windows);
+    ClientPool.shutdown();
+  }
+}
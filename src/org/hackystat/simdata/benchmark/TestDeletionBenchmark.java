@@ -0,0 +1,74 @@
+package org.hackystat.simdata.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the DeletionBenchmark seeds its users' data and projects at the stand-in 
+ * SensorBase, and deletes them all again.
+ * @author Philip Johnson
+ */
+public class TestDeletionBenchmark {
+
+  /** The stand-in SensorBase. */
+  private StubSensorBase stub;
+  /** The sender before the test, restored afterwards. */
+  private String sender;
+
+  /**
+   * Starts the stand-in on a free port, and seeds with batches that reach it.
+   * @throws Exception If the stand-in cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    ClientPool.shutdown();
+    this.stub = new StubSensorBase(0, 4);
+    this.sender = System.getProperty(SimData.SENDER_KEY);
+    System.setProperty(SimData.SENDER_KEY, "compact");
+  }
+
+  /**
+   * Restores the sender, empties the pool and stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    if (this.sender == null) {
+      System.clearProperty(SimData.SENDER_KEY);
+    }
+    else {
+      System.setProperty(SimData.SENDER_KEY, this.sender);
+    }
+    ClientPool.shutdown();
+    this.stub.stop();
+  }
+
+  /**
+   * Checks that every size's data and projects arrive, and are gone after the benchmark.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testRun() throws Exception {
+    int[] sizes = { 10, 20 };
+    int projects = 2;
+    new DeletionBenchmark(this.stub.getHostName(), projects).run(sizes);
+    assertEquals("Checking seeded", 10 + 20, this.stub.getSensorDataCount());
+    assertEquals("Checking projects", sizes.length * projects, 
+        this.stub.getProjectPutCount());
+    for (int size : sizes) {
+      String user = "deletion" + size;
+      String email = user + SimData.getTestDomain();
+      assertEquals("Checking data of " + user, 0, this.stub.getSensorDataCount(email));
+      for (int i = 0; i < projects; i++) {
+        assertNull("Checking project " + i + " of " + user, 
+            this.stub.getProject(email, user + "-project" + i));
+      }
+    }
+  }
+}
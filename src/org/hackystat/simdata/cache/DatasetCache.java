@@ -0,0 +1,251 @@
+package org.hackystat.simdata.cache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.bind.Unmarshaller;
+
+import org.hackystat.simdata.SamplingPolicy;
+import org.hackystat.simdata.Scenario;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SensorDataXml;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.arrival.ArrivalModels;
+import org.hackystat.simdata.arrival.BurstyArrivalModel;
+import org.hackystat.simdata.arrival.DiurnalArrivalModel;
+import org.hackystat.simdata.arrival.LockStepArrivalModel;
+import org.hackystat.simdata.arrival.WorkingHoursArrivalModel;
+import org.hackystat.simdata.population.DeveloperPopulation;
+import org.hackystat.simdata.population.ResourcePopulation;
+import org.hackystat.simdata.population.UserFileState;
+import org.hackystat.simdata.sdt.ProcessSdts;
+import org.hackystat.simdata.sdt.SdtRegistry;
+import org.hackystat.simdata.sdt.SdtTemplate;
+
+/**
+ * A directory of generated datasets, each a gzip compressed file with one SensorData XML 
+ * fragment per line. A dataset is identified by the scenario class, its seed and scale, the
+ * configuration that affects generation (such as the arrival model and user domain), and a
+ * version hash of the class files of the scenario, SimData and the generators they use, such
+ * as the arrival models, populations and SDT templates, together with GENERATOR_VERSION, so
+ * that changing the generator invalidates its old datasets. Because scenarios are 
+ * deterministic for a given seed, a cached dataset is exactly what generation would produce.
+ * <p>
+ * When the directory grows beyond its size limit, the least recently used datasets are
+ * deleted. Using a dataset updates its modification time.
+ * 
+ * @author Philip Johnson
+ */
+public class DatasetCache {
+  
+  /** The system property holding the cache directory. The cache is disabled if unset. */
+  public static final String DIR_KEY = "org.hackystat.simdata.cache.dir";
+  /** The system property holding the size limit of the cache directory, in megabytes. */
+  public static final String MAX_MEGABYTES_KEY = "org.hackystat.simdata.cache.maxMegabytes";
+  
+  /** 
+   * The version of generation, to be incremented when a change to generation is not visible 
+   * in the class files hashed into the keys, such as a change to a generator not listed in 
+   * generatorClasses.
+   */
+  public static final int GENERATOR_VERSION = 2;
+  
+  /** The suffix of dataset files. */
+  private static final String SUFFIX = ".xml.gz";
+  /** The classes, besides the scenario and SimData, whose code shapes the generated data. */
+  private static final Class<?>[] generatorClasses = { Scenario.class, SamplingPolicy.class,
+    ArrivalModels.class, LockStepArrivalModel.class, WorkingHoursArrivalModel.class, 
+    DiurnalArrivalModel.class, BurstyArrivalModel.class, DeveloperPopulation.class, 
+    ResourcePopulation.class, UserFileState.class, SdtTemplate.class, SdtRegistry.class, 
+    ProcessSdts.class };
+  
+  /** The cache directory. */
+  private final File dir;
+  /** The size limit of the cache directory, in bytes. */
+  private final long maxBytes;
+  /** The logger. */
+  private final Logger logger;
+  
+  /**
+   * Creates a cache in the given directory, creating the directory if necessary.
+   * @param dir The directory.
+   * @param maxBytes The size limit of the directory, in bytes.
+   * @param logger The logger.
+   */
+  public DatasetCache(File dir, long maxBytes, Logger logger) {
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    this.logger = logger;
+    this.dir.mkdirs();
+  }
+  
+  /**
+   * Returns the cache configured by system properties, limited to 512 MB by default, or null 
+   * if no cache directory is configured.
+   * @param logger The logger.
+   * @return The cache, or null.
+   */
+  public static DatasetCache fromSystemProperties(Logger logger) {
+    String dir = System.getProperty(DIR_KEY);
+    if (dir == null) {
+      return null;
+    }
+    long megabytes = Long.parseLong(System.getProperty(MAX_MEGABYTES_KEY, "512"));
+    return new DatasetCache(new File(dir), megabytes * 1024 * 1024, logger);
+  }
+  
+  /**
+   * Returns the key of a dataset, which is also its file name without the suffix.
+   * @param scenario The scenario class.
+   * @param seed The seed of the scenario's random number generator.
+   * @param scale The scale of the scenario, such as its numbers of users and days.
+   * @param configuration Other settings that affect the generated data.
+   * @return The key.
+   */
+  public static String makeKey(Class<?> scenario, long seed, String scale, 
+      String configuration) {
+    CRC32 crc = new CRC32();
+    update(crc, scenario);
+    update(crc, SimData.class);
+    for (Class<?> generator : generatorClasses) {
+      update(crc, generator);
+    }
+    crc.update((GENERATOR_VERSION + "|" + scale + "|" + configuration).getBytes());
+    return scenario.getSimpleName() + "-" + seed + "-" + scale.replaceAll("[^A-Za-z0-9]", "_")
+      + "-" + Long.toHexString(crc.getValue());
+  }
+  
+  /**
+   * Adds the bytes of the class file to the checksum, if the class file can be found.
+   * @param crc The checksum.
+   * @param type The class.
+   */
+  private static void update(CRC32 crc, Class<?> type) {
+    String name = "/" + type.getName().replace('.', '/') + ".class";
+    InputStream in = type.getResourceAsStream(name);
+    if (in == null) {
+      return;
+    }
+    byte[] buffer = new byte[4096];
+    try {
+      try {
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+          crc.update(buffer, 0, count);
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      crc.update(name.getBytes());
+    }
+  }
+  
+  /**
+   * Returns the file of the dataset with the given key, and marks it as recently used, or
+   * returns null if the dataset is not cached.
+   * @param key The key.
+   * @return The file, or null.
+   */
+  public File lookup(String key) {
+    File file = new File(this.dir, key + SUFFIX);
+    if (!file.isFile()) {
+      return null;
+    }
+    file.setLastModified(System.currentTimeMillis());
+    return file;
+  }
+  
+  /**
+   * Returns a sink that forwards everything to the delegate and records it as the dataset
+   * with the given key. The dataset is added to the cache when the sink is closed.
+   * @param key The key.
+   * @param delegate The sink that receives the generated data.
+   * @return The recording sink.
+   * @throws IOException If the dataset file cannot be created.
+   */
+  public RecordingSink record(String key, SensorDataSink delegate) throws IOException {
+    File temp = File.createTempFile(key + "-rec", ".tmp", this.dir);
+    return new RecordingSink(this, delegate, temp, new File(this.dir, key + SUFFIX));
+  }
+  
+  /**
+   * Adds every instance of the cached dataset to the sink, in the order it was generated.
+   * @param file The dataset file, as returned by lookup.
+   * @param sink The sink.
+   * @return The number of instances replayed.
+   * @throws Exception If the file cannot be read or the sink fails.
+   */
+  public long replay(File file, SensorDataSink sink) throws Exception {
+    long count = 0;
+    Unmarshaller unmarshaller = SensorDataXml.getContext().createUnmarshaller();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(file), 64 * 1024), "UTF-8"));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        sink.add(SensorDataXml.fromXml(unmarshaller, line));
+        count++;
+      }
+    }
+    finally {
+      reader.close();
+    }
+    this.logger.info("DatasetCache: replayed " + count + " instances from " + file);
+    return count;
+  }
+  
+  /**
+   * Moves a completed recording into place, then evicts the least recently used datasets 
+   * until the cache fits within its size limit. The new dataset itself is never evicted.
+   * @param temp The completed recording.
+   * @param target The dataset file.
+   */
+  void commit(File temp, File target) {
+    synchronized (DatasetCache.class) {
+      target.delete();
+      if (!temp.renameTo(target)) {
+        temp.delete();
+        this.logger.warning("DatasetCache: could not create " + target);
+        return;
+      }
+      File[] files = this.dir.listFiles();
+      if (files == null) {
+        return;
+      }
+      Arrays.sort(files, new Comparator<File>() {
+        /**
+         * Orders files from most to least recently used.
+         * @param f1 The first file.
+         * @param f2 The second file.
+         * @return The order.
+         */
+        public int compare(File f1, File f2) {
+          long diff = f2.lastModified() - f1.lastModified();
+          return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+        }
+      });
+      long total = target.length();
+      for (File file : files) {
+        if (file.getName().endsWith(SUFFIX) && !file.equals(target)) {
+          long length = file.length();
+          if ((total + length > this.maxBytes) && file.delete()) {
+            this.logger.info("DatasetCache: evicted " + file);
+          }
+          else {
+            total += length;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package org.hackystat.simdata.cache;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SensorDataXml;
+
+/**
+ * A sink that records everything it forwards as a dataset of a DatasetCache. The dataset is
+ * only added to the cache if the sink is closed without errors, so an interrupted run never
+ * leaves a partial dataset behind.
+ * 
+ * @author Philip Johnson
+ */
+public class RecordingSink implements SensorDataSink {
+  
+  /** The cache. */
+  private final DatasetCache cache;
+  /** The sink that receives the data. */
+  private final SensorDataSink delegate;
+  /** The file being recorded. */
+  private final File temp;
+  /** The dataset file it becomes. */
+  private final File target;
+  /** The writer of the recording, or null once closed. */
+  private Writer writer;
+  /** True if adding to the delegate or recording failed. */
+  private boolean failed = false;
+  
+  /**
+   * Creates a recording sink.
+   * @param cache The cache.
+   * @param delegate The sink that receives the data.
+   * @param temp The file being recorded.
+   * @param target The dataset file it becomes.
+   * @throws IOException If the file cannot be opened.
+   */
+  RecordingSink(DatasetCache cache, SensorDataSink delegate, File temp, File target) 
+    throws IOException {
+    this.cache = cache;
+    this.delegate = delegate;
+    this.temp = temp;
+    this.target = target;
+    this.writer = new BufferedWriter(new OutputStreamWriter(
+        new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024), "UTF-8"));
+  }
+  
+  /**
+   * Records the data and forwards it to the delegate.
+   * @param data The sensor data.
+   * @throws Exception If it cannot be recorded or the delegate fails.
+   */
+  public synchronized void add(SensorData data) throws Exception {
+    try {
+      this.writer.write(SensorDataXml.toXml(data));
+      this.writer.write('\n');
+      this.delegate.add(data);
+    }
+    catch (Exception e) {
+      this.failed = true;
+      throw e;
+    }
+  }
+  
+  /**
+   * Flushes the delegate.
+   * @throws Exception If the delegate fails.
+   */
+  public void flush() throws Exception {
+    this.delegate.flush();
+  }
+  
+  /**
+   * Closes the delegate, then adds the recording to the cache if everything succeeded.
+   * @throws Exception If the delegate fails.
+   */
+  public synchronized void close() throws Exception {
+    if (this.writer == null) {
+      this.delegate.close();
+      return;
+    }
+    try {
+      this.delegate.close();
+    }
+    catch (Exception e) {
+      this.failed = true;
+      throw e;
+    }
+    finally {
+      this.writer.close();
+      this.writer = null;
+      if (this.failed) {
+        this.temp.delete();
+      }
+      else {
+        this.cache.commit(this.temp, this.target);
+      }
+    }
+  }
+}
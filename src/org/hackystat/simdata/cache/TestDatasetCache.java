@@ -0,0 +1,118 @@
+package org.hackystat.simdata.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.simdata.SensorDataXml;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests recording, replay and eviction of cached datasets.
+ * @author Philip Johnson
+ */
+public class TestDatasetCache {
+  
+  /** The cache directory. */
+  private File dir;
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.simdata");
+  
+  /**
+   * Creates an empty cache directory.
+   * @throws Exception If it cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.dir = File.createTempFile("simdata-cache", "");
+    this.dir.delete();
+  }
+  
+  /**
+   * Deletes the cache directory.
+   */
+  @After
+  public void tearDown() {
+    File[] files = this.dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    this.dir.delete();
+  }
+  
+  /**
+   * Records a dataset of the given size.
+   * @param cache The cache.
+   * @param key The key.
+   * @param size The number of instances.
+   * @return The recorded data.
+   * @throws Exception If problems occur.
+   */
+  private List<SensorData> record(DatasetCache cache, String key, int size) throws Exception {
+    ListSink target = new ListSink();
+    RecordingSink sink = cache.record(key, target);
+    for (int i = 0; i < size; i++) {
+      sink.add(SensorDataTestHelper.makeBuild(SensorDataTestHelper.JOE,
+          "/users/joe/Build" + i + ".xml", i));
+    }
+    sink.close();
+    return target.getList();
+  }
+  
+  /**
+   * Checks that a recorded dataset replays exactly, and that keys depend on every input.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testRecordAndReplay() throws Exception {
+    DatasetCache cache = new DatasetCache(dir, 1024 * 1024, logger);
+    String key = DatasetCache.makeKey(TestDatasetCache.class, 0, "1x10", "");
+    assertEquals("Checking stable", key, 
+        DatasetCache.makeKey(TestDatasetCache.class, 0, "1x10", ""));
+    assertFalse("Checking seed", key.equals(
+        DatasetCache.makeKey(TestDatasetCache.class, 1, "1x10", "")));
+    assertFalse("Checking configuration", key.equals(
+        DatasetCache.makeKey(TestDatasetCache.class, 0, "1x10", "bursty")));
+    assertNull("Checking miss", cache.lookup(key));
+    List<SensorData> recorded = record(cache, key, 100);
+    File file = cache.lookup(key);
+    assertNotNull("Checking hit", file);
+    ListSink replayed = new ListSink();
+    assertEquals("Checking replay count", 100, cache.replay(file, replayed));
+    for (int i = 0; i < recorded.size(); i++) {
+      assertEquals("Checking instance " + i, SensorDataXml.toXml(recorded.get(i)), 
+          SensorDataXml.toXml(replayed.getList().get(i)));
+    }
+  }
+  
+  /**
+   * Checks that the least recently used dataset is evicted when the cache is full.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testEviction() throws Exception {
+    DatasetCache cache = new DatasetCache(dir, 1024 * 1024, logger);
+    record(cache, "a", 500);
+    long size = cache.lookup("a").length();
+    cache = new DatasetCache(dir, 2 * size + size / 2, logger);
+    record(cache, "b", 500);
+    cache.lookup("a").setLastModified(System.currentTimeMillis() - 10000);
+    cache.lookup("b").setLastModified(System.currentTimeMillis() - 5000);
+    record(cache, "c", 500);
+    assertNull("Checking a evicted", cache.lookup("a"));
+    assertNotNull("Checking b kept", cache.lookup("b"));
+    assertNotNull("Checking c kept", cache.lookup("c"));
+  }
+}
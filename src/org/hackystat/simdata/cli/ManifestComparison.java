@@ -0,0 +1,171 @@
+package org.hackystat.simdata.cli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compares the manifest of a run with the manifest of a baseline run of the same workload.
+ * Throughput falling, or the time of a phase rising, by more than the threshold is a
+ * regression; changes in the send latency percentiles are reported but, being noisier, are
+ * not. Differences in what was run, such as the scenarios, seed, scale or number of events,
+ * are reported as warnings and make the runs incomparable, since no verdict can be drawn from
+ * them. A run limited by a duration generates as many events as it can in that time, so the
+ * number of events of such runs is not compared; their throughput still is.
+ *
+ * @author Philip Johnson
+ */
+public class ManifestComparison {
+
+  /**
+   * The run settings and counts that must match for the runs to be comparable, events only
+   * when the runs have no duration.
+   */
+  private static final String[] workloadKeys = { "run.scenarios", "run.seed", "run.scale",
+    "run.rate", "run.duration", "run.interleave", "run.sample", "events" };
+  /** The latency percentiles reported. */
+  private static final String[] latencyKeys = { "sendLatencyMicros.p50",
+    "sendLatencyMicros.p90", "sendLatencyMicros.p99", "sendLatencyMicros.p999" };
+
+  /** The regressions found. */
+  private final List<String> regressions = new ArrayList<String>();
+  /** The differences that make the runs incomparable. */
+  private final List<String> warnings = new ArrayList<String>();
+  /** The changes measured, one per line. */
+  private final List<String> changes = new ArrayList<String>();
+  /** The threshold, in percent. */
+  private final double thresholdPercent;
+
+  /**
+   * Compares two manifests.
+   * @param baseline The manifest of the baseline run.
+   * @param current The manifest of the run being checked.
+   * @param thresholdPercent The change, in percent, beyond which a change is a regression.
+   */
+  public ManifestComparison(RunManifest baseline, RunManifest current,
+      double thresholdPercent) {
+    this.thresholdPercent = thresholdPercent;
+    boolean timed = !isZero(baseline.get("run.duration"));
+    for (String key : workloadKeys) {
+      if (timed && "events".equals(key)) {
+        continue;
+      }
+      String before = baseline.get(key);
+      String after = current.get(key);
+      if ((before == null) ? (after != null) : !before.equals(after)) {
+        this.warnings.add("Workloads differ: " + key + " was " + before + ", now " + after);
+      }
+    }
+    compare(baseline, current, "eventsPerSecond", false, true);
+    Set<String> phases = new TreeSet<String>();
+    for (Object key : baseline.getProperties().keySet()) {
+      String name = String.valueOf(key);
+      if (name.startsWith("phase.") && (current.get(name) != null)) {
+        phases.add(name);
+      }
+    }
+    for (String phase : phases) {
+      compare(baseline, current, phase, true, true);
+    }
+    for (String key : latencyKeys) {
+      compare(baseline, current, key, true, false);
+    }
+  }
+
+  /**
+   * Returns true if the setting is absent or zero.
+   * @param value The setting, possibly null.
+   * @return True if it is absent or zero.
+   */
+  private static boolean isZero(String value) {
+    try {
+      return (value == null) || (Double.parseDouble(value) == 0);
+    }
+    catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Compares one measure of the runs, recording the change and any regression.
+   * @param baseline The manifest of the baseline run.
+   * @param current The manifest of the run being checked.
+   * @param key The measure.
+   * @param lowerIsBetter True if the measure is a time, false if it is a rate.
+   * @param checked True if a change beyond the threshold is a regression.
+   */
+  private void compare(RunManifest baseline, RunManifest current, String key,
+      boolean lowerIsBetter, boolean checked) {
+    double before = baseline.getNumber(key);
+    double after = current.getNumber(key);
+    if (Double.isNaN(before) || Double.isNaN(after) || (before <= 0)) {
+      return;
+    }
+    double percent = 100 * (after - before) / before;
+    double worse = lowerIsBetter ? percent : -percent;
+    String change = String.format("%s: %s -> %s (%+.1f%%)", key, baseline.get(key),
+        current.get(key), percent);
+    this.changes.add(change);
+    if (checked && (worse > this.thresholdPercent)) {
+      this.regressions.add(change);
+    }
+  }
+
+  /**
+   * Returns the regressions found.
+   * @return The regressions, empty if there are none.
+   */
+  public List<String> getRegressions() {
+    return this.regressions;
+  }
+
+  /**
+   * Returns the differences in what was run.
+   * @return The warnings, empty if the runs are comparable.
+   */
+  public List<String> getWarnings() {
+    return this.warnings;
+  }
+
+  /**
+   * Returns true if the runs had the same workload, so that their measures can be compared.
+   * @return True if there are no warnings.
+   */
+  public boolean isComparable() {
+    return this.warnings.isEmpty();
+  }
+
+  /**
+   * Returns true if a regression was found.
+   * @return True if a regression was found.
+   */
+  public boolean hasRegressions() {
+    return !this.regressions.isEmpty();
+  }
+
+  /**
+   * Returns a report of the comparison.
+   * @return The report, one line per warning, change and regression, and the verdict.
+   */
+  public String getReport() {
+    StringBuilder report = new StringBuilder();
+    for (String warning : this.warnings) {
+      report.append("WARNING ").append(warning).append('\n');
+    }
+    for (String change : this.changes) {
+      report.append("  ").append(change).append('\n');
+    }
+    for (String regression : this.regressions) {
+      report.append(String.format("REGRESSION beyond %.1f%%: ", this.thresholdPercent))
+        .append(regression).append('\n');
+    }
+    if (!isComparable()) {
+      report.append("Not comparable: the workloads differ.\n");
+    }
+    else if (this.regressions.isEmpty()) {
+      report.append(String.format("No regression beyond %.1f%%.\n", this.thresholdPercent));
+    }
+    return report.toString();
+  }
+}
@@ -0,0 +1,154 @@
+package org.hackystat.simdata.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.sink.RunMetrics;
+
+/**
+ * The record of one SimData run, written as a properties file so that runs can be repeated and
+ * compared. It holds what was run ("run.scenarios", "run.seed", "run.scale" and the other
+ * command line settings), what ran it ("simdata.version", "java.version", the SensorShell
+ * settings as "shell.&lt;key&gt;", and every org.hackystat system property as
+ * "property.&lt;key&gt;"), and the run's metrics under their own names, so a metrics file can
+ * be compared like a manifest. A run sending through SensorShell has no send latencies, since
+ * the shells autosend on their own threads, and says so in "sendLatencyMicros".
+ *
+ * @author Philip Johnson
+ */
+public class RunManifest {
+
+  /** The manifest file written by default. */
+  public static final String DEFAULT_FILE = "simdata-manifest.properties";
+
+  /** The value of "sendLatencyMicros" for runs whose send latencies cannot be measured. */
+  public static final String SHELL_LATENCY = 
+    "not measured: SensorShell autosends on its own threads";
+
+  /** The properties of the manifest. */
+  private final Properties properties;
+
+  /**
+   * Creates a manifest holding the given properties.
+   * @param properties The properties.
+   */
+  public RunManifest(Properties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Creates the manifest of a run.
+   * @param settings The run's settings, keyed without the "run." prefix.
+   * @param metrics The run's metrics.
+   * @return The manifest.
+   */
+  public static RunManifest make(Map<String, String> settings, RunMetrics metrics) {
+    Properties properties = new Properties();
+    for (Map.Entry<String, String> entry : settings.entrySet()) {
+      properties.setProperty("run." + entry.getKey(), entry.getValue());
+    }
+    properties.setProperty("simdata.version", getVersion());
+    properties.setProperty("java.version", System.getProperty("java.version"));
+    Properties shell = ClientPool.getShellSettings();
+    for (Object key : shell.keySet()) {
+      properties.setProperty("shell." + key, shell.getProperty(String.valueOf(key)));
+    }
+    Properties system = System.getProperties();
+    for (Object key : system.keySet()) {
+      String name = String.valueOf(key);
+      String value = system.getProperty(name);
+      if (name.startsWith("org.hackystat.") && (value != null)) {
+        properties.setProperty("property." + name, value);
+      }
+    }
+    properties.putAll(metrics.toProperties());
+    if ("host".equals(settings.get("sink")) 
+        && "shell".equals(System.getProperty(SimData.SENDER_KEY, "shell"))) {
+      properties.setProperty("sendLatencyMicros", SHELL_LATENCY);
+    }
+    return new RunManifest(properties);
+  }
+
+  /**
+   * Returns the version of SimData, from its jar manifest.
+   * @return The version, or "development" when not run from a jar.
+   */
+  public static String getVersion() {
+    Package simdata = SimData.class.getPackage();
+    String version = (simdata == null) ? null : simdata.getImplementationVersion();
+    return (version == null) ? "development" : version;
+  }
+
+  /**
+   * Reads a manifest, or a metrics file.
+   * @param file The file.
+   * @return The manifest.
+   * @throws IOException If it cannot be read.
+   */
+  public static RunManifest read(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    }
+    finally {
+      in.close();
+    }
+    return new RunManifest(properties);
+  }
+
+  /**
+   * Writes the manifest.
+   * @param file The file.
+   * @throws IOException If it cannot be written.
+   */
+  public void write(File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      this.properties.store(out, "SimData run manifest");
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns a property of the manifest.
+   * @param key The key.
+   * @return The value, or null if the manifest does not have it.
+   */
+  public String get(String key) {
+    return this.properties.getProperty(key);
+  }
+
+  /**
+   * Returns a numeric property of the manifest.
+   * @param key The key.
+   * @return The value, or NaN if the manifest does not have it or it is not a number.
+   */
+  public double getNumber(String key) {
+    String value = this.properties.getProperty(key);
+    try {
+      return (value == null) ? Double.NaN : Double.parseDouble(value);
+    }
+    catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Returns the properties of the manifest.
+   * @return The properties.
+   */
+  public Properties getProperties() {
+    return this.properties;
+  }
+}
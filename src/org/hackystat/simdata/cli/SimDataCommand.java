@@ -0,0 +1,524 @@
+package org.hackystat.simdata.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.SamplingPolicy;
+import org.hackystat.simdata.Scenario;
+import org.hackystat.simdata.ScenarioIterator;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.SimDataFactory;
+import org.hackystat.simdata.multitenant.MultiTenant;
+import org.hackystat.simdata.profile.FlightRecording;
+import org.hackystat.simdata.profile.ProfileEvent;
+import org.hackystat.simdata.simpleportfolio.SimplePortfolio;
+import org.hackystat.simdata.simpletelemetry.SimpleTelemetry;
+import org.hackystat.simdata.sink.DeadlineException;
+import org.hackystat.simdata.sink.FileSink;
+import org.hackystat.simdata.sink.MetricsSink;
+import org.hackystat.simdata.sink.Pacer;
+import org.hackystat.simdata.sink.PacingSink;
+import org.hackystat.simdata.sink.RunMetrics;
+import org.hackystat.simdata.sink.SharedSink;
+import org.hackystat.simdata.stream.ReorderingSink;
+import org.hackystat.simdata.stream.TimeOrderedMerge;
+import org.hackystat.utilities.logger.HackystatLogger;
+
+/**
+ * The SimData command line. Runs the chosen scenarios at the chosen scale, sending their data
+ * to a SensorBase, a file, or nowhere, optionally paced, time limited, and measured. With only
+ * a host argument it runs SimpleTelemetry and SimplePortfolio, as SimData always has. Other
+ * settings, such as the sender and arrival model, are still taken from system properties.
+ * Each run writes a RunManifest, and the compare command compares two of them.
+ * 
+ * @author Philip Johnson
+ */
+public class SimDataCommand implements SimDataFactory {
+  
+  /** The usage message. */
+  static final String USAGE = 
+    "Usage: java -jar simdata.jar [options] [host]\n"
+    + "   or: java -jar simdata.jar compare BASELINE CURRENT [THRESHOLD]\n"
+    + "       Compares two manifests, exiting with status 1 if throughput or a phase\n"
+    + "       regressed by more than THRESHOLD percent (default 5), or if the runs\n"
+    + "       had different workloads.\n"
+    + "  --scenarios=LIST   Comma separated: telemetry, portfolio, multitenant.\n"
+    + "                     Default: telemetry,portfolio.\n"
+    + "  --seed=N           The seed of the scenarios' random numbers. Default: 0.\n"
+    + "  --scale=N          Copies of telemetry and portfolio, each in its own domain, and\n"
+    + "                     tenants of multitenant. Default: 1.\n"
+    + "  --sink=SINK        host (the default), null, or file:PATH. Only host needs a host.\n"
+    + "  --threads=N        The number of copies or tenants generated at once. Default: 1.\n"
+    + "  --rate=N           The maximum number of instances per second. Default: no limit.\n"
+    + "  --duration=S       Stop generating after S seconds. Default: no limit.\n"
+    + "  --metrics=PATH     Write counts and throughput to a properties file.\n"
+    + "  --manifest=PATH    Write the settings, versions and metrics of the run to a\n"
+    + "                     properties file, or none. Default: "
+    + RunManifest.DEFAULT_FILE + ".\n"
+    + "  --interleave=N     Send each instance's data in timestamp order within a lookahead\n"
+    + "                     of N instances, and merge the copies of telemetry and\n"
+    + "                     portfolio by timestamp, generating them on one thread.\n"
+    + "  --sample=F         Keep the fraction F of the generated data, chosen by a hash of\n"
+    + "                     each instance so the sample is the same on every run; see\n"
+    + "                     SamplingPolicy for selecting users, resources and days.\n"
+    + "  --jfr=PATH         Record the run with Java Flight Recorder, including SimData's\n"
+    + "                     phase, send and provisioning events, to PATH.\n"
+    + "  --dry-run          Print what would be run, and exit.\n"
+    + "Exits with status 2 if the arguments are not valid.\n";
+  
+  /** The MultiTenant projects per tenant. */
+  private static final int tenantProjects = 2;
+  /** The MultiTenant team size. */
+  private static final int tenantTeamSize = 5;
+  /** The MultiTenant days. */
+  private static final int tenantDays = 30;
+  
+  /** The SensorBase host, or null. */
+  private String host = null;
+  /** The scenarios to run, in order. */
+  private List<String> scenarios = Arrays.asList("telemetry", "portfolio");
+  /** The seed. */
+  private long seed = 0;
+  /** The scale. */
+  private int scale = 1;
+  /** The sink: "host", "null", or "file:" followed by a path. */
+  private String sink = "host";
+  /** The number of threads. */
+  private int threads = 1;
+  /** The rate limit in instances per second, or 0. */
+  private double rate = 0;
+  /** The duration limit in seconds, or 0. */
+  private long duration = 0;
+  /** The metrics file, or null. */
+  private File metricsFile = null;
+  /** The manifest file, or null. */
+  private File manifestFile = new File(RunManifest.DEFAULT_FILE);
+  /** The lookahead of timestamp ordering, or 0 to send data in generation order. */
+  private int interleave = 0;
+  /** The fraction of the generated data kept. */
+  private double sample = 1.0;
+  /** The flight recording file, or null. */
+  private File jfrFile = null;
+  /** True to print the plan and exit. */
+  private boolean dryRun = false;
+  
+  /** The logger. */
+  private final Logger logger = HackystatLogger.getLogger("org.hackystat.simdata", "simdata");
+  /** The pacer shared by every SimData instance of the run. */
+  private Pacer pacer;
+  /** The metrics shared by every SimData instance of the run. */
+  private RunMetrics metrics;
+  /** The file shared by every SimData instance of the run, or null. */
+  private FileSink fileSink;
+  /** The SimData instances of the run. */
+  private final List<SimData> instances = 
+    Collections.synchronizedList(new ArrayList<SimData>());
+  
+  /**
+   * Parses the command line.
+   * @param args The arguments.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  public SimDataCommand(String[] args) {
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        if (this.host != null) {
+          throw new IllegalArgumentException("More than one host: " + arg);
+        }
+        this.host = arg;
+      }
+      else if ("--dry-run".equals(arg)) {
+        this.dryRun = true;
+      }
+      else if (arg.indexOf('=') < 0) {
+        throw new IllegalArgumentException("Unknown option: " + arg);
+      }
+      else {
+        parseOption(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      }
+    }
+    for (String scenario : this.scenarios) {
+      if (!Arrays.asList("telemetry", "portfolio", "multitenant").contains(scenario)) {
+        throw new IllegalArgumentException("Unknown scenario: " + scenario);
+      }
+    }
+    if (!"host".equals(this.sink) && !"null".equals(this.sink) 
+        && !this.sink.startsWith("file:")) {
+      throw new IllegalArgumentException("Unknown sink: " + this.sink);
+    }
+    if ("host".equals(this.sink) && (this.host == null)) {
+      throw new IllegalArgumentException("The host sink needs a host.");
+    }
+    if ((this.scale < 1) || (this.threads < 1)) {
+      throw new IllegalArgumentException("Scale and threads must be at least 1.");
+    }
+    if (this.interleave < 0) {
+      throw new IllegalArgumentException("Interleave must not be negative.");
+    }
+    if ((this.sample < 0) || (this.sample > 1)) {
+      throw new IllegalArgumentException("Sample must be between 0 and 1.");
+    }
+  }
+  
+  /**
+   * Sets the option with the given name.
+   * @param name The option name, without the leading dashes.
+   * @param value The value.
+   * @throws IllegalArgumentException If the option or its value is not valid.
+   */
+  private void parseOption(String name, String value) {
+    try {
+      if ("scenarios".equals(name)) {
+        this.scenarios = Arrays.asList(value.split(","));
+      }
+      else if ("seed".equals(name)) {
+        this.seed = Long.parseLong(value);
+      }
+      else if ("scale".equals(name)) {
+        this.scale = Integer.parseInt(value);
+      }
+      else if ("sink".equals(name)) {
+        this.sink = value;
+      }
+      else if ("threads".equals(name)) {
+        this.threads = Integer.parseInt(value);
+      }
+      else if ("rate".equals(name)) {
+        this.rate = Double.parseDouble(value);
+      }
+      else if ("duration".equals(name)) {
+        this.duration = Long.parseLong(value);
+      }
+      else if ("metrics".equals(name)) {
+        this.metricsFile = new File(value);
+      }
+      else if ("manifest".equals(name)) {
+        this.manifestFile = "none".equals(value) ? null : new File(value);
+      }
+      else if ("interleave".equals(name)) {
+        this.interleave = Integer.parseInt(value);
+      }
+      else if ("sample".equals(name)) {
+        this.sample = Double.parseDouble(value);
+      }
+      else if ("jfr".equals(name)) {
+        this.jfrFile = new File(value);
+      }
+      else {
+        throw new IllegalArgumentException("Unknown option: --" + name);
+      }
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a number: --" + name + "=" + value, e);
+    }
+  }
+  
+  /**
+   * Returns a description of the run.
+   * @return The description.
+   */
+  String getPlan() {
+    return "SimData: scenarios " + this.scenarios + ", seed " + this.seed + ", scale " 
+      + this.scale + ", sink " + this.sink + ((this.host == null) ? "" : " (" + this.host + ")")
+      + ", " + this.threads + " threads, rate " + ((this.rate > 0) ? this.rate : "unlimited") 
+      + ", duration " + ((this.duration > 0) ? this.duration + " s" : "unlimited") 
+      + ", metrics " + ((this.metricsFile == null) ? "not written" : this.metricsFile)
+      + ", manifest " + ((this.manifestFile == null) ? "not written" : this.manifestFile)
+      + ((this.interleave > 0) ? ", interleaved within " + this.interleave : "")
+      + ((this.sample < 1) ? ", sample " + this.sample : "")
+      + ((this.jfrFile == null) ? "" : ", flight recording " + this.jfrFile);
+  }
+  
+  /**
+   * Returns the settings of the run, as recorded in its manifest.
+   * @return The settings, keyed by option name.
+   */
+  Map<String, String> getSettings() {
+    Map<String, String> settings = new LinkedHashMap<String, String>();
+    settings.put("scenarios", this.scenarios.toString().replaceAll("[\\[\\] ]", ""));
+    settings.put("seed", String.valueOf(this.seed));
+    settings.put("scale", String.valueOf(this.scale));
+    settings.put("sink", this.sink);
+    settings.put("host", (this.host == null) ? "" : this.host);
+    settings.put("threads", String.valueOf(this.threads));
+    settings.put("rate", String.valueOf(this.rate));
+    settings.put("duration", String.valueOf(this.duration));
+    settings.put("interleave", String.valueOf(this.interleave));
+    settings.put("sample", String.valueOf(this.sample));
+    return settings;
+  }
+  
+  /**
+   * Makes a SimData instance for the run: offline unless the sink is the host, and sending 
+   * through the run's shared file, metrics, and pacer.
+   * @param domain The domain suffix for users.
+   * @return The instance.
+   * @throws Exception If the host cannot be contacted.
+   */
+  public SimData makeSimData(String domain) throws Exception {
+    SimData simData = new SimData("host".equals(this.sink) ? this.host : null, domain);
+    if (this.sample < 1) {
+      SamplingPolicy sampling = simData.getSamplingPolicy();
+      simData.setSamplingPolicy((sampling == null) 
+          ? new SamplingPolicy(null, null, null, this.sample) : sampling.withFraction(this.sample));
+    }
+    if (this.fileSink != null) {
+      simData.setSink(new SharedSink(this.fileSink));
+    }
+    SensorDataSink wrapped = new MetricsSink(simData.getSink(), this.metrics);
+    if (!this.pacer.isInactive()) {
+      wrapped = new PacingSink(wrapped, this.pacer);
+    }
+    if (this.interleave > 0) {
+      wrapped = new ReorderingSink(wrapped, this.interleave);
+    }
+    simData.setSink(wrapped);
+    this.instances.add(simData);
+    return simData;
+  }
+  
+  /**
+   * Runs the scenarios, timing each as a phase, then logs the metrics and writes them and the
+   * manifest if requested. If the duration elapses, generation stops and the data already
+   * generated is still sent. If requested, the whole run is recorded by Java Flight Recorder.
+   * @throws Exception If problems occur.
+   */
+  public void run() throws Exception {
+    if (this.dryRun) {
+      System.out.println(getPlan());
+      return;
+    }
+    this.logger.info(getPlan());
+    this.pacer = new Pacer(this.rate, this.duration * 1000);
+    this.metrics = new RunMetrics();
+    RunMetrics.setCurrent(this.metrics);
+    if (this.sink.startsWith("file:")) {
+      this.fileSink = new FileSink(new File(this.sink.substring("file:".length())));
+    }
+    FlightRecording recording = 
+      (this.jfrFile == null) ? null : new FlightRecording(this.jfrFile, this.logger);
+    try {
+      for (String scenario : this.scenarios) {
+        long start = System.nanoTime();
+        long events = this.metrics.getTotal();
+        ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.PHASE);
+        try {
+          runScenario(scenario);
+        }
+        finally {
+          this.metrics.recordPhase(scenario, System.nanoTime() - start);
+          ProfileEvent.commit(event, scenario, this.metrics.getTotal() - events);
+        }
+      }
+    }
+    catch (Exception e) {
+      if (!isDeadline(e)) {
+        throw e;
+      }
+      this.logger.info("SimData: the duration has elapsed; sending what has been generated.");
+      synchronized (this.instances) {
+        for (SimData simData : this.instances) {
+          simData.quitShells();
+        }
+      }
+    }
+    finally {
+      if (this.fileSink != null) {
+        this.fileSink.close();
+      }
+      if (recording != null) {
+        recording.stop();
+      }
+      RunMetrics.setCurrent(null);
+    }
+    this.logger.info("SimData: " + this.metrics.toProperties());
+    if (this.metricsFile != null) {
+      this.metrics.write(this.metricsFile);
+    }
+    if (this.manifestFile != null) {
+      RunManifest.make(getSettings(), this.metrics).write(this.manifestFile);
+    }
+  }
+  
+  /**
+   * Compares two manifests and prints the comparison.
+   * @param args The baseline manifest, the current manifest, and optionally the threshold
+   * in percent.
+   * @return True if a regression was found, or the runs had different workloads.
+   * @throws Exception If a manifest cannot be read.
+   * @throws IllegalArgumentException If the arguments are not valid.
+   */
+  static boolean compare(String[] args) throws Exception {
+    if ((args.length < 2) || (args.length > 3)) {
+      throw new IllegalArgumentException("compare needs two manifests.");
+    }
+    double threshold;
+    try {
+      threshold = (args.length > 2) ? Double.parseDouble(args[2]) : 5;
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a number: " + args[2], e);
+    }
+    ManifestComparison comparison = new ManifestComparison(
+        RunManifest.read(new File(args[0])), RunManifest.read(new File(args[1])), threshold);
+    System.out.print(comparison.getReport());
+    return comparison.hasRegressions() || !comparison.isComparable();
+  }
+  
+  /**
+   * Runs one scenario at the run's scale.
+   * @param scenario The scenario name.
+   * @throws Exception If problems occur.
+   */
+  private void runScenario(final String scenario) throws Exception {
+    if ("multitenant".equals(scenario)) {
+      new MultiTenant(this, this.scale, tenantProjects, tenantTeamSize, tenantDays, 
+          this.threads, 0, this.seed);
+      return;
+    }
+    if (this.interleave > 0) {
+      runMerged(scenario);
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, this.scale));
+    try {
+      List<Future<Void>> copies = new ArrayList<Future<Void>>();
+      for (int i = 0; i < this.scale; i++) {
+        final String domain = (i == 0) ? SimData.getTestDomain() 
+            : "@copy" + i + ".simdata.hackystat.org";
+        copies.add(executor.submit(new Callable<Void>() {
+          /**
+           * Runs one copy of the scenario.
+           * @return Nothing.
+           * @throws Exception If problems occur.
+           */
+          public Void call() throws Exception {
+            if ("telemetry".equals(scenario)) {
+              new SimpleTelemetry(makeSimData(domain), seed);
+            }
+            else {
+              new SimplePortfolio(makeSimData(domain), seed);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> copy : copies) {
+        try {
+          copy.get();
+        }
+        catch (ExecutionException e) {
+          throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Runs the copies of one scenario step by step, merging their data by timestamp and 
+   * sending each instance through the sink of its own copy.
+   * @param scenario The scenario name, "telemetry" or "portfolio".
+   * @throws Exception If problems occur.
+   */
+  private void runMerged(String scenario) throws Exception {
+    List<SimData> copies = new ArrayList<SimData>();
+    List<SensorDataSink> sinks = new ArrayList<SensorDataSink>();
+    List<ScenarioIterator> sources = new ArrayList<ScenarioIterator>();
+    try {
+      for (int i = 0; i < this.scale; i++) {
+        SimData simData = makeSimData((i == 0) ? SimData.getTestDomain() 
+            : "@copy" + i + ".simdata.hackystat.org");
+        copies.add(simData);
+        sinks.add(simData.getSink());
+        Scenario copy = "telemetry".equals(scenario) 
+            ? SimpleTelemetry.makeScenario(simData, this.seed) 
+            : SimplePortfolio.makeScenario(simData, this.seed);
+        sources.add(new ScenarioIterator(copy, true));
+      }
+      TimeOrderedMerge merge = new TimeOrderedMerge(sources, this.interleave);
+      while (merge.hasNext()) {
+        SensorData data = merge.next();
+        sinks.get(merge.getLastSource()).add(data);
+      }
+    }
+    finally {
+      for (int i = 0; i < sinks.size(); i++) {
+        copies.get(i).setSink(sinks.get(i));
+      }
+    }
+    for (SimData simData : copies) {
+      simData.quitShells();
+    }
+  }
+  
+  /**
+   * Returns true if the exception, or any of its causes, is a DeadlineException.
+   * @param e The exception.
+   * @return True if the run's duration elapsed.
+   */
+  private static boolean isDeadline(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof DeadlineException) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Runs the command line, exiting with status 2 if the arguments are not valid.
+   * @param args The arguments; see USAGE.
+   * @throws Exception If problems occur.
+   */
+  public static void main(String[] args) throws Exception {
+    if ((args.length > 0) && "compare".equals(args[0])) {
+      boolean regressed;
+      try {
+        regressed = compare(Arrays.asList(args).subList(1, args.length).toArray(new String[0]));
+      }
+      catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+        System.out.print(USAGE);
+        System.exit(2);
+        return;
+      }
+      if (regressed) {
+        System.exit(1);
+      }
+      return;
+    }
+    SimDataCommand command;
+    try {
+      command = new SimDataCommand(args);
+    }
+    catch (IllegalArgumentException e) {
+      System.out.println(e.getMessage());
+      System.out.print(USAGE);
+      System.exit(2);
+      return;
+    }
+    try {
+      command.run();
+    }
+    finally {
+      ClientPool.shutdown();
+    }
+  }
+}
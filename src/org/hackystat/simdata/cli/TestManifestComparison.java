@@ -0,0 +1,142 @@
+package org.hackystat.simdata.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.sink.LatencyHistogram;
+import org.hackystat.simdata.sink.RunMetrics;
+import org.junit.Test;
+
+/**
+ * Tests the comparison of run manifests, and the latency percentiles they report.
+ * @author Philip Johnson
+ */
+public class TestManifestComparison {
+
+  /**
+   * Returns a manifest of a run of the default scenarios.
+   * @param eventsPerSecond The throughput.
+   * @param telemetrySeconds The time of the telemetry phase.
+   * @param seed The seed.
+   * @return The manifest.
+   */
+  private RunManifest makeManifest(String eventsPerSecond, String telemetrySeconds, 
+      String seed) {
+    Properties properties = new Properties();
+    properties.setProperty("run.scenarios", "telemetry,portfolio");
+    properties.setProperty("run.seed", seed);
+    properties.setProperty("events", "10000");
+    properties.setProperty("eventsPerSecond", eventsPerSecond);
+    properties.setProperty("phase.telemetry.seconds", telemetrySeconds);
+    properties.setProperty("sendLatencyMicros.p99", "50.0");
+    return new RunManifest(properties);
+  }
+
+  /**
+   * Checks that only changes beyond the threshold are regressions.
+   */
+  @Test
+  public void testThreshold() {
+    RunManifest baseline = makeManifest("1000.0", "4.000", "0");
+    ManifestComparison same = new ManifestComparison(baseline, 
+        makeManifest("960.0", "4.100", "0"), 5);
+    assertFalse("Checking small changes", same.hasRegressions());
+    assertTrue("Checking workloads", same.isComparable());
+    assertTrue("Checking verdict", same.getReport().contains("No regression"));
+    ManifestComparison slower = new ManifestComparison(baseline, 
+        makeManifest("900.0", "5.000", "0"), 5);
+    assertEquals("Checking regressions", 2, slower.getRegressions().size());
+    assertTrue("Checking report", slower.getReport().contains("REGRESSION"));
+    ManifestComparison faster = new ManifestComparison(baseline, 
+        makeManifest("2000.0", "2.000", "1"), 5);
+    assertFalse("Checking improvements", faster.hasRegressions());
+    assertEquals("Checking seed warning", 1, faster.getWarnings().size());
+  }
+
+  /**
+   * Checks that runs of different workloads are reported as incomparable, not as free of
+   * regressions.
+   */
+  @Test
+  public void testDifferentWorkloads() {
+    ManifestComparison comparison = new ManifestComparison(makeManifest("1000.0", "4.000", "0"),
+        makeManifest("1000.0", "4.000", "1"), 5);
+    assertFalse("Checking comparable", comparison.isComparable());
+    assertFalse("Checking verdict", comparison.getReport().contains("No regression"));
+    assertTrue("Checking report", comparison.getReport().contains("Not comparable"));
+  }
+
+  /**
+   * Checks that runs limited by the same duration are comparable although they generated
+   * different numbers of events, while runs without a duration are not.
+   */
+  @Test
+  public void testDurationRuns() {
+    RunManifest baseline = makeManifest("1000.0", "4.000", "0");
+    RunManifest current = makeManifest("900.0", "4.000", "0");
+    current.getProperties().setProperty("events", "9000");
+    assertFalse("Checking counted runs", 
+        new ManifestComparison(baseline, current, 5).isComparable());
+    baseline.getProperties().setProperty("run.duration", "60");
+    current.getProperties().setProperty("run.duration", "60");
+    ManifestComparison comparison = new ManifestComparison(baseline, current, 5);
+    assertTrue("Checking timed runs", comparison.isComparable());
+    assertEquals("Checking throughput", 1, comparison.getRegressions().size());
+    current.getProperties().setProperty("run.duration", "30");
+    assertFalse("Checking durations", 
+        new ManifestComparison(baseline, current, 5).isComparable());
+  }
+
+  /**
+   * Checks that the manifest of a run sending through SensorShell says its send latencies were
+   * not measured, and that other runs do not.
+   */
+  @Test
+  public void testShellLatency() {
+    String sender = System.getProperty(SimData.SENDER_KEY);
+    System.clearProperty(SimData.SENDER_KEY);
+    try {
+      Map<String, String> settings = new HashMap<String, String>();
+      settings.put("sink", "host");
+      RunMetrics metrics = new RunMetrics();
+      RunManifest manifest = RunManifest.make(settings, metrics);
+      assertEquals("Checking note", RunManifest.SHELL_LATENCY, manifest.get("sendLatencyMicros"));
+      assertNull("Checking percentiles", manifest.get("sendLatencyMicros.p50"));
+      settings.put("sink", "null");
+      assertNull("Checking other sinks", 
+          RunManifest.make(settings, metrics).get("sendLatencyMicros"));
+    }
+    finally {
+      if (sender != null) {
+        System.setProperty(SimData.SENDER_KEY, sender);
+      }
+    }
+  }
+
+  /**
+   * Checks that latency percentiles are within a bucket of the exact values.
+   */
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals("Checking empty", 0, histogram.getPercentile(99));
+    for (long micros = 1; micros <= 100000; micros++) {
+      histogram.record(micros * 1000);
+    }
+    assertEquals("Checking count", 100000, histogram.getCount());
+    assertEquals("Checking max", 100000000, histogram.getMax());
+    double[] percents = { 50, 90, 99, 99.9, 100 };
+    for (double percent : percents) {
+      double exact = percent * 1000 * 1000;
+      long reported = histogram.getPercentile(percent);
+      assertTrue("Checking p" + percent, (reported >= exact) && (reported <= exact * 1.07));
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package org.hackystat.simdata.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.simdata.sink.DeadlineException;
+import org.hackystat.simdata.sink.FileSink;
+import org.hackystat.simdata.sink.Pacer;
+import org.hackystat.simdata.sink.PacingSink;
+import org.hackystat.simdata.sink.SharedSink;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.Test;
+
+/**
+ * Tests the parsing of the command line, the pacing of a run, and the file sink shared by the
+ * SimData instances of a run.
+ * @author Philip Johnson
+ */
+public class TestSimDataCommand {
+
+  /**
+   * Returns a Build instance.
+   * @param i Its offset from the first timestamp, in milliseconds.
+   * @return The instance.
+   */
+  private SensorData makeBuild(int i) {
+    return SensorDataTestHelper.makeBuild(SensorDataTestHelper.JOE, "/users/joe/Joe.java", i);
+  }
+
+  /**
+   * Checks that the options are parsed into the run's settings.
+   */
+  @Test
+  public void testOptions() {
+    SimDataCommand command = new SimDataCommand(new String[] { "--scenarios=portfolio",
+        "--seed=7", "--scale=3", "--sink=null", "--threads=2", "--rate=500",
+        "--duration=60", "--interleave=10", "--sample=0.25", "--manifest=none" });
+    Map<String, String> settings = command.getSettings();
+    assertEquals("Checking scenarios", "portfolio", settings.get("scenarios"));
+    assertEquals("Checking seed", "7", settings.get("seed"));
+    assertEquals("Checking scale", "3", settings.get("scale"));
+    assertEquals("Checking sink", "null", settings.get("sink"));
+    assertEquals("Checking host", "", settings.get("host"));
+    assertEquals("Checking threads", "2", settings.get("threads"));
+    assertEquals("Checking rate", "500.0", settings.get("rate"));
+    assertEquals("Checking duration", "60", settings.get("duration"));
+    assertEquals("Checking interleave", "10", settings.get("interleave"));
+    assertEquals("Checking sample", "0.25", settings.get("sample"));
+    assertTrue("Checking plan", command.getPlan().contains("manifest not written"));
+    SimDataCommand defaults = new SimDataCommand(new String[] { "http://localhost:9876/" });
+    assertEquals("Checking default scenarios", "telemetry,portfolio",
+        defaults.getSettings().get("scenarios"));
+    assertEquals("Checking default sink", "host", defaults.getSettings().get("sink"));
+  }
+
+  /**
+   * Checks that invalid command lines are rejected.
+   */
+  @Test
+  public void testInvalidOptions() {
+    String[][] invalid = { { "--bogus=1" }, { "--verbose" }, { "--seed=x", "--sink=null" },
+        { "--scenarios=nosuch", "--sink=null" }, { "--sink=tape" }, { "--sink=host" },
+        { "--scale=0", "--sink=null" }, { "--interleave=-1", "--sink=null" },
+        { "--sample=1.5", "--sink=null" }, { "http://a/", "http://b/" } };
+    for (String[] args : invalid) {
+      try {
+        new SimDataCommand(args);
+        fail("Accepted " + args[0]);
+      }
+      catch (IllegalArgumentException e) {
+        assertFalse("Checking message", e.getMessage() == null);
+      }
+    }
+  }
+
+  /**
+   * Checks that a run writes its data to the file sink and its manifest, and that the
+   * manifest counts every instance in the file.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testFileRun() throws Exception {
+    File data = File.createTempFile("simdata", ".xml");
+    File manifest = File.createTempFile("simdata", ".properties");
+    data.delete();
+    try {
+      new SimDataCommand(new String[] { "--scenarios=telemetry", "--sink=file:" + data,
+          "--manifest=" + manifest }).run();
+      RunManifest run = RunManifest.read(manifest);
+      assertEquals("Checking scenarios", "telemetry", run.get("run.scenarios"));
+      assertTrue("Checking events", run.getNumber("events") > 0);
+      assertEquals("Checking file", (long) run.getNumber("events"), readLines(data).size());
+    }
+    finally {
+      data.delete();
+      manifest.delete();
+    }
+  }
+
+  /**
+   * Checks that a run against the stand-in SensorBase delivers exactly the data a file run
+   * of the same scenario writes, by count and by checksum.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testHostRun() throws Exception {
+    File data = File.createTempFile("simdata", ".xml");
+    data.delete();
+    StubSensorBase stub = new StubSensorBase(0, 4);
+    String sender = System.getProperty(SimData.SENDER_KEY);
+    try {
+      new SimDataCommand(new String[] { "--scenarios=telemetry", "--sink=file:" + data,
+          "--manifest=none" }).run();
+      List<String> lines = readLines(data);
+      assertFalse("Checking data", lines.isEmpty());
+      long checksum = 0;
+      for (String line : lines) {
+        checksum += StubSensorBase.checksum(line);
+      }
+      System.setProperty(SimData.SENDER_KEY, "compact");
+      new SimDataCommand(new String[] { "--scenarios=telemetry", "--sink=host",
+          "--manifest=none", stub.getHostName() }).run();
+      assertEquals("Checking count", lines.size(), stub.getSensorDataCount());
+      assertEquals("Checking checksum", checksum, stub.getChecksum());
+    }
+    finally {
+      if (sender == null) {
+        System.clearProperty(SimData.SENDER_KEY);
+      }
+      else {
+        System.setProperty(SimData.SENDER_KEY, sender);
+      }
+      stub.stop();
+      data.delete();
+    }
+  }
+
+  /**
+   * Checks that a pacer spaces its permits at its rate, and that a pacer without limits is
+   * inactive.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testPacerRate() throws Exception {
+    assertTrue("Checking inactive", new Pacer(0, 0).isInactive());
+    Pacer pacer = new Pacer(200, 0);
+    assertFalse("Checking active", pacer.isInactive());
+    long start = System.nanoTime();
+    for (int i = 0; i < 21; i++) {
+      assertTrue("Checking permit", pacer.acquire());
+    }
+    long millis = (System.nanoTime() - start) / 1000000L;
+    assertTrue("Checking rate: " + millis, millis >= 95);
+  }
+
+  /**
+   * Checks that a PacingSink passes data on until its pacer's duration elapses, and then
+   * throws a DeadlineException but still closes its delegate.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testPacingSinkDeadline() throws Exception {
+    ListSink delegate = new ListSink();
+    PacingSink sink = new PacingSink(delegate, new Pacer(0, 50));
+    sink.add(makeBuild(0));
+    Thread.sleep(100);
+    try {
+      sink.add(makeBuild(1));
+      fail("Expected the deadline to be thrown.");
+    }
+    catch (DeadlineException e) {
+      assertEquals("Checking received", 1, delegate.getList().size());
+    }
+    sink.close();
+    assertTrue("Checking closed", delegate.isClosed());
+  }
+
+  /**
+   * Checks that SharedSinks write into one FileSink, that closing them leaves it open, that
+   * it refuses data once closed, and that a file is only appended to when asked, whether or
+   * not it is compressed.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSharedFileSink() throws Exception {
+    for (String suffix : new String[] { ".xml", ".xml.gz" }) {
+      checkSharedFileSink(File.createTempFile("simdata", suffix));
+    }
+  }
+
+  /**
+   * Writes to the file through SharedSinks, then appends to it and truncates it.
+   * @param file The file, deleted afterwards.
+   * @throws Exception If problems occur.
+   */
+  private void checkSharedFileSink(File file) throws Exception {
+    try {
+      FileSink fileSink = new FileSink(file);
+      SharedSink first = new SharedSink(fileSink);
+      SharedSink second = new SharedSink(fileSink);
+      first.add(makeBuild(0));
+      first.close();
+      second.add(makeBuild(1));
+      second.close();
+      fileSink.close();
+      fileSink.close();
+      assertEquals("Checking count", 2, fileSink.getCount());
+      try {
+        fileSink.add(makeBuild(2));
+        fail("Added to a closed FileSink.");
+      }
+      catch (IOException e) {
+        assertTrue("Checking message", e.getMessage().contains("closed"));
+      }
+      FileSink again = new FileSink(file, true);
+      again.add(makeBuild(2));
+      again.close();
+      List<String> lines = readLines(file);
+      assertEquals("Checking appended to " + file, 3, lines.size());
+      assertTrue("Checking content", lines.get(0).contains("<SensorDataType>Build"));
+      FileSink truncating = new FileSink(file);
+      truncating.add(makeBuild(3));
+      truncating.close();
+      assertEquals("Checking truncated " + file, 1, readLines(file).size());
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Reads the lines of a file, decompressing it if its name ends in ".gz".
+   * @param file The file.
+   * @return The lines.
+   * @throws IOException If it cannot be read.
+   */
+  private List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    InputStream in = new FileInputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        lines.add(line);
+      }
+    }
+    finally {
+      reader.close();
+    }
+    return lines;
+  }
+}
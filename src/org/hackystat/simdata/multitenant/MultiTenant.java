@@ -0,0 +1,123 @@
+package org.hackystat.simdata.multitenant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.SimDataFactory;
+import org.hackystat.utilities.logger.HackystatLogger;
+
+/**
+ * Generates load from many independent simulated organizations ("tenants") at once. 
+ * Each tenant has its own domain, users, projects and membership graph, and is generated by a 
+ * Tenant with its own SimData instance and random number generator on its own worker thread,
+ * so tenants share no state. This shows how the SensorBase and DailyProjectData behave as the
+ * number of users, projects and per-user indexes grows.
+ * <p>
+ * Each project has teamSize members, who join it through a single batched invitation. Large
+ * team sizes (hundreds of members) exercise the SensorBase's large-project paths. Projects may
+ * also have source trees of thousands of files (see ResourcePopulation), since the number of
+ * distinct resources is what drives DailyProjectData query costs.
+ * 
+ * @author Philip Johnson
+ */
+public class MultiTenant {
+  
+  /**
+   * Runs the MultiTenant scenario. Returns after all tenants have been generated and sent.
+   * @param host The SensorBase host that will receive the data. 
+   * @param numTenants The number of tenants.
+   * @param projectsPerTenant The number of projects in each tenant.
+   * @param teamSize The number of users working on each project, including its owner.
+   * @param days The number of days of data generated for each user.
+   * @param numThreads The number of tenants generated concurrently.
+   * @throws Exception If problems occur in any tenant.
+   */
+  public MultiTenant(String host, int numTenants, int projectsPerTenant, int teamSize, 
+      int days, int numThreads) throws Exception {
+    this(host, numTenants, projectsPerTenant, teamSize, days, numThreads, 0);
+  }
+  
+  /**
+   * Runs the MultiTenant scenario with a source tree of the given size in every project.
+   * Returns after all tenants have been generated and sent.
+   * @param host The SensorBase host that will receive the data. 
+   * @param numTenants The number of tenants.
+   * @param projectsPerTenant The number of projects in each tenant.
+   * @param teamSize The number of users working on each project, including its owner.
+   * @param days The number of days of data generated for each user.
+   * @param numThreads The number of tenants generated concurrently.
+   * @param filesPerProject The number of files in each project, or 0 for one file per user.
+   * @throws Exception If problems occur in any tenant.
+   */
+  public MultiTenant(final String host, int numTenants, int projectsPerTenant, int teamSize, 
+      int days, int numThreads, int filesPerProject) throws Exception {
+    this(new SimDataFactory() {
+      public SimData makeSimData(String domain) throws Exception {
+        return new SimData(host, domain);
+      }
+    }, numTenants, projectsPerTenant, teamSize, days, numThreads, filesPerProject, 0);
+  }
+  
+  /**
+   * Runs the MultiTenant scenario with SimData instances made by the given factory, which
+   * decides where each tenant's data goes. Returns after all tenants have been generated and
+   * sent.
+   * @param factory Makes the SimData instance of each tenant's domain.
+   * @param numTenants The number of tenants.
+   * @param projectsPerTenant The number of projects in each tenant.
+   * @param teamSize The number of users working on each project, including its owner.
+   * @param days The number of days of data generated for each user.
+   * @param numThreads The number of tenants generated concurrently.
+   * @param filesPerProject The number of files in each project, or 0 for one file per user.
+   * @param seed The seed from which each tenant's random number generator is seeded.
+   * @throws Exception If problems occur in any tenant.
+   */
+  public MultiTenant(SimDataFactory factory, int numTenants, int projectsPerTenant, 
+      int teamSize, int days, int numThreads, int filesPerProject, long seed) 
+    throws Exception {
+    if (projectsPerTenant < 1) {
+      throw new Exception("Each tenant needs at least one project.");
+    }
+    if (teamSize < 1) {
+      throw new Exception("Each project needs at least its owner.");
+    }
+    HackystatLogger.getLogger("org.hackystat.simdata", "simdata").info("MultiTenant: " 
+        + numTenants + " tenants with " + projectsPerTenant + " projects of " + teamSize 
+        + " users and " + days + " days each, " + filesPerProject + " files per project, on " 
+        + numThreads + " threads.");
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int i = 0; i < numTenants; i++) {
+        SimData simData = factory.makeSimData(getTenantDomain(i));
+        results.add(executor.submit(new Tenant(simData, i, projectsPerTenant, teamSize, days, 
+            filesPerProject, seed * 1000003L + i)));
+      }
+      for (Future<Void> result : results) {
+        try {
+          result.get();
+        }
+        catch (ExecutionException e) {
+          throw new Exception("MultiTenant: tenant failed: " + e.getCause(), e.getCause());
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  /**
+   * Returns the domain of the given tenant.
+   * @param tenant The tenant index.
+   * @return The domain, such as "@tenant3.simdata.hackystat.org".
+   */
+  static String getTenantDomain(int tenant) {
+    return "@tenant" + tenant + ".simdata.hackystat.org";
+  }
+}
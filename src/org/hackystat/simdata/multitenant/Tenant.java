@@ -0,0 +1,288 @@
+package org.hackystat.simdata.multitenant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.simdata.MemoryBudget;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.population.DeveloperPopulation;
+import org.hackystat.simdata.population.ResourcePopulation;
+import org.hackystat.utilities.tstamp.Tstamp;
+
+/**
+ * Generates the data of a single MultiTenant tenant. User i works on project (i / teamSize),
+ * and each project is owned by the first user of its team; the rest of the team is added as
+ * members in one batch.
+ * Each day every user produces a mix of effort, size, builds, tests, coverage, commits and
+ * code issues on their own file. The effort, churn, build failures, issues and coverage come
+ * from a DeveloperPopulation, so they are correlated the way real telemetry is: bursts of
+ * churn bring failed builds and new issues, and coverage erodes until calmer days restore it.
+ * If projects have a source tree of many files, users instead edit and commit files of their
+ * project's tree chosen with Zipfian frequency, and each project's owner sends a FileMetric,
+ * Coverage and complexity snapshot of the whole tree once a day.
+ * 
+ * @author Philip Johnson
+ */
+class Tenant implements Callable<Void> {
+  
+  /** The start of the data, a Monday. */
+  static final String startString = "2008-01-07";
+  /** The maximum number of invitations to a project accepted concurrently. */
+  static final int acceptThreads = 16;
+  
+  /** The SimData instance owned by this tenant. */
+  private final SimData simData;
+  /** The tenant index. */
+  private final int index;
+  /** The number of users. */
+  private final int numUsers;
+  /** The number of projects. */
+  private final int numProjects;
+  /** The number of users per project. */
+  private final int teamSize;
+  /** The number of days. */
+  private final int days;
+  /** The number of files in each project's source tree, or 0 for one file per user. */
+  private final int filesPerProject;
+  /** The source tree of each project, if filesPerProject is positive. */
+  private final ResourcePopulation[] trees;
+  /** The daily activity of the users, indexed by user. */
+  private DeveloperPopulation developers;
+  /** The seed of this tenant's random number generator, which is its index by default. */
+  private final long seed;
+  /** This tenant's random number generator. */
+  private final Random random;
+  
+  /**
+   * Creates a tenant. Nothing is sent until call() is invoked.
+   * @param simData The SimData instance, whose domain is unique to this tenant. 
+   * @param index The tenant index.
+   * @param numProjects The number of projects.
+   * @param teamSize The number of users per project.
+   * @param days The number of days.
+   * @param filesPerProject The number of files in each project, or 0 for one file per user.
+   * @param seed The seed of the tenant's random number generator.
+   */
+  Tenant(SimData simData, int index, int numProjects, int teamSize, int days, 
+      int filesPerProject, long seed) {
+    this.simData = simData;
+    this.index = index;
+    this.numUsers = numProjects * teamSize;
+    this.numProjects = numProjects;
+    this.teamSize = teamSize;
+    this.days = days;
+    this.filesPerProject = filesPerProject;
+    this.trees = new ResourcePopulation[numProjects];
+    this.seed = seed;
+    this.random = new Random(seed);
+  }
+  
+  /**
+   * Creates the users, projects, and memberships, then generates and sends the data.
+   * @return Nothing.
+   * @throws Exception If problems occur.
+   */
+  public Void call() throws Exception {
+    long start = System.currentTimeMillis();
+    XMLGregorianCalendar dataStart = Tstamp.makeTimestamp(startString);
+    XMLGregorianCalendar dataEnd = Tstamp.incrementDays(dataStart, this.days);
+    for (int user = 0; user < this.numUsers; user++) {
+      this.simData.clearData(simData.getHost(), getUser(user));
+      this.simData.makeUser(getUser(user));
+    }
+    for (int project = 0; project < this.numProjects; project++) {
+      String owner = getUser(project * this.teamSize);
+      this.simData.makeProject(getProject(project), owner, dataStart, dataEnd, 
+          "*/" + getProject(project) + "/*");
+      List<String> members = new ArrayList<String>();
+      for (int member = 1; member < this.teamSize; member++) {
+        members.add(getUser(project * this.teamSize + member));
+      }
+      this.simData.addMembers(getProject(project), owner, members, acceptThreads);
+    }
+    long provisioned = System.currentTimeMillis();
+    int chunk = getProjectsPerChunk();
+    String scale = this.numProjects + "x" + this.teamSize + "x" + this.days + "x" 
+      + this.filesPerProject + ((chunk < this.numProjects) ? "x" + chunk : "");
+    if (this.simData.beginDataset(Tenant.class, this.seed, scale)) {
+      for (int project = 0; (this.filesPerProject > 0) && (project < this.numProjects); 
+          project++) {
+        this.trees[project] = new ResourcePopulation(getProjectDir(project), 
+            this.filesPerProject, 1.0, this.random);
+      }
+      this.developers = new DeveloperPopulation(this.numUsers, this.random);
+      for (int first = 0; first < this.numProjects; first += chunk) {
+        makeChunk(first, Math.min(this.numProjects, first + chunk), dataStart);
+      }
+    }
+    this.simData.quitShells();
+    long end = System.currentTimeMillis();
+    this.simData.getLogger().info("MultiTenant: tenant " + this.index + " provisioned in " 
+        + (provisioned - start) + " ms, generated and sent in " + (end - provisioned) + " ms.");
+    return null;
+  }
+  
+  /**
+   * Returns the number of projects whose users generate all their days together. Without a
+   * memory budget that is every project, so each day is generated for all users before the
+   * next. With one, chunks of projects are generated in turn, small enough that all their
+   * users' shells stay open until the chunk is done.
+   * @return The number of projects per chunk.
+   */
+  private int getProjectsPerChunk() {
+    MemoryBudget budget = this.simData.getMemoryBudget();
+    if (budget == null) {
+      return this.numProjects;
+    }
+    return Math.max(1, Math.min(this.numProjects, budget.getMaxOpenShells() / this.teamSize));
+  }
+  
+  /**
+   * Generates every day of data for the users of a range of projects, then drops the 
+   * projects' source trees.
+   * @param first The first project.
+   * @param last The project after the last.
+   * @param dataStart The first day.
+   * @throws Exception If problems occur.
+   */
+  private void makeChunk(int first, int last, XMLGregorianCalendar dataStart) 
+  throws Exception {
+    for (int day = 0; day < this.days; day++) {
+      XMLGregorianCalendar tstamp = Tstamp.incrementDays(dataStart, day);
+      this.developers.advance(first * this.teamSize, last * this.teamSize);
+      for (int user = first * this.teamSize; user < last * this.teamSize; user++) {
+        if (this.filesPerProject > 0) {
+          makeTreeDay(user, tstamp);
+        }
+        else {
+          makeDay(user, day, tstamp);
+        }
+      }
+      for (int project = first; (this.filesPerProject > 0) && (project < last); project++) {
+        makeSnapshot(project, tstamp);
+      }
+    }
+    for (int project = first; project < last; project++) {
+      this.trees[project] = null;
+    }
+  }
+  
+  /**
+   * Generates one day of data for one user.
+   * @param user The user index.
+   * @param day The day index.
+   * @param tstamp The day.
+   * @throws Exception If problems occur.
+   */
+  private void makeDay(int user, int day, XMLGregorianCalendar tstamp) throws Exception {
+    String name = getUser(user);
+    String dir = getDir(user);
+    String file = dir + "User" + user + ".java";
+    int fileSize = 100 + (day * 50) + random.nextInt(10);
+    simData.addDevEvents(name, tstamp, developers.getDevEvents(user), file);
+    simData.addFileMetric(name, tstamp, file, fileSize, tstamp);
+    simData.addComplexity(name, tstamp, file, fileSize, tstamp, 3 + random.nextInt(3));
+    addBuilds(user, tstamp, dir);
+    simData.addUnitTests(name, tstamp, file, "pass", 2 + random.nextInt(5));
+    simData.addCoverage(name, tstamp, file, developers.getCoverage(user), fileSize, tstamp);
+    simData.addCommits(name, tstamp, file, developers.getChurn(user), 
+        developers.getCommits(user));
+    simData.addCodeIssues(name, tstamp, file, developers.getCodeIssues(user));
+  }
+  
+  /**
+   * Generates one day of data for one user who edits files of their project's source tree.
+   * @param user The user index.
+   * @param tstamp The day.
+   * @throws Exception If problems occur.
+   */
+  private void makeTreeDay(int user, XMLGregorianCalendar tstamp) throws Exception {
+    String name = getUser(user);
+    ResourcePopulation tree = this.trees[user / this.teamSize];
+    int focus = tree.pickFile(random);
+    simData.addDevEvents(name, tstamp, developers.getDevEvents(user), tree.getFile(focus));
+    addBuilds(user, tstamp, getDir(user));
+    simData.addUnitTests(name, tstamp, tree.getFile(tree.pickFile(random)), "pass", 
+        2 + random.nextInt(5));
+    int commits = developers.getCommits(user);
+    for (int i = 0; i < commits; i++) {
+      int file = (i == 0) ? focus : tree.pickFile(random);
+      int churn = Math.max(1, developers.getChurn(user) / commits);
+      tree.edit(file, churn, random);
+      simData.addCommit(name, tstamp, tree.getFile(file), churn);
+    }
+    simData.addCodeIssues(name, tstamp, tree.getFile(focus), developers.getCodeIssues(user));
+  }
+  
+  /**
+   * Adds the user's builds of the day, some of which may have failed.
+   * @param user The user index.
+   * @param tstamp The day.
+   * @param dir The directory that is built.
+   * @throws Exception If problems occur.
+   */
+  private void addBuilds(int user, XMLGregorianCalendar tstamp, String dir) throws Exception {
+    int failed = developers.getFailedBuilds(user);
+    simData.addBuilds(getUser(user), tstamp, dir, "Success", developers.getBuilds(user) - failed);
+    if (failed > 0) {
+      simData.addBuilds(getUser(user), tstamp, dir, "Failure", failed);
+    }
+  }
+  
+  /**
+   * Sends a FileMetric, Coverage and complexity snapshot of the whole source tree of the 
+   * project, owned by the project's owner, with the day as the shared runtime.
+   * @param project The project index.
+   * @param tstamp The day.
+   * @throws Exception If problems occur.
+   */
+  private void makeSnapshot(int project, XMLGregorianCalendar tstamp) throws Exception {
+    String owner = getUser(project * this.teamSize);
+    ResourcePopulation tree = this.trees[project];
+    String[] files = tree.getFiles();
+    int[] lines = tree.getLinesSnapshot();
+    simData.addFileMetricSnapshot(owner, tstamp, files, lines);
+    simData.addCoverageSnapshot(owner, tstamp, files, tree.getCoverageSnapshot(), lines);
+    simData.addComplexitySnapshot(owner, tstamp, files, lines, tree.getComplexitySnapshot());
+  }
+  
+  /**
+   * Returns the name of the given user (without the tenant's domain).
+   * @param user The user index.
+   * @return The user name.
+   */
+  static String getUser(int user) {
+    return "user" + user;
+  }
+  
+  /**
+   * Returns the name of the given project.
+   * @param project The project index.
+   * @return The project name.
+   */
+  static String getProject(int project) {
+    return "project" + project;
+  }
+  
+  /**
+   * Returns the directory of the given user, within the directory of their project.
+   * @param user The user index.
+   * @return The directory.
+   */
+  private String getDir(int user) {
+    return getProjectDir(user / this.teamSize) + getUser(user) + "/";
+  }
+  
+  /**
+   * Returns the directory of the given project, which matches its UriPattern.
+   * @param project The project index.
+   * @return The directory.
+   */
+  private String getProjectDir(int project) {
+    return "/tenant" + this.index + "/" + getProject(project) + "/";
+  }
+}
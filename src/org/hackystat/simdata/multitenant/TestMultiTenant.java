@@ -0,0 +1,101 @@
+package org.hackystat.simdata.multitenant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.SimDataFactory;
+import org.hackystat.simdata.sdt.SdtRegistry;
+import org.junit.Test;
+
+/**
+ * Tests that each MultiTenant tenant generates data for its own users only, in the amount its
+ * projects, teams and days call for.
+ * @author Philip Johnson
+ */
+public class TestMultiTenant {
+
+  /**
+   * Makes offline SimData instances, each collecting its tenant's data in its own sink.
+   */
+  private static class ListSinkFactory implements SimDataFactory {
+    /** The sink of each tenant, keyed by the tenant's domain. */
+    private final Map<String, ListSink> sinks = new ConcurrentHashMap<String, ListSink>();
+
+    /**
+     * Returns an offline SimData instance whose data goes to a new ListSink.
+     * @param domain The tenant's domain.
+     * @return The instance.
+     * @throws Exception If it cannot be created.
+     */
+    public SimData makeSimData(String domain) throws Exception {
+      SimData simData = new SimData(null, domain);
+      ListSink sink = new ListSink();
+      simData.setSink(sink);
+      this.sinks.put(domain, sink);
+      return simData;
+    }
+  }
+
+  /**
+   * Checks that every tenant's data is owned by all of its users and no one else's, and that
+   * each project's owner sends one snapshot of its tree a day.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testPerTenantCounts() throws Exception {
+    int tenants = 3;
+    int projects = 2;
+    int teamSize = 3;
+    int days = 2;
+    int files = 20;
+    ListSinkFactory factory = new ListSinkFactory();
+    new MultiTenant(factory, tenants, projects, teamSize, days, 2, files, 0);
+    assertEquals("Checking tenants", tenants, factory.sinks.size());
+    for (int tenant = 0; tenant < tenants; tenant++) {
+      String domain = MultiTenant.getTenantDomain(tenant);
+      ListSink sink = factory.sinks.get(domain);
+      assertTrue("Checking closed", sink.isClosed());
+      Set<String> owners = new HashSet<String>();
+      int coverage = 0;
+      for (SensorData data : sink.getList()) {
+        assertTrue("Checking domain: " + data.getOwner(), data.getOwner().endsWith(domain));
+        assertTrue("Checking resource", data.getResource().startsWith("/tenant" + tenant + "/"));
+        owners.add(data.getOwner());
+        if (SdtRegistry.COVERAGE.equals(data.getSensorDataType())) {
+          coverage++;
+        }
+      }
+      assertEquals("Checking users of tenant " + tenant, projects * teamSize, owners.size());
+      assertEquals("Checking snapshots of tenant " + tenant, days * projects * files,
+          coverage);
+    }
+  }
+
+  /**
+   * Checks that tenants without projects are rejected.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testNoProjects() throws Exception {
+    for (int projects : new int[] { 0, -1 }) {
+      ListSinkFactory factory = new ListSinkFactory();
+      try {
+        new MultiTenant(factory, 1, projects, 3, 1, 1, 0, 0);
+        fail("Accepted " + projects + " projects.");
+      }
+      catch (Exception e) {
+        assertTrue("Checking message", e.getMessage().contains("at least one project"));
+        assertTrue("Checking nothing generated", factory.sinks.isEmpty());
+      }
+    }
+  }
+}
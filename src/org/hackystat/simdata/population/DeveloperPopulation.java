@@ -0,0 +1,227 @@
+package org.hackystat.simdata.population;
+
+import java.util.Random;
+
+/**
+ * The daily activity of a population of simulated developers, generated with correlations
+ * between the metrics rather than drawn independently. Each developer has a hidden work mode
+ * (calm, active or crunch) that follows a Markov chain from day to day. The mode sets the
+ * day's effort and churn; the churn in turn introduces code issues and erodes coverage, while
+ * calm days resolve issues and restore coverage through testing. High churn therefore comes
+ * with rising issues and falling coverage, and both lag behind the churn that caused them.
+ * <p>
+ * The state of every developer is held in primitive arrays indexed by developer, and each call
+ * to advance moves the developers forward one day in a single pass, so that millions of
+ * developer days can be generated without allocating per developer or per day. Developers
+ * are independent, so a range of them can be advanced through many days before the next.
+ *
+ * @author Philip Johnson
+ */
+public class DeveloperPopulation {
+
+  /** The calm work mode: little churn, issues are fixed and tests are written. */
+  public static final int CALM = 0;
+  /** The active work mode: steady feature work. */
+  public static final int ACTIVE = 1;
+  /** The crunch work mode: heavy churn, little testing, and more failed builds. */
+  public static final int CRUNCH = 2;
+
+  /** The cumulative probabilities of tomorrow's mode, indexed by today's mode. */
+  private static final double[][] transitions = {
+    { 0.80, 0.98, 1.0 },
+    { 0.25, 0.85, 1.0 },
+    { 0.10, 0.50, 1.0 } };
+  /** The median daily churn in lines, by mode. */
+  private static final double[] medianChurn = { 15, 45, 120 };
+  /** The median number of five minute DevEvent intervals per day, by mode. */
+  private static final double[] medianDevEvents = { 30, 48, 66 };
+  /** The code issues introduced per line of churn, by mode. */
+  private static final double[] issueRate = { 0.01, 0.02, 0.04 };
+  /** The fraction of open code issues still open the next day, by mode. */
+  private static final double[] issueRetention = { 0.6, 0.85, 0.95 };
+  /** The fraction of the gap to the coverage target closed by testing each day, by mode. */
+  private static final double[] testEffort = { 0.15, 0.06, 0.01 };
+  /** The probability that a build fails, by mode. */
+  private static final double[] failureRate = { 0.02, 0.05, 0.15 };
+  /** The coverage that testing converges to. */
+  private static final double coverageTarget = 92;
+  /** The coverage points lost per line of churn. */
+  private static final double coverageErosion = 0.04;
+
+  /** The random number generator. */
+  private final Random random;
+  /** The current work mode of each developer. */
+  private final byte[] mode;
+  /** Today's churn of each developer. */
+  private final int[] churn;
+  /** Today's number of commits of each developer. */
+  private final int[] commits;
+  /** Today's number of DevEvent intervals of each developer. */
+  private final int[] devEvents;
+  /** Today's number of builds of each developer. */
+  private final int[] builds;
+  /** Today's number of failed builds of each developer. */
+  private final int[] failedBuilds;
+  /** The open code issues of each developer. */
+  private final int[] issues;
+  /** The coverage of each developer's code, kept fractional so small changes accumulate. */
+  private final double[] coverage;
+
+  /**
+   * Creates a population of developers with randomly chosen initial modes, issues and
+   * coverage. No day has been generated until advance is first called.
+   * @param numDevelopers The number of developers.
+   * @param random The random number generator.
+   */
+  public DeveloperPopulation(int numDevelopers, Random random) {
+    this.random = random;
+    this.mode = new byte[numDevelopers];
+    this.churn = new int[numDevelopers];
+    this.commits = new int[numDevelopers];
+    this.devEvents = new int[numDevelopers];
+    this.builds = new int[numDevelopers];
+    this.failedBuilds = new int[numDevelopers];
+    this.issues = new int[numDevelopers];
+    this.coverage = new double[numDevelopers];
+    for (int i = 0; i < numDevelopers; i++) {
+      this.mode[i] = (byte) nextMode(CALM);
+      this.issues[i] = random.nextInt(4);
+      this.coverage[i] = 70 + random.nextInt(21);
+    }
+  }
+
+  /**
+   * Generates the next day of every developer.
+   */
+  public void advance() {
+    advance(0, this.mode.length);
+  }
+
+  /**
+   * Generates the next day of a range of developers.
+   * @param from The first developer.
+   * @param to The developer after the last.
+   */
+  public void advance(int from, int to) {
+    for (int i = from; i < to; i++) {
+      int current = nextMode(this.mode[i]);
+      this.mode[i] = (byte) current;
+      // Log-normal churn and effort around the medians of the mode.
+      int lines = (int) (medianChurn[current] * Math.exp(0.5 * this.random.nextGaussian()));
+      this.commits[i] = 1 + lines / 40 + this.random.nextInt(2);
+      this.churn[i] = Math.max(3 * this.commits[i], lines);
+      this.devEvents[i] = (int) Math.min(96,
+          medianDevEvents[current] * Math.exp(0.2 * this.random.nextGaussian()));
+      this.builds[i] = 2 + this.commits[i] + this.random.nextInt(3);
+      int failed = 0;
+      for (int build = 0; build < this.builds[i]; build++) {
+        if (this.random.nextDouble() < failureRate[current]) {
+          failed++;
+        }
+      }
+      this.failedBuilds[i] = failed;
+      // Open issues decay geometrically and grow with churn; the added uniform rounds
+      // fractional issues up with the right probability.
+      this.issues[i] = (int) (this.issues[i] * issueRetention[current]
+          + this.churn[i] * issueRate[current] + this.random.nextDouble());
+      double cov = this.coverage[i] + testEffort[current] * (coverageTarget - this.coverage[i])
+        - coverageErosion * this.churn[i] + this.random.nextGaussian();
+      this.coverage[i] = Math.max(0, Math.min(100, cov));
+    }
+  }
+
+  /**
+   * Returns the mode that follows the given mode.
+   * @param current The current mode.
+   * @return The next mode.
+   */
+  private int nextMode(int current) {
+    double target = this.random.nextDouble();
+    double[] cumulative = transitions[current];
+    int next = 0;
+    while (target >= cumulative[next]) {
+      next++;
+    }
+    return next;
+  }
+
+  /**
+   * Returns the number of developers.
+   * @return The number of developers.
+   */
+  public int size() {
+    return this.mode.length;
+  }
+
+  /**
+   * Returns the developer's work mode today.
+   * @param developer The developer index.
+   * @return CALM, ACTIVE or CRUNCH.
+   */
+  public int getMode(int developer) {
+    return this.mode[developer];
+  }
+
+  /**
+   * Returns the developer's churn today.
+   * @param developer The developer index.
+   * @return The lines added and deleted.
+   */
+  public int getChurn(int developer) {
+    return this.churn[developer];
+  }
+
+  /**
+   * Returns the developer's number of commits today, which share the day's churn.
+   * @param developer The developer index.
+   * @return The number of commits, at least one and at most a third of the churn.
+   */
+  public int getCommits(int developer) {
+    return this.commits[developer];
+  }
+
+  /**
+   * Returns the developer's number of five minute DevEvent intervals today.
+   * @param developer The developer index.
+   * @return The number of intervals.
+   */
+  public int getDevEvents(int developer) {
+    return this.devEvents[developer];
+  }
+
+  /**
+   * Returns the developer's number of builds today, including the failed builds.
+   * @param developer The developer index.
+   * @return The number of builds.
+   */
+  public int getBuilds(int developer) {
+    return this.builds[developer];
+  }
+
+  /**
+   * Returns the developer's number of failed builds today.
+   * @param developer The developer index.
+   * @return The number of failed builds.
+   */
+  public int getFailedBuilds(int developer) {
+    return this.failedBuilds[developer];
+  }
+
+  /**
+   * Returns the developer's open code issues today.
+   * @param developer The developer index.
+   * @return The number of issues.
+   */
+  public int getCodeIssues(int developer) {
+    return this.issues[developer];
+  }
+
+  /**
+   * Returns the coverage of the developer's code today.
+   * @param developer The developer index.
+   * @return The coverage percentage, between 0 and 100.
+   */
+  public int getCoverage(int developer) {
+    return (int) Math.round(this.coverage[developer]);
+  }
+}
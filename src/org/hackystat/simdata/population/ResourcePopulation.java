@@ -0,0 +1,230 @@
+package org.hackystat.simdata.population;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A realistic source tree for one simulated project: thousands of files spread over a package
+ * hierarchy, with heavy-tailed package and file sizes and Zipfian edit frequencies, so that a
+ * few hot files receive most of the edits while most files are rarely touched. Every file lies
+ * under the project's root directory, so it matches the project's UriPattern "*&#47;root/*".
+ * <p>
+ * Packages grow by preferential attachment: each new file joins an existing package with
+ * probability proportional to its size, or starts a new package nested under a random
+ * existing one. Each file's popularity rank is a random permutation of its index, so hot 
+ * files are scattered across the tree. The population also tracks each file's current size,
+ * coverage and complexity, so that whole-tree snapshots evolve as files are edited.
+ * 
+ * @author Philip Johnson
+ */
+public class ResourcePopulation {
+  
+  /** Words used for package names. */
+  private static final String[] packageWords = { "core", "util", "model", "view", "service", 
+    "io", "net", "data", "parser", "client", "server", "impl", "api", "config", "cache", 
+    "event", "query", "report", "security", "storage" };
+  /** Words used for class names. */
+  private static final String[] classWords = { "Manager", "Factory", "Handler", "Parser", 
+    "Reader", "Writer", "Builder", "Client", "Server", "Cache", "Index", "Query", "Record",
+    "Report", "Session", "Filter", "Listener", "Adapter", "Resolver", "Validator" };
+  /** The probability weight of starting a new package rather than joining an existing one. */
+  private static final double newPackageWeight = 8.0;
+  
+  /** The file paths, indexed by file. */
+  private final String[] files;
+  /** The file at each popularity rank, from most to least frequently edited. */
+  private final int[] byRank;
+  /** The cumulative Zipf weights by rank, for inverse transform sampling. */
+  private final double[] cdf;
+  /** The current lines of code of each file. */
+  private final int[] lines;
+  /** The current coverage percentage of each file. */
+  private final int[] coverage;
+  /** The current cyclomatic complexity of each file. */
+  private final int[] complexity;
+  
+  /**
+   * Generates a source tree.
+   * @param root The project's root directory, such as "/tenant0/project0/".
+   * @param numFiles The number of files.
+   * @param exponent The Zipf exponent of edit frequencies; about 1 in real projects.
+   * @param random The random number generator.
+   */
+  public ResourcePopulation(String root, int numFiles, double exponent, Random random) {
+    this.files = new String[numFiles];
+    this.byRank = new int[numFiles];
+    this.cdf = new double[numFiles];
+    this.lines = new int[numFiles];
+    this.coverage = new int[numFiles];
+    this.complexity = new int[numFiles];
+    
+    List<String> packages = new ArrayList<String>();
+    List<Integer> packageSizes = new ArrayList<Integer>();
+    Set<String> names = new HashSet<String>();
+    packages.add(root + "src/org/");
+    packageSizes.add(0);
+    for (int i = 0; i < numFiles; i++) {
+      int pkg;
+      if (random.nextDouble() * (i + newPackageWeight) < newPackageWeight) {
+        String parent = packages.get(random.nextInt(packages.size()));
+        String name = parent + packageWords[random.nextInt(packageWords.length)] + "/";
+        if (!names.add(name)) {
+          name = parent + packageWords[random.nextInt(packageWords.length)] + packages.size() 
+            + "/";
+        }
+        packages.add(name);
+        packageSizes.add(0);
+        pkg = packages.size() - 1;
+      }
+      else {
+        pkg = pickPackage(packageSizes, i, random);
+      }
+      packageSizes.set(pkg, packageSizes.get(pkg) + 1);
+      this.files[i] = packages.get(pkg) + classWords[random.nextInt(classWords.length)] + i 
+        + ".java";
+      // Log-normal sizes: a median near 90 lines, with a long tail of huge files.
+      this.lines[i] = (int) Math.min(20000, Math.max(5, Math.exp(4.5 + random.nextGaussian())));
+      this.coverage[i] = 40 + random.nextInt(61);
+      this.complexity[i] = 1 + (int) Math.min(50, Math.exp(1 + 0.6 * random.nextGaussian()));
+      this.byRank[i] = i;
+    }
+    for (int i = numFiles - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = this.byRank[i];
+      this.byRank[i] = this.byRank[j];
+      this.byRank[j] = swap;
+    }
+    double total = 0;
+    for (int rank = 0; rank < numFiles; rank++) {
+      total += 1.0 / Math.pow(rank + 1, exponent);
+      this.cdf[rank] = total;
+    }
+  }
+  
+  /**
+   * Returns a package with probability proportional to its number of files.
+   * @param packageSizes The number of files in each package.
+   * @param numFiles The total number of files.
+   * @param random The random number generator.
+   * @return The package index.
+   */
+  private static int pickPackage(List<Integer> packageSizes, int numFiles, Random random) {
+    int target = random.nextInt(numFiles);
+    for (int pkg = 0; pkg < packageSizes.size(); pkg++) {
+      target -= packageSizes.get(pkg);
+      if (target < 0) {
+        return pkg;
+      }
+    }
+    return packageSizes.size() - 1;
+  }
+  
+  /**
+   * Returns the number of files.
+   * @return The number of files.
+   */
+  public int size() {
+    return this.files.length;
+  }
+  
+  /**
+   * Returns the path of the given file.
+   * @param file The file index.
+   * @return The path.
+   */
+  public String getFile(int file) {
+    return this.files[file];
+  }
+  
+  /**
+   * Returns the paths of all files, indexed by file.
+   * @return A copy of the paths.
+   */
+  public String[] getFiles() {
+    return this.files.clone();
+  }
+  
+  /**
+   * Returns the current lines of code of every file, for a snapshot.
+   * @return A copy of the lines of code, indexed by file.
+   */
+  public int[] getLinesSnapshot() {
+    return this.lines.clone();
+  }
+  
+  /**
+   * Returns the current coverage percentage of every file, for a snapshot.
+   * @return A copy of the coverage, indexed by file.
+   */
+  public int[] getCoverageSnapshot() {
+    return this.coverage.clone();
+  }
+  
+  /**
+   * Returns the current cyclomatic complexity of every file, for a snapshot.
+   * @return A copy of the complexity, indexed by file.
+   */
+  public int[] getComplexitySnapshot() {
+    return this.complexity.clone();
+  }
+  
+  /**
+   * Returns a file chosen with Zipfian probability: the file of popularity rank r is chosen
+   * with probability proportional to 1 / (r + 1)^exponent.
+   * @param random The random number generator.
+   * @return The file index.
+   */
+  public int pickFile(Random random) {
+    double target = random.nextDouble() * this.cdf[this.cdf.length - 1];
+    int rank = Arrays.binarySearch(this.cdf, target);
+    if (rank < 0) {
+      rank = Math.min(-rank - 1, this.cdf.length - 1);
+    }
+    return this.byRank[rank];
+  }
+  
+  /**
+   * Returns the current lines of code of the file.
+   * @param file The file index.
+   * @return The lines of code.
+   */
+  public int getLines(int file) {
+    return this.lines[file];
+  }
+  
+  /**
+   * Returns the current coverage percentage of the file.
+   * @param file The file index.
+   * @return The coverage, between 0 and 100.
+   */
+  public int getCoverage(int file) {
+    return this.coverage[file];
+  }
+  
+  /**
+   * Returns the current cyclomatic complexity of the file.
+   * @param file The file index.
+   * @return The complexity.
+   */
+  public int getComplexity(int file) {
+    return this.complexity[file];
+  }
+  
+  /**
+   * Records an edit of the file: it grows by some of the churn, and its coverage and 
+   * complexity drift.
+   * @param file The file index.
+   * @param churn The lines added and deleted.
+   * @param random The random number generator.
+   */
+  public void edit(int file, int churn, Random random) {
+    this.lines[file] += churn / 2 - random.nextInt(churn / 4 + 1);
+    this.lines[file] = Math.max(5, this.lines[file]);
+    this.coverage[file] = Math.max(0, Math.min(100, this.coverage[file] + random.nextInt(7) - 3));
+    this.complexity[file] = Math.max(1, this.complexity[file] + random.nextInt(3) - 1);
+  }
+}
@@ -0,0 +1,75 @@
+package org.hackystat.simdata.population;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the correlations between the generated metrics of developers.
+ * @author Philip Johnson
+ */
+public class TestDeveloperPopulation {
+  
+  /**
+   * Checks that churn is positively correlated with code issues and failed builds, and
+   * negatively correlated with the day's change in coverage.
+   */
+  @Test
+  public void testCorrelations() {
+    int numDevelopers = 1000;
+    int numDays = 100;
+    DeveloperPopulation developers = new DeveloperPopulation(numDevelopers, new Random(0));
+    int n = numDevelopers * numDays;
+    double[] churn = new double[n];
+    double[] issues = new double[n];
+    double[] failed = new double[n];
+    double[] coverageChange = new double[n];
+    int[] previousCoverage = new int[numDevelopers];
+    for (int i = 0; i < numDevelopers; i++) {
+      previousCoverage[i] = developers.getCoverage(i);
+    }
+    for (int day = 0; day < numDays; day++) {
+      developers.advance();
+      for (int i = 0; i < numDevelopers; i++) {
+        int k = day * numDevelopers + i;
+        churn[k] = developers.getChurn(i);
+        issues[k] = developers.getCodeIssues(i);
+        failed[k] = developers.getFailedBuilds(i);
+        coverageChange[k] = developers.getCoverage(i) - previousCoverage[i];
+        previousCoverage[i] = developers.getCoverage(i);
+        assertTrue("Checking commits", 3 * developers.getCommits(i) <= developers.getChurn(i));
+      }
+    }
+    assertEquals("Checking size", numDevelopers, developers.size());
+    assertTrue("Checking churn and issues", correlation(churn, issues) > 0.3);
+    assertTrue("Checking churn and failures", correlation(churn, failed) > 0.1);
+    assertTrue("Checking churn and coverage", correlation(churn, coverageChange) < -0.2);
+  }
+  
+  /**
+   * Returns the Pearson correlation of two series.
+   * @param x The first series.
+   * @param y The second series.
+   * @return The correlation.
+   */
+  private static double correlation(double[] x, double[] y) {
+    double meanX = 0;
+    double meanY = 0;
+    for (int i = 0; i < x.length; i++) {
+      meanX += x[i] / x.length;
+      meanY += y[i] / y.length;
+    }
+    double covariance = 0;
+    double varianceX = 0;
+    double varianceY = 0;
+    for (int i = 0; i < x.length; i++) {
+      covariance += (x[i] - meanX) * (y[i] - meanY);
+      varianceX += (x[i] - meanX) * (x[i] - meanX);
+      varianceY += (y[i] - meanY) * (y[i] - meanY);
+    }
+    return covariance / Math.sqrt(varianceX * varianceY);
+  }
+}
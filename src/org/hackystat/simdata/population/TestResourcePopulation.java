@@ -0,0 +1,52 @@
+package org.hackystat.simdata.population;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests the shape of generated source trees.
+ * @author Philip Johnson
+ */
+public class TestResourcePopulation {
+  
+  /**
+   * Checks that files are distinct, lie under the root in many packages, and that edits
+   * are heavily concentrated on a few files.
+   */
+  @Test
+  public void testShape() {
+    Random random = new Random(0);
+    String root = "/tenant0/project0/";
+    ResourcePopulation tree = new ResourcePopulation(root, 5000, 1.0, random);
+    Set<String> files = new HashSet<String>();
+    Set<String> packages = new HashSet<String>();
+    for (int i = 0; i < tree.size(); i++) {
+      String file = tree.getFile(i);
+      assertTrue("Checking root of " + file, file.startsWith(root));
+      files.add(file);
+      packages.add(file.substring(0, file.lastIndexOf('/')));
+    }
+    assertEquals("Checking distinct files", 5000, files.size());
+    assertTrue("Checking packages: " + packages.size(), packages.size() > 20);
+    
+    int[] counts = new int[tree.size()];
+    for (int i = 0; i < 100000; i++) {
+      counts[tree.pickFile(random)]++;
+    }
+    Arrays.sort(counts);
+    int top = 0;
+    for (int i = counts.length - 50; i < counts.length; i++) {
+      top += counts[i];
+    }
+    // With exponent 1, the top 1% of 5000 files receives about half of the edits.
+    assertTrue("Checking skew: " + top, top > 40000);
+    assertTrue("Checking tail", counts[counts.length / 2] < 20);
+  }
+}
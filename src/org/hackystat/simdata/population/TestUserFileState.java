@@ -0,0 +1,53 @@
+package org.hackystat.simdata.population;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the running state of users' files.
+ * @author Philip Johnson
+ */
+public class TestUserFileState {
+
+  /**
+   * Checks that slots are independent, and that copies and written states keep the values
+   * they had when taken.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSnapshot() throws Exception {
+    UserFileState state = new UserFileState(1000, 3);
+    state.fill(UserFileState.COVERAGE, 80);
+    int[] sizes = state.getMetric(UserFileState.SIZE);
+    for (int slot = 0; slot < sizes.length; slot++) {
+      sizes[slot] = slot;
+    }
+    int slot = state.slot(999, 2);
+    assertEquals("Checking slot", 2999, slot);
+    assertEquals("Checking add", 90, state.add(UserFileState.COVERAGE, slot, 10));
+    assertEquals("Checking neighbor", 80, state.get(UserFileState.COVERAGE, slot - 1));
+    state.addChurn(slot, Integer.MAX_VALUE);
+    assertEquals("Checking churn", 2L * Integer.MAX_VALUE, state.addChurn(slot, 
+        Integer.MAX_VALUE));
+
+    UserFileState copy = state.copy();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    state.write(new DataOutputStream(bytes));
+    state.set(UserFileState.SIZE, slot, -1);
+    state.addChurn(slot, 1);
+    UserFileState read = UserFileState.read(new DataInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())));
+    for (UserFileState snapshot : new UserFileState[] { copy, read }) {
+      assertEquals("Checking users", 1000, snapshot.getNumUsers());
+      assertEquals("Checking size", 2999, snapshot.get(UserFileState.SIZE, slot));
+      assertEquals("Checking coverage", 90, snapshot.get(UserFileState.COVERAGE, slot));
+      assertEquals("Checking churn", 2L * Integer.MAX_VALUE, snapshot.getChurn(slot));
+    }
+  }
+}
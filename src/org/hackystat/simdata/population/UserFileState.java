@@ -0,0 +1,210 @@
+package org.hackystat.simdata.population;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The running state of the files that a population of users work on, carried by a scenario
+ * from day to day: each file's size, coverage, complexity, code issues and coupling, and the
+ * total churn committed to it. Each user owns the same number of files, and user u's file f
+ * occupies the slot u * filesPerUser + f.
+ * <p>
+ * The state is held as one primitive array per metric, indexed by slot, so that generators
+ * can read and update the state of thousands of users in a tight loop without boxing or map
+ * lookups, either through get, set and add or directly through the array of a metric. The
+ * state can be copied, and written and read again, so that an incremental run can carry on
+ * from where an earlier one stopped.
+ *
+ * @author Philip Johnson
+ */
+public class UserFileState {
+
+  /** The size metric, in lines of code. */
+  public static final int SIZE = 0;
+  /** The coverage metric, in percent. */
+  public static final int COVERAGE = 1;
+  /** The cyclomatic complexity metric. */
+  public static final int COMPLEXITY = 2;
+  /** The code issues metric. */
+  public static final int CODE_ISSUES = 3;
+  /** The coupling metric. */
+  public static final int COUPLING = 4;
+  /** The number of metrics. */
+  public static final int NUM_METRICS = 5;
+
+  /** The number of users. */
+  private final int numUsers;
+  /** The number of files of each user. */
+  private final int filesPerUser;
+  /** The value of each metric, indexed by metric and then by slot. */
+  private final int[][] metrics;
+  /** The total churn of each slot, which can outgrow an int over years of data. */
+  private final long[] churn;
+
+  /**
+   * Creates the state of the users' files, with every value zero.
+   * @param numUsers The number of users.
+   * @param filesPerUser The number of files of each user.
+   */
+  public UserFileState(int numUsers, int filesPerUser) {
+    this.numUsers = numUsers;
+    this.filesPerUser = filesPerUser;
+    this.metrics = new int[NUM_METRICS][numUsers * filesPerUser];
+    this.churn = new long[numUsers * filesPerUser];
+  }
+
+  /**
+   * Returns the number of users.
+   * @return The number of users.
+   */
+  public int getNumUsers() {
+    return this.numUsers;
+  }
+
+  /**
+   * Returns the number of files of each user.
+   * @return The number of files.
+   */
+  public int getFilesPerUser() {
+    return this.filesPerUser;
+  }
+
+  /**
+   * Returns the slot of the user's file.
+   * @param user The user index.
+   * @param file The index of the file among the user's files.
+   * @return The slot.
+   */
+  public int slot(int user, int file) {
+    return user * this.filesPerUser + file;
+  }
+
+  /**
+   * Returns a metric of a slot.
+   * @param metric The metric, such as SIZE.
+   * @param slot The slot.
+   * @return The value.
+   */
+  public int get(int metric, int slot) {
+    return this.metrics[metric][slot];
+  }
+
+  /**
+   * Sets a metric of a slot.
+   * @param metric The metric, such as SIZE.
+   * @param slot The slot.
+   * @param value The value.
+   * @return The value.
+   */
+  public int set(int metric, int slot, int value) {
+    this.metrics[metric][slot] = value;
+    return value;
+  }
+
+  /**
+   * Adds to a metric of a slot.
+   * @param metric The metric, such as SIZE.
+   * @param slot The slot.
+   * @param delta The amount to add, which may be negative.
+   * @return The new value.
+   */
+  public int add(int metric, int slot, int delta) {
+    this.metrics[metric][slot] += delta;
+    return this.metrics[metric][slot];
+  }
+
+  /**
+   * Sets a metric of every slot.
+   * @param metric The metric, such as SIZE.
+   * @param value The value.
+   */
+  public void fill(int metric, int value) {
+    Arrays.fill(this.metrics[metric], value);
+  }
+
+  /**
+   * Returns the values of a metric, indexed by slot, for generators that update every slot
+   * in a loop. The array is the state itself, not a copy.
+   * @param metric The metric, such as SIZE.
+   * @return The values.
+   */
+  public int[] getMetric(int metric) {
+    return this.metrics[metric];
+  }
+
+  /**
+   * Returns the total churn committed to a slot.
+   * @param slot The slot.
+   * @return The lines added and deleted.
+   */
+  public long getChurn(int slot) {
+    return this.churn[slot];
+  }
+
+  /**
+   * Adds a commit's churn to the total churn of a slot.
+   * @param slot The slot.
+   * @param lines The lines added and deleted.
+   * @return The new total.
+   */
+  public long addChurn(int slot, int lines) {
+    this.churn[slot] += lines;
+    return this.churn[slot];
+  }
+
+  /**
+   * Returns a copy of the state, which does not change as this state does.
+   * @return The copy.
+   */
+  public UserFileState copy() {
+    UserFileState copy = new UserFileState(this.numUsers, this.filesPerUser);
+    for (int metric = 0; metric < NUM_METRICS; metric++) {
+      System.arraycopy(this.metrics[metric], 0, copy.metrics[metric], 0, this.churn.length);
+    }
+    System.arraycopy(this.churn, 0, copy.churn, 0, this.churn.length);
+    return copy;
+  }
+
+  /**
+   * Writes the state.
+   * @param out The output.
+   * @throws IOException If it cannot be written.
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(this.numUsers);
+    out.writeInt(this.filesPerUser);
+    out.writeInt(NUM_METRICS);
+    for (int[] values : this.metrics) {
+      for (int value : values) {
+        out.writeInt(value);
+      }
+    }
+    for (long value : this.churn) {
+      out.writeLong(value);
+    }
+  }
+
+  /**
+   * Reads a state written by write.
+   * @param in The input.
+   * @return The state.
+   * @throws IOException If it cannot be read, or was written with different metrics.
+   */
+  public static UserFileState read(DataInput in) throws IOException {
+    UserFileState state = new UserFileState(in.readInt(), in.readInt());
+    if (in.readInt() != NUM_METRICS) {
+      throw new IOException("UserFileState was written with different metrics.");
+    }
+    for (int[] values : state.metrics) {
+      for (int slot = 0; slot < values.length; slot++) {
+        values[slot] = in.readInt();
+      }
+    }
+    for (int slot = 0; slot < state.churn.length; slot++) {
+      state.churn[slot] = in.readLong();
+    }
+    return state;
+  }
+}
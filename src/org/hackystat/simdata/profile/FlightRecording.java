@@ -0,0 +1,72 @@
+package org.hackystat.simdata.profile;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A Java Flight Recorder recording of a whole SimData run, written to a file when it stops,
+ * with SimData's ProfileEvents enabled so they appear alongside the JVM's own events. The
+ * recording is started and stopped through the JVM's DiagnosticCommand MBean, the JMX
+ * equivalent of jcmd JFR.start and JFR.stop, so SimData needs no JFR classes to compile and
+ * simply fails to start a recording on a JVM without JFR. Open the file in JDK Mission
+ * Control, or print it with the jfr tool.
+ *
+ * @author Philip Johnson
+ */
+public class FlightRecording {
+
+  /** The name of the DiagnosticCommand MBean. */
+  private static final String diagnosticCommand = "com.sun.management:type=DiagnosticCommand";
+  /** The signature of a diagnostic command operation. */
+  private static final String[] signature = { String[].class.getName() };
+
+  /** The name of the recording. */
+  private final String name;
+  /** The file the recording is written to. */
+  private final File file;
+  /** The logger. */
+  private final Logger logger;
+
+  /**
+   * Starts a recording with the JVM's profile settings, and enables the ProfileEvents.
+   * @param file The file the recording is written to when it stops.
+   * @param logger The logger.
+   * @throws Exception If the JVM cannot start a recording.
+   */
+  public FlightRecording(File file, Logger logger) throws Exception {
+    this.name = "simdata-" + System.currentTimeMillis();
+    this.file = file;
+    this.logger = logger;
+    invoke("jfrStart", "name=" + this.name, "settings=profile",
+        "filename=" + file.getAbsolutePath());
+    ProfileEvent.setEnabled(true, logger);
+    logger.info("FlightRecording: recording to " + file);
+  }
+
+  /**
+   * Stops the recording, which writes it to its file, and disables the ProfileEvents.
+   * @throws Exception If the recording cannot be stopped.
+   */
+  public void stop() throws Exception {
+    ProfileEvent.setEnabled(false, this.logger);
+    invoke("jfrStop", "name=" + this.name);
+    this.logger.info("FlightRecording: wrote " + this.file);
+  }
+
+  /**
+   * Runs a diagnostic command.
+   * @param operation The operation, such as jfrStart.
+   * @param arguments The arguments of the command.
+   * @return The output of the command.
+   * @throws Exception If the command fails, or the JVM has no DiagnosticCommand MBean.
+   */
+  private static String invoke(String operation, String... arguments) throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    return String.valueOf(server.invoke(new ObjectName(diagnosticCommand), operation,
+        new Object[] { arguments }, signature));
+  }
+}
@@ -0,0 +1,230 @@
+package org.hackystat.simdata.profile;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A Java Flight Recorder event marking a span of SimData's work: a scenario phase, the
+ * sending of a batch, the provisioning of users and projects, or the clearing of a user's
+ * data. Each event has a duration and fields holding what was done, so that stalls on the
+ * generating side and the sending side show up in the same timeline as the garbage collector,
+ * threads and I/O of the JVM, and can be lined up with the SensorBase's own logs.
+ * <p>
+ * SimData is built for JVMs without JFR, so the event types are created at run time through
+ * jdk.jfr.EventFactory, by reflection. Events are only created when enabled, by the
+ * org.hackystat.simdata.profile.events property or by a FlightRecording, and begin returns
+ * null otherwise, so a disabled event costs one check. On a JVM without jdk.jfr they stay
+ * disabled.
+ * <p>
+ * A span is marked with:
+ * <pre>
+ * ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+ * ... send the batch ...
+ * ProfileEvent.commit(event, "compact", owner, batch.size(), bytes);
+ * </pre>
+ *
+ * @author Philip Johnson
+ */
+public class ProfileEvent {
+
+  /** The system property enabling the events, for a recording started outside SimData. */
+  public static final String EVENTS_KEY = "org.hackystat.simdata.profile.events";
+
+  /** The kinds of event, each with its JFR name, label and fields. */
+  public enum Type {
+    /** A scenario run by the command line, with the instances it generated. */
+    PHASE("Phase", "Scenario Phase", new String[] { "scenario", "instances" },
+        String.class, long.class),
+    /** A batch sent to the host, or a shell's buffered data, with its bytes if measured. */
+    SEND("Send", "Batch Send", new String[] { "sender", "owner", "instances", "bytes" },
+        String.class, String.class, long.class, long.class),
+    /** A user, project or set of members created at the host. */
+    PROVISION("Provision", "Provisioning", new String[] { "kind", "name", "count" },
+        String.class, String.class, long.class),
+    /** A user's data and projects deleted from the host. */
+    CLEAR_DATA("ClearData", "Clear Data", new String[] { "user", "projects" },
+        String.class, long.class);
+
+    /** The JFR name, without the package prefix. */
+    private final String name;
+    /** The JFR label. */
+    private final String label;
+    /** The names of the fields. */
+    private final String[] fields;
+    /** The types of the fields. */
+    private final Class<?>[] types;
+    /** The jdk.jfr.EventFactory of this type, created on first use. */
+    private Object factory;
+
+    /**
+     * Defines a type.
+     * @param name The JFR name, without the package prefix.
+     * @param label The JFR label.
+     * @param fields The names of the fields.
+     * @param types The types of the fields.
+     */
+    private Type(String name, String label, String[] fields, Class<?>... types) {
+      this.name = name;
+      this.label = label;
+      this.fields = fields;
+      this.types = types;
+    }
+  }
+
+  /** True if events are created. */
+  private static volatile boolean enabled = Boolean.getBoolean(EVENTS_KEY);
+  /** The jdk.jfr.EventFactory.newEvent method, or null until JFR has been found. */
+  private static Method newEventMethod;
+  /** The jdk.jfr.Event.begin method. */
+  private static Method beginMethod;
+  /** The jdk.jfr.Event.end method. */
+  private static Method endMethod;
+  /** The jdk.jfr.Event.commit method. */
+  private static Method commitMethod;
+  /** The jdk.jfr.Event.set method. */
+  private static Method setMethod;
+
+  /** The type. */
+  private final Type type;
+  /** The jdk.jfr.Event. */
+  private final Object event;
+
+  /**
+   * Wraps a JFR event.
+   * @param type The type.
+   * @param event The jdk.jfr.Event.
+   */
+  private ProfileEvent(Type type, Object event) {
+    this.type = type;
+    this.event = event;
+  }
+
+  /**
+   * Enables or disables the events. Enabling them on a JVM without JFR logs a warning and
+   * leaves them disabled.
+   * @param on True to enable the events.
+   * @param logger The logger.
+   */
+  public static void setEnabled(boolean on, Logger logger) {
+    enabled = on && (initialize() == null);
+    if (on && !enabled) {
+      logger.warning("ProfileEvent: JFR events are not available in this JVM.");
+    }
+  }
+
+  /**
+   * Returns true if events are created.
+   * @return True if enabled.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Begins an event, recording the start of its span.
+   * @param type The type.
+   * @return The event, or null if events are disabled.
+   */
+  public static ProfileEvent begin(Type type) {
+    if (!enabled) {
+      return null;
+    }
+    try {
+      Object factory = getFactory(type);
+      if (factory == null) {
+        return null;
+      }
+      Object event = newEventMethod.invoke(factory);
+      beginMethod.invoke(event);
+      return new ProfileEvent(type, event);
+    }
+    catch (Exception e) {
+      enabled = false;
+      return null;
+    }
+  }
+
+  /**
+   * Ends the event's span, sets its fields and commits it to any recording in progress.
+   * @param event The event, or null if it was begun while events were disabled.
+   * @param values The value of each field of the event's type, in order. Numbers are
+   * converted to the type of their field.
+   */
+  public static void commit(ProfileEvent event, Object... values) {
+    if (event == null) {
+      return;
+    }
+    try {
+      endMethod.invoke(event.event);
+      for (int i = 0; i < values.length; i++) {
+        Object value = values[i];
+        if ((event.type.types[i] == long.class) && (value instanceof Number)) {
+          value = Long.valueOf(((Number) value).longValue());
+        }
+        setMethod.invoke(event.event, i, value);
+      }
+      commitMethod.invoke(event.event);
+    }
+    catch (Exception e) {
+      enabled = false;
+    }
+  }
+
+  /**
+   * Returns the factory of the type, creating it on first use.
+   * @param type The type.
+   * @return The factory, or null if JFR is not available.
+   * @throws Exception If the factory cannot be created.
+   */
+  private static synchronized Object getFactory(Type type) throws Exception {
+    if (type.factory != null) {
+      return type.factory;
+    }
+    if (initialize() != null) {
+      enabled = false;
+      return null;
+    }
+    Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+    Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+    List<Object> annotations = new ArrayList<Object>();
+    annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Name"),
+        "org.hackystat.simdata." + type.name));
+    annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Label"), type.label));
+    annotations.add(annotation.newInstance(Class.forName("jdk.jfr.Category"),
+        new String[] { "SimData" }));
+    Constructor<?> valueDescriptor =
+      Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class);
+    List<Object> fields = new ArrayList<Object>();
+    for (int i = 0; i < type.fields.length; i++) {
+      fields.add(valueDescriptor.newInstance(type.types[i], type.fields[i]));
+    }
+    type.factory = Class.forName("jdk.jfr.EventFactory").getMethod("create", List.class,
+        List.class).invoke(null, annotations, fields);
+    return type.factory;
+  }
+
+  /**
+   * Looks up the methods of jdk.jfr on first use.
+   * @return Null if JFR is available, or the reason it is not.
+   */
+  private static synchronized Exception initialize() {
+    if (newEventMethod != null) {
+      return null;
+    }
+    try {
+      Class<?> eventClass = Class.forName("jdk.jfr.Event");
+      beginMethod = eventClass.getMethod("begin");
+      endMethod = eventClass.getMethod("end");
+      commitMethod = eventClass.getMethod("commit");
+      setMethod = eventClass.getMethod("set", int.class, Object.class);
+      newEventMethod = Class.forName("jdk.jfr.EventFactory").getMethod("newEvent");
+      return null;
+    }
+    catch (Exception e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package org.hackystat.simdata.profile;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+/**
+ * Tests the JFR events and the flight recording of a run.
+ * @author Philip Johnson
+ */
+public class TestProfileEvent {
+
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.simdata");
+
+  /**
+   * Checks that disabled events are not created, and that committing one does nothing.
+   */
+  @Test
+  public void testDisabled() {
+    ProfileEvent.setEnabled(false, this.logger);
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+    assertNull("Checking disabled", event);
+    ProfileEvent.commit(event, "test", "joe", 1, 0);
+  }
+
+  /**
+   * Checks that a recording, where the JVM supports one, holds the events committed during
+   * it and is written to its file.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testRecording() throws Exception {
+    File file = File.createTempFile("simdata", ".jfr");
+    file.delete();
+    FlightRecording recording;
+    try {
+      recording = new FlightRecording(file, this.logger);
+    }
+    catch (Exception e) {
+      this.logger.info("No flight recorder in this JVM: " + e);
+      return;
+    }
+    try {
+      assertTrue("Checking enabled", ProfileEvent.isEnabled());
+      commit(ProfileEvent.Type.PHASE, "test", 10);
+      commit(ProfileEvent.Type.SEND, "test", "joe", 10, 100);
+      commit(ProfileEvent.Type.PROVISION, "user", "joe", 1);
+      commit(ProfileEvent.Type.CLEAR_DATA, "joe", 2);
+      assertTrue("Checking still enabled", ProfileEvent.isEnabled());
+    }
+    finally {
+      recording.stop();
+    }
+    assertFalse("Checking disabled", ProfileEvent.isEnabled());
+    assertTrue("Checking file", file.length() > 0);
+    file.delete();
+  }
+
+  /**
+   * Begins and commits an event.
+   * @param type The type.
+   * @param values The values of its fields.
+   */
+  private void commit(ProfileEvent.Type type, Object... values) {
+    ProfileEvent event = ProfileEvent.begin(type);
+    assertNotNull("Checking event " + type, event);
+    ProfileEvent.commit(event, values);
+  }
+}
@@ -0,0 +1,31 @@
+package org.hackystat.simdata.sdt;
+
+/**
+ * Registers sensor data types for development process events that the original SimData add
+ * methods do not generate: issue tracker updates, code reviews, and continuous integration
+ * pipeline stages. Generate them with SimData.addSensorData.
+ *
+ * @author Philip Johnson
+ */
+public class ProcessSdts implements SdtPlugin {
+
+  /** The registry name of issue tracker updates, keyed Id, Type, Status and Priority. */
+  public static final String ISSUE = "Issue";
+  /** The registry name of code reviews, keyed ReviewId, Reviewer, Status and Comments. */
+  public static final String REVIEW = "Review";
+  /** The registry name of CI pipeline stages, keyed Stage, Result and Duration in seconds. */
+  public static final String PIPELINE = "Pipeline";
+
+  /**
+   * Registers the Issue, Review and Pipeline types.
+   * @param registry The registry.
+   */
+  public void register(SdtRegistry registry) {
+    registry.register(ISSUE, new SdtTemplate("Issue", "Jira", "Id", "Type", "Status", 
+        "Priority"));
+    registry.register(REVIEW, new SdtTemplate("Review", "ReviewBoard", "ReviewId", "Reviewer", 
+        "Status", "Comments"));
+    registry.register(PIPELINE, new SdtTemplate("Build", "Hudson", "Stage", "Result", 
+        "Duration"));
+  }
+}
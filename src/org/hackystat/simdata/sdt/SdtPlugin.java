@@ -0,0 +1,17 @@
+package org.hackystat.simdata.sdt;
+
+/**
+ * Adds sensor data types or tool variants to an SdtRegistry. Plug-ins are named in the
+ * org.hackystat.simdata.sdt.plugins system property and need a public no-argument constructor.
+ *
+ * @author Philip Johnson
+ */
+public interface SdtPlugin {
+
+  /**
+   * Registers this plug-in's templates. Registering a name that already exists replaces its
+   * template, so a plug-in can switch a built-in type to another tool.
+   * @param registry The registry.
+   */
+  void register(SdtRegistry registry);
+}
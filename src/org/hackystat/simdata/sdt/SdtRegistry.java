@@ -0,0 +1,138 @@
+package org.hackystat.simdata.sdt;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps names to the templates of the sensor data that SimData generates. The default registry
+ * holds the built-in types used by the SimData add methods, the process types of ProcessSdts,
+ * and whatever the plug-ins named in the org.hackystat.simdata.sdt.plugins system property 
+ * register, so new types and tool variants need no change to SimData.
+ *
+ * @author Philip Johnson
+ */
+public class SdtRegistry {
+
+  /** The system property holding a comma separated list of SdtPlugin class names. */
+  public static final String PLUGINS_KEY = "org.hackystat.simdata.sdt.plugins";
+
+  /** The registry name of DevEvents from Eclipse. */
+  public static final String DEV_EVENT = "DevEvent";
+  /** The registry name of CodeIssues from FindBugs. */
+  public static final String CODE_ISSUE = "CodeIssue";
+  /** The registry name of FileMetrics from SCLC. */
+  public static final String FILE_METRIC = "FileMetric";
+  /** The registry name of complexity FileMetrics from JavaNCSS. */
+  public static final String COMPLEXITY = "Complexity";
+  /** The registry name of Commits from Subversion. */
+  public static final String COMMIT = "Commit";
+  /** The registry name of Builds from Ant. */
+  public static final String BUILD = "Build";
+  /** The registry name of UnitTests from JUnit. */
+  public static final String UNIT_TEST = "UnitTest";
+  /** The registry name of Coverage from Emma. */
+  public static final String COVERAGE = "Coverage";
+  /** The registry name of Coupling from DependencyFinder. */
+  public static final String COUPLING = "Coupling";
+
+  /** The default registry, created on first use. */
+  private static volatile SdtRegistry defaultRegistry;
+
+  /** Maps names to templates. */
+  private final ConcurrentMap<String, SdtTemplate> templates = 
+    new ConcurrentHashMap<String, SdtTemplate>();
+
+  /**
+   * Creates a registry holding the built-in types used by the SimData add methods.
+   */
+  public SdtRegistry() {
+    register(DEV_EVENT, new SdtTemplate("DevEvent", "Eclipse"));
+    register(CODE_ISSUE, new SdtTemplate("CodeIssue", "FindBugs", "Type_NPE"));
+    register(FILE_METRIC, new SdtTemplate("FileMetric", "SCLC", "TotalLines"));
+    register(COMPLEXITY, new SdtTemplate("FileMetric", "JavaNCSS", "TotalLines", 
+        "CyclomaticComplexityList"));
+    register(COMMIT, new SdtTemplate("Commit", "Subversion", "linesAdded", "linesDeleted"));
+    register(BUILD, new SdtTemplate("Build", "Ant", "Result"));
+    register(UNIT_TEST, new SdtTemplate("UnitTest", "JUnit", "Result"));
+    register(COVERAGE, new SdtTemplate("Coverage", "Emma", "line_Covered", "line_Uncovered"));
+    register(COUPLING, new SdtTemplate("Coupling", "DependencyFinder", "Efferent", 
+        "Afferent"));
+  }
+
+  /**
+   * Returns the registry shared by all SimData instances: the built-in types, the process
+   * types, and the types of the plug-ins named in the system property, loaded once.
+   * @return The default registry.
+   * @throws IllegalArgumentException If a plug-in cannot be loaded.
+   */
+  public static SdtRegistry getDefault() {
+    SdtRegistry registry = defaultRegistry;
+    if (registry == null) {
+      synchronized (SdtRegistry.class) {
+        registry = defaultRegistry;
+        if (registry == null) {
+          registry = new SdtRegistry();
+          new ProcessSdts().register(registry);
+          registry.loadPlugins(System.getProperty(PLUGINS_KEY, ""));
+          defaultRegistry = registry;
+        }
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * Instantiates each named plug-in and lets it register its templates.
+   * @param classNames A comma separated list of SdtPlugin class names; may be empty.
+   * @throws IllegalArgumentException If a plug-in cannot be loaded.
+   */
+  public void loadPlugins(String classNames) {
+    for (String className : classNames.split(",")) {
+      String name = className.trim();
+      if (name.length() == 0) {
+        continue;
+      }
+      try {
+        Class<?> pluginClass = Class.forName(name);
+        ((SdtPlugin) pluginClass.newInstance()).register(this);
+      }
+      catch (Exception e) {
+        throw new IllegalArgumentException("Could not load SDT plug-in: " + name, e);
+      }
+    }
+  }
+
+  /**
+   * Registers the template under the name, replacing any template already registered there.
+   * @param name The name.
+   * @param template The template.
+   */
+  public void register(String name, SdtTemplate template) {
+    this.templates.put(name, template);
+  }
+
+  /**
+   * Returns the template registered under the name. Generators should look templates up once
+   * and keep them, rather than looking them up for every instance.
+   * @param name The name.
+   * @return The template.
+   * @throws IllegalArgumentException If no template has that name.
+   */
+  public SdtTemplate get(String name) {
+    SdtTemplate template = this.templates.get(name);
+    if (template == null) {
+      throw new IllegalArgumentException("Unknown sensor data type: " + name);
+    }
+    return template;
+  }
+
+  /**
+   * Returns the registered names.
+   * @return The names, sorted.
+   */
+  public Set<String> getNames() {
+    return new TreeSet<String>(this.templates.keySet());
+  }
+}
@@ -0,0 +1,150 @@
+package org.hackystat.simdata.sdt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Properties;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * The fixed parts of one kind of SensorData: its sensor data type, its tool, and its property
+ * keys in order. Generators pass only the varying parts, the owner, resource, timestamps and
+ * property values, so no type, tool or key strings are built per instance. Templates are 
+ * immutable and may be shared between threads.
+ *
+ * @author Philip Johnson
+ */
+public final class SdtTemplate {
+
+  /** The number of small non-negative integers whose decimal strings are cached. */
+  private static final int CACHED_INTS = 4096;
+  /** The decimal strings of the integers from 0 to CACHED_INTS - 1. */
+  private static final String[] intStrings = new String[CACHED_INTS];
+  static {
+    for (int i = 0; i < CACHED_INTS; i++) {
+      intStrings[i] = String.valueOf(i);
+    }
+  }
+
+  /** The sensor data type, such as "Commit". */
+  private final String sdt;
+  /** The tool, such as "Subversion". */
+  private final String tool;
+  /** The property keys, in the order their values are passed. */
+  private final String[] keys;
+
+  /**
+   * Creates a template.
+   * @param sdt The sensor data type.
+   * @param tool The tool.
+   * @param keys The property keys, in the order their values will be passed.
+   */
+  public SdtTemplate(String sdt, String tool, String... keys) {
+    this.sdt = sdt;
+    this.tool = tool;
+    this.keys = keys.clone();
+  }
+
+  /**
+   * Returns a template with the same type and keys, sent by another tool, such as PMD rather
+   * than FindBugs for CodeIssue.
+   * @param tool The tool.
+   * @return The tool variant.
+   */
+  public SdtTemplate withTool(String tool) {
+    return new SdtTemplate(this.sdt, tool, this.keys);
+  }
+
+  /**
+   * Returns the sensor data type.
+   * @return The sensor data type.
+   */
+  public String getSensorDataType() {
+    return this.sdt;
+  }
+
+  /**
+   * Returns the tool.
+   * @return The tool.
+   */
+  public String getTool() {
+    return this.tool;
+  }
+
+  /**
+   * Returns the number of property keys, which is the number of values each instance needs.
+   * @return The number of keys.
+   */
+  public int getNumKeys() {
+    return this.keys.length;
+  }
+
+  /**
+   * Returns the property key at the given position.
+   * @param index The position.
+   * @return The key.
+   */
+  public String getKey(int index) {
+    return this.keys[index];
+  }
+
+  /**
+   * Builds an instance from this template.
+   * @param owner The owner's email.
+   * @param resource The resource.
+   * @param tstamp The timestamp, which should be unique for the owner.
+   * @param runtime The runtime.
+   * @param values The property values, one per key in order.
+   * @return The new instance.
+   * @throws IllegalArgumentException If there is not one value per key.
+   */
+  public SensorData makeSensorData(String owner, String resource, XMLGregorianCalendar tstamp,
+      XMLGregorianCalendar runtime, String... values) {
+    if (values.length != this.keys.length) {
+      throw new IllegalArgumentException(this.sdt + " from " + this.tool + " needs " 
+          + this.keys.length + " property values, not " + values.length);
+    }
+    SensorData data = new SensorData();
+    data.setOwner(owner);
+    data.setResource(resource);
+    data.setRuntime(runtime);
+    data.setSensorDataType(this.sdt);
+    data.setTimestamp(tstamp);
+    data.setTool(this.tool);
+    Properties properties = new Properties();
+    List<Property> list = properties.getProperty();
+    for (int i = 0; i < values.length; i++) {
+      Property property = new Property();
+      property.setKey(this.keys[i]);
+      property.setValue(values[i]);
+      list.add(property);
+    }
+    data.setProperties(properties);
+    return data;
+  }
+
+  /**
+   * Returns the decimal string of the value, without allocating for the small non-negative
+   * values that most metrics take.
+   * @param value The value.
+   * @return The decimal string.
+   */
+  public static String format(int value) {
+    if ((value >= 0) && (value < CACHED_INTS)) {
+      return intStrings[value];
+    }
+    return String.valueOf(value);
+  }
+
+  /**
+   * Returns the type, tool and keys of this template.
+   * @return A string such as "Commit/Subversion[linesAdded, linesDeleted]".
+   */
+  @Override
+  public String toString() {
+    return this.sdt + "/" + this.tool + Arrays.toString(this.keys);
+  }
+}
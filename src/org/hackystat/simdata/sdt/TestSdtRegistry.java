@@ -0,0 +1,95 @@
+package org.hackystat.simdata.sdt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.Property;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.simdata.SimData;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests the registry of sensor data type templates and its plug-ins.
+ * @author Philip Johnson
+ */
+public class TestSdtRegistry {
+  
+  /**
+   * A plug-in that switches CodeIssue to PMD and adds a Deploy type.
+   */
+  public static class TestPlugin implements SdtPlugin {
+    /**
+     * Registers the PMD variant and the Deploy type.
+     * @param registry The registry.
+     */
+    public void register(SdtRegistry registry) {
+      registry.register(SdtRegistry.CODE_ISSUE, 
+          registry.get(SdtRegistry.CODE_ISSUE).withTool("PMD"));
+      registry.register("Deploy", new SdtTemplate("Deploy", "Capistrano", "Environment"));
+    }
+  }
+  
+  /**
+   * Checks that plug-ins can add types and replace the tool of a built-in type.
+   */
+  @Test
+  public void testPlugins() {
+    SdtRegistry registry = new SdtRegistry();
+    registry.loadPlugins(" , " + TestPlugin.class.getName());
+    assertEquals("Checking variant", "PMD", registry.get(SdtRegistry.CODE_ISSUE).getTool());
+    assertEquals("Checking variant keys", "Type_NPE", 
+        registry.get(SdtRegistry.CODE_ISSUE).getKey(0));
+    assertEquals("Checking new type", "Deploy", registry.get("Deploy").getSensorDataType());
+    assertTrue("Checking names", registry.getNames().contains(SdtRegistry.COVERAGE));
+  }
+  
+  /**
+   * Checks that SimData generates the process types, and still generates the built-in types
+   * with the same properties.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testGeneration() throws Exception {
+    SimData simData = new SimData(null, SimData.getTestDomain());
+    ListSink sink = new ListSink();
+    List<SensorData> added = sink.getList();
+    simData.setSink(sink);
+    XMLGregorianCalendar day = Tstamp.makeTimestamp("2008-07-01");
+    SdtTemplate issue = simData.getSdtRegistry().get(ProcessSdts.ISSUE);
+    simData.addSensorData(issue, "joe", day, "http://jira/HACK-1", day, "HACK-1", "Bug", 
+        "Open", "Major");
+    simData.addCommit("joe", day, "/Foo.java", 25);
+    
+    SensorData first = added.get(0);
+    assertEquals("Checking type", "Issue", first.getSensorDataType());
+    assertEquals("Checking tool", "Jira", first.getTool());
+    assertEquals("Checking owner", "joe" + SimData.getTestDomain(), first.getOwner());
+    List<Property> properties = first.getProperties().getProperty();
+    assertEquals("Checking keys", 4, properties.size());
+    assertEquals("Checking status", "Status", properties.get(2).getKey());
+    assertEquals("Checking status value", "Open", properties.get(2).getValue());
+    
+    SensorData second = added.get(1);
+    assertEquals("Checking commit", "Subversion", second.getTool());
+    assertEquals("Checking added", "12", second.getProperties().getProperty().get(0).getValue());
+    assertEquals("Checking deleted", "linesDeleted", 
+        second.getProperties().getProperty().get(1).getKey());
+    assertTrue("Checking unique timestamps", 
+        !second.getTimestamp().equals(first.getTimestamp()));
+  }
+  
+  /**
+   * Checks that a template rejects the wrong number of values.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongValues() {
+    new SdtTemplate("Build", "Ant", "Result").makeSensorData("joe@hackystat.org", "/", 
+        null, null, "Success", "extra");
+  }
+}
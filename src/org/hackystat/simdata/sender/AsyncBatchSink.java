@@ -0,0 +1,218 @@
+package org.hackystat.simdata.sender;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.profile.ProfileEvent;
+import org.hackystat.simdata.sink.RunMetrics;
+
+/**
+ * A sink that puts compact batches to the host without blocking on their responses: each
+ * full batch is marshalled on the calling thread and handed to a NioHttpClient, which keeps up
+ * to a window of batches in flight over its connections from a single I/O thread. Against a
+ * distant host, where the SensorShell and the other senders are bound by one round trip per
+ * batch per thread, throughput then grows with the window until the host or the network is
+ * saturated.
+ * <p>
+ * The encoding is negotiated by a CompactTransport as usual; if the host accepts no batches,
+ * each instance is sent individually and synchronously. A failed batch is not retried; the
+ * failure is thrown from a later add, or from flush or close.
+ *
+ * @author Philip Johnson
+ */
+public class AsyncBatchSink implements SensorDataSink {
+
+  /** The system property holding the maximum number of batches in flight. */
+  public static final String WINDOW_KEY = "org.hackystat.simdata.async.window";
+
+  /** The transport that negotiates and encodes the batches. */
+  private final CompactTransport transport;
+  /** The client that puts the batches. */
+  private final NioHttpClient client;
+  /** The number of instances per batch. */
+  private final int batchSize;
+  /** The logger. */
+  private final Logger logger;
+  /** Maps owners to their pending batch. */
+  private final Map<String, List<SensorData>> batches = new HashMap<String, List<SensorData>>();
+  /** The first failure not yet thrown, or null. */
+  private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+  /** The number of instances the host has accepted. */
+  private final AtomicLong instancesSent = new AtomicLong();
+  /** The time at which the first batch was submitted, or zero. */
+  private long startNanos = 0;
+
+  /**
+   * Creates a sink that puts batches to the host.
+   * @param host The SensorBase host.
+   * @param batchSize The number of instances per batch.
+   * @param window The maximum number of batches in flight.
+   * @param logger The logger.
+   * @throws Exception If the host is not an http URI.
+   */
+  public AsyncBatchSink(String host, int batchSize, int window, Logger logger)
+    throws Exception {
+    this.transport = new CompactTransport(host, logger);
+    this.client = new NioHttpClient(host, window, logger);
+    this.batchSize = batchSize;
+    this.logger = logger;
+  }
+
+  /**
+   * Creates a sink for the host that sends batches of 250, with the window in the system
+   * property, or 32.
+   * @param host The SensorBase host.
+   * @param logger The logger.
+   * @return The sink.
+   * @throws Exception If the host is not an http URI.
+   */
+  public static AsyncBatchSink fromSystemProperties(String host, Logger logger)
+    throws Exception {
+    return new AsyncBatchSink(host, 250, Integer.parseInt(System.getProperty(WINDOW_KEY, "32")),
+        logger);
+  }
+
+  /**
+   * Adds the data to its owner's batch, putting the batch when it is full. Blocks while the
+   * window is full.
+   * @param data The sensor data.
+   * @throws Exception If an earlier batch failed.
+   */
+  public synchronized void add(SensorData data) throws Exception {
+    throwFailure();
+    List<SensorData> batch = this.batches.get(data.getOwner());
+    if (batch == null) {
+      batch = new ArrayList<SensorData>(this.batchSize);
+      this.batches.put(data.getOwner(), batch);
+    }
+    batch.add(data);
+    if (batch.size() >= this.batchSize) {
+      this.batches.remove(data.getOwner());
+      submit(data.getOwner(), batch);
+    }
+  }
+
+  /**
+   * Puts all pending batches and waits until the host has responded to every batch.
+   * @throws Exception If a batch failed.
+   */
+  public synchronized void flush() throws Exception {
+    try {
+      for (Map.Entry<String, List<SensorData>> entry : this.batches.entrySet()) {
+        submit(entry.getKey(), entry.getValue());
+      }
+    }
+    finally {
+      this.batches.clear();
+      this.client.awaitIdle();
+    }
+    throwFailure();
+  }
+
+  /**
+   * Sends all pending batches, closes the connections, and logs a summary.
+   * @throws Exception If a batch failed.
+   */
+  public synchronized void close() throws Exception {
+    try {
+      flush();
+    }
+    finally {
+      this.client.close();
+    }
+    double seconds = (this.startNanos == 0) ? 0.0 : (System.nanoTime() - this.startNanos) / 1e9;
+    this.logger.info("AsyncBatchSink: sent " + getInstancesSent() + " instances in "
+        + this.client.getRequestsCompleted() + " requests and " + this.client.getBytesSent()
+        + " bytes over " + this.client.getConnectionsOpened() + " connections in "
+        + String.format("%.2f s", seconds));
+  }
+
+  /**
+   * Returns the number of instances the host has accepted.
+   * @return The number of instances.
+   */
+  public long getInstancesSent() {
+    return this.instancesSent.get() + this.transport.getInstancesSent();
+  }
+
+  /**
+   * Returns the client that puts the batches.
+   * @return The client.
+   */
+  public NioHttpClient getClient() {
+    return this.client;
+  }
+
+  /**
+   * Marshals the batch and hands it to the client, which puts it when the window allows.
+   * @param owner The owner of the batch.
+   * @param batch The batch.
+   * @throws Exception If the batch cannot be marshalled, or the client is closed.
+   */
+  private void submit(final String owner, final List<SensorData> batch) throws Exception {
+    if (this.startNanos == 0) {
+      this.startNanos = System.nanoTime();
+    }
+    CompactTransport.Encoding encoding = this.transport.negotiate(owner);
+    if (encoding == CompactTransport.Encoding.PER_ITEM) {
+      this.transport.send(owner, batch);
+      return;
+    }
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(16 * 1024);
+    this.transport.encode(encoding, batch, payload);
+    Map<String, String> headers = new LinkedHashMap<String, String>();
+    headers.put("Content-Type", "text/xml; charset=UTF-8");
+    if (encoding == CompactTransport.Encoding.GZIP_BATCH) {
+      headers.put("Content-Encoding", "gzip");
+    }
+    headers.put("Authorization", CompactTransport.getAuthorization(owner));
+    final long start = System.nanoTime();
+    final ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+    final int bytes = payload.size();
+    this.client.put("sensordata/batch", headers, payload.toByteArray(),
+        new NioHttpClient.Callback() {
+      /**
+       * Counts the batch, or records its failure, and the time from handing it to the client
+       * to the host's response.
+       * @param status The HTTP status.
+       */
+      public void completed(int status) {
+        RunMetrics.recordSend(start);
+        if (status >= 300) {
+          failed(new Exception("Batch of " + batch.size() + " failed with status " + status));
+        }
+        else {
+          instancesSent.addAndGet(batch.size());
+          ProfileEvent.commit(event, "async", owner, batch.size(), bytes);
+        }
+      }
+      /**
+       * Records the failure of the batch, unless an earlier failure is pending.
+       * @param e The failure.
+       */
+      public void failed(Exception e) {
+        failure.compareAndSet(null, e);
+      }
+    });
+  }
+
+  /**
+   * Throws the first failure not yet thrown, if any.
+   * @throws Exception The failure.
+   */
+  private void throwFailure() throws Exception {
+    Exception e = this.failure.getAndSet(null);
+    if (e != null) {
+      throw e;
+    }
+  }
+}
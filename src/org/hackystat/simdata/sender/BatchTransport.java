@@ -0,0 +1,22 @@
+package org.hackystat.simdata.sender;
+
+import java.util.List;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Delivers a batch of sensor data, all owned by the same user, to the SensorBase in one attempt.
+ * 
+ * @author Philip Johnson
+ */
+public interface BatchTransport {
+  
+  /**
+   * Sends the batch.
+   * @param owner The owner (with domain) of every instance in the batch.
+   * @param batch The sensor data.
+   * @throws Exception If the attempt fails.
+   */
+  void send(String owner, List<SensorData> batch) throws Exception;
+
+}
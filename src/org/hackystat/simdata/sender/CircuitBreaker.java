@@ -0,0 +1,111 @@
+package org.hackystat.simdata.sender;
+
+import java.util.logging.Logger;
+
+/**
+ * Stops a sender from hammering a host that is failing. After a number of consecutive failures
+ * the breaker opens, and senders wait until it half-opens again. A half-open breaker lets a
+ * single trial attempt through and holds the other senders until the trial's result is
+ * recorded: a success closes the breaker and releases them all; a failure opens it again.
+ * 
+ * @author Philip Johnson
+ */
+public class CircuitBreaker {
+  
+  /** The number of consecutive failures that opens the breaker. */
+  private final int threshold;
+  /** How long the breaker stays open, in milliseconds. */
+  private final long openMillis;
+  /** The logger. */
+  private final Logger logger;
+  /** The number of consecutive failures. */
+  private int failures = 0;
+  /** The time at which the open breaker half-opens, or 0 if it is closed. */
+  private long openUntil = 0;
+  /** The sender making the trial attempt of the half-open breaker, or null. */
+  private Thread trial = null;
+  /** The number of times the breaker has opened. */
+  private int trips = 0;
+  
+  /**
+   * Creates a closed circuit breaker.
+   * @param threshold The number of consecutive failures that opens the breaker.
+   * @param openMillis How long the breaker stays open, in milliseconds.
+   * @param logger The logger.
+   */
+  public CircuitBreaker(int threshold, long openMillis, Logger logger) {
+    this.threshold = threshold;
+    this.openMillis = openMillis;
+    this.logger = logger;
+  }
+  
+  /**
+   * Blocks while the breaker is open, or half-open with another sender's trial in progress.
+   * Once this returns, the caller must record the result of its attempt with recordSuccess,
+   * recordFailure or, if it has none, abandonAttempt.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public synchronized void awaitPermission() throws InterruptedException {
+    while (this.openUntil != 0) {
+      long wait = this.openUntil - System.currentTimeMillis();
+      if (wait > 0) {
+        wait(wait);
+      }
+      else if (this.trial == null) {
+        this.trial = Thread.currentThread();
+        return;
+      }
+      else {
+        wait();
+      }
+    }
+  }
+  
+  /**
+   * Records a successful attempt, closing the breaker.
+   */
+  public synchronized void recordSuccess() {
+    this.failures = 0;
+    this.openUntil = 0;
+    this.trial = null;
+    notifyAll();
+  }
+  
+  /**
+   * Records a failed attempt, opening the breaker if the threshold is reached or the attempt
+   * was the half-open breaker's trial.
+   */
+  public synchronized void recordFailure() {
+    boolean trialFailed = (this.trial == Thread.currentThread());
+    if ((++this.failures >= this.threshold) || trialFailed) {
+      this.openUntil = System.currentTimeMillis() + this.openMillis;
+      // A late failure of an attempt admitted before the breaker opened leaves the trial be.
+      if (trialFailed) {
+        this.trial = null;
+      }
+      this.trips++;
+      this.logger.warning("Circuit breaker open for " + this.openMillis + " ms after " 
+          + this.failures + " consecutive failures.");
+      notifyAll();
+    }
+  }
+  
+  /**
+   * Records that an attempt ended without a result, for example because its sender was
+   * interrupted. If it was the half-open breaker's trial, another sender may make one.
+   */
+  public synchronized void abandonAttempt() {
+    if (this.trial == Thread.currentThread()) {
+      this.trial = null;
+      notifyAll();
+    }
+  }
+  
+  /**
+   * Returns the number of times the breaker has opened.
+   * @return The number of trips.
+   */
+  public synchronized int getTrips() {
+    return this.trips;
+  }
+}
@@ -0,0 +1,44 @@
+package org.hackystat.simdata.sender;
+
+import java.util.List;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDatas;
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.profile.ProfileEvent;
+import org.hackystat.simdata.sink.RunMetrics;
+
+/**
+ * Sends each batch with a single putSensorDataBatch call on the owner's pooled SensorBaseClient.
+ * 
+ * @author Philip Johnson
+ */
+public class ClientTransport implements BatchTransport {
+  
+  /** The SensorBase host. */
+  private final String host;
+  
+  /**
+   * Creates a transport for the given host. 
+   * @param host The SensorBase host.
+   */
+  public ClientTransport(String host) {
+    this.host = host;
+  }
+
+  /**
+   * Sends the batch.
+   * @param owner The owner of the batch.
+   * @param batch The sensor data.
+   * @throws Exception If the attempt fails.
+   */
+  public void send(String owner, List<SensorData> batch) throws Exception {
+    long start = System.nanoTime();
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+    SensorDatas datas = new SensorDatas();
+    datas.getSensorData().addAll(batch);
+    ClientPool.getClient(this.host, owner).putSensorDataBatch(datas);
+    RunMetrics.recordSend(start);
+    ProfileEvent.commit(event, "client", owner, batch.size(), 0);
+  }
+}
@@ -0,0 +1,298 @@
+package org.hackystat.simdata.sender;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorDatas;
+import org.hackystat.simdata.ClientPool;
+import org.hackystat.simdata.SensorDataXml;
+import org.hackystat.simdata.profile.ProfileEvent;
+import org.hackystat.simdata.sink.RunMetrics;
+
+/**
+ * Sends each batch as a single SensorDatas payload, gzip compressed when the host accepts it.
+ * Owner, tool, type and property key strings repeat in every instance, so batches compress
+ * very well, which matters when network bytes per event are the bottleneck.
+ * <p>
+ * The encoding is negotiated with the host on first use by putting an empty batch, first gzip
+ * compressed and then plain. If the host rejects both as unsupported, every instance is sent
+ * individually with putSensorData, as SensorShell would.
+ * 
+ * @author Philip Johnson
+ */
+public class CompactTransport implements BatchTransport {
+  
+  /** The encodings, from most to least compact. */
+  public enum Encoding { 
+    /** A gzip compressed SensorDatas batch. */
+    GZIP_BATCH, 
+    /** An uncompressed SensorDatas batch. */
+    BATCH, 
+    /** One putSensorData call per instance. */
+    PER_ITEM 
+  }
+  
+  /** The milliseconds allowed for connecting to the host. */
+  private static final int connectTimeoutMillis = 10 * 1000;
+  /** The milliseconds allowed for the host to respond to a batch. */
+  private static final int readTimeoutMillis = 100 * 1000;
+  
+  /** The SensorBase host, as passed to the constructor (and used as the ClientPool key). */
+  private final String host;
+  /** The URI of the batch resource. */
+  private final String batchUri;
+  /** The logger. */
+  private final Logger logger;
+  /** The negotiated encoding, or null until negotiation has succeeded. */
+  private volatile Encoding encoding = null;
+  /** The number of payload bytes sent, after compression. */
+  private final AtomicLong bytesSent = new AtomicLong();
+  /** The number of instances sent. */
+  private final AtomicLong instancesSent = new AtomicLong();
+  /** Each thread's payload buffer for send, reused from batch to batch. */
+  private final ThreadLocal<ByteArrayOutputStream> buffers = 
+    new ThreadLocal<ByteArrayOutputStream>() {
+    /** @return A new 64 KB buffer. */
+    @Override
+    protected ByteArrayOutputStream initialValue() {
+      return new ByteArrayOutputStream(64 * 1024);
+    }
+  };
+  
+  /**
+   * Creates a transport for the given host. 
+   * @param host The SensorBase host.
+   * @param logger The logger.
+   */
+  public CompactTransport(String host, Logger logger) {
+    this.host = host;
+    this.batchUri = (host.endsWith("/") ? host : host + "/") + "sensordata/batch";
+    this.logger = logger;
+  }
+  
+  /**
+   * Returns the SensorBase host.
+   * @return The host.
+   */
+  public String getHost() {
+    return this.host;
+  }
+  
+  /**
+   * Returns the negotiated encoding, or null if no batch has been sent yet.
+   * @return The encoding.
+   */
+  public Encoding getEncoding() {
+    return this.encoding;
+  }
+  
+  /**
+   * Returns the number of payload bytes sent by the batch encodings, after compression.
+   * @return The number of bytes.
+   */
+  public long getBytesSent() {
+    return this.bytesSent.get();
+  }
+  
+  /**
+   * Returns the number of instances sent.
+   * @return The number of instances.
+   */
+  public long getInstancesSent() {
+    return this.instancesSent.get();
+  }
+
+  /**
+   * Sends the batch with the negotiated encoding.
+   * @param owner The owner of the batch.
+   * @param batch The sensor data.
+   * @throws Exception If the attempt fails.
+   */
+  public void send(String owner, List<SensorData> batch) throws Exception {
+    if (negotiate(owner) == Encoding.PER_ITEM) {
+      long start = System.nanoTime();
+      ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+      for (SensorData data : batch) {
+        ClientPool.getClient(this.host, owner).putSensorData(data);
+      }
+      RunMetrics.recordSend(start);
+      this.instancesSent.addAndGet(batch.size());
+      ProfileEvent.commit(event, "per-item", owner, batch.size(), 0);
+    }
+    else {
+      ByteArrayOutputStream payload = buffers.get();
+      encode(this.encoding, batch, payload);
+      sendPayload(owner, this.encoding, payload, batch.size());
+    }
+  }
+  
+  /**
+   * Returns the most compact encoding the host accepts, negotiating it on first use. The
+   * encoding is only published once the host has answered the probes, so concurrent senders
+   * never see a tentative one, and if a probe fails negotiation is tried again on next use.
+   * @param owner A user registered at the host.
+   * @return The encoding.
+   * @throws Exception If the host cannot be reached, or fails a probe with a status that does
+   * not mean the encoding is unsupported.
+   */
+  public Encoding negotiate(String owner) throws Exception {
+    Encoding negotiated = this.encoding;
+    if (negotiated != null) {
+      return negotiated;
+    }
+    synchronized (this) {
+      if (this.encoding == null) {
+        Encoding probed = Encoding.GZIP_BATCH;
+        if (!probe(owner, probed)) {
+          probed = Encoding.BATCH;
+          if (!probe(owner, probed)) {
+            probed = Encoding.PER_ITEM;
+          }
+        }
+        this.encoding = probed;
+        this.logger.info("CompactTransport: using " + this.encoding + " for " + this.host);
+      }
+      return this.encoding;
+    }
+  }
+  
+  /**
+   * Puts an empty batch with the given encoding. Only a 415 (Unsupported Media Type) or 400 
+   * (Bad Request) means the host does not accept the encoding; any other failure, like a 503 
+   * from a throttled host, says nothing about the encoding and is thrown instead.
+   * @param owner A user registered at the host.
+   * @param probed The batch encoding to probe.
+   * @return True if the host accepts the encoding, false if it does not support it.
+   * @throws Exception If the host cannot be reached or fails for another reason.
+   */
+  private boolean probe(String owner, Encoding probed) throws Exception {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    encode(probed, new ArrayList<SensorData>(), payload);
+    int status = put(owner, payload, probed == Encoding.GZIP_BATCH);
+    if (status < 300) {
+      return true;
+    }
+    if ((status == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) 
+        || (status == HttpURLConnection.HTTP_BAD_REQUEST)) {
+      return false;
+    }
+    throw new Exception("Probe of " + probed + " at " + this.host + " failed with status " 
+        + status);
+  }
+  
+  /**
+   * Marshals the batch into the payload buffer, compressed if the encoding is GZIP_BATCH. 
+   * The buffer is reset first, so that one buffer can be reused for many batches.
+   * Uses the calling thread's cached marshaller, so batches may be encoded concurrently.
+   * @param encoding The encoding, normally the one returned by negotiate.
+   * @param batch The sensor data.
+   * @param payload The buffer.
+   * @throws Exception If the batch cannot be marshalled.
+   */
+  public void encode(Encoding encoding, List<SensorData> batch, ByteArrayOutputStream payload)
+    throws Exception {
+    SensorDatas datas = new SensorDatas();
+    datas.getSensorData().addAll(batch);
+    payload.reset();
+    OutputStream out = (encoding == Encoding.GZIP_BATCH) 
+      ? new GZIPOutputStream(payload, 8192) : payload;
+    SensorDataXml.getThreadMarshaller().marshal(datas, out);
+    out.close();
+  }
+  
+  /**
+   * Sends a payload produced by encode.
+   * @param owner The owner of the batch.
+   * @param encoding The encoding the payload was encoded with.
+   * @param payload The encoded batch.
+   * @param count The number of instances in the batch.
+   * @throws Exception If the host does not accept it.
+   */
+  public void sendPayload(String owner, Encoding encoding, ByteArrayOutputStream payload, 
+      int count) throws Exception {
+    long start = System.nanoTime();
+    ProfileEvent event = ProfileEvent.begin(ProfileEvent.Type.SEND);
+    int status = put(owner, payload, encoding == Encoding.GZIP_BATCH);
+    RunMetrics.recordSend(start);
+    if (status >= 300) {
+      throw new Exception("Batch of " + count + " failed with status " + status);
+    }
+    this.instancesSent.addAndGet(count);
+    ProfileEvent.commit(event, "compact", owner, count, payload.size());
+  }
+  
+  /**
+   * Puts an encoded batch to the host's sensordata/batch resource, failing if the host does
+   * not accept the connection or respond within the timeouts.
+   * @param owner The owner, whose email is also the password.
+   * @param payload The encoded batch.
+   * @param gzip True if the payload is gzip compressed.
+   * @return The HTTP status.
+   * @throws IOException If the host cannot be reached.
+   */
+  private int put(String owner, ByteArrayOutputStream payload, boolean gzip) 
+    throws IOException {
+    HttpURLConnection connection = 
+      (HttpURLConnection) new URL(this.batchUri).openConnection();
+    connection.setConnectTimeout(connectTimeoutMillis);
+    connection.setReadTimeout(readTimeoutMillis);
+    connection.setRequestMethod("PUT");
+    connection.setDoOutput(true);
+    connection.setFixedLengthStreamingMode(payload.size());
+    connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+    if (gzip) {
+      connection.setRequestProperty("Content-Encoding", "gzip");
+    }
+    connection.setRequestProperty("Authorization", getAuthorization(owner));
+    OutputStream body = connection.getOutputStream();
+    payload.writeTo(body);
+    body.close();
+    this.bytesSent.addAndGet(payload.size());
+    int status = connection.getResponseCode();
+    drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+    return status;
+  }
+  
+  /**
+   * Returns the Authorization header of the owner's requests.
+   * @param owner The owner, whose email is also the password.
+   * @return The header value.
+   * @throws IOException If UTF-8 is not supported.
+   */
+  static String getAuthorization(String owner) throws IOException {
+    String credentials = owner + ":" + owner;
+    return "Basic " + DatatypeConverter.printBase64Binary(credentials.getBytes("UTF-8"));
+  }
+  
+  /**
+   * Reads and closes a response stream, so that the connection can be kept alive.
+   * @param in The stream, possibly null.
+   * @throws IOException If it cannot be read.
+   */
+  private static void drain(InputStream in) throws IOException {
+    if (in == null) {
+      return;
+    }
+    byte[] buffer = new byte[1024];
+    try {
+      while (in.read(buffer) >= 0) {
+        // Discard.
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.hackystat.simdata.sender;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataXml;
+
+/**
+ * Records sensor data that could not be sent after all retries, one XML fragment per line,
+ * so that it can be inspected or replayed later. 
+ * 
+ * @author Philip Johnson
+ */
+public class DeadLetterFile {
+  
+  /** The file. */
+  private final File file;
+  /** The writer, opened on first use. */
+  private Writer writer = null;
+  /** The number of instances written. */
+  private long count = 0;
+  
+  /**
+   * Creates a dead letter file. Nothing is written until the first failure.
+   * @param file The file, which is appended to.
+   */
+  public DeadLetterFile(File file) {
+    this.file = file;
+  }
+  
+  /**
+   * Appends the given sensor data.
+   * @param batch The sensor data that could not be sent.
+   * @throws Exception If it cannot be written.
+   */
+  public synchronized void write(List<SensorData> batch) throws Exception {
+    if (this.writer == null) {
+      File parent = this.file.getAbsoluteFile().getParentFile();
+      if (parent != null) {
+        parent.mkdirs();
+      }
+      this.writer = new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(this.file, true), "UTF-8"));
+    }
+    for (SensorData data : batch) {
+      this.writer.write(SensorDataXml.toXml(data));
+      this.writer.write('\n');
+      this.count++;
+    }
+    this.writer.flush();
+  }
+  
+  /**
+   * Returns the number of instances written.
+   * @return The count.
+   */
+  public synchronized long getCount() {
+    return this.count;
+  }
+  
+  /**
+   * Returns the file.
+   * @return The file.
+   */
+  public File getFile() {
+    return this.file;
+  }
+  
+  /**
+   * Closes the file.
+   * @throws IOException If it cannot be closed.
+   */
+  public synchronized void close() throws IOException {
+    if (this.writer != null) {
+      this.writer.close();
+      this.writer = null;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package org.hackystat.simdata.sender;
+
+import java.util.Random;
+
+/**
+ * Injects client-side faults before a send, so that retry handling can be tested without a
+ * misbehaving host. A send can be dropped (as if the request was lost and timed out), delayed,
+ * or failed as if the host returned a 5xx error. 
+ * 
+ * @author Philip Johnson
+ */
+public class FaultInjector {
+  
+  /** The fraction of sends that are dropped. */
+  private final double dropRate;
+  /** The fraction of sends that fail with a server error. */
+  private final double errorRate;
+  /** The maximum delay added to each send, in milliseconds. */
+  private final int maxDelay;
+  /** The random number generator. */
+  private final Random random;
+  
+  /**
+   * Creates a fault injector.
+   * @param dropRate The fraction of sends that are dropped.
+   * @param errorRate The fraction of sends that fail with a server error.
+   * @param maxDelay The maximum delay added to each send, in milliseconds.
+   * @param seed The seed of the random number generator.
+   */
+  public FaultInjector(double dropRate, double errorRate, int maxDelay, long seed) {
+    this.dropRate = dropRate;
+    this.errorRate = errorRate;
+    this.maxDelay = maxDelay;
+    this.random = new Random(seed);
+  }
+  
+  /**
+   * Returns true if this injector never injects anything.
+   * @return True if inactive.
+   */
+  public boolean isInactive() {
+    return (this.dropRate <= 0) && (this.errorRate <= 0) && (this.maxDelay <= 0);
+  }
+  
+  /**
+   * Called before each send; may sleep or throw.
+   * @throws Exception The injected fault.
+   */
+  public void beforeSend() throws Exception {
+    double dice;
+    int delay;
+    synchronized (this) {
+      dice = this.random.nextDouble();
+      delay = (this.maxDelay > 0) ? this.random.nextInt(this.maxDelay) : 0;
+    }
+    if (delay > 0) {
+      Thread.sleep(delay);
+    }
+    if (dice < this.dropRate) {
+      throw new Exception("Injected fault: request dropped");
+    }
+    if (dice < this.dropRate + this.errorRate) {
+      throw new Exception("Injected fault: 503 Service Unavailable");
+    }
+  }
+}
@@ -0,0 +1,683 @@
+package org.hackystat.simdata.sender;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A minimal HTTP/1.1 client on non-blocking NIO channels, which puts request bodies to one
+ * host from a single I/O thread. Up to a window of requests are in flight at once, each on its
+ * own keep-alive connection, so throughput is bounded by the window over the round trip time
+ * rather than by the number of sending threads. Connections are opened as the window fills
+ * and kept for reuse; a request that finds its reused connection closed by the host is sent
+ * once more on a new one.
+ * <p>
+ * put blocks while the window is full, and reports each request's outcome to its Callback on
+ * the I/O thread, so callbacks must not block. Only plain http hosts are supported.
+ *
+ * @author Philip Johnson
+ */
+public class NioHttpClient {
+
+  /**
+   * Receives the outcome of a request, on the I/O thread.
+   */
+  public interface Callback {
+
+    /**
+     * Called when the host has responded.
+     * @param status The HTTP status.
+     */
+    void completed(int status);
+
+    /**
+     * Called when the request could not be sent, or no response arrived in time.
+     * @param e The failure.
+     */
+    void failed(Exception e);
+  }
+
+  /** The milliseconds a request may wait for its response, as for pooled clients. */
+  private static final int TIMEOUT_MILLIS = 100000;
+
+  /** The address of the host. */
+  private final InetSocketAddress address;
+  /** The Host header of the host. */
+  private final String hostHeader;
+  /** The path of the host's URI, ending with a slash, to which request paths are relative. */
+  private final String basePath;
+  /** The number of requests that may be in flight. */
+  private final int windowSize;
+  /** The permits for requests in flight. */
+  private final Semaphore window;
+  /** The selector of the I/O thread. */
+  private final Selector selector;
+  /** The requests waiting for the I/O thread to start them. */
+  private final Queue<Request> pending = new ConcurrentLinkedQueue<Request>();
+  /** The open connections without a request, used only by the I/O thread. */
+  private final LinkedList<Connection> idle = new LinkedList<Connection>();
+  /** The buffer that responses are read into, used only by the I/O thread. */
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+  /** The I/O thread. */
+  private final Thread ioThread;
+  /** The logger. */
+  private final Logger logger;
+  /** True once the client is closed, or its I/O thread has failed. */
+  private volatile boolean closed = false;
+  /** The number of requests completed with a response. */
+  private final AtomicLong requestsCompleted = new AtomicLong();
+  /** The number of body bytes sent. */
+  private final AtomicLong bytesSent = new AtomicLong();
+  /** The number of connections opened. */
+  private final AtomicLong connectionsOpened = new AtomicLong();
+
+  /**
+   * Creates a client for the host and starts its I/O thread.
+   * @param host The host URI, such as "http://localhost:9876/sensorbase/".
+   * @param windowSize The maximum number of requests in flight, at least 1.
+   * @param logger The logger.
+   * @throws IOException If the selector cannot be opened.
+   * @throws IllegalArgumentException If the host is not an http URI, or the window is empty.
+   */
+  public NioHttpClient(String host, int windowSize, Logger logger) throws IOException {
+    URI uri = URI.create(host);
+    if (!"http".equals(uri.getScheme()) || (uri.getHost() == null)) {
+      throw new IllegalArgumentException("NioHttpClient needs an http host: " + host);
+    }
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("The window must be at least 1.");
+    }
+    int port = (uri.getPort() < 0) ? 80 : uri.getPort();
+    this.address = new InetSocketAddress(uri.getHost(), port);
+    this.hostHeader = uri.getHost() + ":" + port;
+    String path = (uri.getRawPath() == null) ? "" : uri.getRawPath();
+    this.basePath = path.endsWith("/") ? path : path + "/";
+    this.windowSize = windowSize;
+    this.window = new Semaphore(windowSize);
+    this.logger = logger;
+    this.selector = Selector.open();
+    this.ioThread = new Thread("SimData-nio") {
+      @Override
+      public void run() {
+        runLoop();
+      }
+    };
+    this.ioThread.setDaemon(true);
+    this.ioThread.start();
+  }
+
+  /**
+   * Puts a body to a path of the host, blocking while the window is full.
+   * @param path The path, relative to the host URI, such as "sensordata/batch".
+   * @param headers The request headers, other than Host and Content-Length.
+   * @param body The body.
+   * @param callback Receives the outcome.
+   * @throws IOException If the client is closed.
+   * @throws InterruptedException If interrupted while the window is full.
+   */
+  public void put(String path, Map<String, String> headers, byte[] body, Callback callback)
+    throws IOException, InterruptedException {
+    StringBuilder head = new StringBuilder(256);
+    head.append("PUT ").append(this.basePath).append(path).append(" HTTP/1.1\r\n");
+    head.append("Host: ").append(this.hostHeader).append("\r\n");
+    head.append("Content-Length: ").append(body.length).append("\r\n");
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+    }
+    head.append("\r\n");
+    Request request = new Request(head.toString().getBytes("ISO-8859-1"), body, callback);
+    if (this.closed) {
+      throw new IOException("NioHttpClient is closed.");
+    }
+    this.window.acquire();
+    this.pending.add(request);
+    if (this.closed && this.pending.remove(request)) {
+      this.window.release();
+      throw new IOException("NioHttpClient is closed.");
+    }
+    this.selector.wakeup();
+  }
+
+  /**
+   * Waits until every request put so far has completed or failed, and its callback returned.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public void awaitIdle() throws InterruptedException {
+    this.window.acquire(this.windowSize);
+    this.window.release(this.windowSize);
+  }
+
+  /**
+   * Waits for the requests in flight, then closes the connections and stops the I/O thread.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public void close() throws InterruptedException {
+    if (!this.closed) {
+      awaitIdle();
+      this.closed = true;
+      this.selector.wakeup();
+    }
+    this.ioThread.join();
+  }
+
+  /**
+   * Returns the number of requests that received a response.
+   * @return The number of requests.
+   */
+  public long getRequestsCompleted() {
+    return this.requestsCompleted.get();
+  }
+
+  /**
+   * Returns the number of body bytes sent.
+   * @return The number of bytes.
+   */
+  public long getBytesSent() {
+    return this.bytesSent.get();
+  }
+
+  /**
+   * Returns the number of connections opened, which is at most the window unless the host
+   * closes connections.
+   * @return The number of connections.
+   */
+  public long getConnectionsOpened() {
+    return this.connectionsOpened.get();
+  }
+
+  /**
+   * Runs the I/O thread: starts pending requests, services ready connections, and expires
+   * requests that have waited too long, until the client is closed.
+   */
+  private void runLoop() {
+    try {
+      while (!this.closed) {
+        this.selector.select(1000);
+        Request request = this.pending.poll();
+        while (request != null) {
+          start(request, false);
+          request = this.pending.poll();
+        }
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          service(key);
+        }
+        expire();
+      }
+    }
+    catch (IOException e) {
+      this.logger.warning("NioHttpClient: the I/O thread failed: " + e);
+    }
+    finally {
+      this.closed = true;
+      IOException closedException = new IOException("NioHttpClient is closed.");
+      for (SelectionKey key : this.selector.keys()) {
+        abandon((Connection) key.attachment(), closedException, false);
+      }
+      Request request = this.pending.poll();
+      while (request != null) {
+        fail(request, closedException);
+        request = this.pending.poll();
+      }
+      try {
+        this.selector.close();
+      }
+      catch (IOException e) {
+        this.logger.fine("NioHttpClient: could not close the selector: " + e);
+      }
+    }
+  }
+
+  /**
+   * Starts sending a request on an idle connection, or on a new one.
+   * @param request The request.
+   * @param fresh True to open a new connection even if one is idle.
+   */
+  private void start(Request request, boolean fresh) {
+    Connection connection = fresh ? null : this.idle.poll();
+    try {
+      if (connection == null) {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        connection = new Connection(channel);
+        connection.key = channel.register(this.selector, 0, connection);
+        this.connectionsOpened.incrementAndGet();
+        boolean connected = channel.connect(this.address);
+        connection.begin(request, false);
+        connection.key.interestOps(connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT);
+      }
+      else {
+        connection.begin(request, true);
+        connection.key.interestOps(SelectionKey.OP_WRITE);
+      }
+    }
+    catch (IOException e) {
+      if (connection == null) {
+        fail(request, e);
+      }
+      else {
+        abandon(connection, e, true);
+      }
+    }
+  }
+
+  /**
+   * Connects, writes to, or reads from a ready connection.
+   * @param key The key of the connection.
+   */
+  private void service(SelectionKey key) {
+    Connection connection = (Connection) key.attachment();
+    try {
+      if (!key.isValid()) {
+        return;
+      }
+      if (key.isConnectable()) {
+        if (connection.channel.finishConnect()) {
+          key.interestOps(SelectionKey.OP_WRITE);
+        }
+      }
+      else if (key.isWritable()) {
+        connection.channel.write(connection.out);
+        if (!connection.out[1].hasRemaining()) {
+          this.bytesSent.addAndGet(connection.out[1].limit());
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+      else if (key.isReadable()) {
+        read(connection);
+      }
+    }
+    catch (CancelledKeyException e) {
+      abandon(connection, new IOException("Connection cancelled."), true);
+    }
+    catch (IOException e) {
+      abandon(connection, e, true);
+    }
+  }
+
+  /**
+   * Reads what the host has sent on a connection, completing its request once the whole
+   * response has arrived.
+   * @param connection The connection.
+   * @throws IOException If the connection fails, or closes before the response is complete.
+   */
+  private void read(Connection connection) throws IOException {
+    this.readBuffer.clear();
+    int count = connection.channel.read(this.readBuffer);
+    if (connection.request == null) {
+      // An idle connection is readable only when the host closes it.
+      this.idle.remove(connection);
+      close(connection);
+      return;
+    }
+    if (count < 0) {
+      if (!connection.untilClose || (connection.status < 0)) {
+        throw new IOException("Connection closed by the host.");
+      }
+      complete(connection, false);
+      return;
+    }
+    connection.append(this.readBuffer.array(), count);
+    if (connection.parse()) {
+      complete(connection, connection.keepAlive);
+    }
+  }
+
+  /**
+   * Reports the response to the connection's request, then returns the connection to the
+   * idle connections or closes it.
+   * @param connection The connection.
+   * @param keepAlive True if the connection can be reused.
+   */
+  private void complete(Connection connection, boolean keepAlive) {
+    Request request = connection.request;
+    int status = connection.status;
+    connection.request = null;
+    if (keepAlive) {
+      connection.key.interestOps(SelectionKey.OP_READ);
+      this.idle.add(connection);
+    }
+    else {
+      close(connection);
+    }
+    this.requestsCompleted.incrementAndGet();
+    try {
+      request.callback.completed(status);
+    }
+    catch (RuntimeException e) {
+      this.logger.warning("NioHttpClient: a callback failed: " + e);
+    }
+    finally {
+      this.window.release();
+    }
+  }
+
+  /**
+   * Closes a failed connection, and either sends its request again on a new connection or
+   * reports the failure.
+   * @param connection The connection, possibly idle or null.
+   * @param e The failure.
+   * @param retry True to send the request again if the host closed a reused connection
+   * before responding.
+   */
+  private void abandon(Connection connection, IOException e, boolean retry) {
+    if (connection == null) {
+      return;
+    }
+    this.idle.remove(connection);
+    close(connection);
+    Request request = connection.request;
+    connection.request = null;
+    if (request == null) {
+      return;
+    }
+    if (retry && connection.reused && (connection.count == 0) && !request.retried) {
+      request.retried = true;
+      start(request, true);
+    }
+    else {
+      fail(request, e);
+    }
+  }
+
+  /**
+   * Fails the requests that have waited longer than the timeout for their response.
+   */
+  private void expire() {
+    long now = System.currentTimeMillis();
+    List<Connection> expired = new ArrayList<Connection>();
+    for (SelectionKey key : this.selector.keys()) {
+      Connection connection = (Connection) key.attachment();
+      if ((connection.request != null) && (now > connection.request.deadline)) {
+        expired.add(connection);
+      }
+    }
+    for (Connection connection : expired) {
+      abandon(connection, new SocketTimeoutException("No response in " + TIMEOUT_MILLIS
+          + " ms."), false);
+    }
+  }
+
+  /**
+   * Reports the failure of a request.
+   * @param request The request.
+   * @param e The failure.
+   */
+  private void fail(Request request, Exception e) {
+    try {
+      request.callback.failed(e);
+    }
+    catch (RuntimeException callbackFailure) {
+      this.logger.warning("NioHttpClient: a callback failed: " + callbackFailure);
+    }
+    finally {
+      this.window.release();
+    }
+  }
+
+  /**
+   * Closes a connection's channel, ignoring failures.
+   * @param connection The connection.
+   */
+  private void close(Connection connection) {
+    if (connection.key != null) {
+      connection.key.cancel();
+    }
+    try {
+      connection.channel.close();
+    }
+    catch (IOException e) {
+      this.logger.fine("NioHttpClient: could not close a connection: " + e);
+    }
+  }
+
+  /**
+   * A request waiting for, or in, a connection.
+   */
+  private static class Request {
+    /** The request line and headers. */
+    private final byte[] head;
+    /** The body. */
+    private final byte[] body;
+    /** Receives the outcome. */
+    private final Callback callback;
+    /** The time by which the response must arrive, set when the request is started. */
+    private long deadline;
+    /** True once the request has been sent again on a new connection. */
+    private boolean retried = false;
+
+    /**
+     * Creates a request.
+     * @param head The request line and headers.
+     * @param body The body.
+     * @param callback Receives the outcome.
+     */
+    Request(byte[] head, byte[] body, Callback callback) {
+      this.head = head;
+      this.body = body;
+      this.callback = callback;
+    }
+  }
+
+  /**
+   * A connection to the host, with the state of the request it is sending and the response
+   * it is reading.
+   */
+  private static class Connection {
+    /** The channel. */
+    private final SocketChannel channel;
+    /** The key of the channel. */
+    private SelectionKey key;
+    /** The request in flight, or null if the connection is idle. */
+    private Request request;
+    /** True if the request is not the first on this connection. */
+    private boolean reused;
+    /** The head and body still to be written. */
+    private ByteBuffer[] out;
+    /** The response bytes received. */
+    private byte[] in = new byte[1024];
+    /** The number of response bytes received. */
+    private int count;
+    /** The status of the response, or -1 until its headers have arrived. */
+    private int status;
+    /** True if the connection can be reused after the response. */
+    private boolean keepAlive;
+    /** True if the response body ends when the host closes the connection. */
+    private boolean untilClose;
+
+    /**
+     * Creates a connection.
+     * @param channel The channel.
+     */
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Makes the request the connection's request in flight.
+     * @param request The request.
+     * @param reused True if the connection has carried a request before.
+     */
+    void begin(Request request, boolean reused) {
+      this.request = request;
+      this.reused = reused;
+      this.out = new ByteBuffer[] { ByteBuffer.wrap(request.head), ByteBuffer.wrap(request.body) };
+      this.count = 0;
+      this.status = -1;
+      this.keepAlive = true;
+      this.untilClose = false;
+      request.deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Appends received bytes to the response.
+     * @param bytes The bytes.
+     * @param length The number of bytes.
+     */
+    void append(byte[] bytes, int length) {
+      if (this.count + length > this.in.length) {
+        byte[] grown = new byte[Math.max(2 * this.in.length, this.count + length)];
+        System.arraycopy(this.in, 0, grown, 0, this.count);
+        this.in = grown;
+      }
+      System.arraycopy(bytes, 0, this.in, this.count, length);
+      this.count += length;
+    }
+
+    /**
+     * Parses the response received so far, skipping interim 1xx responses.
+     * @return True if the response is complete.
+     * @throws IOException If the response is not valid HTTP.
+     */
+    boolean parse() throws IOException {
+      int headEnd = indexOf("\r\n\r\n", 0);
+      if (headEnd < 0) {
+        return false;
+      }
+      String head = new String(this.in, 0, headEnd, "ISO-8859-1");
+      String[] lines = head.split("\r\n");
+      String[] statusLine = lines[0].split(" ");
+      if ((statusLine.length < 2) || !statusLine[0].startsWith("HTTP/")) {
+        throw new IOException("Not an HTTP response: " + lines[0]);
+      }
+      try {
+        this.status = Integer.parseInt(statusLine[1]);
+      }
+      catch (NumberFormatException e) {
+        throw new IOException("Not an HTTP status: " + lines[0]);
+      }
+      int bodyStart = headEnd + 4;
+      if (this.status / 100 == 1) {
+        this.count -= bodyStart;
+        System.arraycopy(this.in, bodyStart, this.in, 0, this.count);
+        this.status = -1;
+        return parse();
+      }
+      this.keepAlive = "HTTP/1.1".equals(statusLine[0]);
+      long length = -1;
+      boolean chunked = false;
+      for (int i = 1; i < lines.length; i++) {
+        int colon = lines[i].indexOf(':');
+        if (colon < 0) {
+          continue;
+        }
+        String name = lines[i].substring(0, colon).trim().toLowerCase();
+        String value = lines[i].substring(colon + 1).trim().toLowerCase();
+        if ("content-length".equals(name)) {
+          length = parseContentLength(value);
+        }
+        else if ("transfer-encoding".equals(name)) {
+          chunked = value.contains("chunked");
+        }
+        else if ("connection".equals(name)) {
+          this.keepAlive = value.contains("keep-alive")
+            || (this.keepAlive && !value.contains("close"));
+        }
+      }
+      if ((this.status == 204) || (this.status == 304)) {
+        return true;
+      }
+      if (chunked) {
+        return isChunkedBodyComplete(bodyStart);
+      }
+      if (length >= 0) {
+        return this.count >= bodyStart + length;
+      }
+      this.untilClose = true;
+      this.keepAlive = false;
+      return false;
+    }
+
+    /**
+     * Parses a Content-Length header value.
+     * @param value The value.
+     * @return The length.
+     * @throws IOException If the value is not a length, so that only this response fails
+     * and not the I/O thread.
+     */
+    private long parseContentLength(String value) throws IOException {
+      try {
+        long length = Long.parseLong(value);
+        if (length < 0) {
+          throw new NumberFormatException(value);
+        }
+        return length;
+      }
+      catch (NumberFormatException e) {
+        throw new IOException("Not a content length: " + value);
+      }
+    }
+
+    /**
+     * Returns true if a complete chunked body has been received.
+     * @param start The index of the first chunk.
+     * @return True if the last chunk and the trailers have arrived.
+     * @throws IOException If a chunk size is not valid.
+     */
+    private boolean isChunkedBodyComplete(int start) throws IOException {
+      int position = start;
+      while (true) {
+        int lineEnd = indexOf("\r\n", position);
+        if (lineEnd < 0) {
+          return false;
+        }
+        String size = new String(this.in, position, lineEnd - position, "ISO-8859-1");
+        int semicolon = size.indexOf(';');
+        int chunkSize;
+        try {
+          chunkSize = Integer.parseInt(
+              ((semicolon < 0) ? size : size.substring(0, semicolon)).trim(), 16);
+        }
+        catch (NumberFormatException e) {
+          throw new IOException("Not a chunk size: " + size);
+        }
+        if (chunkSize == 0) {
+          return indexOf("\r\n\r\n", lineEnd) >= 0;
+        }
+        position = lineEnd + 2 + chunkSize + 2;
+        if (position > this.count) {
+          return false;
+        }
+      }
+    }
+
+    /**
+     * Returns the index of an ASCII string in the response.
+     * @param target The string.
+     * @param from The index to search from.
+     * @return The index, or -1 if it has not been received.
+     */
+    private int indexOf(String target, int from) {
+      int last = this.count - target.length();
+      for (int i = from; i <= last; i++) {
+        int j = 0;
+        while ((j < target.length()) && (this.in[i + j] == target.charAt(j))) {
+          j++;
+        }
+        if (j == target.length()) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+}
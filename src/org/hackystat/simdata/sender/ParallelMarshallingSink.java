@@ -0,0 +1,263 @@
+package org.hackystat.simdata.sender;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * A sink that marshals batches on a pool of worker threads while a single sender thread
+ * puts the already encoded batches to the host, so that generation, marshalling and network
+ * I/O overlap. Each worker marshals with its own cached Marshaller from the shared context,
+ * into one of a fixed set of payload buffers that are reused from batch to batch. The number
+ * of buffers bounds the batches in flight, so a slow host makes add block rather than letting
+ * encoded batches pile up in memory.
+ * <p>
+ * Batches are sent in the order they fill. A failed batch is not retried; the failure is
+ * thrown from a later add, or from flush or close.
+ *
+ * @author Philip Johnson
+ */
+public class ParallelMarshallingSink implements SensorDataSink {
+
+  /** The system property holding the number of marshalling threads. */
+  public static final String THREADS_KEY = "org.hackystat.simdata.marshal.threads";
+
+  /** The transport that encodes and sends the batches. */
+  private final CompactTransport transport;
+  /** The number of instances per batch. */
+  private final int batchSize;
+  /** The logger. */
+  private final Logger logger;
+  /** The marshalling threads. */
+  private final ExecutorService marshallers;
+  /** The sender thread. */
+  private final ExecutorService sender;
+  /** The payload buffers not currently holding a batch in flight. */
+  private final BlockingQueue<ByteArrayOutputStream> buffers;
+  /** Maps owners to their pending batch. */
+  private final Map<String, List<SensorData>> batches = new HashMap<String, List<SensorData>>();
+  /** The sends not yet known to be complete, in order. */
+  private final List<Future<?>> inFlight = new ArrayList<Future<?>>();
+  /** The total time spent marshalling, summed over the workers. */
+  private final AtomicLong marshalNanos = new AtomicLong();
+  /** The time at which the first batch was submitted, or zero. */
+  private long startNanos = 0;
+
+  /**
+   * Creates a sink that sends batches through the transport.
+   * @param transport The transport.
+   * @param batchSize The number of instances per batch.
+   * @param numThreads The number of marshalling threads.
+   * @param logger The logger.
+   */
+  public ParallelMarshallingSink(CompactTransport transport, int batchSize, int numThreads,
+      Logger logger) {
+    this.transport = transport;
+    this.batchSize = batchSize;
+    this.logger = logger;
+    this.marshallers = Executors.newFixedThreadPool(numThreads, makeThreadFactory("marshal"));
+    this.sender = Executors.newSingleThreadExecutor(makeThreadFactory("send"));
+    this.buffers = new ArrayBlockingQueue<ByteArrayOutputStream>(2 * numThreads + 1);
+    for (int i = 0; i < 2 * numThreads + 1; i++) {
+      this.buffers.add(new ByteArrayOutputStream(64 * 1024));
+    }
+  }
+
+  /**
+   * Creates a sink for the host that sends batches of 250, marshalled by the number of
+   * threads in the system property, or one per available processor.
+   * @param host The SensorBase host.
+   * @param logger The logger.
+   * @return The sink.
+   */
+  public static ParallelMarshallingSink fromSystemProperties(String host, Logger logger) {
+    String processors = String.valueOf(Runtime.getRuntime().availableProcessors());
+    return new ParallelMarshallingSink(new CompactTransport(host, logger), 250,
+        Integer.parseInt(System.getProperty(THREADS_KEY, processors)), logger);
+  }
+
+  /**
+   * Returns a factory for daemon threads, so that an unclosed sink does not keep the JVM up.
+   * @param role The role of the threads, used in their names.
+   * @return The thread factory.
+   */
+  private static ThreadFactory makeThreadFactory(final String role) {
+    return new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+      /**
+       * Creates a daemon thread.
+       * @param runnable The work of the thread.
+       * @return The thread.
+       */
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "SimData-" + role + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * Adds the data to its owner's batch, submitting the batch when it is full. Blocks while
+   * every payload buffer holds a batch in flight.
+   * @param data The sensor data.
+   * @throws Exception If an earlier batch failed.
+   */
+  public synchronized void add(SensorData data) throws Exception {
+    List<SensorData> batch = this.batches.get(data.getOwner());
+    if (batch == null) {
+      batch = new ArrayList<SensorData>(this.batchSize);
+      this.batches.put(data.getOwner(), batch);
+    }
+    batch.add(data);
+    if (batch.size() >= this.batchSize) {
+      this.batches.remove(data.getOwner());
+      submit(data.getOwner(), batch);
+    }
+  }
+
+  /**
+   * Submits all pending batches and waits until every batch has been sent.
+   * @throws Exception If a batch failed.
+   */
+  public synchronized void flush() throws Exception {
+    for (Map.Entry<String, List<SensorData>> entry : this.batches.entrySet()) {
+      submit(entry.getKey(), entry.getValue());
+    }
+    this.batches.clear();
+    try {
+      for (Future<?> future : this.inFlight) {
+        getResult(future);
+      }
+    }
+    finally {
+      this.inFlight.clear();
+    }
+  }
+
+  /**
+   * Sends all pending batches, stops the threads, and logs a summary.
+   * @throws Exception If a batch failed.
+   */
+  public synchronized void close() throws Exception {
+    try {
+      flush();
+    }
+    finally {
+      this.marshallers.shutdown();
+      this.sender.shutdown();
+    }
+    double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+    this.logger.info("ParallelMarshallingSink: sent " + this.transport.getInstancesSent()
+        + " instances in " + this.transport.getBytesSent() + " bytes; "
+        + String.format("%.2f s marshalling over %.2f s elapsed",
+            this.marshalNanos.get() / 1e9, (this.startNanos == 0) ? 0.0 : seconds));
+  }
+
+  /**
+   * Returns the total time spent marshalling, summed over the workers.
+   * @return The time in nanoseconds.
+   */
+  public long getMarshalNanos() {
+    return this.marshalNanos.get();
+  }
+
+  /**
+   * Hands the batch to a marshalling thread and queues its send behind the earlier batches.
+   * @param owner The owner of the batch.
+   * @param batch The batch.
+   * @throws Exception If an earlier batch failed.
+   */
+  private void submit(final String owner, final List<SensorData> batch) throws Exception {
+    if (this.startNanos == 0) {
+      this.startNanos = System.nanoTime();
+    }
+    final CompactTransport.Encoding encoding = this.transport.negotiate(owner);
+    if (encoding == CompactTransport.Encoding.PER_ITEM) {
+      this.transport.send(owner, batch);
+      return;
+    }
+    reapCompleted();
+    final ByteArrayOutputStream buffer = this.buffers.take();
+    final Future<ByteArrayOutputStream> encoded =
+      this.marshallers.submit(new Callable<ByteArrayOutputStream>() {
+      /**
+       * Marshals the batch into the buffer.
+       * @return The buffer.
+       * @throws Exception If the batch cannot be marshalled.
+       */
+      public ByteArrayOutputStream call() throws Exception {
+        long start = System.nanoTime();
+        transport.encode(encoding, batch, buffer);
+        marshalNanos.addAndGet(System.nanoTime() - start);
+        return buffer;
+      }
+    });
+    this.inFlight.add(this.sender.submit(new Callable<Void>() {
+      /**
+       * Sends the encoded batch once it is ready, then returns the buffer.
+       * @return Null.
+       * @throws Exception If the batch cannot be marshalled or sent.
+       */
+      public Void call() throws Exception {
+        try {
+          transport.sendPayload(owner, encoding, encoded.get(), batch.size());
+        }
+        finally {
+          buffers.put(buffer);
+        }
+        return null;
+      }
+    }));
+  }
+
+  /**
+   * Forgets the sends that have completed, throwing the failure of any that failed.
+   * @throws Exception If a completed batch failed.
+   */
+  private void reapCompleted() throws Exception {
+    for (Iterator<Future<?>> i = this.inFlight.iterator(); i.hasNext();) {
+      Future<?> future = i.next();
+      if (!future.isDone()) {
+        return;
+      }
+      i.remove();
+      getResult(future);
+    }
+  }
+
+  /**
+   * Waits for the future, unwrapping the exception of a failed task.
+   * @param future The future.
+   * @throws Exception The failure of the task.
+   */
+  private static void getResult(Future<?> future) throws Exception {
+    try {
+      future.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+}
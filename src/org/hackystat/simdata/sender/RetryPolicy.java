@@ -0,0 +1,56 @@
+package org.hackystat.simdata.sender;
+
+import java.util.Random;
+
+/**
+ * Decides how often, and after what delay, a failed send is retried. Delays grow exponentially
+ * from the base delay up to the maximum delay, and "full jitter" draws the actual delay 
+ * uniformly between zero and that bound, so that many senders retrying at once do not
+ * synchronize into bursts.
+ * 
+ * @author Philip Johnson
+ */
+public class RetryPolicy {
+  
+  /** The number of retries after the first attempt. */
+  private final int maxRetries;
+  /** The delay bound before the first retry, in milliseconds. */
+  private final long baseDelay;
+  /** The largest delay bound, in milliseconds. */
+  private final long maxDelay;
+  /** The random number generator for jitter. */
+  private final Random random = new Random();
+  
+  /**
+   * Creates a retry policy.
+   * @param maxRetries The number of retries after the first attempt.
+   * @param baseDelay The delay bound before the first retry, in milliseconds.
+   * @param maxDelay The largest delay bound, in milliseconds.
+   */
+  public RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+    this.maxRetries = maxRetries;
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+  }
+  
+  /**
+   * Returns the number of retries after the first attempt.
+   * @return The number of retries.
+   */
+  public int getMaxRetries() {
+    return this.maxRetries;
+  }
+  
+  /**
+   * Returns the delay before the given retry.
+   * @param retry The retry, starting at 1.
+   * @return The delay, in milliseconds.
+   */
+  public synchronized long getDelay(int retry) {
+    long bound = this.baseDelay << Math.min(retry - 1, 30);
+    if ((bound <= 0) || (bound > this.maxDelay)) {
+      bound = this.maxDelay;
+    }
+    return (long) (this.random.nextDouble() * bound);
+  }
+}
@@ -0,0 +1,202 @@
+package org.hackystat.simdata.sender;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * A sink that batches sensor data per owner and sends each batch through a BatchTransport,
+ * surviving transient failures. A failed batch is retried with exponential backoff and jitter;
+ * consecutive failures open a circuit breaker that pauses all sending; and a batch that still 
+ * fails after its last retry is written to a dead letter file instead of aborting the scenario.
+ * An optional FaultInjector exercises all of this without a misbehaving host.
+ * <p>
+ * Only the batching is synchronized: a full batch is sent, and backs off between retries, on
+ * the thread that filled it without holding the sink's lock, so producers adding data for
+ * other owners are not blocked by a slow or failing host.
+ * 
+ * @author Philip Johnson
+ */
+public class RetryingSink implements SensorDataSink {
+  
+  /** The system property holding the number of retries per batch. */
+  public static final String RETRIES_KEY = "org.hackystat.simdata.retry.retries";
+  /** The system property holding the delay bound before the first retry, in milliseconds. */
+  public static final String BACKOFF_KEY = "org.hackystat.simdata.retry.backoff";
+  /** The system property holding the path of the dead letter file. */
+  public static final String DEADLETTER_KEY = "org.hackystat.simdata.retry.deadletter";
+  /** The system property holding the fraction of sends dropped by fault injection. */
+  public static final String DROP_KEY = "org.hackystat.simdata.faults.drop";
+  /** The system property holding the fraction of sends failed by fault injection. */
+  public static final String ERROR_KEY = "org.hackystat.simdata.faults.error";
+  /** The system property holding the maximum delay added by fault injection, in ms. */
+  public static final String DELAY_KEY = "org.hackystat.simdata.faults.delay";
+  
+  /** The transport that makes each attempt. */
+  private final BatchTransport transport;
+  /** The retry policy. */
+  private final RetryPolicy policy;
+  /** The circuit breaker. */
+  private final CircuitBreaker breaker;
+  /** Where batches go after their last retry. */
+  private final DeadLetterFile deadLetters;
+  /** The fault injector. */
+  private final FaultInjector faults;
+  /** The logger. */
+  private final Logger logger;
+  /** The number of instances per batch. */
+  private final int batchSize;
+  /** Maps owners to their pending batch. */
+  private final Map<String, List<SensorData>> batches = new HashMap<String, List<SensorData>>();
+  
+  /** The number of instances sent. */
+  private final AtomicLong sent = new AtomicLong();
+  /** The number of retries made. */
+  private final AtomicLong retries = new AtomicLong();
+  
+  /**
+   * Creates a retrying sink.
+   * @param transport The transport that makes each attempt.
+   * @param batchSize The number of instances per batch.
+   * @param policy The retry policy.
+   * @param breaker The circuit breaker.
+   * @param deadLetters Where batches go after their last retry.
+   * @param faults The fault injector, or null for none.
+   * @param logger The logger.
+   */
+  public RetryingSink(BatchTransport transport, int batchSize, RetryPolicy policy, 
+      CircuitBreaker breaker, DeadLetterFile deadLetters, FaultInjector faults, Logger logger) {
+    this.transport = transport;
+    this.batchSize = batchSize;
+    this.policy = policy;
+    this.breaker = breaker;
+    this.deadLetters = deadLetters;
+    this.faults = ((faults == null) || faults.isInactive()) ? null : faults;
+    this.logger = logger;
+  }
+
+  /**
+   * Creates a retrying sink that sends batches of 250 through the given transport,
+   * configured by system properties. By default a batch is retried 5 times, starting with a 
+   * delay of up to 500 ms and doubling up to 30 seconds; 5 consecutive failures open the 
+   * circuit breaker for 10 seconds; and the dead letter file is 
+   * ~/.hackystat/simdata/deadletter.xml. Fault injection is off unless configured.
+   * @param transport The transport, such as a ClientTransport or a CompactTransport.
+   * @param logger The logger.
+   * @return The sink.
+   */
+  public static RetryingSink fromSystemProperties(BatchTransport transport, Logger logger) {
+    String defaultDeadLetters = System.getProperty("user.home") + "/.hackystat/simdata/" 
+      + "deadletter.xml";
+    return new RetryingSink(transport, 250, 
+        new RetryPolicy(Integer.parseInt(System.getProperty(RETRIES_KEY, "5")), 
+            Long.parseLong(System.getProperty(BACKOFF_KEY, "500")), 30000), 
+        new CircuitBreaker(5, 10000, logger), 
+        new DeadLetterFile(new File(System.getProperty(DEADLETTER_KEY, defaultDeadLetters))), 
+        new FaultInjector(Double.parseDouble(System.getProperty(DROP_KEY, "0")), 
+            Double.parseDouble(System.getProperty(ERROR_KEY, "0")), 
+            Integer.parseInt(System.getProperty(DELAY_KEY, "0")), 0), 
+        logger);
+  }
+
+  /**
+   * Adds the data to its owner's batch, sending the batch when it is full.
+   * @param data The sensor data.
+   * @throws Exception If a batch could neither be sent nor dead-lettered.
+   */
+  public void add(SensorData data) throws Exception {
+    List<SensorData> full = null;
+    synchronized (this) {
+      List<SensorData> batch = this.batches.get(data.getOwner());
+      if (batch == null) {
+        batch = new ArrayList<SensorData>(this.batchSize);
+        this.batches.put(data.getOwner(), batch);
+      }
+      batch.add(data);
+      if (batch.size() >= this.batchSize) {
+        full = this.batches.remove(data.getOwner());
+      }
+    }
+    if (full != null) {
+      send(data.getOwner(), full);
+    }
+  }
+  
+  /**
+   * Sends all pending batches.
+   * @throws Exception If a batch could neither be sent nor dead-lettered.
+   */
+  public void flush() throws Exception {
+    Map<String, List<SensorData>> pending;
+    synchronized (this) {
+      pending = new HashMap<String, List<SensorData>>(this.batches);
+      this.batches.clear();
+    }
+    for (Map.Entry<String, List<SensorData>> entry : pending.entrySet()) {
+      send(entry.getKey(), entry.getValue());
+    }
+  }
+  
+  /**
+   * Sends all pending batches, closes the dead letter file, and logs a summary.
+   * @throws Exception If a batch could neither be sent nor dead-lettered.
+   */
+  public void close() throws Exception {
+    try {
+      flush();
+    }
+    finally {
+      this.deadLetters.close();
+    }
+    this.logger.info("RetryingSink: sent " + this.sent.get() + " instances with " 
+        + this.retries.get()
+        + " retries and " + this.breaker.getTrips() + " circuit breaker trips; " 
+        + this.deadLetters.getCount() + " instances in dead letter file " 
+        + this.deadLetters.getFile());
+  }
+  
+  /**
+   * Sends one batch, retrying as necessary, and dead-letters it if every attempt fails.
+   * Called without the sink's lock held.
+   * @param owner The owner of the batch.
+   * @param batch The batch.
+   * @throws Exception If the batch could not be dead-lettered.
+   */
+  private void send(String owner, List<SensorData> batch) throws Exception {
+    for (int attempt = 0; attempt <= this.policy.getMaxRetries(); attempt++) {
+      if (attempt > 0) {
+        this.retries.incrementAndGet();
+        Thread.sleep(this.policy.getDelay(attempt));
+      }
+      this.breaker.awaitPermission();
+      try {
+        if (this.faults != null) {
+          this.faults.beforeSend();
+        }
+        this.transport.send(owner, batch);
+        this.breaker.recordSuccess();
+        this.sent.addAndGet(batch.size());
+        return;
+      }
+      catch (InterruptedException e) {
+        this.breaker.abandonAttempt();
+        throw e;
+      }
+      catch (Exception e) {
+        this.breaker.recordFailure();
+        this.logger.fine("RetryingSink: attempt " + (attempt + 1) + " for " + owner 
+            + " failed: " + e.getMessage());
+      }
+    }
+    this.logger.warning("RetryingSink: giving up on " + batch.size() + " instances for " 
+        + owner + "; writing them to " + this.deadLetters.getFile());
+    this.deadLetters.write(batch);
+  }
+}
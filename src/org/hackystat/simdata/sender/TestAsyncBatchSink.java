@@ -0,0 +1,110 @@
+package org.hackystat.simdata.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the AsyncBatchSink against the stand-in SensorBase.
+ * @author Philip Johnson
+ */
+public class TestAsyncBatchSink {
+
+  /** The owner of the test data. */
+  private static final String joe = SensorDataTestHelper.JOE;
+  /** The stand-in SensorBase. */
+  private StubSensorBase stub;
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.simdata");
+
+  /**
+   * Starts the stand-in on a free port, with enough threads for every batch in flight.
+   * @throws Exception If it cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.stub = new StubSensorBase(0, 16);
+  }
+
+  /**
+   * Stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    this.stub.stop();
+  }
+
+  /**
+   * Adds Build data to the sink.
+   * @param sink The sink.
+   * @param size The number of instances.
+   * @return The checksum the stand-in should compute for the data.
+   * @throws Exception If the sink fails.
+   */
+  private long addBuilds(AsyncBatchSink sink, int size) throws Exception {
+    List<SensorData> builds = SensorDataTestHelper.makeBuilds(joe, size);
+    for (SensorData data : builds) {
+      sink.add(data);
+    }
+    return SensorDataTestHelper.checksum(builds);
+  }
+
+  /**
+   * Checks that batches arrive intact, and overlap in flight at the host, up to the window.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testWindow() throws Exception {
+    // Negotiate the encoding before the host becomes slow.
+    AsyncBatchSink sink = new AsyncBatchSink(stub.getHostName(), 25, 8, logger);
+    long checksum = addBuilds(sink, 25);
+    sink.flush();
+    stub.setLatency(100, 0);
+    checksum += addBuilds(sink, 16 * 25);
+    sink.close();
+    long peak = stub.getPeakConcurrentRequests();
+    assertEquals("Checking count", 17 * 25, stub.getSensorDataCount());
+    assertEquals("Checking sent", 17 * 25, sink.getInstancesSent());
+    assertEquals("Checking checksum", checksum, stub.getChecksum());
+    assertTrue("Checking overlap: " + peak, peak > 1);
+    assertTrue("Checking window: " + peak, peak <= 8);
+    assertTrue("Checking connections", sink.getClient().getConnectionsOpened() <= 8);
+  }
+
+  /**
+   * Checks that a failed batch is thrown from a later add or from flush.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testFailure() throws Exception {
+    AsyncBatchSink sink = new AsyncBatchSink(stub.getHostName(), 25, 4, logger);
+    addBuilds(sink, 25);
+    sink.flush();
+    stub.setErrorRate(1.0);
+    try {
+      addBuilds(sink, 100);
+      sink.flush();
+      fail("Expected the injected errors to be thrown.");
+    }
+    catch (Exception e) {
+      assertTrue("Checking failure: " + e, e.getMessage().contains("status 500"));
+    }
+    try {
+      // Batches still in flight when the first failure was thrown may fail too.
+      sink.close();
+    }
+    catch (Exception e) {
+      assertTrue("Checking later failure: " + e, e.getMessage().contains("status 500"));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.hackystat.simdata.sender;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+/**
+ * Tests that the circuit breaker holds senders while open, and admits a single trial when
+ * half-open.
+ * @author Philip Johnson
+ */
+public class TestCircuitBreaker {
+
+  /** How long the breaker stays open, in milliseconds. */
+  private static final long openMillis = 300;
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.simdata");
+
+  /**
+   * Checks that an open breaker admits no one, that the half-open breaker admits one trial
+   * and holds the others, that a failed trial opens it again, and that a successful one
+   * closes it and releases everyone.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSingleTrial() throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(1, openMillis, logger);
+    final AtomicInteger admitted = new AtomicInteger();
+    final BlockingQueue<Boolean> outcomes = new LinkedBlockingQueue<Boolean>();
+    breaker.recordFailure();
+    Thread[] senders = new Thread[4];
+    for (int i = 0; i < senders.length; i++) {
+      senders[i] = new Thread() {
+        /** Waits for permission, then records the next outcome as the result of its send. */
+        @Override
+        public void run() {
+          try {
+            breaker.awaitPermission();
+            admitted.incrementAndGet();
+            if (outcomes.take()) {
+              breaker.recordSuccess();
+            }
+            else {
+              breaker.recordFailure();
+            }
+          }
+          catch (InterruptedException e) {
+            // The test is over.
+          }
+        }
+      };
+      senders[i].start();
+    }
+    Thread.sleep(openMillis / 5);
+    assertEquals("Checking open", 0, admitted.get());
+    Thread.sleep(2 * openMillis);
+    assertEquals("Checking one trial", 1, admitted.get());
+    outcomes.put(false);
+    Thread.sleep(openMillis / 5);
+    assertEquals("Checking reopened", 2, breaker.getTrips());
+    assertEquals("Checking held", 1, admitted.get());
+    Thread.sleep(2 * openMillis);
+    assertEquals("Checking second trial", 2, admitted.get());
+    for (int i = 0; i < senders.length - 1; i++) {
+      outcomes.put(true);
+    }
+    for (Thread sender : senders) {
+      sender.join(10 * openMillis);
+    }
+    assertEquals("Checking released", senders.length, admitted.get());
+    assertEquals("Checking closed", 2, breaker.getTrips());
+  }
+}
@@ -0,0 +1,141 @@
+package org.hackystat.simdata.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.SensorDataXml;
+import org.hackystat.simdata.sink.RunMetrics;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the CompactTransport against the stand-in SensorBase.
+ * @author Philip Johnson
+ */
+public class TestCompactTransport {
+  
+  /** The owner of the test data. */
+  private static final String joe = SensorDataTestHelper.JOE;
+  /** The stand-in SensorBase. */
+  private StubSensorBase stub;
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.simdata");
+  
+  /**
+   * Starts the stand-in on a free port.
+   * @throws Exception If it cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.stub = new StubSensorBase(0, 4);
+  }
+  
+  /**
+   * Stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    this.stub.stop();
+  }
+  
+  /**
+   * Checks that gzip batches are negotiated, and arrive intact and compressed, and that the
+   * send is timed.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testGzipBatch() throws Exception {
+    CompactTransport transport = new CompactTransport(stub.getHostName(), logger);
+    List<SensorData> batch = SensorDataTestHelper.makeBuilds(joe, 200);
+    RunMetrics metrics = new RunMetrics();
+    RunMetrics.setCurrent(metrics);
+    try {
+      transport.send(joe, batch);
+    }
+    finally {
+      RunMetrics.setCurrent(null);
+    }
+    assertEquals("Checking sends", 1, metrics.getSendLatency().getCount());
+    assertEquals("Checking encoding", CompactTransport.Encoding.GZIP_BATCH, 
+        transport.getEncoding());
+    assertEquals("Checking count", 200, stub.getSensorDataCount());
+    assertEquals("Checking checksum", SensorDataTestHelper.checksum(batch), stub.getChecksum());
+    long xmlBytes = 0;
+    for (SensorData data : batch) {
+      xmlBytes += SensorDataXml.toXml(data).length();
+    }
+    assertTrue("Checking compression", transport.getBytesSent() * 5 < xmlBytes);
+  }
+  
+  /**
+   * Checks that a host rejecting compression gets plain batches.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testPlainBatchFallback() throws Exception {
+    stub.setGzipAccepted(false);
+    CompactTransport transport = new CompactTransport(stub.getHostName(), logger);
+    List<SensorData> batch = SensorDataTestHelper.makeBuilds(joe, 20);
+    transport.send(joe, batch);
+    assertEquals("Checking encoding", CompactTransport.Encoding.BATCH, transport.getEncoding());
+    assertEquals("Checking count", 20, stub.getSensorDataCount());
+    assertEquals("Checking checksum", SensorDataTestHelper.checksum(batch), stub.getChecksum());
+  }
+  
+  /**
+   * Checks that a failed probe leaves the encoding unnegotiated, so it is probed again.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testFailedProbe() throws Exception {
+    CompactTransport transport = new CompactTransport(stub.getHostName(), logger);
+    stub.stop();
+    try {
+      transport.negotiate(joe);
+      fail("Negotiation with a stopped host succeeded.");
+    }
+    catch (IOException e) {
+      assertNull("Checking encoding", transport.getEncoding());
+    }
+    this.stub = new StubSensorBase(new URL(transport.getHost()).getPort(), 4);
+    stub.setGzipAccepted(false);
+    assertEquals("Checking renegotiation", CompactTransport.Encoding.BATCH, 
+        transport.negotiate(joe));
+  }
+  
+  /**
+   * Checks that a throttled probe is not mistaken for an unsupported encoding: negotiation 
+   * fails, leaving the encoding unnegotiated, and succeeds once the host has capacity again.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testThrottledProbe() throws Exception {
+    stub.setMaxRequestsPerSecond(1);
+    // Use up this second's only request, so that the next probe is throttled.
+    new CompactTransport(stub.getHostName(), logger).negotiate(joe);
+    CompactTransport transport = new CompactTransport(stub.getHostName(), logger);
+    try {
+      transport.negotiate(joe);
+      fail("Negotiation with a throttled host succeeded.");
+    }
+    catch (Exception e) {
+      assertTrue("Checking message", e.getMessage().contains("status 503"));
+      assertNull("Checking encoding", transport.getEncoding());
+    }
+    assertEquals("Checking throttled", 1, stub.getThrottledCount());
+    stub.setMaxRequestsPerSecond(0);
+    assertEquals("Checking renegotiation", CompactTransport.Encoding.GZIP_BATCH, 
+        transport.negotiate(joe));
+  }
+}
@@ -0,0 +1,46 @@
+package org.hackystat.simdata.sender;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.stub.StubSensorBase;
+import org.junit.Test;
+
+/**
+ * Tests that the ParallelMarshallingSink delivers everything intact to the stand-in SensorBase.
+ * @author Philip Johnson
+ */
+public class TestParallelMarshallingSink {
+  
+  /**
+   * Sends instances of several owners, with partial batches, through four marshalling threads.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testDelivery() throws Exception {
+    StubSensorBase stub = new StubSensorBase(0, 4);
+    try {
+      Logger logger = Logger.getLogger("org.hackystat.simdata");
+      ParallelMarshallingSink sink = new ParallelMarshallingSink(
+          new CompactTransport(stub.getHostName(), logger), 50, 4, logger);
+      List<SensorData> sent = new ArrayList<SensorData>();
+      for (int i = 0; i < 1234; i++) {
+        SensorData data = SensorDataTestHelper.makeBuild("user" + (i % 3) + "@hackystat.org",
+            "/users/simdata/Build" + i + ".xml", i);
+        sent.add(data);
+        sink.add(data);
+      }
+      sink.close();
+      assertEquals("Checking count", 1234, stub.getSensorDataCount());
+      assertEquals("Checking checksum", SensorDataTestHelper.checksum(sent), stub.getChecksum());
+    }
+    finally {
+      stub.stop();
+    }
+  }
+}
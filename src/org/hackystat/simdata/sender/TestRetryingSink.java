@@ -0,0 +1,183 @@
+package org.hackystat.simdata.sender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.junit.Test;
+
+/**
+ * Tests that the RetryingSink recovers from transient failures and gives up on permanent ones.
+ * @author Philip Johnson
+ */
+public class TestRetryingSink {
+  
+  /** The logger. */
+  private final Logger logger = Logger.getLogger("org.hackystat.simdata");
+  
+  /**
+   * A transport that fails a given number of times before succeeding, and counts what it sends.
+   */
+  private static class FlakyTransport implements BatchTransport {
+    /** The number of failures left. */
+    private int failures;
+    /** The number of instances sent. */
+    private int sent = 0;
+    
+    /**
+     * Creates the transport.
+     * @param failures The number of attempts that fail before the first success.
+     */
+    FlakyTransport(int failures) {
+      this.failures = failures;
+    }
+    
+    /**
+     * Fails or counts the batch.
+     * @param owner The owner.
+     * @param batch The batch.
+     * @throws Exception While failures remain.
+     */
+    public void send(String owner, List<SensorData> batch) throws Exception {
+      if (this.failures-- > 0) {
+        throw new Exception("Transient failure");
+      }
+      this.sent += batch.size();
+    }
+  }
+  
+  /**
+   * Returns a sensor data instance owned by the given user.
+   * @param owner The owner.
+   * @return The sensor data.
+   */
+  private SensorData makeData(String owner) {
+    SensorData data = new SensorData();
+    data.setOwner(owner);
+    data.setSensorDataType("Build");
+    return data;
+  }
+  
+  /**
+   * Returns a temporary file that is deleted on exit.
+   * @return The file.
+   * @throws Exception If it cannot be created.
+   */
+  private File makeTempFile() throws Exception {
+    File file = File.createTempFile("deadletter", ".xml");
+    file.deleteOnExit();
+    return file;
+  }
+  
+  /**
+   * Checks that transient failures are retried.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testTransientFailures() throws Exception {
+    FlakyTransport transport = new FlakyTransport(3);
+    DeadLetterFile deadLetters = new DeadLetterFile(makeTempFile());
+    RetryingSink sink = new RetryingSink(transport, 10, new RetryPolicy(5, 1, 10), 
+        new CircuitBreaker(2, 5, logger), deadLetters, null, logger);
+    for (int i = 0; i < 25; i++) {
+      sink.add(makeData((i % 2 == 0) ? "joe" : "bob"));
+    }
+    sink.close();
+    assertEquals("Checking all sent", 25, transport.sent);
+    assertEquals("Checking no dead letters", 0, deadLetters.getCount());
+  }
+  
+  /**
+   * Checks that injected faults are retried like any other failure.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testInjectedFaults() throws Exception {
+    FlakyTransport transport = new FlakyTransport(0);
+    DeadLetterFile deadLetters = new DeadLetterFile(makeTempFile());
+    RetryingSink sink = new RetryingSink(transport, 5, new RetryPolicy(20, 1, 2), 
+        new CircuitBreaker(100, 1, logger), deadLetters, new FaultInjector(0.3, 0.3, 0, 0), 
+        logger);
+    for (int i = 0; i < 100; i++) {
+      sink.add(makeData("joe"));
+    }
+    sink.close();
+    assertEquals("Checking all sent despite faults", 100, transport.sent);
+  }
+  
+  /**
+   * Checks that permanent failures are dead-lettered once the retries are used up, and open
+   * the circuit breaker on the way.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testPermanentFailures() throws Exception {
+    FlakyTransport transport = new FlakyTransport(Integer.MAX_VALUE);
+    DeadLetterFile deadLetters = new DeadLetterFile(makeTempFile());
+    CircuitBreaker breaker = new CircuitBreaker(2, 5, logger);
+    RetryingSink sink = new RetryingSink(transport, 10, new RetryPolicy(3, 1, 2), breaker, 
+        deadLetters, null, logger);
+    for (int i = 0; i < 25; i++) {
+      sink.add(makeData("joe"));
+    }
+    sink.close();
+    assertEquals("Checking nothing sent", 0, transport.sent);
+    assertTrue("Checking dead letters", deadLetters.getCount() > 0);
+    assertEquals("Checking every instance dead-lettered", 25, deadLetters.getCount());
+    assertTrue("Checking breaker opened", breaker.getTrips() > 0);
+  }
+  
+  /**
+   * Checks that a batch backing off after a failure does not block other producers.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testBackoffOutsideLock() throws Exception {
+    final CountDownLatch failed = new CountDownLatch(1);
+    final CountDownLatch otherAdded = new CountDownLatch(1);
+    final boolean[] blocked = { false };
+    BatchTransport transport = new BatchTransport() {
+      /** The number of attempts made. */
+      private int attempts = 0;
+      /**
+       * Fails the first attempt, then waits for the other producer before succeeding.
+       * @param owner The owner.
+       * @param batch The batch.
+       * @throws Exception On the first attempt.
+       */
+      public void send(String owner, List<SensorData> batch) throws Exception {
+        if (this.attempts++ == 0) {
+          failed.countDown();
+          throw new Exception("Transient failure");
+        }
+        blocked[0] = !otherAdded.await(5, TimeUnit.SECONDS);
+      }
+    };
+    final RetryingSink sink = new RetryingSink(transport, 2, new RetryPolicy(1, 50, 50), 
+        new CircuitBreaker(10, 1, logger), new DeadLetterFile(makeTempFile()), null, logger);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          sink.add(makeData("joe"));
+          sink.add(makeData("joe"));
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    producer.start();
+    assertTrue("Checking first attempt", failed.await(5, TimeUnit.SECONDS));
+    sink.add(makeData("bob"));
+    otherAdded.countDown();
+    producer.join();
+    assertEquals("Checking other producer not blocked", false, blocked[0]);
+  }
+}
@@ -2,7 +2,9 @@ package org.hackystat.simdata.simpleportfolio;
 
 import java.util.Random;
 import javax.xml.datatype.XMLGregorianCalendar;
+import org.hackystat.simdata.Scenario;
 import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.population.UserFileState;
 import org.hackystat.utilities.tstamp.Tstamp;
 
 /**
@@ -10,7 +12,7 @@ import org.hackystat.utilities.tstamp.Tstamp;
  * 
  * @author Shaoxuan Zhang
  */
-public class SimplePortfolio {
+public class SimplePortfolio implements Scenario {
   /** The SimData instance for generate and send data. */
   private final SimData simData;
   // Package private to support testing.
@@ -33,7 +35,16 @@ public class SimplePortfolio {
   /** End date of the projects. */
   private final XMLGregorianCalendar projectEnd = Tstamp.makeTimestamp("2008-08-08");
   /** A random number generator. */
-  private final Random random = new Random(0);
+  private final Random random;
+  
+  /** The slot of Joe's file in the good project. */
+  private static final int good = 0;
+  /** The slot of Joe's file in the troubled project. */
+  private static final int troubled = 1;
+  /** The slot of Joe's file in the unstable project. */
+  private static final int unstable = 2;
+  /** The state of Joe's file in each project, carried from day to day. */
+  private final UserFileState state = new UserFileState(1, 3);
   
   /** String of "Success". */
   private static final String SUCCESS = "Success";
@@ -48,21 +59,108 @@ public class SimplePortfolio {
    * @throws Exception If problems occur.
    */
   public SimplePortfolio(String host) throws Exception {
-    simData = new SimData(host);
+    this(new SimData(host), 0);
+  }
+  
+  /**
+   * Runs the SimplePortfolio scenario with the given SimData instance, which determines the 
+   * user's domain and where the data goes.
+   * @param simData The SimData instance.
+   * @param seed The seed of the random number generator; the tests expect 0.
+   * @throws Exception If problems occur.
+   */
+  public SimplePortfolio(SimData simData, long seed) throws Exception {
+    this(simData, seed, true);
+  }
+  
+  /**
+   * Creates the scenario, and runs it if requested.
+   * @param simData The SimData instance.
+   * @param seed The seed of the random number generator.
+   * @param run True to create the user and projects and send all the data now.
+   * @throws Exception If problems occur.
+   */
+  private SimplePortfolio(SimData simData, long seed, boolean run) throws Exception {
+    this.simData = simData;
+    this.random = new Random(seed);
+    this.state.set(UserFileState.SIZE, good, 15000);
+    this.state.set(UserFileState.COVERAGE, good, 80);
+    this.state.set(UserFileState.COVERAGE, troubled, 99);
+    this.state.set(UserFileState.CODE_ISSUES, troubled, 2);
+    this.state.set(UserFileState.COUPLING, troubled, 5);
+    this.state.set(UserFileState.SIZE, unstable, 300000);
+    this.state.set(UserFileState.COVERAGE, unstable, 50);
+    if (run) {
+      provision();
+      if (simData.beginDataset(SimplePortfolio.class, seed, "1x" + dataPeriod)) {
+        for (int step = 0; step < getNumSteps(); step++) {
+          generateStep(step);
+        }
+      }
+      // Make sure all remaining data is sent. 
+      simData.quitShells();
+    }
+  }
+  
+  /**
+   * Returns the scenario without running it, so that its data can be generated step by step, 
+   * for example through a ScenarioIterator.
+   * @param simData The SimData instance.
+   * @param seed The seed of the random number generator.
+   * @return The scenario.
+   * @throws Exception If problems occur.
+   */
+  public static SimplePortfolio makeScenario(SimData simData, long seed) throws Exception {
+    return new SimplePortfolio(simData, seed, false);
+  }
+  
+  /**
+   * Returns the SimData instance of this scenario.
+   * @return The SimData instance.
+   */
+  public SimData getSimData() {
+    return this.simData;
+  }
+  
+  /**
+   * Clears Joe's old data, then creates Joe and the three projects.
+   * @throws Exception If problems occur.
+   */
+  public void provision() throws Exception {
     simData.getLogger().info("Clearing up data");
-    simData.clearData(host, joe);
+    simData.clearData(simData.getHost(), joe);
     simData.getLogger().info("Initializing SimplePortfolio scenario");
     simData.makeUser(joe);
     simData.makeProject(project1, joe, projectStart, projectEnd, getProjectUriPattern(project1));
     simData.makeProject(project2, joe, projectStart, projectEnd, getProjectUriPattern(project2));
     simData.makeProject(project3, joe, projectStart, projectEnd, getProjectUriPattern(project3));
-    
-    this.makeGoodProject();
-    this.makeTroubledProject();
-    this.makeUnstableProject();
-    
-    // Make sure all remaining data is sent. 
-    simData.quitShells();
+  }
+  
+  /**
+   * Returns the number of steps: every day of the good project, then of the troubled project,
+   * then of the unstable project.
+   * @return The number of steps.
+   */
+  public int getNumSteps() {
+    return 3 * dataPeriod;
+  }
+  
+  /**
+   * Generates the data of one day of one project.
+   * @param step The step.
+   * @throws Exception If problems occur.
+   */
+  public void generateStep(int step) throws Exception {
+    int day = step % dataPeriod;
+    if (step < dataPeriod) {
+      makeGoodProjectDay(day);
+    }
+    else if (step < 2 * dataPeriod) {
+      makeTroubledProjectDay(day);
+    }
+    else {
+      makeUnstableProjectDay(day);
+    }
   }
   
   /**
@@ -96,140 +194,133 @@ public class SimplePortfolio {
   
   /**
    * Illustrates a "good" project with positive trends and current values. 
+   * @param i The day, from 0 to dataPeriod - 1.
    * @throws Exception If problems occur.
    */
-  private void makeGoodProject() throws Exception {
-    int joeFileSize = 15000; 
-    int joeCoverage = 80;
-    for (int i = 0; i < dataPeriod; i++) {
-      XMLGregorianCalendar day = Tstamp.incrementDays(dataStart, i);
-      simData.getLogger().info(LOGPREFIX + day);
+  private void makeGoodProjectDay(int i) throws Exception {
+    XMLGregorianCalendar day = Tstamp.incrementDays(dataStart, i);
+    simData.getLogger().info(LOGPREFIX + day);
 
-      // Effort is constant, between three and four hours a day.
-      simData.addDevEvents(joe, day, (12 * 3) + random.nextInt(12), getFilePath(project1, joe));
-      
-      // Size increases steadily, starting at 300 and increasing by 25~40 LOC per day.
-      joeFileSize += 25 + random.nextInt(15);
-      simData.addFileMetric(joe, day, getFilePath(project1, joe), joeFileSize, day);
-      
-      // Complexity is low and stable.
-      simData.addComplexity(joe, day, getFilePath(project1, joe), joeFileSize, day, 4 - i / 15);
+    // Effort is constant, between three and four hours a day.
+    simData.addDevEvents(joe, day, (12 * 3) + random.nextInt(12), getFilePath(project1, joe));
+    
+    // Size increases steadily, starting at 300 and increasing by 25~40 LOC per day.
+    int goodFileSize = state.add(UserFileState.SIZE, good, 25 + random.nextInt(15));
+    simData.addFileMetric(joe, day, getFilePath(project1, joe), goodFileSize, day);
+    
+    // Complexity is low and stable.
+    simData.addComplexity(joe, day, getFilePath(project1, joe), goodFileSize, day, 4 - i / 15);
 
-      // Coupling is low and stable.
-      simData.addCoupling(joe, day, getFilePath(project1, joe), 6 - i / 20);
-      
-      // Builds and unit tests between 3-5 times a day.
-      simData.addBuilds(joe, day, getDir(project1, joe), SUCCESS, 3 + random.nextInt(2));
-      simData.addUnitTests(joe, day, getFilePath(project1, joe), PASS, 2 + random.nextInt(3));
-      
-      // Coverage is always at least 80%, increasing slowly.
-      if (i % 4 == 0) {
-        joeCoverage += random.nextInt(5);
-      }
-      if (joeCoverage > 95) {
-        joeCoverage = 95;
-      }
-      simData.addCoverage(joe, day, getFilePath(project1, joe), joeCoverage, joeFileSize,  day);
-      
-      // Joe commits twice a day, and Bob commits once, with relatively low churn (50-60 LOC).
-      simData.addCommit(joe, day, getFilePath(project1, joe), 23 + random.nextInt(5));
-      simData.addCommit(joe, day, getFilePath(project1, joe), 20 + random.nextInt(10));
-      
-      // Code issues are low and stable, 2 per file.
-      simData.addCodeIssues(joe, day, getFilePath(project1, joe), 3 - i / 20);
+    // Coupling is low and stable.
+    simData.addCoupling(joe, day, getFilePath(project1, joe), 6 - i / 20);
+    
+    // Builds and unit tests between 3-5 times a day.
+    simData.addBuilds(joe, day, getDir(project1, joe), SUCCESS, 3 + random.nextInt(2));
+    simData.addUnitTests(joe, day, getFilePath(project1, joe), PASS, 2 + random.nextInt(3));
+    
+    // Coverage is always at least 80%, increasing slowly.
+    if (i % 4 == 0) {
+      state.add(UserFileState.COVERAGE, good, random.nextInt(5));
     }
+    int goodCoverage = state.set(UserFileState.COVERAGE, good, 
+        Math.min(95, state.get(UserFileState.COVERAGE, good)));
+    simData.addCoverage(joe, day, getFilePath(project1, joe), goodCoverage, goodFileSize,  day);
+    
+    // Joe commits twice a day, and Bob commits once, with relatively low churn (50-60 LOC).
+    simData.addCommit(joe, day, getFilePath(project1, joe), 23 + random.nextInt(5));
+    simData.addCommit(joe, day, getFilePath(project1, joe), 20 + random.nextInt(10));
+    
+    // Code issues are low and stable, 2 per file.
+    simData.addCodeIssues(joe, day, getFilePath(project1, joe), 3 - i / 20);
   }
 
   /**
    * Illustrates a "troubled" project with negative trends and bad final values. 
+   * @param i The day, from 0 to dataPeriod - 1.
    * @throws Exception If problems occur.
    */
-  private void makeTroubledProject() throws Exception {
-    int joeCoverage = 99;
-    int codeIssue = 2;
-    int coupling = 5;
-    for (int i = 0; i < dataPeriod; i++) {
-      XMLGregorianCalendar day = Tstamp.incrementDays(dataStart, i);
-      simData.getLogger().info(LOGPREFIX + day);
-
-      // Effort varies between 2 and 9 hours 
-      simData.addDevEvents(joe, day, (12 * 2) + random.nextInt(12 * 7), getFilePath(project2, joe));
-      
-      // Size is quite variable
-      int joeFileSize = 30000 + i * 34 + random.nextInt((i + 1) * 26);
-      simData.addFileMetric(joe, day, getFilePath(project2, joe), joeFileSize, day);
-      
-      // Complexity steadily rising.
-      simData.addComplexity(joe, day, getFilePath(project2, joe), joeFileSize, day, 3 + i / 4);
-      
-      // Builds and unit tests between 1-4 times a day.
-      simData.addBuilds(joe, day, getDir(project2, joe), SUCCESS, 1 + random.nextInt(3));
-      simData.addUnitTests(joe, day, getFilePath(project2, joe), PASS, 1 + random.nextInt(2));
-      
-      // Coverage shows a falling trend.
-      if (i % 7 == 0) {
-        joeCoverage -= 5;
-      }
-      simData.addCoverage(joe, day, getFilePath(project2, joe), joeCoverage, joeFileSize,  day);
+  private void makeTroubledProjectDay(int i) throws Exception {
+    XMLGregorianCalendar day = Tstamp.incrementDays(dataStart, i);
+    simData.getLogger().info(LOGPREFIX + day);
 
-      // Coupling increasing. 
-      if (i % (random.nextInt(4) + 2) == 0) {
-        coupling += random.nextInt(5);
-      }
-      simData.addCoupling(joe, day, getFilePath(project2, joe), coupling);
-      
-      // Commits are irregular and have high churn.
-      simData.addCommits(joe, day, getFilePath(project2, joe), 200 + random.nextInt(100), 
-          1 + random.nextInt(5)); 
+    // Effort varies between 2 and 9 hours 
+    simData.addDevEvents(joe, day, (12 * 2) + random.nextInt(12 * 7), getFilePath(project2, joe));
+    
+    // Size is quite variable
+    int joeFileSize = state.set(UserFileState.SIZE, troubled, 
+        30000 + i * 34 + random.nextInt((i + 1) * 26));
+    simData.addFileMetric(joe, day, getFilePath(project2, joe), joeFileSize, day);
+    
+    // Complexity steadily rising.
+    simData.addComplexity(joe, day, getFilePath(project2, joe), joeFileSize, day, 3 + i / 4);
+    
+    // Builds and unit tests between 1-4 times a day.
+    simData.addBuilds(joe, day, getDir(project2, joe), SUCCESS, 1 + random.nextInt(3));
+    simData.addUnitTests(joe, day, getFilePath(project2, joe), PASS, 1 + random.nextInt(2));
+    
+    // Coverage shows a falling trend.
+    if (i % 7 == 0) {
+      state.add(UserFileState.COVERAGE, troubled, -5);
+    }
+    simData.addCoverage(joe, day, getFilePath(project2, joe), 
+        state.get(UserFileState.COVERAGE, troubled), joeFileSize,  day);
 
-      // Code issues steadily rising.
-      codeIssue += random.nextInt(3);
-      simData.addCodeIssues(joe, day, getFilePath(project2, joe), codeIssue);
+    // Coupling increasing. 
+    if (i % (random.nextInt(4) + 2) == 0) {
+      state.add(UserFileState.COUPLING, troubled, random.nextInt(5));
     }
+    simData.addCoupling(joe, day, getFilePath(project2, joe), 
+        state.get(UserFileState.COUPLING, troubled));
+    
+    // Commits are irregular and have high churn.
+    simData.addCommits(joe, day, getFilePath(project2, joe), 200 + random.nextInt(100), 
+        1 + random.nextInt(5)); 
+
+    // Code issues steadily rising.
+    simData.addCodeIssues(joe, day, getFilePath(project2, joe), 
+        state.add(UserFileState.CODE_ISSUES, troubled, random.nextInt(3)));
   }
 
   /**
    * Illustrates a "unstable" project.
+   * @param i The day, from 0 to dataPeriod - 1.
    * @throws Exception If problems occur.
    */
-  private void makeUnstableProject() throws Exception {
-    int joeFileSize = 300000;
-    int joeCoverage = 50;
-    for (int i = 0; i < dataPeriod; i++) {
-      XMLGregorianCalendar day = Tstamp.incrementDays(dataStart, i);
-      simData.getLogger().info(LOGPREFIX + day);
+  private void makeUnstableProjectDay(int i) throws Exception {
+    XMLGregorianCalendar day = Tstamp.incrementDays(dataStart, i);
+    simData.getLogger().info(LOGPREFIX + day);
 
-      // Effort is constant, between one and five hours a day.
-      simData.addDevEvents(joe, day, 12 + random.nextInt(12 * 5), getFilePath(project3, joe));
-      
-      // Size increases unsteadily, starting at 30000. Increase varies over days.
-      joeFileSize += (i % 15) * (i % 15);
-      simData.addFileMetric(joe, day, getFilePath(project3, joe), joeFileSize, day);
-      
-      // Complexity is low but unstable, variable between 10 and 20
-      simData.addComplexity(joe, day, getFilePath(project3, joe), joeFileSize, day, 
-                            10 + random.nextInt(10));
-      
-      // Builds and unit tests between 1-10 times a day.
-      simData.addBuilds(joe, day, getDir(project3, joe), SUCCESS, 1 + random.nextInt(9));
-      simData.addUnitTests(joe, day, getFilePath(project3, joe), PASS, 1 + random.nextInt(9));
-      
-      // Coverage shows a steadily increasing trend. 
-      if (i % 7 == 0) {
-        joeCoverage += 5;
-      }
-      simData.addCoverage(joe, day, getFilePath(project3, joe), joeCoverage, joeFileSize,  day);
-      
-      // Coupling varies between 5-15. 
-      simData.addCoupling(joe, day, getFilePath(project3, joe), 10 + random.nextInt(10));
-      
-      // Commits 2-5 a day, with variable churn (20-200 LOC).
-      simData.addCommits(joe, day, getFilePath(project3, joe), 20 + random.nextInt(200), 
-          2 + random.nextInt(3)); 
-      
-      // Code issues is low but unstable. between 10 and 30.
-      simData.addCodeIssues(joe, day, getFilePath(project3, joe), 10 + random.nextInt(20));
+    // Effort is constant, between one and five hours a day.
+    simData.addDevEvents(joe, day, 12 + random.nextInt(12 * 5), getFilePath(project3, joe));
+    
+    // Size increases unsteadily, starting at 30000. Increase varies over days.
+    int unstableFileSize = state.add(UserFileState.SIZE, unstable, (i % 15) * (i % 15));
+    simData.addFileMetric(joe, day, getFilePath(project3, joe), unstableFileSize, day);
+    
+    // Complexity is low but unstable, variable between 10 and 20
+    simData.addComplexity(joe, day, getFilePath(project3, joe), unstableFileSize, day, 
+                          10 + random.nextInt(10));
+    
+    // Builds and unit tests between 1-10 times a day.
+    simData.addBuilds(joe, day, getDir(project3, joe), SUCCESS, 1 + random.nextInt(9));
+    simData.addUnitTests(joe, day, getFilePath(project3, joe), PASS, 1 + random.nextInt(9));
+    
+    // Coverage shows a steadily increasing trend. 
+    if (i % 7 == 0) {
+      state.add(UserFileState.COVERAGE, unstable, 5);
     }
+    simData.addCoverage(joe, day, getFilePath(project3, joe), 
+        state.get(UserFileState.COVERAGE, unstable), unstableFileSize, day);
+    
+    // Coupling varies between 5-15. 
+    simData.addCoupling(joe, day, getFilePath(project3, joe), 10 + random.nextInt(10));
+    
+    // Commits 2-5 a day, with variable churn (20-200 LOC).
+    simData.addCommits(joe, day, getFilePath(project3, joe), 20 + random.nextInt(200), 
+        2 + random.nextInt(3)); 
+    
+    // Code issues is low but unstable. between 10 and 30.
+    simData.addCodeIssues(joe, day, getFilePath(project3, joe), 10 + random.nextInt(20));
   }
   
 }
@@ -4,7 +4,9 @@ import java.util.Random;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
+import org.hackystat.simdata.Scenario;
 import org.hackystat.simdata.SimData;
+import org.hackystat.simdata.population.UserFileState;
 import org.hackystat.utilities.tstamp.Tstamp;
 
 /**
@@ -35,7 +37,7 @@ import org.hackystat.utilities.tstamp.Tstamp;
  * @author Philip Johnson
  * 
  */
-public class SimpleTelemetry {
+public class SimpleTelemetry implements Scenario {
   private SimData simData;
   // Package private to support testing.
   static String joe = "joe.simpletelemetry";
@@ -51,11 +53,19 @@ public class SimpleTelemetry {
   private String bobDir = "/users/bob/" + project + "/";
   private String joeFile = joeDir + "Joe.java";
   private String bobFile = bobDir + "Bob.java";
-  private Random random = new Random(0);
+  private Random random;
+  /** Joe's slot in the running state. */
+  private static final int joeSlot = 0;
+  /** Bob's slot in the running state. */
+  private static final int bobSlot = 1;
+  /** The running state of Joe's and Bob's files, which each day's data is sent from. */
+  private final UserFileState state = new UserFileState(2, 1);
   
   private static final String SUCCESS = "Success";
   private static final String PASS = "pass";
   private static final String LOGPREFIX = "SimpleTelemetry: Making data for day: ";
+  /** The number of days, one step each. */
+  private static final int numDays = 40;
   
   /**
    * Runs the SimpleTelemetry scenerio.  Creates the two users, the project, and sends the data.
@@ -63,19 +73,102 @@ public class SimpleTelemetry {
    * @throws Exception If problems occur.
    */
   public SimpleTelemetry(String host) throws Exception {
-    this.simData = new SimData(host);
+    this(new SimData(host), 0);
+  }
+  
+  /**
+   * Runs the SimpleTelemetry scenario with the given SimData instance, which determines the
+   * users' domain and where the data goes.
+   * @param simData The SimData instance.
+   * @param seed The seed of the random number generator; the tests expect 0.
+   * @throws Exception If problems occur.
+   */
+  public SimpleTelemetry(SimData simData, long seed) throws Exception {
+    this(simData, seed, true);
+  }
+  
+  /**
+   * Creates the scenario, and runs it if requested.
+   * @param simData The SimData instance.
+   * @param seed The seed of the random number generator.
+   * @param run True to create the users and project and send all the data now.
+   * @throws Exception If problems occur.
+   */
+  private SimpleTelemetry(SimData simData, long seed, boolean run) throws Exception {
+    this.simData = simData;
+    this.random = new Random(seed);
+    if (run) {
+      provision();
+      if (this.simData.beginDataset(SimpleTelemetry.class, seed, "2x" + numDays)) {
+        for (int step = 0; step < numDays; step++) {
+          generateStep(step);
+        }
+      }
+      // Make sure all remaining data is sent. 
+      this.simData.quitShells();
+    }
+  }
+  
+  /**
+   * Returns the scenario without running it, so that its data can be generated step by step, 
+   * for example through a ScenarioIterator.
+   * @param simData The SimData instance.
+   * @param seed The seed of the random number generator.
+   * @return The scenario.
+   * @throws Exception If problems occur.
+   */
+  public static SimpleTelemetry makeScenario(SimData simData, long seed) throws Exception {
+    return new SimpleTelemetry(simData, seed, false);
+  }
+  
+  /**
+   * Returns the SimData instance of this scenario.
+   * @return The SimData instance.
+   */
+  public SimData getSimData() {
+    return this.simData;
+  }
+  
+  /**
+   * Creates the two users and the project, with Bob as a member.
+   * @throws Exception If problems occur.
+   */
+  public void provision() throws Exception {
     this.simData.getLogger().info("Initializing SimpleTelemetry scenario");
     this.simData.makeUser(joe);
     this.simData.makeUser(bob);
     this.simData.makeProject(project, joe, projectStart, projectEnd, projectUriPattern);
     this.simData.addMember(project, joe, bob);
-    
-    makeSprint1();
-    makeSprint2();
-    makeSprint3();
-    makeSprint4();
-    // Make sure all remaining data is sent. 
-    this.simData.quitShells();
+  }
+  
+  /**
+   * Returns the number of steps, one per day of the four sprints.
+   * @return The number of steps.
+   */
+  public int getNumSteps() {
+    return numDays;
+  }
+  
+  /**
+   * Generates the data of one day.
+   * @param step The day, from 0 to 39.
+   * @throws Exception If problems occur.
+   */
+  public void generateStep(int step) throws Exception {
+    switch (step / 10) {
+    case 0:
+      makeSprint1Day(step);
+      break;
+    case 1:
+      makeSprint2Day(step);
+      break;
+    case 2:
+      makeSprint3Day(step);
+      break;
+    default:
+      makeSprint4Day(step);
+      break;
+    }
   }
   
   /**
@@ -89,48 +182,47 @@ public class SimpleTelemetry {
    * <li> CodeIssues is stable and low, between 5 and 10 per file.
    * <li> They each commit once a day, with relatively low churn (less than 20%).
    * </ul>
+   * @param i The day of the project, from 0 to 9.
    * @throws Exception If problems occur.
    */
-  private void makeSprint1() throws Exception {
-    for (int i = 0; i < 10; i++) {
-      XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
-      this.simData.getLogger().info(LOGPREFIX + day);
-      
-      // Effort is constant, between three and four hours a day.
-      this.simData.addDevEvents(joe, day, (12 * 3) + random.nextInt(12), joeFile);
-      this.simData.addDevEvents(bob, day, (12 * 3) + random.nextInt(12), bobFile);
-      
-      // Size increases steadily, starting at about 100 and increasing by 50-60 LOC per day.
-      int joeFileSize = 100 + (i * 50) + random.nextInt(10); 
-      int bobFileSize = 100 + (i * 50) + random.nextInt(10); 
-      simData.addFileMetric(joe, day, joeFile, joeFileSize, day);
-      simData.addFileMetric(joe, day, bobFile, bobFileSize, day);
-      
-      // Complexity is low and stable (between 3 and 6).
-      simData.addComplexity(joe, day, bobFile, bobFileSize, day, 3 + random.nextInt(3));
-      simData.addComplexity(joe, day, joeFile, joeFileSize, day, 3 + random.nextInt(3));
-      
-      // Builds and unit tests between 2-6 times a day.
-      simData.addBuilds(joe, day, joeDir, SUCCESS, 2 + random.nextInt(5));
-      simData.addBuilds(bob, day, bobDir, SUCCESS, 2 + random.nextInt(5));
-      simData.addUnitTests(joe, day, joeFile, PASS, 2 + random.nextInt(5));
-      simData.addUnitTests(bob, day, bobFile, PASS, 2 + random.nextInt(5));
-      
-      // Coverage is always at least 80%.
-      int joeCoverage = 80 + random.nextInt(20);
-      int bobCoverage = 80 + random.nextInt(20);
-      simData.addCoverage(joe, day, joeFile, joeCoverage, joeFileSize,  day);
-      simData.addCoverage(joe, day, bobFile, bobCoverage, bobFileSize, day);
-      
-      // Joe commits twice a day, and Bob commits once, with relatively low churn (50-60 LOC).
-      simData.addCommit(joe, day, joeFile, 20 + random.nextInt(10));
-      simData.addCommit(joe, day, joeFile, 20 + random.nextInt(10));
-      simData.addCommit(bob, day, bobFile, 50 + random.nextInt(10));
-      
-      // Code issues are low and stable, between 0 and 4 per file.
-      simData.addCodeIssues(joe, day, joeFile, random.nextInt(4));
-      simData.addCodeIssues(bob, day, bobFile, random.nextInt(4));
-    }
+  private void makeSprint1Day(int i) throws Exception {
+    XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
+    this.simData.getLogger().info(LOGPREFIX + day);
+    
+    // Effort is constant, between three and four hours a day.
+    this.simData.addDevEvents(joe, day, (12 * 3) + random.nextInt(12), joeFile);
+    this.simData.addDevEvents(bob, day, (12 * 3) + random.nextInt(12), bobFile);
+    
+    // Size increases steadily, starting at about 100 and increasing by 50-60 LOC per day.
+    state.set(UserFileState.SIZE, joeSlot, 100 + (i * 50) + random.nextInt(10));
+    state.set(UserFileState.SIZE, bobSlot, 100 + (i * 50) + random.nextInt(10));
+    addFileMetrics(day);
+    
+    // Complexity is low and stable (between 3 and 6).
+    state.set(UserFileState.COMPLEXITY, bobSlot, 3 + random.nextInt(3));
+    state.set(UserFileState.COMPLEXITY, joeSlot, 3 + random.nextInt(3));
+    addComplexity(day);
+    
+    // Builds and unit tests between 2-6 times a day.
+    simData.addBuilds(joe, day, joeDir, SUCCESS, 2 + random.nextInt(5));
+    simData.addBuilds(bob, day, bobDir, SUCCESS, 2 + random.nextInt(5));
+    simData.addUnitTests(joe, day, joeFile, PASS, 2 + random.nextInt(5));
+    simData.addUnitTests(bob, day, bobFile, PASS, 2 + random.nextInt(5));
+    
+    // Coverage is always at least 80%.
+    state.set(UserFileState.COVERAGE, joeSlot, 80 + random.nextInt(20));
+    state.set(UserFileState.COVERAGE, bobSlot, 80 + random.nextInt(20));
+    addCoverage(day);
+    
+    // Joe commits twice a day, and Bob commits once, with relatively low churn (50-60 LOC).
+    simData.addCommit(joe, day, joeFile, 20 + random.nextInt(10));
+    simData.addCommit(joe, day, joeFile, 20 + random.nextInt(10));
+    simData.addCommit(bob, day, bobFile, 50 + random.nextInt(10));
+    
+    // Code issues are low and stable, between 0 and 4 per file.
+    state.set(UserFileState.CODE_ISSUES, joeSlot, random.nextInt(4));
+    state.set(UserFileState.CODE_ISSUES, bobSlot, random.nextInt(4));
+    addCodeIssues(day);
   }
   
   /**
@@ -144,13 +236,14 @@ public class SimpleTelemetry {
    * <li> 1 commit only for first five days, then many in last five days. High churn each time.
    * <li>> 1 code issue for first five days, then increasing in last five days.
    * </ul>
+   * @param i The day of the project, from 10 to 19.
    * @throws Exception If problems occur.
    */
-  private void makeSprint2() throws Exception {
+  private void makeSprint2Day(int i) throws Exception {
     // Move forward 10 days to start the second sprint.
     int dayOffset = 10;
-    // Do first five days of sprint in one loop.
-    for (int i = dayOffset + 0; i < dayOffset + 5; i++) {
+    // The first five days of the sprint.
+    if (i < dayOffset + 5) {
       XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
       this.simData.getLogger().info(LOGPREFIX + day);
       
@@ -159,14 +252,14 @@ public class SimpleTelemetry {
       this.simData.addDevEvents(bob, day, 0 + random.nextInt(4), bobFile);
       
       // Size is very low, between 20 and 30 LOC.
-      int joeFileSize = 20 + random.nextInt(10); 
-      int bobFileSize = 20 + random.nextInt(10); 
-      simData.addFileMetric(joe, day, joeFile, joeFileSize, day);
-      simData.addFileMetric(joe, day, bobFile, bobFileSize, day);
+      state.set(UserFileState.SIZE, joeSlot, 20 + random.nextInt(10));
+      state.set(UserFileState.SIZE, bobSlot, 20 + random.nextInt(10));
+      addFileMetrics(day);
       
       // Complexity is low (between 3 and 6).
-      simData.addComplexity(joe, day, bobFile, bobFileSize, day, 3 + random.nextInt(3));
-      simData.addComplexity(joe, day, joeFile, joeFileSize, day, 3 + random.nextInt(3));
+      state.set(UserFileState.COMPLEXITY, bobSlot, 3 + random.nextInt(3));
+      state.set(UserFileState.COMPLEXITY, joeSlot, 3 + random.nextInt(3));
+      addComplexity(day);
       
       // Builds, unit tests, commits, churn, code issues are all low.
       simData.addBuilds(joe, day, joeDir, SUCCESS, 1 + random.nextInt(1));
@@ -175,19 +268,18 @@ public class SimpleTelemetry {
       simData.addUnitTests(bob, day, bobFile, PASS, 1 + random.nextInt(1));
       simData.addCommits(joe, day, joeFile, 10 + random.nextInt(10), 1 + random.nextInt(1));  
       simData.addCommits(bob, day, bobFile, 10 + random.nextInt(10), 1 + random.nextInt(1));  
-      simData.addCodeIssues(joe, day, joeFile, 1 + random.nextInt(5));
-      simData.addCodeIssues(bob, day, bobFile, 1 + random.nextInt(5));
+      state.set(UserFileState.CODE_ISSUES, joeSlot, 1 + random.nextInt(5));
+      state.set(UserFileState.CODE_ISSUES, bobSlot, 1 + random.nextInt(5));
+      addCodeIssues(day);
       
       // Coverage is low
-      int joeCoverage = 10 + random.nextInt(5);
-      int bobCoverage = 10 + random.nextInt(5);
-      simData.addCoverage(joe, day, joeFile, joeCoverage, joeFileSize, day);
-      simData.addCoverage(joe, day, bobFile, bobCoverage, bobFileSize, day);
+      state.set(UserFileState.COVERAGE, joeSlot, 10 + random.nextInt(5));
+      state.set(UserFileState.COVERAGE, bobSlot, 10 + random.nextInt(5));
+      addCoverage(day);
       
     }
-    
-    // Now do last five days.
-    for (int i = dayOffset + 5; i < dayOffset + 10; i++) {
+    // Now the last five days.
+    else {
       XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
       this.simData.getLogger().info("SimpleTelemetry: Making data for day: " + day);
       
@@ -196,14 +288,14 @@ public class SimpleTelemetry {
       this.simData.addDevEvents(bob, day, (12 * 8) + random.nextInt(12 * 2), bobFile);
       
       // Size increases dramatically, by a total of around 300 or so lines per day.
-      int joeFileSize = ((i - dayOffset) * 150) +  random.nextInt(10); 
-      int bobFileSize = ((i - dayOffset) * 150) + random.nextInt(10); 
-      simData.addFileMetric(joe, day, joeFile, joeFileSize, day);
-      simData.addFileMetric(joe, day, bobFile, bobFileSize, day);
+      state.set(UserFileState.SIZE, joeSlot, ((i - dayOffset) * 150) +  random.nextInt(10));
+      state.set(UserFileState.SIZE, bobSlot, ((i - dayOffset) * 150) + random.nextInt(10));
+      addFileMetrics(day);
       
       // Complexity is high and increasing (10 + day + rand(2))
-      simData.addComplexity(joe, day, bobFile, bobFileSize, day, 10 + i + random.nextInt(2));
-      simData.addComplexity(joe, day, joeFile, joeFileSize, day, 10 + i + random.nextInt(2));
+      state.set(UserFileState.COMPLEXITY, bobSlot, 10 + i + random.nextInt(2));
+      state.set(UserFileState.COMPLEXITY, joeSlot, 10 + i + random.nextInt(2));
+      addComplexity(day);
       
       // Builds and unit tests between 20 and 40 per day
       simData.addBuilds(joe, day, joeDir, SUCCESS, 20 + random.nextInt(20));
@@ -212,18 +304,18 @@ public class SimpleTelemetry {
       simData.addUnitTests(bob, day, bobFile, PASS, 20 + random.nextInt(20));
       
       // Coverage doesn't rise much
-      int joeCoverage = 20 + random.nextInt(10);
-      int bobCoverage = 20 + random.nextInt(10);
-      simData.addCoverage(joe, day, joeFile, joeCoverage, joeFileSize, day);
-      simData.addCoverage(joe, day, bobFile, bobCoverage, bobFileSize, day);
+      state.set(UserFileState.COVERAGE, joeSlot, 20 + random.nextInt(10));
+      state.set(UserFileState.COVERAGE, bobSlot, 20 + random.nextInt(10));
+      addCoverage(day);
       
       // Lots of commits for last five days, with high churn.
       simData.addCommits(joe, day, joeFile, 200 + random.nextInt(10), 5 + random.nextInt(5));  
       simData.addCommits(bob, day, bobFile, 200 + random.nextInt(10), 5 + random.nextInt(5));  
       
       // Code issues increase steadily for last five days.
-      simData.addCodeIssues(joe, day, joeFile, ((i - dayOffset) * 10) + random.nextInt(5));
-      simData.addCodeIssues(bob, day, bobFile, ((i - dayOffset) * 10) + random.nextInt(5));
+      state.set(UserFileState.CODE_ISSUES, joeSlot, ((i - dayOffset) * 10) + random.nextInt(5));
+      state.set(UserFileState.CODE_ISSUES, bobSlot, ((i - dayOffset) * 10) + random.nextInt(5));
+      addCodeIssues(day);
     }
   }
   
@@ -237,50 +329,49 @@ public class SimpleTelemetry {
    * <li> Code issues steadily rising.
    * <li> Complexity steadily rising.
    * </ul>
+   * @param i The day of the project, from 20 to 29.
    * @throws Exception If problems occur.
    */
-  private void makeSprint3() throws Exception {
+  private void makeSprint3Day(int i) throws Exception {
     // Move forward 20 days to start Sprint 3.
     int dayOffset = 20;
-    for (int i = dayOffset + 0; i < dayOffset + 10; i++) {
-      XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
-      this.simData.getLogger().info(LOGPREFIX + day);
-      
-      // Effort varies between 3 and 5 hours (12 * 8) 
-      this.simData.addDevEvents(joe, day, 36 + random.nextInt(12 * 2), joeFile);
-      this.simData.addDevEvents(bob, day, 36 + random.nextInt(12 * 2), bobFile);
-      
-      // Size is variable but has slight upward trend.
-      int joeFileSize = 200 + ((i - dayOffset) * 50) + random.nextInt(20); 
-      int bobFileSize = 200 + ((i - dayOffset) * 50) + random.nextInt(20); 
-      simData.addFileMetric(joe, day, joeFile, joeFileSize, day);
-      simData.addFileMetric(joe, day, bobFile, bobFileSize, day);
-      
-      // Complexity is steadily increasing.
-      simData.addComplexity(joe, day, bobFile, bobFileSize, day, 5 + i + random.nextInt(2));
-      simData.addComplexity(joe, day, joeFile, joeFileSize, day, 5 + i + random.nextInt(2));
-      
-      // Builds and unit tests are low; 1-3 times a day
-      simData.addBuilds(joe, day, joeDir, SUCCESS, 1 + random.nextInt(2));
-      simData.addBuilds(bob, day, bobDir, SUCCESS, 1 + random.nextInt(2));
-      simData.addUnitTests(joe, day, joeFile, PASS, 1 + random.nextInt(2));
-      simData.addUnitTests(bob, day, bobFile, PASS, 1 + random.nextInt(2));
-      
-      // Coverage starts out about 90%, but falls 10% per day with a little random jiggle.
-      int joeCoverage = 90 - ((i - dayOffset) * 10) + random.nextInt(3);
-      int bobCoverage = 90 - ((i - dayOffset) * 10) + random.nextInt(3);
-      simData.addCoverage(joe, day, joeFile, joeCoverage, joeFileSize, day);
-      simData.addCoverage(joe, day, bobFile, bobCoverage, bobFileSize, day);
-      
-      // Commits are regular and have high churn
-      simData.addCommits(joe, day, joeFile, 200 + random.nextInt(10), 2 + random.nextInt(2)); 
-      simData.addCommits(bob, day, bobFile, 200 + random.nextInt(10), 2 + random.nextInt(2)); 
-      
-      // Code Issues steadily rising by about 10 per day per file.
-      simData.addCodeIssues(joe, day, joeFile, ((i - dayOffset) * 8)  + random.nextInt(5));
-      simData.addCodeIssues(bob, day, bobFile, ((i - dayOffset) * 8) + random.nextInt(5));
-      
-    }
+    XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
+    this.simData.getLogger().info(LOGPREFIX + day);
+    
+    // Effort varies between 3 and 5 hours (12 * 8) 
+    this.simData.addDevEvents(joe, day, 36 + random.nextInt(12 * 2), joeFile);
+    this.simData.addDevEvents(bob, day, 36 + random.nextInt(12 * 2), bobFile);
+    
+    // Size is variable but has slight upward trend.
+    state.set(UserFileState.SIZE, joeSlot, 200 + ((i - dayOffset) * 50) + random.nextInt(20));
+    state.set(UserFileState.SIZE, bobSlot, 200 + ((i - dayOffset) * 50) + random.nextInt(20));
+    addFileMetrics(day);
+    
+    // Complexity is steadily increasing.
+    state.set(UserFileState.COMPLEXITY, bobSlot, 5 + i + random.nextInt(2));
+    state.set(UserFileState.COMPLEXITY, joeSlot, 5 + i + random.nextInt(2));
+    addComplexity(day);
+    
+    // Builds and unit tests are low; 1-3 times a day
+    simData.addBuilds(joe, day, joeDir, SUCCESS, 1 + random.nextInt(2));
+    simData.addBuilds(bob, day, bobDir, SUCCESS, 1 + random.nextInt(2));
+    simData.addUnitTests(joe, day, joeFile, PASS, 1 + random.nextInt(2));
+    simData.addUnitTests(bob, day, bobFile, PASS, 1 + random.nextInt(2));
+    
+    // Coverage starts out about 90%, but falls 10% per day with a little random jiggle.
+    state.set(UserFileState.COVERAGE, joeSlot, 90 - ((i - dayOffset) * 10) + random.nextInt(3));
+    state.set(UserFileState.COVERAGE, bobSlot, 90 - ((i - dayOffset) * 10) + random.nextInt(3));
+    addCoverage(day);
+    
+    // Commits are regular and have high churn
+    simData.addCommits(joe, day, joeFile, 200 + random.nextInt(10), 2 + random.nextInt(2)); 
+    simData.addCommits(bob, day, bobFile, 200 + random.nextInt(10), 2 + random.nextInt(2)); 
+    
+    // Code Issues steadily rising by about 10 per day per file.
+    state.set(UserFileState.CODE_ISSUES, joeSlot, ((i - dayOffset) * 8)  + random.nextInt(5));
+    state.set(UserFileState.CODE_ISSUES, bobSlot, ((i - dayOffset) * 8) + random.nextInt(5));
+    addCodeIssues(day);
+    
   }
   
   /**
@@ -290,48 +381,92 @@ public class SimpleTelemetry {
    * <li> Coverage shows a falling trend.
    * <li> High churn on commits.
    * </ul>
+   * @param i The day of the project, from 30 to 39.
    * @throws Exception If problems occur.
    */
-  private void makeSprint4() throws Exception {
+  private void makeSprint4Day(int i) throws Exception {
     // Move forward 30 days to start Sprint 4.
     int dayOffset = 30;
-    for (int i = dayOffset + 0; i < dayOffset + 10; i++) {
-      XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
-      this.simData.getLogger().info(LOGPREFIX + day);
-      
-      // Joe: Effort varies between 8 and 13 hours 
-      this.simData.addDevEvents(joe, day, (12 * 8)  + random.nextInt(12 * 5), joeFile);
-      // Bob: Effort varies between 0 and 1 hour.
-      this.simData.addDevEvents(bob, day, 1 + random.nextInt(11), bobFile);
-      
-      // Joe: size is variable, moving upward fast. Bob: not much size increase.
-      int joeFileSize = 10 + ((i - dayOffset) * 100) + random.nextInt(20); 
-      int bobFileSize = 10 + ((i - dayOffset) * 2) + random.nextInt(2); 
-      simData.addFileMetric(joe, day, joeFile, joeFileSize, day);
-      simData.addFileMetric(joe, day, bobFile, bobFileSize, day);
-      
-      // Joe: Complexity is steadily increasing, Bob: complexity is low. 
-      simData.addComplexity(joe, day, bobFile, bobFileSize, day, 2 + random.nextInt(2));
-      simData.addComplexity(joe, day, joeFile, joeFileSize, day, 5 + i + random.nextInt(2));
-        
-      // Builds and unit tests between 0-10 times a day.
-      simData.addBuilds(joe, day, joeDir, SUCCESS, 5 + random.nextInt(2));
-      simData.addBuilds(bob, day, bobDir, SUCCESS, 1 + random.nextInt(1));
-      simData.addUnitTests(joe, day, joeFile, PASS, 10 + random.nextInt(2));
-      simData.addUnitTests(bob, day, bobFile, PASS, 1 + random.nextInt(1));
-      
-      // Coverage stays low.
-      int joeCoverage = 30 + random.nextInt(10);
-      int bobCoverage = 10 + random.nextInt(3);
-      simData.addCoverage(joe, day, joeFile, joeCoverage, joeFileSize, day);
-      simData.addCoverage(joe, day, bobFile, bobCoverage, bobFileSize, day);
-      
-      // Bob doesn't even commit, joe has a commit with lots of churn.
-      simData.addCommits(joe, day, joeFile, joeFileSize + random.nextInt(20), 
-          5 + random.nextInt(5));  
-      
-      // Code Issues are high and rising.
-      simData.addCodeIssues(joe, day, joeFile, 30 + ((i - dayOffset) * 2)  + random.nextInt(2));
-    }
+    XMLGregorianCalendar day = Tstamp.incrementDays(projectStart, i);
+    this.simData.getLogger().info(LOGPREFIX + day);
+    
+    // Joe: Effort varies between 8 and 13 hours 
+    this.simData.addDevEvents(joe, day, (12 * 8)  + random.nextInt(12 * 5), joeFile);
+    // Bob: Effort varies between 0 and 1 hour.
+    this.simData.addDevEvents(bob, day, 1 + random.nextInt(11), bobFile);
+    
+    // Joe: size is variable, moving upward fast. Bob: not much size increase.
+    state.set(UserFileState.SIZE, joeSlot, 10 + ((i - dayOffset) * 100) + random.nextInt(20));
+    state.set(UserFileState.SIZE, bobSlot, 10 + ((i - dayOffset) * 2) + random.nextInt(2));
+    addFileMetrics(day);
+    
+    // Joe: Complexity is steadily increasing, Bob: complexity is low. 
+    state.set(UserFileState.COMPLEXITY, bobSlot, 2 + random.nextInt(2));
+    state.set(UserFileState.COMPLEXITY, joeSlot, 5 + i + random.nextInt(2));
+    addComplexity(day);
+      
+    // Builds and unit tests between 0-10 times a day.
+    simData.addBuilds(joe, day, joeDir, SUCCESS, 5 + random.nextInt(2));
+    simData.addBuilds(bob, day, bobDir, SUCCESS, 1 + random.nextInt(1));
+    simData.addUnitTests(joe, day, joeFile, PASS, 10 + random.nextInt(2));
+    simData.addUnitTests(bob, day, bobFile, PASS, 1 + random.nextInt(1));
+    
+    // Coverage stays low.
+    state.set(UserFileState.COVERAGE, joeSlot, 30 + random.nextInt(10));
+    state.set(UserFileState.COVERAGE, bobSlot, 10 + random.nextInt(3));
+    addCoverage(day);
+    
+    // Bob doesn't even commit, joe has a commit with lots of churn.
+    simData.addCommits(joe, day, joeFile, 
+        state.get(UserFileState.SIZE, joeSlot) + random.nextInt(20), 
+        5 + random.nextInt(5));  
+    
+    // Code Issues are high and rising.
+    simData.addCodeIssues(joe, day, joeFile, state.set(UserFileState.CODE_ISSUES, joeSlot, 
+        30 + ((i - dayOffset) * 2)  + random.nextInt(2)));
+  }
+  
+  /**
+   * Sends the size of both files from the running state. Joe sends both.
+   * @param day The day.
+   * @throws Exception If problems occur.
+   */
+  private void addFileMetrics(XMLGregorianCalendar day) throws Exception {
+    simData.addFileMetric(joe, day, joeFile, state.get(UserFileState.SIZE, joeSlot), day);
+    simData.addFileMetric(joe, day, bobFile, state.get(UserFileState.SIZE, bobSlot), day);
+  }
+  
+  /**
+   * Sends the complexity of both files from the running state, Bob's file first.
+   * @param day The day.
+   * @throws Exception If problems occur.
+   */
+  private void addComplexity(XMLGregorianCalendar day) throws Exception {
+    simData.addComplexity(joe, day, bobFile, state.get(UserFileState.SIZE, bobSlot), day, 
+        state.get(UserFileState.COMPLEXITY, bobSlot));
+    simData.addComplexity(joe, day, joeFile, state.get(UserFileState.SIZE, joeSlot), day, 
+        state.get(UserFileState.COMPLEXITY, joeSlot));
+  }
+  
+  /**
+   * Sends the coverage of both files from the running state.
+   * @param day The day.
+   * @throws Exception If problems occur.
+   */
+  private void addCoverage(XMLGregorianCalendar day) throws Exception {
+    simData.addCoverage(joe, day, joeFile, state.get(UserFileState.COVERAGE, joeSlot), 
+        state.get(UserFileState.SIZE, joeSlot), day);
+    simData.addCoverage(joe, day, bobFile, state.get(UserFileState.COVERAGE, bobSlot), 
+        state.get(UserFileState.SIZE, bobSlot), day);
+  }
+  
+  /**
+   * Sends the code issues of each developer's file from the running state.
+   * @param day The day.
+   * @throws Exception If problems occur.
+   */
+  private void addCodeIssues(XMLGregorianCalendar day) throws Exception {
+    simData.addCodeIssues(joe, day, joeFile, state.get(UserFileState.CODE_ISSUES, joeSlot));
+    simData.addCodeIssues(bob, day, bobFile, state.get(UserFileState.CODE_ISSUES, bobSlot));
   }
 }
@@ -0,0 +1,70 @@
+package org.hackystat.simdata.sink;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the bytes allocated by every live thread, where the JVM supports it through
+ * com.sun.management.ThreadMXBean. It is called by reflection, so SimData still runs on JVMs
+ * without it. Threads that die between two readings take their allocations with them, so the
+ * figure is a lower bound for runs with short-lived threads.
+ * 
+ * @author Philip Johnson
+ */
+public final class AllocationCounter {
+  
+  /** The thread bean. */
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  /** ThreadMXBean.getThreadAllocatedBytes(long[]), or null if unsupported. */
+  private static final Method allocatedBytes = findMethod();
+  
+  /** Disable public construction. */
+  private AllocationCounter() {
+    // Does nothing.
+  }
+  
+  /**
+   * Returns the getThreadAllocatedBytes(long[]) method, if the thread bean supports it.
+   * @return The method, or null.
+   */
+  private static Method findMethod() {
+    try {
+      Method method = Class.forName("com.sun.management.ThreadMXBean")
+        .getMethod("getThreadAllocatedBytes", long[].class);
+      method.invoke(threads, new long[] { Thread.currentThread().getId() });
+      return method;
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+  
+  /**
+   * Returns true if allocation can be measured on this JVM.
+   * @return True if supported.
+   */
+  public static boolean isSupported() {
+    return allocatedBytes != null;
+  }
+  
+  /**
+   * Returns the total bytes allocated so far by all live threads, or -1 if unsupported.
+   * @return The bytes.
+   */
+  public static long getAllocatedBytes() {
+    if (allocatedBytes == null) {
+      return -1;
+    }
+    try {
+      long total = 0;
+      for (long bytes : (long[]) allocatedBytes.invoke(threads, threads.getAllThreadIds())) {
+        total += Math.max(0, bytes);
+      }
+      return total;
+    }
+    catch (Exception e) {
+      return -1;
+    }
+  }
+}
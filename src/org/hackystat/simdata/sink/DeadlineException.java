@@ -0,0 +1,20 @@
+package org.hackystat.simdata.sink;
+
+/**
+ * Thrown by a PacingSink once its run's time is up, to stop the scenario that is generating.
+ * 
+ * @author Philip Johnson
+ */
+public class DeadlineException extends Exception {
+  
+  /** The serial version UID. */
+  private static final long serialVersionUID = 1L;
+  
+  /**
+   * Creates the exception.
+   * @param message The message.
+   */
+  public DeadlineException(String message) {
+    super(message);
+  }
+}
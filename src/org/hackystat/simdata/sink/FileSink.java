@@ -0,0 +1,103 @@
+package org.hackystat.simdata.sink;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SensorDataXml;
+
+/**
+ * A sink that writes everything to a file, one SensorData XML fragment per line, in the same
+ * format as the dead letter file and the dataset cache. The file is gzip compressed if its
+ * name ends in ".gz". It is truncated when opened, unless appending is asked for; appending to
+ * a compressed file adds a gzip member, which GZIPInputStream reads on as one stream.
+ * 
+ * @author Philip Johnson
+ */
+public class FileSink implements SensorDataSink {
+  
+  /** The file. */
+  private final File file;
+  /** The writer, or null once closed. */
+  private Writer writer;
+  /** The number of instances written. */
+  private long count = 0;
+  
+  /**
+   * Opens the file, truncating it, and creating its directory if necessary.
+   * @param file The file.
+   * @throws IOException If it cannot be opened.
+   */
+  public FileSink(File file) throws IOException {
+    this(file, false);
+  }
+  
+  /**
+   * Opens the file, creating its directory if necessary.
+   * @param file The file.
+   * @param append True to append to the file, false to truncate it.
+   * @throws IOException If it cannot be opened.
+   */
+  public FileSink(File file, boolean append) throws IOException {
+    this.file = file;
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    OutputStream out = new FileOutputStream(file, append);
+    if (file.getName().endsWith(".gz")) {
+      out = new GZIPOutputStream(out, 64 * 1024);
+    }
+    this.writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 64 * 1024);
+  }
+  
+  /**
+   * Writes the data.
+   * @param data The sensor data.
+   * @throws Exception If it cannot be written, or the sink is closed.
+   */
+  public synchronized void add(SensorData data) throws Exception {
+    if (this.writer == null) {
+      throw new IOException("FileSink for " + this.file + " is closed.");
+    }
+    this.writer.write(SensorDataXml.toXml(data));
+    this.writer.write('\n');
+    this.count++;
+  }
+  
+  /**
+   * Flushes the buffered lines to the file.
+   * @throws IOException If they cannot be written.
+   */
+  public synchronized void flush() throws IOException {
+    if (this.writer != null) {
+      this.writer.flush();
+    }
+  }
+  
+  /**
+   * Closes the file. Closing it again does nothing.
+   * @throws IOException If it cannot be closed.
+   */
+  public synchronized void close() throws IOException {
+    if (this.writer != null) {
+      this.writer.close();
+      this.writer = null;
+    }
+  }
+  
+  /**
+   * Returns the number of instances written.
+   * @return The count.
+   */
+  public synchronized long getCount() {
+    return this.count;
+  }
+}
@@ -0,0 +1,106 @@
+package org.hackystat.simdata.sink;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets whose width grows with their value so
+ * that any latency from a nanosecond to years is recorded to within about 6 percent in a fixed
+ * few kilobytes. Recording is lock free, so one histogram can be shared by every thread of a
+ * run.
+ *
+ * @author Philip Johnson
+ */
+public class LatencyHistogram {
+
+  /** The number of buckets per power of two; values below it have a bucket each. */
+  private static final int SUB_BUCKETS = 16;
+  /** The base 2 logarithm of SUB_BUCKETS. */
+  private static final int SUB_BUCKET_BITS = 4;
+
+  /** The number of latencies in each bucket. */
+  private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS * 61);
+  /** The number of latencies recorded. */
+  private final AtomicLong count = new AtomicLong();
+  /** The largest latency recorded. */
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   * @param nanos The latency in nanoseconds; negative values are recorded as zero.
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    this.counts.incrementAndGet(bucketOf(value));
+    this.count.incrementAndGet();
+    long current = this.max.get();
+    while ((value > current) && !this.max.compareAndSet(current, value)) {
+      current = this.max.get();
+    }
+  }
+
+  /**
+   * Returns the bucket of the value.
+   * @param value The value, not negative.
+   * @return The bucket index.
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  /**
+   * Returns the largest value that falls in the bucket.
+   * @param bucket The bucket index.
+   * @return The value.
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+    long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Returns the number of latencies recorded.
+   * @return The count.
+   */
+  public long getCount() {
+    return this.count.get();
+  }
+
+  /**
+   * Returns the largest latency recorded.
+   * @return The latency in nanoseconds, or 0 if none has been recorded.
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Returns the latency that the given percentage of recorded latencies do not exceed, to
+   * within the width of its bucket.
+   * @param percent The percentile, such as 99.9.
+   * @return The latency in nanoseconds, or 0 if none has been recorded.
+   */
+  public long getPercentile(double percent) {
+    long total = this.count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(total * percent / 100.0));
+    long seen = 0;
+    for (int bucket = 0; bucket < this.counts.length(); bucket++) {
+      seen += this.counts.get(bucket);
+      if (seen >= target) {
+        return Math.min(upperBoundOf(bucket), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+}
@@ -0,0 +1,54 @@
+package org.hackystat.simdata.sink;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * A sink that counts each instance in a RunMetrics after its delegate accepts it. The time
+ * taken to send the instances is recorded by the senders themselves; see RunMetrics.
+ * 
+ * @author Philip Johnson
+ */
+public class MetricsSink implements SensorDataSink {
+  
+  /** The sink that receives the data. */
+  private final SensorDataSink delegate;
+  /** The metrics, which may be shared with other sinks. */
+  private final RunMetrics metrics;
+  
+  /**
+   * Creates a metrics sink.
+   * @param delegate The sink that receives the data.
+   * @param metrics The metrics.
+   */
+  public MetricsSink(SensorDataSink delegate, RunMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+  
+  /**
+   * Adds the data to the delegate, then counts it.
+   * @param data The sensor data.
+   * @throws Exception If the delegate fails.
+   */
+  public void add(SensorData data) throws Exception {
+    this.delegate.add(data);
+    this.metrics.record(data.getSensorDataType(), data.getOwner());
+  }
+  
+  /**
+   * Flushes the delegate.
+   * @throws Exception If the delegate fails.
+   */
+  public void flush() throws Exception {
+    this.delegate.flush();
+  }
+  
+  /**
+   * Closes the delegate.
+   * @throws Exception If the delegate fails.
+   */
+  public void close() throws Exception {
+    this.delegate.close();
+  }
+}
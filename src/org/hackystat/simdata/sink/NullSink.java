@@ -0,0 +1,141 @@
+package org.hackystat.simdata.sink;
+
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+import org.hackystat.simdata.SensorDataXml;
+
+/**
+ * A sink that counts and discards everything it is given, to measure how fast SimData can 
+ * generate without any server cost. It can marshal each instance to XML first, so that the 
+ * cost of serialization is included. When closed with a logger, it reports the instances per
+ * second and the bytes allocated per instance since it was created.
+ * <p>
+ * SimData uses a NullSink when the sender system property is "null", so any scenario can be
+ * measured unchanged, without a SensorBase; setting org.hackystat.simdata.sender.null.marshal
+ * to "true" includes marshalling.
+ * 
+ * @author Philip Johnson
+ */
+public class NullSink implements SensorDataSink {
+  
+  /** The system property that turns on marshalling in SimData's null sender. */
+  public static final String MARSHAL_KEY = "org.hackystat.simdata.sender.null.marshal";
+  
+  /** True if each instance is marshalled before being discarded. */
+  private final boolean marshal;
+  /** The logger for the report, or null for none. */
+  private final Logger logger;
+  /** The number of instances discarded. */
+  private final AtomicLong count = new AtomicLong();
+  /** The number of bytes marshalled. */
+  private final AtomicLong bytes = new AtomicLong();
+  /** Discards marshalled bytes, counting them. */
+  private final OutputStream discard = new OutputStream() {
+    /** @param b Counted. */
+    @Override
+    public void write(int b) {
+      bytes.incrementAndGet();
+    }
+    /**
+     * @param b Ignored.
+     * @param off Ignored.
+     * @param len Counted.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) {
+      bytes.addAndGet(len);
+    }
+  };
+  /** The time of creation, as System.nanoTime. */
+  private final long startNanos = System.nanoTime();
+  /** The bytes allocated by all threads at creation, or -1 if unknown. */
+  private final long startAllocated = AllocationCounter.getAllocatedBytes();
+  
+  /**
+   * Creates a null sink that neither marshals nor reports.
+   */
+  public NullSink() {
+    this(false, null);
+  }
+  
+  /**
+   * Creates a null sink.
+   * @param marshal True to marshal each instance to XML before discarding it.
+   * @param logger The logger for the report when closed, or null for none.
+   */
+  public NullSink(boolean marshal, Logger logger) {
+    this.marshal = marshal;
+    this.logger = logger;
+  }
+  
+  /**
+   * Discards the data, marshalling it first if requested.
+   * @param data The sensor data.
+   * @throws Exception If it cannot be marshalled.
+   */
+  public void add(SensorData data) throws Exception {
+    if (this.marshal) {
+      SensorDataXml.getThreadMarshaller().marshal(data, this.discard);
+    }
+    this.count.incrementAndGet();
+  }
+  
+  /**
+   * Does nothing, since nothing is buffered.
+   */
+  public void flush() {
+    // Nothing buffered.
+  }
+  
+  /**
+   * Logs the report, if there is a logger.
+   */
+  public void close() {
+    if (this.logger != null) {
+      this.logger.info(getReport());
+    }
+  }
+  
+  /**
+   * Returns the number of instances discarded.
+   * @return The count.
+   */
+  public long getCount() {
+    return this.count.get();
+  }
+  
+  /**
+   * Returns the number of bytes marshalled.
+   * @return The bytes.
+   */
+  public long getBytes() {
+    return this.bytes.get();
+  }
+  
+  /**
+   * Returns a report of the instances per second and bytes allocated per instance since
+   * this sink was created.
+   * @return The report.
+   */
+  public String getReport() {
+    long events = getCount();
+    double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+    long allocated = AllocationCounter.getAllocatedBytes();
+    StringBuilder report = new StringBuilder(128);
+    report.append(String.format("NullSink: %d instances in %.3f s, %.0f per second", events, 
+        seconds, (seconds > 0) ? events / seconds : 0.0));
+    if (this.marshal) {
+      report.append(String.format(", %.0f XML bytes per instance", 
+          (events > 0) ? getBytes() / (double) events : 0.0));
+    }
+    if ((allocated >= 0) && (this.startAllocated >= 0)) {
+      report.append(String.format(", %.0f bytes allocated per instance", 
+          (events > 0) ? (allocated - this.startAllocated) / (double) events : 0.0));
+    }
+    return report.toString();
+  }
+}
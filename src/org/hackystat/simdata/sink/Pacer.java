@@ -0,0 +1,67 @@
+package org.hackystat.simdata.sink;
+
+/**
+ * Limits the rate at which instances are generated, and the duration of a run, across any
+ * number of PacingSinks and threads. Permits are handed out at evenly spaced times, so the 
+ * rate is smooth rather than bursty, apart from catching up after oversleeping.
+ * 
+ * @author Philip Johnson
+ */
+public class Pacer {
+  
+  /** The nanoseconds between permits, or zero for no rate limit. */
+  private final long interval;
+  /** The longest a pacer falls behind before it stops catching up, in nanoseconds. */
+  private static final long maxCredit = 100000000L;
+  /** The time at which the run ends, as System.nanoTime, or zero for no deadline. */
+  private final long deadline;
+  /** The time of the next permit, as System.nanoTime. */
+  private long next;
+  
+  /**
+   * Creates a pacer, whose duration starts now.
+   * @param ratePerSecond The maximum number of instances per second, or 0 for no limit.
+   * @param durationMillis The duration of the run in milliseconds, or 0 for no limit.
+   */
+  public Pacer(double ratePerSecond, long durationMillis) {
+    long now = System.nanoTime();
+    this.interval = (ratePerSecond > 0) ? (long) (1e9 / ratePerSecond) : 0;
+    this.deadline = (durationMillis > 0) ? now + durationMillis * 1000000L : 0;
+    this.next = now;
+  }
+  
+  /**
+   * Waits for the next permit.
+   * @return True if the permit was granted, false if the run's time is up.
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public boolean acquire() throws InterruptedException {
+    long now = System.nanoTime();
+    if ((this.deadline != 0) && (now - this.deadline >= 0)) {
+      return false;
+    }
+    if (this.interval == 0) {
+      return true;
+    }
+    long wait;
+    synchronized (this) {
+      // Permits missed through oversleeping are granted at once, up to maxCredit, so that 
+      // the average rate holds even when each interval is shorter than the sleep resolution.
+      this.next = Math.max(this.next, now - maxCredit);
+      wait = this.next - now;
+      this.next += this.interval;
+    }
+    if (wait > 0) {
+      Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+    }
+    return true;
+  }
+  
+  /**
+   * Returns true if this pacer limits neither rate nor duration.
+   * @return True if inactive.
+   */
+  public boolean isInactive() {
+    return (this.interval == 0) && (this.deadline == 0);
+  }
+}
@@ -0,0 +1,56 @@
+package org.hackystat.simdata.sink;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * A sink that holds each instance until its Pacer grants a permit, and that throws a 
+ * DeadlineException once the pacer's run is over.
+ * 
+ * @author Philip Johnson
+ */
+public class PacingSink implements SensorDataSink {
+  
+  /** The sink that receives the data. */
+  private final SensorDataSink delegate;
+  /** The pacer, which may be shared with other sinks. */
+  private final Pacer pacer;
+  
+  /**
+   * Creates a pacing sink.
+   * @param delegate The sink that receives the data.
+   * @param pacer The pacer.
+   */
+  public PacingSink(SensorDataSink delegate, Pacer pacer) {
+    this.delegate = delegate;
+    this.pacer = pacer;
+  }
+  
+  /**
+   * Waits for a permit, then adds the data to the delegate.
+   * @param data The sensor data.
+   * @throws Exception If the run is over, or the delegate fails.
+   */
+  public void add(SensorData data) throws Exception {
+    if (!this.pacer.acquire()) {
+      throw new DeadlineException("The run's duration has elapsed.");
+    }
+    this.delegate.add(data);
+  }
+  
+  /**
+   * Flushes the delegate.
+   * @throws Exception If the delegate fails.
+   */
+  public void flush() throws Exception {
+    this.delegate.flush();
+  }
+  
+  /**
+   * Closes the delegate, even after the deadline.
+   * @throws Exception If the delegate fails.
+   */
+  public void close() throws Exception {
+    this.delegate.close();
+  }
+}
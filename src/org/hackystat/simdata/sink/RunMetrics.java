@@ -0,0 +1,212 @@
+package org.hackystat.simdata.sink;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hackystat.simdata.MemoryBudget;
+
+/**
+ * Counts the instances generated by a run, in total, by sensor data type and by owner, and
+ * reports them with the run's throughput, peak heap use, the time taken by each of its phases,
+ * and percentiles of the time taken by each send to the host. Thread safe, so one instance can
+ * be shared by every MetricsSink of a run. Creating an instance resets the JVM's peak heap
+ * use, so the reported peak is the run's own.
+ * <p>
+ * Sends happen deep inside the sinks, in a transport's put or a batch sender's thread, so the
+ * senders report them with the static recordSend, which records them in the metrics of the run
+ * in progress, set with setCurrent. Adding an instance to a sink usually only buffers it, so
+ * the time taken by add says little about the host. The default shell sender reports nothing,
+ * since SensorShell autosends on its own threads.
+ * 
+ * @author Philip Johnson
+ */
+public class RunMetrics {
+  
+  /** The start of the run, as System.nanoTime. */
+  private final long start = System.nanoTime();
+  /** The number of instances. */
+  private final AtomicLong total = new AtomicLong();
+  /** The number of instances of each sensor data type. */
+  private final ConcurrentMap<String, AtomicLong> byType = 
+    new ConcurrentHashMap<String, AtomicLong>();
+  /** The number of instances of each owner. */
+  private final ConcurrentMap<String, AtomicLong> byOwner = 
+    new ConcurrentHashMap<String, AtomicLong>();
+  /** The nanoseconds taken by each phase, in the order the phases were first recorded. */
+  private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+  /** The nanoseconds taken by each send to the host. */
+  private final LatencyHistogram sendLatency = new LatencyHistogram();
+  
+  /** The metrics of the run in progress, which record the sends, or null. */
+  private static volatile RunMetrics current = null;
+  
+  /**
+   * Starts measuring a run.
+   */
+  public RunMetrics() {
+    MemoryBudget.resetPeakHeap();
+  }
+  
+  /**
+   * Counts one instance.
+   * @param sdt Its sensor data type.
+   */
+  public void record(String sdt) {
+    this.total.incrementAndGet();
+    increment(this.byType, sdt);
+  }
+  
+  /**
+   * Counts one instance, and its owner.
+   * @param sdt Its sensor data type.
+   * @param owner Its owner.
+   */
+  public void record(String sdt, String owner) {
+    record(sdt);
+    increment(this.byOwner, owner);
+  }
+  
+  /**
+   * Makes these the metrics of the run in progress, which record the sends reported with
+   * recordSend.
+   * @param metrics The metrics, or null when no run is in progress.
+   */
+  public static void setCurrent(RunMetrics metrics) {
+    current = metrics;
+  }
+  
+  /**
+   * Records the time taken by one send to the host, such as a batch, in the metrics of the run
+   * in progress, if any.
+   * @param startNanos The System.nanoTime at which the send started.
+   */
+  public static void recordSend(long startNanos) {
+    RunMetrics metrics = current;
+    if (metrics != null) {
+      metrics.sendLatency.record(System.nanoTime() - startNanos);
+    }
+  }
+  
+  /**
+   * Increments the count of the key, creating it if necessary.
+   * @param counts The counts.
+   * @param key The key.
+   */
+  private static void increment(ConcurrentMap<String, AtomicLong> counts, String key) {
+    AtomicLong count = counts.get(key);
+    if (count == null) {
+      AtomicLong newCount = new AtomicLong();
+      count = counts.putIfAbsent(key, newCount);
+      if (count == null) {
+        count = newCount;
+      }
+    }
+    count.incrementAndGet();
+  }
+  
+  /**
+   * Adds time taken by a phase of the run, such as one scenario.
+   * @param phase The phase name.
+   * @param nanos The nanoseconds it took.
+   */
+  public void recordPhase(String phase, long nanos) {
+    synchronized (this.phases) {
+      Long previous = this.phases.get(phase);
+      this.phases.put(phase, (previous == null) ? nanos : previous + nanos);
+    }
+  }
+  
+  /**
+   * Returns the times taken by each send to the host.
+   * @return The histogram.
+   */
+  public LatencyHistogram getSendLatency() {
+    return this.sendLatency;
+  }
+  
+  /**
+   * Returns the number of instances counted.
+   * @return The count.
+   */
+  public long getTotal() {
+    return this.total.get();
+  }
+  
+  /**
+   * Returns the seconds elapsed since this run started.
+   * @return The seconds.
+   */
+  public double getElapsedSeconds() {
+    return (System.nanoTime() - this.start) / 1e9;
+  }
+  
+  /**
+   * Returns the metrics as properties: "events", "seconds", "eventsPerSecond", 
+   * "peakHeapMegabytes", "events.&lt;type&gt;" for each sensor data type, 
+   * "users.&lt;owner&gt;" for each owner, "phase.&lt;phase&gt;.seconds" for each phase, and
+   * and, if anything was sent, "sends" and "sendLatencyMicros.p50", ".p90", ".p99", ".p999"
+   * and ".max".
+   * @return The properties.
+   */
+  public Properties toProperties() {
+    Properties properties = new Properties();
+    double seconds = getElapsedSeconds();
+    long events = getTotal();
+    properties.setProperty("events", String.valueOf(events));
+    properties.setProperty("seconds", String.format("%.3f", seconds));
+    properties.setProperty("eventsPerSecond", 
+        String.format("%.1f", (seconds > 0) ? events / seconds : 0.0));
+    properties.setProperty("peakHeapMegabytes", 
+        String.format("%.1f", MemoryBudget.getPeakHeapBytes() / (1024.0 * 1024.0)));
+    for (Map.Entry<String, AtomicLong> entry : 
+      new TreeMap<String, AtomicLong>(this.byType).entrySet()) {
+      properties.setProperty("events." + entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    for (Map.Entry<String, AtomicLong> entry : 
+      new TreeMap<String, AtomicLong>(this.byOwner).entrySet()) {
+      properties.setProperty("users." + entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    synchronized (this.phases) {
+      for (Map.Entry<String, Long> entry : this.phases.entrySet()) {
+        properties.setProperty("phase." + entry.getKey() + ".seconds", 
+            String.format("%.3f", entry.getValue() / 1e9));
+      }
+    }
+    if (this.sendLatency.getCount() > 0) {
+      properties.setProperty("sends", String.valueOf(this.sendLatency.getCount()));
+      String[] names = { "p50", "p90", "p99", "p999" };
+      double[] percents = { 50, 90, 99, 99.9 };
+      for (int i = 0; i < names.length; i++) {
+        properties.setProperty("sendLatencyMicros." + names[i], 
+            String.format("%.1f", this.sendLatency.getPercentile(percents[i]) / 1e3));
+      }
+      properties.setProperty("sendLatencyMicros.max", 
+          String.format("%.1f", this.sendLatency.getMax() / 1e3));
+    }
+    return properties;
+  }
+  
+  /**
+   * Writes the metrics to a properties file.
+   * @param file The file.
+   * @throws IOException If it cannot be written.
+   */
+  public void write(File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      toProperties().store(out, "SimData run metrics");
+    }
+    finally {
+      out.close();
+    }
+  }
+}
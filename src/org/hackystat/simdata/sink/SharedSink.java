@@ -0,0 +1,50 @@
+package org.hackystat.simdata.sink;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * Lets several SimData instances send into one sink, such as a single FileSink, without the
+ * first of them to finish closing it. Closing a SharedSink only flushes the shared sink; its
+ * owner closes it once every instance is done.
+ * 
+ * @author Philip Johnson
+ */
+public class SharedSink implements SensorDataSink {
+  
+  /** The shared sink. */
+  private final SensorDataSink shared;
+  
+  /**
+   * Creates a view of the shared sink.
+   * @param shared The shared sink.
+   */
+  public SharedSink(SensorDataSink shared) {
+    this.shared = shared;
+  }
+  
+  /**
+   * Adds the data to the shared sink.
+   * @param data The sensor data.
+   * @throws Exception If the shared sink fails.
+   */
+  public void add(SensorData data) throws Exception {
+    this.shared.add(data);
+  }
+  
+  /**
+   * Flushes the shared sink.
+   * @throws Exception If the shared sink fails.
+   */
+  public void flush() throws Exception {
+    this.shared.flush();
+  }
+  
+  /**
+   * Flushes the shared sink, leaving it open.
+   * @throws Exception If the shared sink fails.
+   */
+  public void close() throws Exception {
+    this.shared.flush();
+  }
+}
@@ -0,0 +1,36 @@
+package org.hackystat.simdata.sink;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.SensorDataXml;
+import org.junit.Test;
+
+/**
+ * Tests the counting and marshalling of the NullSink.
+ * @author Philip Johnson
+ */
+public class TestNullSink {
+  
+  /**
+   * Checks that every instance is counted, and fully marshalled when requested.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testMarshalling() throws Exception {
+    NullSink sink = new NullSink(true, null);
+    long bytes = 0;
+    for (int i = 0; i < 100; i++) {
+      SensorData data = SensorDataTestHelper.makeBuild(SensorDataTestHelper.JOE,
+          "/users/joe/Build" + i + ".xml", i);
+      bytes += SensorDataXml.toXml(data).getBytes("UTF-8").length;
+      sink.add(data);
+    }
+    sink.close();
+    assertEquals("Checking count", 100, sink.getCount());
+    assertEquals("Checking bytes", bytes, sink.getBytes());
+    assertTrue("Checking report", sink.getReport().startsWith("NullSink: 100 instances"));
+  }
+}
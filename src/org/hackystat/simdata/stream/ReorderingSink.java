@@ -0,0 +1,103 @@
+package org.hackystat.simdata.stream;
+
+import java.util.PriorityQueue;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * A sink that passes data on in timestamp order within a bounded lookahead. Scenarios generate
+ * each user's day, or even each project's whole history, before the next, so the host would
+ * otherwise see long runs of one user's data. This sink holds up to lookahead instances in a
+ * heap and always passes on the earliest, so the users generated within the lookahead reach
+ * the host interleaved as production traffic would. Data out of order by more than the
+ * lookahead is passed on as soon as it is the earliest held, and counted as late.
+ * 
+ * @author Philip Johnson
+ */
+public class ReorderingSink implements SensorDataSink {
+  
+  /** The sink that receives the data in order. */
+  private final SensorDataSink delegate;
+  /** The maximum number of instances held. */
+  private final int lookahead;
+  /** The instances held, earliest first. */
+  private final PriorityQueue<TimedData> heap;
+  /** The number of instances added. */
+  private long sequence = 0;
+  /** The latest timestamp passed on, in milliseconds. */
+  private long latest = Long.MIN_VALUE;
+  /** The number of instances passed on after a later one. */
+  private long late = 0;
+  
+  /**
+   * Creates a reordering sink.
+   * @param delegate The sink that receives the data in order.
+   * @param lookahead The maximum number of instances held, at least 1.
+   */
+  public ReorderingSink(SensorDataSink delegate, int lookahead) {
+    if (lookahead < 1) {
+      throw new IllegalArgumentException("Lookahead must be at least 1: " + lookahead);
+    }
+    this.delegate = delegate;
+    this.lookahead = lookahead;
+    this.heap = new PriorityQueue<TimedData>(Math.min(lookahead, 65536) + 1);
+  }
+  
+  /**
+   * Holds the data, passing on the earliest instance held if the lookahead is full.
+   * @param data The sensor data.
+   * @throws Exception If the delegate fails.
+   */
+  public synchronized void add(SensorData data) throws Exception {
+    this.heap.add(new TimedData(data, this.sequence++, 0));
+    if (this.heap.size() > this.lookahead) {
+      emit(this.heap.remove());
+    }
+  }
+  
+  /**
+   * Passes on every instance held, in order, then flushes the delegate. 
+   * @throws Exception If the delegate fails.
+   */
+  public synchronized void flush() throws Exception {
+    while (!this.heap.isEmpty()) {
+      emit(this.heap.remove());
+    }
+    this.delegate.flush();
+  }
+  
+  /**
+   * Passes on every instance held, in order, then closes the delegate.
+   * @throws Exception If the delegate fails.
+   */
+  public synchronized void close() throws Exception {
+    while (!this.heap.isEmpty()) {
+      emit(this.heap.remove());
+    }
+    this.delegate.close();
+  }
+  
+  /**
+   * Returns the number of instances passed on after an instance with a later timestamp.
+   * @return The number of late instances.
+   */
+  public synchronized long getLateCount() {
+    return this.late;
+  }
+  
+  /**
+   * Passes the instance on to the delegate.
+   * @param timed The instance.
+   * @throws Exception If the delegate fails.
+   */
+  private void emit(TimedData timed) throws Exception {
+    if (timed.time < this.latest) {
+      this.late++;
+    }
+    else {
+      this.latest = timed.time;
+    }
+    this.delegate.add(timed.data);
+  }
+}
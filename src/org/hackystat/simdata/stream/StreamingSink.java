@@ -0,0 +1,156 @@
+package org.hackystat.simdata.stream;
+
+import java.util.logging.Logger;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataSink;
+
+/**
+ * A sink that holds each sensor data instance until its simulated timestamp arrives on the wall
+ * clock, then passes it to another sink. Simulated time is mapped onto wall-clock time with a
+ * speed-up factor, anchored at the first timestamp seen (or at an explicit simulated start).
+ * This is an open-loop generator: data is emitted on schedule whether or not the host keeps up.
+ * The generator, on the other hand, is held back: adding data due more than one revolution of
+ * the wheel past its current tick blocks until the wheel catches up, so only about that much
+ * future data is ever held in memory.
+ * 
+ * @author Philip Johnson
+ */
+public class StreamingSink implements SensorDataSink, TimerWheel.Handler<SensorData> {
+  
+  /** The duration of one tick of the wheel, in milliseconds. */
+  private static final long tickMillis = 10;
+  
+  /** The number of buckets of the wheel. */
+  private static final int numBuckets = 1024;
+  
+  /** The sink that receives the data when it falls due. */
+  private final SensorDataSink delegate;
+  
+  /** How many simulated milliseconds pass per wall-clock millisecond. */
+  private final double speedup;
+  
+  /** The wheel holding data that has not yet fallen due. */
+  private final TimerWheel<SensorData> wheel;
+  
+  /** The logger. */
+  private final Logger logger;
+  
+  /** The simulated time mapped onto wallAnchor, or -1 if not yet anchored. */
+  private long simAnchor = -1;
+  
+  /** The wall-clock time at which simAnchor is emitted. */
+  private long wallAnchor;
+  
+  /** The first failure reported by the delegate, rethrown on flush or close. */
+  private volatile Exception failure = null;
+  
+  /** The number of instances emitted. */
+  private long emitted = 0;
+
+  /**
+   * Creates a streaming sink with a 10 millisecond tick, whose lookahead is one revolution of
+   * its wheel, 10.24 seconds. 
+   * @param delegate The sink that receives the data when it falls due.
+   * @param speedup How many simulated milliseconds pass per wall-clock millisecond. 
+   * 1 is real time, 3600 plays back an hour per second. 
+   * @param logger The logger for progress and errors.
+   */
+  public StreamingSink(SensorDataSink delegate, double speedup, Logger logger) {
+    if (speedup <= 0) {
+      throw new IllegalArgumentException("Speedup must be positive: " + speedup);
+    }
+    this.delegate = delegate;
+    this.speedup = speedup;
+    this.logger = logger;
+    this.wheel = 
+      new TimerWheel<SensorData>(tickMillis, numBuckets, tickMillis * numBuckets, this);
+  }
+  
+  /**
+   * Anchors the simulated start time explicitly, so that it is emitted right away and
+   * everything else is emitted relative to it.
+   * @param simStart The simulated start time.
+   */
+  public synchronized void setSimulatedStart(XMLGregorianCalendar simStart) {
+    this.simAnchor = simStart.toGregorianCalendar().getTimeInMillis();
+    this.wallAnchor = System.currentTimeMillis();
+  }
+
+  /**
+   * Schedules the data for emission when its timestamp arrives, blocking while it is due more
+   * than the lookahead past the wheel's current tick.
+   * @param data The sensor data.
+   * @throws Exception If a previous emission failed, or interrupted while blocked.
+   */
+  public void add(SensorData data) throws Exception {
+    checkFailure();
+    long simTime = data.getTimestamp().toGregorianCalendar().getTimeInMillis();
+    long deadline;
+    synchronized (this) {
+      if (this.simAnchor < 0) {
+        this.simAnchor = simTime;
+        this.wallAnchor = System.currentTimeMillis();
+      }
+      deadline = this.wallAnchor + (long) ((simTime - this.simAnchor) / this.speedup);
+    }
+    this.wheel.schedule(deadline, data);
+  }
+  
+  /**
+   * Passes a due instance to the delegate. Called on the wheel's thread.
+   * @param data The sensor data.
+   */
+  public void fire(SensorData data) {
+    try {
+      this.delegate.add(data);
+      if ((++this.emitted % 10000) == 0) {
+        this.logger.info("Streaming: emitted " + this.emitted + " instances, " 
+            + this.wheel.getPending() + " pending.");
+      }
+    }
+    catch (Exception e) {
+      if (this.failure == null) {
+        this.failure = e;
+      }
+      this.logger.warning("Streaming: failed to emit data: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Waits until all data scheduled so far has been emitted, then flushes the delegate.
+   * @throws Exception If an emission failed.
+   */
+  public void flush() throws Exception {
+    this.wheel.awaitDrained();
+    checkFailure();
+    this.delegate.flush();
+  }
+
+  /**
+   * Waits until all data has been emitted, stops the wheel, and closes the delegate.
+   * @throws Exception If an emission failed.
+   */
+  public void close() throws Exception {
+    try {
+      this.wheel.awaitDrained();
+    }
+    finally {
+      this.wheel.stop();
+    }
+    this.delegate.close();
+    checkFailure();
+  }
+  
+  /**
+   * Rethrows the first failure reported by the delegate, if any.
+   * @throws Exception The failure.
+   */
+  private void checkFailure() throws Exception {
+    if (this.failure != null) {
+      throw this.failure;
+    }
+  }
+}
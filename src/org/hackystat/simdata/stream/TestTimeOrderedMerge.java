@@ -0,0 +1,86 @@
+package org.hackystat.simdata.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.junit.Test;
+
+/**
+ * Tests the timestamp ordering of merged streams and of the reordering sink.
+ * @author Philip Johnson
+ */
+public class TestTimeOrderedMerge {
+  
+  /**
+   * Returns instances owned by the user at the given offsets from the start, in seconds.
+   * @param owner The owner.
+   * @param seconds The offsets.
+   * @return The instances.
+   */
+  private static List<SensorData> makeStream(String owner, int... seconds) {
+    List<SensorData> stream = new ArrayList<SensorData>();
+    for (int second : seconds) {
+      stream.add(SensorDataTestHelper.makeBuild(owner, SensorDataTestHelper.RESOURCE,
+          second * 1000L));
+    }
+    return stream;
+  }
+  
+  /**
+   * Returns the offset of the instance from the start, in seconds.
+   * @param data The instance.
+   * @return The offset.
+   */
+  private static int secondsOf(SensorData data) {
+    return (int) (SensorDataTestHelper.getOffset(data) / 1000);
+  }
+  
+  /**
+   * Checks that two streams, one slightly out of order, are merged in timestamp order and 
+   * that each instance is attributed to its stream.
+   */
+  @Test
+  public void testMerge() {
+    List<Iterator<SensorData>> sources = new ArrayList<Iterator<SensorData>>();
+    sources.add(makeStream("joe", 1, 4, 3, 7, 9).iterator());
+    sources.add(makeStream("bob", 2, 5, 6, 8).iterator());
+    TimeOrderedMerge merge = new TimeOrderedMerge(sources, 2);
+    List<Integer> seconds = new ArrayList<Integer>();
+    while (merge.hasNext()) {
+      SensorData data = merge.next();
+      seconds.add(secondsOf(data));
+      assertEquals("Checking source", "joe".equals(data.getOwner()) ? 0 : 1, 
+          merge.getLastSource());
+    }
+    assertEquals("Checking order", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9), seconds);
+    assertFalse("Checking exhausted", merge.hasNext());
+  }
+  
+  /**
+   * Checks that the sink orders data within its lookahead and counts the data beyond it.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testReorderingSink() throws Exception {
+    ListSink target = new ListSink();
+    ReorderingSink sink = new ReorderingSink(target, 3);
+    for (SensorData data : makeStream("joe", 3, 1, 2, 6, 5, 4, 7, 8, 0)) {
+      sink.add(data);
+    }
+    sink.close();
+    List<Integer> seconds = new ArrayList<Integer>();
+    for (SensorData data : target.getList()) {
+      seconds.add(secondsOf(data));
+    }
+    assertEquals("Checking order", Arrays.asList(1, 2, 3, 4, 5, 0, 6, 7, 8), seconds);
+    assertEquals("Checking late", 1, sink.getLateCount());
+  }
+}
@@ -0,0 +1,128 @@
+package org.hackystat.simdata.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+import org.hackystat.simdata.SensorDataTestHelper;
+import org.hackystat.simdata.SensorDataTestHelper.ListSink;
+import org.hackystat.utilities.tstamp.Tstamp;
+import org.junit.Test;
+
+/**
+ * Tests the firing order and deadlines of the timer wheel, its bounded lookahead, and the
+ * streaming sink built on it.
+ * @author Philip Johnson
+ */
+public class TestTimerWheel {
+
+  /**
+   * Records the items fired by a wheel, and when they fired.
+   */
+  private static final class Recorder implements TimerWheel.Handler<String> {
+    /** The items, in the order fired. */
+    private final List<String> items = Collections.synchronizedList(new ArrayList<String>());
+    /** The wall-clock time at which each item fired. */
+    private final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+
+    /**
+     * Records the item.
+     * @param item The item.
+     */
+    public void fire(String item) {
+      this.times.add(System.currentTimeMillis());
+      this.items.add(item);
+    }
+  }
+
+  /**
+   * Checks that items fire in deadline order, those due in the same tick in the order they
+   * were scheduled, overdue items first, and none before its deadline, including items more
+   * than one revolution away.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testFiringOrder() throws Exception {
+    Recorder recorder = new Recorder();
+    TimerWheel<String> wheel = new TimerWheel<String>(5, 8, recorder);
+    try {
+      long now = System.currentTimeMillis();
+      long[] deadlines = { now + 300, now + 200, now + 150, now + 150, now + 150, now - 1000 };
+      String[] names = { "last", "third", "a", "b", "c", "overdue" };
+      for (int i = 0; i < names.length; i++) {
+        wheel.schedule(deadlines[i], names[i]);
+      }
+      wheel.awaitDrained();
+      assertEquals("Checking order", Arrays.asList("overdue", "a", "b", "c", "third", "last"),
+          recorder.items);
+      for (int i = 0; i < names.length; i++) {
+        long fired = recorder.times.get(recorder.items.indexOf(names[i]));
+        assertTrue("Checking deadline of " + names[i], fired >= deadlines[i]);
+      }
+      assertEquals("Checking pending", 0, wheel.getPending());
+    }
+    finally {
+      wheel.stop();
+    }
+  }
+
+  /**
+   * Checks that scheduling an item further ahead than the lookahead blocks until the wheel
+   * catches up, and that a wheel without a lookahead does not block.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testLookahead() throws Exception {
+    Recorder recorder = new Recorder();
+    TimerWheel<String> bounded = new TimerWheel<String>(5, 8, 50, recorder);
+    try {
+      long now = System.currentTimeMillis();
+      bounded.schedule(now + 20, "near");
+      bounded.schedule(now + 300, "far");
+      long blocked = System.currentTimeMillis() - now;
+      assertTrue("Checking blocked: " + blocked, blocked >= 200);
+      bounded.awaitDrained();
+      assertEquals("Checking order", Arrays.asList("near", "far"), recorder.items);
+    }
+    finally {
+      bounded.stop();
+    }
+    TimerWheel<String> unbounded = new TimerWheel<String>(5, 8, recorder);
+    try {
+      unbounded.schedule(System.currentTimeMillis() + 60 * 1000, "later");
+      assertEquals("Checking scheduled", 1, unbounded.getPending());
+    }
+    finally {
+      unbounded.stop();
+    }
+  }
+
+  /**
+   * Checks that a streaming sink emits data in simulated time order, relative to its
+   * simulated start, whatever the order it was added in.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testStreamingOrder() throws Exception {
+    ListSink delegate = new ListSink();
+    StreamingSink sink =
+      new StreamingSink(delegate, 100, Logger.getLogger("org.hackystat.simdata"));
+    sink.setSimulatedStart(Tstamp.makeTimestamp(SensorDataTestHelper.START));
+    for (int second : new int[] { 30, 10, 20 }) {
+      sink.add(SensorDataTestHelper.makeBuild(SensorDataTestHelper.JOE,
+          SensorDataTestHelper.RESOURCE, second * 1000L));
+    }
+    sink.close();
+    List<Integer> emitted = new ArrayList<Integer>();
+    for (SensorData data : delegate.getList()) {
+      emitted.add((int) (SensorDataTestHelper.getOffset(data) / 1000));
+    }
+    assertEquals("Checking order", Arrays.asList(10, 20, 30), emitted);
+  }
+}
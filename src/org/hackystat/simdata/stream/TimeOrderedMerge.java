@@ -0,0 +1,118 @@
+package org.hackystat.simdata.stream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * Merges several streams of sensor data, such as the ScenarioIterators of many scenario copies,
+ * into one stream in timestamp order, so that the data of every user of every stream reaches 
+ * the host interleaved. This is a k-way heap merge: a heap holds the earliest pending instance
+ * of each stream. Streams need not be sorted; each is read through its own heap of up to 
+ * lookahead instances, so disorder within a stream is corrected as far as the lookahead 
+ * reaches. At most (lookahead + 1) instances per stream are held at once.
+ * 
+ * @author Philip Johnson
+ */
+public class TimeOrderedMerge implements Iterator<SensorData> {
+  
+  /** The streams. */
+  private final List<Iterator<SensorData>> sources;
+  /** The instances read ahead from each stream, earliest first. */
+  private final List<PriorityQueue<TimedData>> buffers;
+  /** The earliest instance read ahead from each stream that has one. */
+  private final PriorityQueue<TimedData> heads;
+  /** The number of instances read ahead from each stream. */
+  private final int lookahead;
+  /** The number of instances read. */
+  private long sequence = 0;
+  /** The stream of the instance returned last, or -1. */
+  private int lastSource = -1;
+  /** True once every stream has been read ahead. */
+  private boolean started = false;
+  
+  /**
+   * Creates a merge of the streams. Nothing is read until hasNext or next is first called.
+   * @param sources The streams.
+   * @param lookahead The number of instances read ahead from each stream, at least 1.
+   */
+  public TimeOrderedMerge(List<? extends Iterator<SensorData>> sources, int lookahead) {
+    if (lookahead < 1) {
+      throw new IllegalArgumentException("Lookahead must be at least 1: " + lookahead);
+    }
+    this.sources = new ArrayList<Iterator<SensorData>>(sources);
+    this.lookahead = lookahead;
+    this.buffers = new ArrayList<PriorityQueue<TimedData>>(sources.size());
+    for (int i = 0; i < sources.size(); i++) {
+      this.buffers.add(new PriorityQueue<TimedData>(Math.min(lookahead, 1024) + 1));
+    }
+    this.heads = new PriorityQueue<TimedData>(Math.max(1, sources.size()));
+  }
+  
+  /**
+   * Returns true if any stream has more data.
+   * @return True if next will return data.
+   */
+  public boolean hasNext() {
+    if (!this.started) {
+      for (int i = 0; i < this.sources.size(); i++) {
+        refill(i);
+      }
+      this.started = true;
+    }
+    return !this.heads.isEmpty();
+  }
+  
+  /**
+   * Returns the earliest pending instance of all the streams.
+   * @return The instance.
+   * @throws NoSuchElementException If there is no more data.
+   */
+  public SensorData next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    TimedData head = this.heads.remove();
+    this.buffers.get(head.source).remove();
+    refill(head.source);
+    this.lastSource = head.source;
+    return head.data;
+  }
+  
+  /**
+   * Not supported.
+   * @throws UnsupportedOperationException Always.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+  
+  /**
+   * Returns the index of the stream of the instance returned last, so that callers can send
+   * each instance on the way its stream would have been.
+   * @return The stream index, or -1 if next has not been called.
+   */
+  public int getLastSource() {
+    return this.lastSource;
+  }
+  
+  /**
+   * Reads the stream ahead until its buffer holds lookahead instances, then offers its 
+   * earliest to the heap of heads.
+   * @param source The stream index.
+   */
+  private void refill(int source) {
+    Iterator<SensorData> stream = this.sources.get(source);
+    PriorityQueue<TimedData> buffer = this.buffers.get(source);
+    while ((buffer.size() < this.lookahead) && stream.hasNext()) {
+      buffer.add(new TimedData(stream.next(), this.sequence++, source));
+    }
+    if (!buffer.isEmpty()) {
+      this.heads.add(buffer.peek());
+    }
+  }
+}
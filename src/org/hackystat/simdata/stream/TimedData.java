@@ -0,0 +1,71 @@
+package org.hackystat.simdata.stream;
+
+import org.hackystat.sensorbase.resource.sensordata.jaxb.SensorData;
+
+/**
+ * A sensor data instance with its timestamp in milliseconds, computed once, so that heaps can
+ * order instances by time without converting calendars on every comparison. Instances with 
+ * equal timestamps are ordered by their sequence numbers, so heaps keep them in arrival order.
+ * 
+ * @author Philip Johnson
+ */
+final class TimedData implements Comparable<TimedData> {
+  
+  /** The timestamp, in milliseconds. */
+  final long time;
+  /** The order in which the instance arrived. */
+  final long sequence;
+  /** The index of the stream the instance came from. */
+  final int source;
+  /** The instance. */
+  final SensorData data;
+  
+  /**
+   * Wraps the instance.
+   * @param data The instance.
+   * @param sequence The order in which the instance arrived.
+   * @param source The index of the stream it came from.
+   */
+  TimedData(SensorData data, long sequence, int source) {
+    this.time = data.getTimestamp().toGregorianCalendar().getTimeInMillis();
+    this.sequence = sequence;
+    this.source = source;
+    this.data = data;
+  }
+  
+  /**
+   * Orders by timestamp, then by sequence.
+   * @param other The other instance.
+   * @return A negative number, zero, or a positive number if this comes first, is the same, 
+   * or comes later.
+   */
+  public int compareTo(TimedData other) {
+    if (this.time != other.time) {
+      return (this.time < other.time) ? -1 : 1;
+    }
+    if (this.sequence != other.sequence) {
+      return (this.sequence < other.sequence) ? -1 : 1;
+    }
+    return 0;
+  }
+  
+  /**
+   * Returns true if the other object has the same time and sequence, consistent with 
+   * compareTo.
+   * @param object The other object.
+   * @return True if they are equal.
+   */
+  @Override
+  public boolean equals(Object object) {
+    return (object instanceof TimedData) && (compareTo((TimedData) object) == 0);
+  }
+  
+  /**
+   * Returns a hash code consistent with equals.
+   * @return The hash code.
+   */
+  @Override
+  public int hashCode() {
+    return (int) (this.time ^ (this.time >>> 32)) * 31 + (int) this.sequence;
+  }
+}
@@ -0,0 +1,266 @@
+package org.hackystat.simdata.stream;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timer wheel that fires items at (roughly) their wall-clock deadlines.
+ * Scheduling is a constant time, lock-free enqueue, so a single wheel and a single thread can
+ * hold the pending data of tens of thousands of simulated developers.
+ * <p>
+ * The wheel is an array of buckets, each covering one tick. An item whose deadline is more than
+ * one revolution away waits in its bucket for the corresponding number of rounds. Items whose
+ * deadline has already passed fire on the next tick. Items fire in deadline order, and items
+ * due in the same tick fire in the order they were scheduled, no earlier than their deadline.
+ * <p>
+ * A wheel may bound its lookahead: scheduling an item whose deadline is further than that past
+ * the wheel's current tick blocks until the wheel catches up, so a producer faster than the
+ * clock is held back rather than filling the heap with future items.
+ * 
+ * @param <T> The type of the scheduled items.
+ * @author Philip Johnson
+ */
+public class TimerWheel<T> {
+  
+  /**
+   * Receives the items as they fall due. 
+   * @param <T> The type of the scheduled items.
+   */
+  public interface Handler<T> {
+    /**
+     * Called on the wheel's thread when an item is due.
+     * @param item The item.
+     */
+    void fire(T item);
+  }
+  
+  /**
+   * A scheduled item.
+   * @param <T> The type of the item.
+   */
+  private static final class Entry<T> {
+    /** The deadline, in wall-clock milliseconds. */
+    private final long deadline;
+    /** The item. */
+    private final T item;
+    /** The number of revolutions left before this entry is due. */
+    private long rounds;
+    /** The next entry in the same bucket. */
+    private Entry<T> next;
+    
+    /**
+     * Creates a new entry.
+     * @param deadline The deadline.
+     * @param item The item.
+     */
+    Entry(long deadline, T item) {
+      this.deadline = deadline;
+      this.item = item;
+    }
+  }
+  
+  /** The duration of one tick, in milliseconds. */
+  private final long tickMillis;
+  
+  /** The buckets, each holding a singly linked list of entries in the order scheduled. */
+  private final Entry<T>[] buckets;
+  
+  /** The last entry of each bucket, or null if the bucket is empty. */
+  private final Entry<T>[] tails;
+  
+  /** The furthest a deadline may be past the current tick before scheduling blocks, or 0. */
+  private final long lookaheadMillis;
+  
+  /** The mask used to map a tick to its bucket. */
+  private final int mask;
+  
+  /** Newly scheduled entries, moved into the buckets by the wheel's thread. */
+  private final ConcurrentLinkedQueue<Entry<T>> incoming = new ConcurrentLinkedQueue<Entry<T>>();
+  
+  /** The number of items scheduled but not yet fired. */
+  private final AtomicLong pending = new AtomicLong(0);
+  
+  /** The receiver of due items. */
+  private final Handler<T> handler;
+  
+  /** The wall-clock time of tick zero. */
+  private final long startTime;
+  
+  /** The thread that advances the wheel. */
+  private final Thread worker;
+  
+  /** The next tick to be processed. Only written by the wheel's thread. */
+  private volatile long tick = 0;
+  
+  /** Set when the wheel should stop. */
+  private volatile boolean stopped = false;
+  
+  /**
+   * Creates and starts a timer wheel with unbounded lookahead. 
+   * @param tickMillis The duration of one tick, in milliseconds.
+   * @param numBuckets The number of buckets, rounded up to a power of two.
+   * @param handler The receiver of due items.
+   */
+  public TimerWheel(long tickMillis, int numBuckets, Handler<T> handler) {
+    this(tickMillis, numBuckets, 0, handler);
+  }
+  
+  /**
+   * Creates and starts a timer wheel. 
+   * @param tickMillis The duration of one tick, in milliseconds.
+   * @param numBuckets The number of buckets, rounded up to a power of two.
+   * @param lookaheadMillis The furthest a deadline may be past the current tick before 
+   * schedule blocks, or 0 for no limit.
+   * @param handler The receiver of due items.
+   */
+  @SuppressWarnings("unchecked")
+  public TimerWheel(long tickMillis, int numBuckets, long lookaheadMillis, Handler<T> handler) {
+    int size = 1;
+    while (size < numBuckets) {
+      size <<= 1;
+    }
+    this.tickMillis = tickMillis;
+    this.buckets = (Entry<T>[]) new Entry<?>[size];
+    this.tails = (Entry<T>[]) new Entry<?>[size];
+    this.lookaheadMillis = lookaheadMillis;
+    this.mask = size - 1;
+    this.handler = handler;
+    this.startTime = System.currentTimeMillis();
+    this.worker = new Thread(new Runnable() {
+      public void run() {
+        advance();
+      }
+    }, "SimData-TimerWheel");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+  
+  /**
+   * Schedules an item to fire at the given wall-clock time, first blocking while the deadline
+   * is further past the current tick than the lookahead. May be called from any thread.
+   * @param deadline The deadline, in wall-clock milliseconds.
+   * @param item The item.
+   * @throws InterruptedException If interrupted while blocked.
+   */
+  public void schedule(long deadline, T item) throws InterruptedException {
+    if (this.lookaheadMillis > 0) {
+      long ahead = deadline - getCurrentTime() - this.lookaheadMillis;
+      while ((ahead > 0) && !this.stopped) {
+        Thread.sleep(Math.max(ahead, this.tickMillis));
+        ahead = deadline - getCurrentTime() - this.lookaheadMillis;
+      }
+    }
+    this.pending.incrementAndGet();
+    this.incoming.add(new Entry<T>(deadline, item));
+  }
+  
+  /**
+   * Returns the wall-clock time of the start of the current tick, which lags the clock when
+   * the handler is slow.
+   * @return The time, in wall-clock milliseconds.
+   */
+  public long getCurrentTime() {
+    return this.startTime + this.tick * this.tickMillis;
+  }
+  
+  /**
+   * Returns the number of items scheduled but not yet fired.
+   * @return The number of pending items.
+   */
+  public long getPending() {
+    return this.pending.get();
+  }
+  
+  /**
+   * Blocks until all items scheduled so far have fired. 
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public void awaitDrained() throws InterruptedException {
+    while (this.pending.get() > 0) {
+      Thread.sleep(this.tickMillis);
+    }
+  }
+  
+  /**
+   * Stops the wheel. Items that have not yet fired are discarded.
+   */
+  public void stop() {
+    this.stopped = true;
+    this.worker.interrupt();
+  }
+  
+  /**
+   * The body of the wheel's thread: sleeps until each tick, then fires the due entries.
+   */
+  private void advance() {
+    while (!this.stopped) {
+      long tickEnd = this.startTime + (this.tick + 1) * this.tickMillis;
+      long sleep = tickEnd - System.currentTimeMillis();
+      if (sleep > 0) {
+        try {
+          Thread.sleep(sleep);
+        }
+        catch (InterruptedException e) {
+          continue;
+        }
+      }
+      transferIncoming();
+      fireBucket((int) (this.tick & this.mask));
+      this.tick++;
+    }
+  }
+  
+  /**
+   * Moves newly scheduled entries to the ends of their buckets.
+   */
+  private void transferIncoming() {
+    Entry<T> entry;
+    while ((entry = this.incoming.poll()) != null) {
+      long due = Math.max((entry.deadline - this.startTime) / this.tickMillis, this.tick);
+      entry.rounds = (due - this.tick) / this.buckets.length;
+      int index = (int) (due & this.mask);
+      if (this.tails[index] == null) {
+        this.buckets[index] = entry;
+      }
+      else {
+        this.tails[index].next = entry;
+      }
+      this.tails[index] = entry;
+    }
+  }
+  
+  /**
+   * Fires the entries in the given bucket whose rounds have run out, and decrements the rest.
+   * @param index The bucket.
+   */
+  private void fireBucket(int index) {
+    Entry<T> previous = null;
+    Entry<T> entry = this.buckets[index];
+    while (entry != null) {
+      Entry<T> next = entry.next;
+      if (entry.rounds <= 0) {
+        if (previous == null) {
+          this.buckets[index] = next;
+        }
+        else {
+          previous.next = next;
+        }
+        if (next == null) {
+          this.tails[index] = previous;
+        }
+        entry.next = null;
+        try {
+          this.handler.fire(entry.item);
+        }
+        finally {
+          this.pending.decrementAndGet();
+        }
+      }
+      else {
+        entry.rounds--;
+        previous = entry;
+      }
+      entry = next;
+    }
+  }
+}
@@ -0,0 +1,703 @@
+package org.hackystat.simdata.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A lightweight stand-in for the SensorBase that implements just the resources SimData uses:
+ * ping and authentication, user registration, sensor data (single, batch, and deletion), and 
+ * projects (put, get, index, deletion, and invitation replies). Sensor data is not stored; it 
+ * is counted, per owner until the owner's data is deleted, and checksummed, so that the 
+ * generator's send pipeline can be benchmarked and regression-tested in isolation on any
+ * machine.
+ * <p>
+ * The checksum is the sum of the CRC32 of each SensorData element, so it depends only on the
+ * data received and not on how it was batched or in what order it arrived. 
+ * <p>
+ * Latency, server errors and throttling can be injected to exercise the sender's error handling.
+ * 
+ * @author Philip Johnson
+ */
+public class StubSensorBase implements HttpHandler {
+  
+  /** The context root, matching the real SensorBase. */
+  private static final String CONTEXT = "/sensorbase/";
+  /** The start of a SensorData element. */
+  private static final String START_TAG = "<SensorData>";
+  /** The end of a SensorData element. */
+  private static final String END_TAG = "</SensorData>";
+  /** The start of the Owner element of a SensorData element. */
+  private static final String OWNER_TAG = "<Owner>";
+  /** The response to a successful authentication. */
+  private static final String AUTHENTICATED = "SensorBase authenticated";
+  /** The character encoding of all payloads. */
+  private static final String UTF8 = "UTF-8";
+  
+  /** The underlying HTTP server. */
+  private final HttpServer server;
+  /** The executor handling requests. */
+  private final ExecutorService executor;
+  /** The host name, including the context root. */
+  private final String hostName;
+  
+  /** The registered users. */
+  private final ConcurrentMap<String, Boolean> users = new ConcurrentHashMap<String, Boolean>();
+  /** Maps "owner/name" to the most recently put representation of a project. */
+  private final ConcurrentMap<String, byte[]> projects = new ConcurrentHashMap<String, byte[]>();
+  
+  /** The number of requests received. */
+  private final AtomicLong requests = new AtomicLong();
+  /** The number of SensorData instances received. */
+  private final AtomicLong sensorData = new AtomicLong();
+  /** The number of request body bytes received, before decompression. */
+  private final AtomicLong bytes = new AtomicLong();
+  /** The sum of the CRC32 of each SensorData element received. */
+  private final AtomicLong checksum = new AtomicLong();
+  /** Maps each owner to the number of their instances received since their data was deleted. */
+  private final ConcurrentMap<String, AtomicLong> owned = 
+    new ConcurrentHashMap<String, AtomicLong>();
+  /** The number of sensor data deletion requests. */
+  private final AtomicLong deletions = new AtomicLong();
+  /** The number of projects put. */
+  private final AtomicLong projectPuts = new AtomicLong();
+  /** The number of invitation replies accepted. */
+  private final AtomicLong replies = new AtomicLong();
+  /** The number of injected server errors. */
+  private final AtomicLong errors = new AtomicLong();
+  /** The number of throttled requests. */
+  private final AtomicLong throttled = new AtomicLong();
+  /** The number of requests waiting out the injected latency. */
+  private final AtomicLong active = new AtomicLong();
+  /** The largest number of requests waiting out the injected latency at once. */
+  private final AtomicLong peakActive = new AtomicLong();
+  
+  /** The random number generator for injected faults. */
+  private final Random random = new Random(0);
+  /** The fixed latency added to each request, in milliseconds. */
+  private volatile int latency = 0;
+  /** The maximum random latency added on top of the fixed latency, in milliseconds. */
+  private volatile int latencyJitter = 0;
+  /** The fraction of requests that fail with a 500 error. */
+  private volatile double errorRate = 0;
+  /** True if gzip compressed request bodies are accepted. */
+  private volatile boolean gzipAccepted = true;
+  /** True if invitation replies fail with a 500 error. */
+  private volatile boolean repliesFailing = false;
+  /** The maximum number of requests accepted per second, or zero for no limit. */
+  private volatile int maxRequestsPerSecond = 0;
+  /** The start of the current throttling window. */
+  private long windowStart = 0;
+  /** The number of requests accepted in the current throttling window. */
+  private int windowCount = 0;
+  
+  /**
+   * Creates and starts a stand-in SensorBase on the given port.
+   * @param port The port, or 0 to choose a free port.
+   * @param numThreads The number of threads handling requests.
+   * @throws IOException If the port cannot be bound.
+   */
+  public StubSensorBase(int port, int numThreads) throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+    this.server.createContext(CONTEXT, this);
+    this.executor = Executors.newFixedThreadPool(numThreads);
+    this.server.setExecutor(this.executor);
+    this.server.start();
+    this.hostName = "http://localhost:" + this.server.getAddress().getPort() + CONTEXT;
+  }
+  
+  /**
+   * Returns the host name of this stand-in, which can be passed to SimData.
+   * @return The host name, including the context root. 
+   */
+  public String getHostName() {
+    return this.hostName;
+  }
+  
+  /**
+   * Stops this stand-in.
+   */
+  public void stop() {
+    this.server.stop(0);
+    this.executor.shutdownNow();
+  }
+  
+  /**
+   * Injects latency into every request.
+   * @param latency The fixed latency, in milliseconds.
+   * @param latencyJitter The maximum additional random latency, in milliseconds.
+   */
+  public void setLatency(int latency, int latencyJitter) {
+    this.latency = latency;
+    this.latencyJitter = latencyJitter;
+  }
+  
+  /**
+   * Makes a fraction of requests fail with a 500 error.
+   * @param errorRate The fraction, between 0 and 1.
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+  
+  /**
+   * Determines whether gzip compressed request bodies are accepted, or rejected with a 415
+   * error like a SensorBase that does not support compression.
+   * @param gzipAccepted True if compression is accepted.
+   */
+  public void setGzipAccepted(boolean gzipAccepted) {
+    this.gzipAccepted = gzipAccepted;
+  }
+  
+  /**
+   * Makes requests beyond the given rate fail with a 503 error.
+   * @param maxRequestsPerSecond The maximum rate, or zero for no limit.
+   */
+  public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+  }
+  
+  /**
+   * Makes every invitation reply fail with a 500 error, so that provisioning failures can be
+   * exercised.
+   * @param repliesFailing True if replies fail.
+   */
+  public void setRepliesFailing(boolean repliesFailing) {
+    this.repliesFailing = repliesFailing;
+  }
+  
+  /**
+   * Returns the number of requests received, including failed ones.
+   * @return The number of requests.
+   */
+  public long getRequestCount() {
+    return this.requests.get();
+  }
+  
+  /**
+   * Returns the number of SensorData instances successfully received.
+   * @return The number of instances.
+   */
+  public long getSensorDataCount() {
+    return this.sensorData.get();
+  }
+  
+  /**
+   * Returns the number of an owner's SensorData instances received since their sensor data was
+   * last deleted.
+   * @param owner The owner's email.
+   * @return The number of instances.
+   */
+  public long getSensorDataCount(String owner) {
+    AtomicLong count = this.owned.get(owner);
+    return (count == null) ? 0 : count.get();
+  }
+  
+  /**
+   * Returns the number of request body bytes received, as sent over the wire.
+   * @return The number of bytes.
+   */
+  public long getByteCount() {
+    return this.bytes.get();
+  }
+  
+  /**
+   * Returns the checksum of all SensorData instances successfully received.
+   * @return The checksum.
+   */
+  public long getChecksum() {
+    return this.checksum.get();
+  }
+  
+  /**
+   * Returns the number of sensor data deletion requests.
+   * @return The number of deletions.
+   */
+  public long getDeletionCount() {
+    return this.deletions.get();
+  }
+  
+  /**
+   * Returns the number of projects put, counting each update of a project.
+   * @return The number of puts.
+   */
+  public long getProjectPutCount() {
+    return this.projectPuts.get();
+  }
+  
+  /**
+   * Returns the number of invitation replies successfully received.
+   * @return The number of replies.
+   */
+  public long getReplyCount() {
+    return this.replies.get();
+  }
+  
+  /**
+   * Returns the most recently put representation of a project.
+   * @param owner The owner's email.
+   * @param name The project name.
+   * @return The representation, or null if there is no such project.
+   * @throws IOException If it is not UTF-8 encoded.
+   */
+  public String getProject(String owner, String name) throws IOException {
+    byte[] project = this.projects.get(owner + "/" + name);
+    return (project == null) ? null : new String(project, UTF8);
+  }
+  
+  /**
+   * Returns the number of injected server errors.
+   * @return The number of errors.
+   */
+  public long getErrorCount() {
+    return this.errors.get();
+  }
+  
+  /**
+   * Returns the number of throttled requests.
+   * @return The number of throttled requests.
+   */
+  public long getThrottledCount() {
+    return this.throttled.get();
+  }
+  
+  /**
+   * Returns the largest number of requests that were waiting out the injected latency at once,
+   * which shows whether a client overlaps its requests. A request stops counting before its
+   * response is written, so a client never sees it counted after its response.
+   * @return The peak number of concurrent requests.
+   */
+  public long getPeakConcurrentRequests() {
+    return this.peakActive.get();
+  }
+  
+  /**
+   * Returns a one line summary of the counters.
+   * @return The summary.
+   */
+  @Override
+  public String toString() {
+    return "StubSensorBase " + this.hostName + ": requests=" + getRequestCount() 
+      + " sensordata=" + getSensorDataCount() + " bytes=" + getByteCount() 
+      + " checksum=" + getChecksum() + " errors=" + getErrorCount() 
+      + " throttled=" + getThrottledCount();
+  }
+  
+  /**
+   * Computes the checksum contribution of the SensorData elements in the payload.
+   * @param payload The XML payload, containing one or more SensorData elements.
+   * @return The sum of the CRC32 values of the elements.
+   */
+  public static long checksum(String payload) {
+    long sum = 0;
+    int start = payload.indexOf(START_TAG);
+    while (start >= 0) {
+      int end = payload.indexOf(END_TAG, start);
+      if (end < 0) {
+        break;
+      }
+      end += END_TAG.length();
+      CRC32 crc = new CRC32();
+      for (int i = start; i < end; i++) {
+        crc.update(payload.charAt(i));
+      }
+      sum += crc.getValue();
+      start = payload.indexOf(START_TAG, end);
+    }
+    return sum;
+  }
+  
+  /**
+   * Returns the number of SensorData elements in the payload.
+   * @param payload The XML payload.
+   * @return The number of elements.
+   */
+  private static int count(String payload) {
+    int count = 0;
+    int start = payload.indexOf(START_TAG);
+    while (start >= 0) {
+      count++;
+      start = payload.indexOf(START_TAG, start + START_TAG.length());
+    }
+    return count;
+  }
+
+  /**
+   * Handles a single request.
+   * @param exchange The HTTP exchange.
+   * @throws IOException If the request cannot be read or answered.
+   */
+  public void handle(HttpExchange exchange) throws IOException {
+    try {
+      this.requests.incrementAndGet();
+      if (!this.gzipAccepted && isGzip(exchange)) {
+        respond(exchange, 415, "Unsupported Content-Encoding");
+        return;
+      }
+      byte[] body = readBody(exchange);
+      if (isThrottled()) {
+        this.throttled.incrementAndGet();
+        respond(exchange, 503, "Throttled");
+        return;
+      }
+      injectLatency();
+      if ((this.errorRate > 0) && (nextDouble() < this.errorRate)) {
+        this.errors.incrementAndGet();
+        respond(exchange, 500, "Injected error");
+        return;
+      }
+      String method = exchange.getRequestMethod();
+      String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+      String[] parts = path.split("/");
+      if ("ping".equals(path)) {
+        ping(exchange);
+      }
+      else if ("register".equals(path)) {
+        String form = new String(body, UTF8);
+        String email = URLDecoder.decode(form.substring(form.indexOf('=') + 1), UTF8);
+        this.users.put(email, Boolean.TRUE);
+        respond(exchange, 200, "Registered " + email);
+      }
+      else if ("sensordata".equals(parts[0])) {
+        sensorData(exchange, method, parts, body);
+      }
+      else if ("projects".equals(parts[0])) {
+        projects(exchange, method, parts, body);
+      }
+      else {
+        respond(exchange, 404, "Unknown resource: " + path);
+      }
+    }
+    finally {
+      exchange.close();
+    }
+  }
+  
+  /**
+   * Handles a ping, with or without authentication.
+   * @param exchange The HTTP exchange.
+   * @throws IOException If the response cannot be sent.
+   */
+  private void ping(HttpExchange exchange) throws IOException {
+    String query = exchange.getRequestURI().getQuery();
+    if (query == null) {
+      respond(exchange, 200, "SensorBase");
+      return;
+    }
+    String user = null;
+    for (String pair : query.split("&")) {
+      if (pair.startsWith("user=")) {
+        user = pair.substring("user=".length());
+      }
+    }
+    respond(exchange, 200, this.users.containsKey(user) ? AUTHENTICATED : "SensorBase");
+  }
+  
+  /**
+   * Handles the sensordata resources.
+   * @param exchange The HTTP exchange.
+   * @param method The HTTP method.
+   * @param parts The path components.
+   * @param body The decoded request body.
+   * @throws IOException If the response cannot be sent.
+   */
+  private void sensorData(HttpExchange exchange, String method, String[] parts, byte[] body) 
+  throws IOException {
+    if ("PUT".equals(method)) {
+      String payload = new String(body, UTF8);
+      this.sensorData.addAndGet(count(payload));
+      this.checksum.addAndGet(checksum(payload));
+      countOwners(payload);
+      respond(exchange, 201, "");
+    }
+    else if ("DELETE".equals(method)) {
+      this.deletions.incrementAndGet();
+      if (parts.length > 1) {
+        this.owned.remove(parts[1]);
+      }
+      respond(exchange, 200, "");
+    }
+    else {
+      respond(exchange, 405, "Unsupported method: " + method);
+    }
+  }
+  
+  /**
+   * Counts the SensorData elements in the payload by owner.
+   * @param payload The XML payload.
+   */
+  private void countOwners(String payload) {
+    int start = payload.indexOf(START_TAG);
+    while (start >= 0) {
+      int end = payload.indexOf(END_TAG, start);
+      int ownerStart = payload.indexOf(OWNER_TAG, start);
+      if ((end < 0) || (ownerStart < 0) || (ownerStart > end)) {
+        break;
+      }
+      ownerStart += OWNER_TAG.length();
+      String owner = payload.substring(ownerStart, payload.indexOf('<', ownerStart));
+      AtomicLong count = this.owned.get(owner);
+      if (count == null) {
+        AtomicLong newCount = new AtomicLong();
+        count = this.owned.putIfAbsent(owner, newCount);
+        if (count == null) {
+          count = newCount;
+        }
+      }
+      count.incrementAndGet();
+      start = payload.indexOf(START_TAG, end);
+    }
+  }
+  
+  /**
+   * Handles the projects resources.
+   * @param exchange The HTTP exchange.
+   * @param method The HTTP method.
+   * @param parts The path components.
+   * @param body The decoded request body.
+   * @throws IOException If the response cannot be sent.
+   */
+  private void projects(HttpExchange exchange, String method, String[] parts, byte[] body) 
+  throws IOException {
+    if (parts.length == 2 && "GET".equals(method)) {
+      respond(exchange, 200, projectIndex(parts[1]));
+      return;
+    }
+    if (parts.length < 3) {
+      respond(exchange, 404, "No such project");
+      return;
+    }
+    String key = parts[1] + "/" + parts[2];
+    if (parts.length > 3) {
+      // An invitation reply; membership is not tracked.
+      if (!this.projects.containsKey(key)) {
+        respond(exchange, 404, "No such project: " + key);
+      }
+      else if (this.repliesFailing) {
+        this.errors.incrementAndGet();
+        respond(exchange, 500, "Injected reply error");
+      }
+      else {
+        this.replies.incrementAndGet();
+        respond(exchange, 200, "");
+      }
+    }
+    else if ("PUT".equals(method)) {
+      this.projects.put(key, body);
+      this.projectPuts.incrementAndGet();
+      respond(exchange, 201, "");
+    }
+    else if ("GET".equals(method)) {
+      byte[] project = this.projects.get(key);
+      if (project == null) {
+        respond(exchange, 404, "No such project: " + key);
+      }
+      else {
+        respond(exchange, 200, project);
+      }
+    }
+    else if ("DELETE".equals(method)) {
+      this.projects.remove(key);
+      respond(exchange, 200, "");
+    }
+    else {
+      respond(exchange, 405, "Unsupported method: " + method);
+    }
+  }
+  
+  /**
+   * Returns the project index of the given owner.
+   * @param owner The owner.
+   * @return The ProjectIndex representation.
+   */
+  private String projectIndex(String owner) {
+    StringBuffer index = new StringBuffer(200);
+    index.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><ProjectIndex>");
+    for (String key : this.projects.keySet()) {
+      String[] ownerName = key.split("/");
+      if (ownerName[0].equals(owner)) {
+        index.append("<ProjectRef Name=\"").append(ownerName[1]).append("\" Owner=\"")
+          .append(owner).append("\" Href=\"").append(this.hostName).append("projects/")
+          .append(key).append("\"/>");
+      }
+    }
+    return index.append("</ProjectIndex>").toString();
+  }
+  
+  /**
+   * Returns true if the request exceeds the throttling rate.
+   * @return True if the request should be rejected.
+   */
+  private synchronized boolean isThrottled() {
+    if (this.maxRequestsPerSecond <= 0) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    if (now - this.windowStart >= 1000) {
+      this.windowStart = now;
+      this.windowCount = 0;
+    }
+    return ++this.windowCount > this.maxRequestsPerSecond;
+  }
+  
+  /**
+   * Sleeps for the configured latency, counting the request as concurrent meanwhile.
+   */
+  private void injectLatency() {
+    long concurrent = this.active.incrementAndGet();
+    for (long peak = this.peakActive.get(); concurrent > peak; peak = this.peakActive.get()) {
+      this.peakActive.compareAndSet(peak, concurrent);
+    }
+    try {
+      sleepLatency();
+    }
+    finally {
+      this.active.decrementAndGet();
+    }
+  }
+  
+  /**
+   * Sleeps for the configured latency.
+   */
+  private void sleepLatency() {
+    int delay = this.latency;
+    if (this.latencyJitter > 0) {
+      delay += (int) (nextDouble() * this.latencyJitter);
+    }
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+  
+  /**
+   * Returns the next random double from the shared generator.
+   * @return A double between 0 and 1.
+   */
+  private synchronized double nextDouble() {
+    return this.random.nextDouble();
+  }
+  
+  /**
+   * Reads the request body, decompressing it if it is gzip encoded.
+   * @param exchange The HTTP exchange.
+   * @return The decoded body.
+   * @throws IOException If the body cannot be read.
+   */
+  private byte[] readBody(HttpExchange exchange) throws IOException {
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    copy(exchange.getRequestBody(), raw);
+    this.bytes.addAndGet(raw.size());
+    if (isGzip(exchange)) {
+      ByteArrayOutputStream decoded = new ByteArrayOutputStream(raw.size() * 8);
+      copy(new GZIPInputStream(new java.io.ByteArrayInputStream(raw.toByteArray())), decoded);
+      return decoded.toByteArray();
+    }
+    return raw.toByteArray();
+  }
+  
+  /**
+   * Returns true if the request body is gzip compressed.
+   * @param exchange The HTTP exchange.
+   * @return True if compressed.
+   */
+  private static boolean isGzip(HttpExchange exchange) {
+    return "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+  }
+  
+  /**
+   * Copies the input stream to the output stream, then closes the input stream.
+   * @param in The input.
+   * @param out The output.
+   * @throws IOException If problems occur.
+   */
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    try {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+  
+  /**
+   * Sends a text response.
+   * @param exchange The HTTP exchange.
+   * @param status The HTTP status.
+   * @param text The response text.
+   * @throws IOException If the response cannot be sent.
+   */
+  private static void respond(HttpExchange exchange, int status, String text) 
+  throws IOException {
+    respond(exchange, status, text.getBytes(UTF8));
+  }
+  
+  /**
+   * Sends a response.
+   * @param exchange The HTTP exchange.
+   * @param status The HTTP status.
+   * @param body The response body.
+   * @throws IOException If the response cannot be sent.
+   */
+  private static void respond(HttpExchange exchange, int status, byte[] body) 
+  throws IOException {
+    String type = (body.length > 0 && body[0] == '<') ? "text/xml" : "text/plain";
+    exchange.getResponseHeaders().set("Content-Type", type + "; charset=UTF-8");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+    }
+  }
+  
+  /**
+   * Runs a stand-in SensorBase until the process is killed, printing its counters on exit.
+   * Arguments are: port [latency [errorRate [maxRequestsPerSecond]]].
+   * @param args The arguments.
+   * @throws Exception If the server cannot be started.
+   */
+  public static void main(String[] args) throws Exception {
+    int port = (args.length > 0) ? Integer.parseInt(args[0]) : 9876;
+    final StubSensorBase stub = new StubSensorBase(port, 32);
+    if (args.length > 1) {
+      stub.setLatency(Integer.parseInt(args[1]), 0);
+    }
+    if (args.length > 2) {
+      stub.setErrorRate(Double.parseDouble(args[2]));
+    }
+    if (args.length > 3) {
+      stub.setMaxRequestsPerSecond(Integer.parseInt(args[3]));
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        System.out.println(stub);
+      }
+    });
+    System.out.println("StubSensorBase running at " + stub.getHostName());
+  }
+}
@@ -0,0 +1,147 @@
+package org.hackystat.simdata.stub;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the stand-in SensorBase over plain HTTP.
+ * @author Philip Johnson
+ */
+public class TestStubSensorBase {
+  
+  /** The stand-in under test. */
+  private StubSensorBase stub;
+  
+  /** Two sensor data instances, as they might appear in a batch. */
+  private final String batch = "<SensorDatas>" 
+    + "<SensorData><Owner>joe@hackystat.org</Owner><Tool>Ant</Tool></SensorData>" 
+    + "<SensorData><Owner>bob@hackystat.org</Owner><Tool>Ant</Tool></SensorData>" 
+    + "</SensorDatas>";
+  
+  /**
+   * Starts the stand-in on a free port.
+   * @throws Exception If it cannot be started.
+   */
+  @Before
+  public void setUp() throws Exception {
+    this.stub = new StubSensorBase(0, 4);
+  }
+  
+  /**
+   * Stops the stand-in.
+   */
+  @After
+  public void tearDown() {
+    this.stub.stop();
+  }
+  
+  /**
+   * Checks ping, registration and authentication.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testPingAndRegister() throws Exception {
+    assertEquals("Checking ping", "SensorBase", request("GET", "ping", null, false));
+    String auth = "ping?user=joe@hackystat.org&password=joe@hackystat.org";
+    assertEquals("Checking unregistered", "SensorBase", request("GET", auth, null, false));
+    request("POST", "register", "email=joe%40hackystat.org", false);
+    assertEquals("Checking registered", "SensorBase authenticated", 
+        request("GET", auth, null, false));
+  }
+  
+  /**
+   * Checks that data is counted and checksummed the same way whether it is sent one instance
+   * at a time, as a batch, or as a compressed batch.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testSensorDataChecksum() throws Exception {
+    request("PUT", "sensordata/batch", batch, false);
+    assertEquals("Checking batch count", 2, stub.getSensorDataCount());
+    long expected = StubSensorBase.checksum(batch);
+    assertEquals("Checking batch checksum", expected, stub.getChecksum());
+    
+    request("PUT", "sensordata/batch", batch, true);
+    assertEquals("Checking gzip count", 4, stub.getSensorDataCount());
+    assertEquals("Checking gzip checksum", 2 * expected, stub.getChecksum());
+    
+    int split = batch.indexOf("<SensorData>", batch.indexOf("</SensorData>"));
+    request("PUT", "sensordata/joe@hackystat.org/1", batch.substring(0, split), false);
+    request("PUT", "sensordata/bob@hackystat.org/2", batch.substring(split), false);
+    assertEquals("Checking single count", 6, stub.getSensorDataCount());
+    assertEquals("Checking single checksum", 3 * expected, stub.getChecksum());
+  }
+  
+  /**
+   * Checks that injected errors are reported as 500s.
+   * @throws Exception If problems occur.
+   */
+  @Test
+  public void testErrorInjection() throws Exception {
+    stub.setErrorRate(1.0);
+    HttpURLConnection connection = open("GET", "ping");
+    assertEquals("Checking injected error", 500, connection.getResponseCode());
+    assertEquals("Checking error count", 1, stub.getErrorCount());
+  }
+  
+  /**
+   * Opens a connection to the given resource.
+   * @param method The HTTP method.
+   * @param resource The resource, relative to the host.
+   * @return The connection.
+   * @throws Exception If problems occur.
+   */
+  private HttpURLConnection open(String method, String resource) throws Exception {
+    HttpURLConnection connection = 
+      (HttpURLConnection) new URL(stub.getHostName() + resource).openConnection();
+    connection.setRequestMethod(method);
+    return connection;
+  }
+  
+  /**
+   * Makes a request and returns the response text.
+   * @param method The HTTP method.
+   * @param resource The resource, relative to the host.
+   * @param body The request body, or null.
+   * @param gzip True if the body should be gzip encoded.
+   * @return The response text.
+   * @throws Exception If problems occur.
+   */
+  private String request(String method, String resource, String body, boolean gzip) 
+  throws Exception {
+    HttpURLConnection connection = open(method, resource);
+    if (body != null) {
+      connection.setDoOutput(true);
+      byte[] bytes = body.getBytes("UTF-8");
+      if (gzip) {
+        connection.setRequestProperty("Content-Encoding", "gzip");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(bytes);
+        out.close();
+        bytes = compressed.toByteArray();
+      }
+      OutputStream out = connection.getOutputStream();
+      out.write(bytes);
+      out.close();
+    }
+    InputStream in = connection.getInputStream();
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    int read;
+    while ((read = in.read()) >= 0) {
+      response.write(read);
+    }
+    in.close();
+    return response.toString("UTF-8");
+  }
+}